@@ -0,0 +1,105 @@
+package com.cloudhopper.commons.benchmarks;
+
+/*
+ * #%L
+ * ch-commons-benchmarks
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.cloudhopper.commons.charset.Charset;
+import com.cloudhopper.commons.charset.CharsetUtil;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encode/decode throughput of every cloudhopper Charset across SMS sized
+ * payloads. Characters a charset cannot represent are replaced the same way
+ * they would be in production, so every combination is valid to run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CharsetBenchmark {
+
+    @Param({ "GSM", "PACKED-GSM", "GSM7", "GSM8", "ISO-8859-1", "ISO-8859-15", "UCS-2", "UCS-2LE", "UTF-8", "MODIFIED-UTF8", "AIRWIDE-IA5", "AIRWIDE-GSM", "VFD2-GSM", "VFTR-GSM", "TMOBILE-NL-GSM" })
+    public String charsetName;
+
+    @Param({ "ASCII_160", "GSM_EXTENDED_160", "LATIN1_140", "UCS2_70", "EMOJI_70", "ASCII_459" })
+    public String payload;
+
+    private Charset charset;
+    private String text;
+    private byte[] encoded;
+    private byte[] encodeBuffer;
+    private char[] decodeBuffer;
+    private StringBuilder decodeBuilder;
+
+    @Setup
+    public void setup() {
+        charset = CharsetUtil.map(charsetName);
+        if (charset == null) {
+            throw new IllegalArgumentException("Unsupported charset [" + charsetName + "]");
+        }
+        text = SmsPayloads.get(payload);
+        encoded = charset.encode(text);
+        // worst case for every charset is 4 bytes per char (UTF-8)
+        encodeBuffer = new byte[text.length() * 4];
+        decodeBuffer = new char[encoded.length * 2];
+        decodeBuilder = new StringBuilder(encoded.length * 2);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return charset.encode(text);
+    }
+
+    @Benchmark
+    public int encodeIntoBuffer() {
+        return charset.encode(text, encodeBuffer, 0, encodeBuffer.length);
+    }
+
+    @Benchmark
+    public String decode() {
+        return charset.decode(encoded);
+    }
+
+    @Benchmark
+    public int decodeIntoBuffer() {
+        return charset.decode(encoded, 0, encoded.length, decodeBuffer, 0, decodeBuffer.length);
+    }
+
+    @Benchmark
+    public int decodeIntoStringBuilder() {
+        decodeBuilder.setLength(0);
+        charset.decode(encoded, decodeBuilder);
+        return decodeBuilder.length();
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.cloudhopper.commons.benchmarks;
+
+/*
+ * #%L
+ * ch-commons-benchmarks
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.cloudhopper.commons.util.HexUtil;
+import com.cloudhopper.commons.util.codec.Base64Codec;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * HexUtil and Base64Codec conversions of binary message bodies (a 140 byte
+ * single segment and a 402 byte 3 segment message), the way they appear
+ * in logs and SXMP/HTTP payloads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({ "140", "402" })
+    public int length;
+
+    private byte[] bytes;
+    private String hex;
+    private String base64;
+
+    @Setup
+    public void setup() {
+        bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        hex = HexUtil.toHexString(bytes);
+        base64 = Base64Codec.encode(bytes);
+    }
+
+    @Benchmark
+    public String hexEncode() {
+        return HexUtil.toHexString(bytes);
+    }
+
+    @Benchmark
+    public byte[] hexDecode() {
+        return HexUtil.toByteArray(hex);
+    }
+
+    @Benchmark
+    public String base64Encode() {
+        return Base64Codec.encode(bytes);
+    }
+
+    @Benchmark
+    public byte[] base64Decode() throws Exception {
+        return Base64Codec.decode(base64);
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.cloudhopper.commons.benchmarks;
+
+/*
+ * #%L
+ * ch-commons-benchmarks
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.cloudhopper.commons.util.CompactDigitLookupMap;
+import com.cloudhopper.commons.util.DigitLookupMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Longest prefix lookups of phone numbers against a routing table of random
+ * prefixes (1 to 6 digits), like a table of carrier/country routes, with a
+ * DigitLookupMap and its CompactDigitLookupMap copy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DigitLookupMapBenchmark {
+
+    @Param({ "1000", "100000" })
+    public int prefixCount;
+
+    private DigitLookupMap<String> map;
+    private CompactDigitLookupMap<String> compactMap;
+    private String[] addresses;
+    private int index;
+
+    @Setup
+    public void setup() {
+        // fixed seed so every run looks up the same numbers
+        Random random = new Random(20140101L);
+        map = new DigitLookupMap<String>();
+        for (int i = 0; i < prefixCount; i++) {
+            map.put(randomDigits(random, 1 + random.nextInt(6)) + "*", "route" + i);
+        }
+        compactMap = CompactDigitLookupMap.copyOf(map);
+        addresses = new String[1024];
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = randomDigits(random, 11);
+        }
+    }
+
+    static private String randomDigits(Random random, int length) {
+        char[] digits = new char[length];
+        for (int i = 0; i < length; i++) {
+            digits[i] = (char)('0' + random.nextInt(10));
+        }
+        return new String(digits);
+    }
+
+    @Benchmark
+    public String get() {
+        // benign race across threads: any address is as good as another
+        index = (index + 1) & (addresses.length - 1);
+        return map.get(addresses[index]);
+    }
+
+    @Benchmark
+    public String getCompact() {
+        index = (index + 1) & (addresses.length - 1);
+        return compactMap.get(addresses[index]);
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.cloudhopper.commons.benchmarks;
+
+/*
+ * #%L
+ * ch-commons-benchmarks
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.cloudhopper.commons.locale.E164CountryCode;
+import com.cloudhopper.commons.locale.E164CountryCodeUtil;
+import com.cloudhopper.commons.util.ByteUtil;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Country code lookups of international numbers from a mix of 1, 2 and 3
+ * digit country codes, as Strings and as BCD encoded bytes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class E164CountryCodeBenchmark {
+
+    private String[] addresses;
+    private byte[][] bcdAddresses;
+    private int index;
+
+    @Setup
+    public void setup() {
+        addresses = new String[] {
+            "13135551212", "14165551212", "18765551212", "447911123456",
+            "4915112345678", "33612345678", "861391234567", "919812345678",
+            "5511987654321", "61412345678", "27821234567", "2348031234567",
+            "97150123456", "3538712345678", "35799123456", "8801712345678"
+        };
+        bcdAddresses = new byte[addresses.length][];
+        for (int i = 0; i < addresses.length; i++) {
+            bcdAddresses[i] = ByteUtil.encodeBcd(addresses[i], 7);
+        }
+        // force the country code table to load before measuring
+        E164CountryCodeUtil.lookup(addresses[0]);
+    }
+
+    @Benchmark
+    public E164CountryCode lookup() {
+        index = (index + 1) & (addresses.length - 1);
+        return E164CountryCodeUtil.lookup(addresses[index]);
+    }
+
+    @Benchmark
+    public E164CountryCode lookupBcd() {
+        index = (index + 1) & (bcdAddresses.length - 1);
+        return E164CountryCodeUtil.lookupBcd(bcdAddresses[index], 0, bcdAddresses[index].length);
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.cloudhopper.commons.benchmarks;
+
+/*
+ * #%L
+ * ch-commons-benchmarks
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.cloudhopper.commons.charset.CharsetUtil;
+import com.cloudhopper.commons.charset.GSMBitPacker;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Septet packing/unpacking for a single segment (160 septets) and a full 3
+ * segment concatenated message (459 septets).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GSMBitPackerBenchmark {
+
+    @Param({ "ASCII_160", "ASCII_459" })
+    public String payload;
+
+    private byte[] unpacked;
+    private byte[] packed;
+    private byte[] packBuffer;
+    private byte[] unpackBuffer;
+
+    @Setup
+    public void setup() {
+        unpacked = CharsetUtil.CHARSET_GSM.encode(SmsPayloads.get(payload));
+        packed = GSMBitPacker.pack(unpacked);
+        packBuffer = new byte[packed.length];
+        unpackBuffer = new byte[unpacked.length + 1];
+    }
+
+    @Benchmark
+    public byte[] pack() {
+        return GSMBitPacker.pack(unpacked);
+    }
+
+    @Benchmark
+    public int packIntoBuffer() {
+        return GSMBitPacker.pack(unpacked, 0, unpacked.length, packBuffer, 0, 0);
+    }
+
+    @Benchmark
+    public byte[] unpack() {
+        return GSMBitPacker.unpack(packed);
+    }
+
+    @Benchmark
+    public int unpackIntoBuffer() {
+        return GSMBitPacker.unpack(packed, 0, packed.length, unpackBuffer, 0, 0);
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.cloudhopper.commons.benchmarks;
+
+/*
+ * #%L
+ * ch-commons-benchmarks
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.cloudhopper.commons.util.metrics.RateMeter;
+import com.cloudhopper.commons.util.metrics.SlidingWindowHistogram;
+import com.cloudhopper.commons.util.metrics.StripedCounter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of updating the metrics meters on every message from 4 threads,
+ * against a single shared AtomicLong, and of reading a five minute rate and
+ * a sliding 99th percentile (as done by a JMX poll).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MeterBenchmark {
+
+    private AtomicLong atomicLong;
+    private StripedCounter counter;
+    private RateMeter meter;
+    private SlidingWindowHistogram histogram;
+
+    @Setup
+    public void setup() {
+        atomicLong = new AtomicLong();
+        counter = new StripedCounter();
+        meter = new RateMeter();
+        histogram = new SlidingWindowHistogram();
+        for (int i = 0; i < 1000; i++) {
+            meter.mark();
+            histogram.record(i);
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long atomicLongIncrement() {
+        return atomicLong.incrementAndGet();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void stripedCounterIncrement() {
+        counter.increment();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void rateMeterMark() {
+        meter.mark();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void histogramRecord() {
+        histogram.record(250);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public double rateMeterFiveMinuteRate() {
+        return meter.getFiveMinuteRate();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long histogram99thPercentile() {
+        return histogram.get99thPercentile();
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.cloudhopper.commons.benchmarks;
+
+/*
+ * #%L
+ * ch-commons-benchmarks
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.cloudhopper.commons.locale.PrefixDatabase;
+import com.cloudhopper.commons.locale.PrefixDatabaseCompiler;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Operator lookups of numbers against a memory-mapped PrefixDatabase of
+ * random prefixes (3 to 8 digits) plus as many ported numbers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrefixDatabaseBenchmark {
+
+    @Param({ "100000", "1000000" })
+    public int entryCount;
+
+    private File file;
+    private PrefixDatabase database;
+    private String[] addresses;
+    private int index;
+
+    @Setup
+    public void setup() throws Exception {
+        // fixed seed so every run looks up the same numbers
+        Random random = new Random(20140101L);
+        StringBuilder dataset = new StringBuilder();
+        for (int i = 0; i < entryCount; i++) {
+            dataset.append(randomDigits(random, 3 + random.nextInt(6))).append("* OP").append(i & 1023).append('\n');
+            dataset.append(randomDigits(random, 11)).append(" PORTED").append(i & 1023).append('\n');
+        }
+        file = File.createTempFile("prefixdb", ".db");
+        new PrefixDatabaseCompiler().compile(new ByteArrayInputStream(dataset.toString().getBytes("UTF-8")), file);
+        database = PrefixDatabase.open(file);
+        addresses = new String[1024];
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = randomDigits(random, 11);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    static private String randomDigits(Random random, int length) {
+        char[] digits = new char[length];
+        for (int i = 0; i < length; i++) {
+            digits[i] = (char)('0' + random.nextInt(10));
+        }
+        return new String(digits);
+    }
+
+    @Benchmark
+    public String lookup() {
+        // benign race across threads: any address is as good as another
+        index = (index + 1) & (addresses.length - 1);
+        return database.lookup(addresses[index]);
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.cloudhopper.commons.benchmarks;
+
+/*
+ * #%L
+ * ch-commons-benchmarks
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.cloudhopper.commons.util.RunningAverage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of adding a sample to a RunningAverage (as done per message to track
+ * throughput or latency) shared by 1 and 4 threads, and of reading its
+ * average.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RunningAverageBenchmark {
+
+    private RunningAverage average;
+    private AtomicLong sample;
+
+    @Setup
+    public void setup() {
+        average = new RunningAverage(1000, 2);
+        sample = new AtomicLong();
+        for (int i = 0; i < 1000; i++) {
+            average.add(i);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void add1Thread() {
+        average.add(sample.incrementAndGet() & 1023);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void add4Threads() {
+        average.add(sample.incrementAndGet() & 1023);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public double getAverage() {
+        return average.getAverage();
+    }
+
+}
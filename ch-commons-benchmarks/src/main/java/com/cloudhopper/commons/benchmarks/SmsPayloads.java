@@ -0,0 +1,84 @@
+package com.cloudhopper.commons.benchmarks;
+
+/*
+ * #%L
+ * ch-commons-benchmarks
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Canned message payloads sized like real SMS traffic. Each is exactly the
+ * maximum a single segment (or a 3 segment concatenated message) can carry
+ * in the encoding that payload would be sent in.
+ */
+public class SmsPayloads {
+
+    /** 160 chars of 7-bit ASCII/GSM text: one full GSM segment */
+    static public final String ASCII_160 = repeat("Your verification code is 482913. It expires in 10 minutes. Reply STOP to opt out of further messages from us. ", 160);
+
+    /** 160 chars mixing the GSM basic and extension tables (escapes for {}[]~^|\ and euro) */
+    static public final String GSM_EXTENDED_160 = repeat("Price: \u20ac12 [promo] {code: X~Y} ^ta|da\\ \u00e9\u00e8\u00f1\u00dc ", 160);
+
+    /** 140 chars of ISO-8859-1 accented text: one full 8-bit segment */
+    static public final String LATIN1_140 = repeat("R\u00e9servation confirm\u00e9e \u00e0 S\u00e3o Paulo pour M\u00fcller, \u00c5se \u00d8stergaard et \u00c7elik. ", 140);
+
+    /** 70 chars of BMP-only text (Cyrillic/Greek): one full UCS-2 segment */
+    static public final String UCS2_70 = repeat("\u041f\u0440\u0438\u0432\u0435\u0442, \u043c\u0438\u0440! \u0393\u03b5\u03b9\u03ac \u03c3\u03bf\u03c5 \u03ba\u03cc\u03c3\u03bc\u03b5! ", 70);
+
+    /** 70 UTF-16 code units including surrogate pairs (emoji) */
+    static public final String EMOJI_70 = repeat("Happy birthday \ud83c\udf82\ud83c\udf89 see you soon \ud83d\ude00! ", 70);
+
+    /** 459 chars of ASCII: a full 3 segment concatenated GSM message (153 * 3) */
+    static public final String ASCII_459 = repeat("Your order #20931 has shipped and will arrive Tuesday between 9am and 5pm. Track it online or reply HELP for help. ", 459);
+
+    /**
+     * Looks up a payload by its constant name. Used by benchmarks that take
+     * the payload as a JMH parameter.
+     * @param name The name of the constant such as "ASCII_160"
+     * @return The payload
+     */
+    static public String get(String name) {
+        if ("ASCII_160".equals(name)) {
+            return ASCII_160;
+        } else if ("GSM_EXTENDED_160".equals(name)) {
+            return GSM_EXTENDED_160;
+        } else if ("LATIN1_140".equals(name)) {
+            return LATIN1_140;
+        } else if ("UCS2_70".equals(name)) {
+            return UCS2_70;
+        } else if ("EMOJI_70".equals(name)) {
+            return EMOJI_70;
+        } else if ("ASCII_459".equals(name)) {
+            return ASCII_459;
+        }
+        throw new IllegalArgumentException("Unknown payload [" + name + "]");
+    }
+
+    static private String repeat(String fragment, int length) {
+        StringBuilder buf = new StringBuilder(length + fragment.length());
+        while (buf.length() < length) {
+            buf.append(fragment);
+        }
+        buf.setLength(length);
+        // never leave a dangling high surrogate at the end
+        if (Character.isHighSurrogate(buf.charAt(length - 1))) {
+            buf.setCharAt(length - 1, '!');
+        }
+        return buf.toString();
+    }
+
+}
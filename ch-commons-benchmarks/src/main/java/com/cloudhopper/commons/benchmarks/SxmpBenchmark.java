@@ -0,0 +1,119 @@
+package com.cloudhopper.commons.benchmarks;
+
+/*
+ * #%L
+ * ch-commons-benchmarks
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.cloudhopper.sxmp.Account;
+import com.cloudhopper.sxmp.MobileAddress;
+import com.cloudhopper.sxmp.Operation;
+import com.cloudhopper.sxmp.SubmitRequest;
+import com.cloudhopper.sxmp.SxmpParser;
+import com.cloudhopper.sxmp.SxmpPullParser;
+import com.cloudhopper.sxmp.SxmpWriter;
+import com.cloudhopper.sxmp.TextEncoding;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing (SAX and StAX) and writing of a submit request carrying SMS sized
+ * text, the operation an SXMP server handles the most of.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SxmpBenchmark {
+
+    @Param({ "ASCII_160", "UCS2_70", "ASCII_459" })
+    public String payload;
+
+    private SxmpParser parser;
+    private SxmpParser pullParser;
+    private SubmitRequest request;
+    private byte[] xml;
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setup() throws Exception {
+        parser = new SxmpParser();
+        pullParser = new SxmpPullParser();
+        request = new SubmitRequest();
+        request.setAccount(new Account("customer1", "test1"));
+        request.setOperatorId(20);
+        request.setReferenceId("TESTREF");
+        request.setSourceAddress(new MobileAddress(MobileAddress.Type.NETWORK, "40404"));
+        request.setDestinationAddress(new MobileAddress(MobileAddress.Type.INTERNATIONAL, "+13135551212"));
+        request.setText(SmsPayloads.get(payload), TextEncoding.UTF_8);
+        xml = SxmpWriter.createString(request).getBytes("UTF-8");
+        out = new ByteArrayOutputStream(xml.length);
+    }
+
+    @Benchmark
+    public Operation parse() throws Exception {
+        return parser.parse(new ByteArrayInputStream(xml));
+    }
+
+    @Benchmark
+    public Operation parsePull() throws Exception {
+        return pullParser.parse(new ByteArrayInputStream(xml));
+    }
+
+    @Benchmark
+    public int write() throws Exception {
+        StringWriter sw = new StringWriter(xml.length);
+        SxmpWriter.write(sw, request);
+        return sw.getBuffer().length();
+    }
+
+    @Benchmark
+    public int writeEncoded() throws Exception {
+        // chars encoded to bytes by a Writer (the old servlet/entity path)
+        out.reset();
+        Writer w = new OutputStreamWriter(out, "ISO-8859-1");
+        SxmpWriter.write(w, request);
+        w.flush();
+        return out.size();
+    }
+
+    @Benchmark
+    public int writeBytes() throws Exception {
+        out.reset();
+        SxmpWriter.write(out, request);
+        return out.size();
+    }
+
+}
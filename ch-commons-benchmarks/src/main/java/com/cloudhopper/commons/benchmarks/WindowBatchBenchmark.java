@@ -0,0 +1,122 @@
+package com.cloudhopper.commons.benchmarks;
+
+/*
+ * #%L
+ * ch-commons-benchmarks
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.cloudhopper.commons.util.windowing.ConcurrentWindow;
+import com.cloudhopper.commons.util.windowing.Window;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of acknowledging a burst of responses: a full window is completed one
+ * key at a time with complete() versus all at once with completeBatch(), then
+ * refilled for the next invocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WindowBatchBenchmark {
+
+    @Param({ "Window", "ConcurrentWindow" })
+    public String impl;
+
+    @Param({ "32" })
+    public int burstSize;
+
+    private Window<Integer,String,String> window;
+    private ConcurrentWindow<Integer,String,String> concurrentWindow;
+    private Integer[] keys;
+    private String[] responses;
+
+    @Setup
+    public void setup() throws Exception {
+        if ("ConcurrentWindow".equals(impl)) {
+            concurrentWindow = new ConcurrentWindow<Integer,String,String>(burstSize);
+        } else {
+            window = new Window<Integer,String,String>(burstSize);
+        }
+        keys = new Integer[burstSize];
+        responses = new String[burstSize];
+        for (int i = 0; i < burstSize; i++) {
+            keys[i] = i;
+            responses[i] = "response";
+        }
+        fill();
+    }
+
+    @TearDown
+    public void teardown() {
+        if (concurrentWindow != null) {
+            concurrentWindow.destroy();
+        } else {
+            window.destroy();
+        }
+    }
+
+    private void fill() throws Exception {
+        for (int i = 0; i < burstSize; i++) {
+            if (concurrentWindow != null) {
+                concurrentWindow.offer(keys[i], "request", 0);
+            } else {
+                window.offer(keys[i], "request", 0);
+            }
+        }
+    }
+
+    @Benchmark
+    public void completeEach() throws Exception {
+        for (int i = 0; i < burstSize; i++) {
+            if (concurrentWindow != null) {
+                concurrentWindow.complete(keys[i], responses[i]);
+            } else {
+                window.complete(keys[i], responses[i]);
+            }
+        }
+        fill();
+    }
+
+    @Benchmark
+    public Object completeBatch() throws Exception {
+        Object completed;
+        if (concurrentWindow != null) {
+            completed = concurrentWindow.completeBatch(keys, responses);
+        } else {
+            completed = window.completeBatch(keys, responses);
+        }
+        fill();
+        return completed;
+    }
+
+}
@@ -0,0 +1,135 @@
+package com.cloudhopper.commons.benchmarks;
+
+/*
+ * #%L
+ * ch-commons-benchmarks
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.cloudhopper.commons.util.windowing.ConcurrentWindow;
+import com.cloudhopper.commons.util.windowing.IntKeyWindow;
+import com.cloudhopper.commons.util.windowing.IntKeyWindowFuture;
+import com.cloudhopper.commons.util.windowing.Window;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Cost of a request/response round trip (offer followed by complete) through
+ * a Window, ConcurrentWindow or IntKeyWindow (recycling its futures) shared
+ * by 1, 4, 8 and 64 threads. Keys are
+ * unique across threads so the window never sees a duplicate. Every thread
+ * completes what it offered, so a window only fills up (and offers block)
+ * once there are more threads than slots.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WindowBenchmark {
+
+    @Param({ "Window", "ConcurrentWindow", "IntKeyWindow" })
+    public String impl;
+
+    @Param({ "16", "512" })
+    public int windowSize;
+
+    private Window<Integer,String,String> window;
+    private ConcurrentWindow<Integer,String,String> concurrentWindow;
+    private IntKeyWindow<String,String> intKeyWindow;
+    private AtomicInteger sequence;
+
+    @Setup
+    public void setup() {
+        if ("ConcurrentWindow".equals(impl)) {
+            concurrentWindow = new ConcurrentWindow<Integer,String,String>(windowSize);
+        } else if ("IntKeyWindow".equals(impl)) {
+            intKeyWindow = new IntKeyWindow<String,String>(windowSize);
+        } else {
+            window = new Window<Integer,String,String>(windowSize);
+        }
+        sequence = new AtomicInteger();
+    }
+
+    @TearDown
+    public void teardown() {
+        if (concurrentWindow != null) {
+            concurrentWindow.destroy();
+        } else if (intKeyWindow != null) {
+            intKeyWindow.destroy();
+        } else {
+            window.destroy();
+        }
+    }
+
+    private Object offerAndComplete() throws Exception {
+        if (intKeyWindow != null) {
+            int key = sequence.incrementAndGet();
+            intKeyWindow.offer(key, "request", 30000);
+            IntKeyWindowFuture<String,String> future = intKeyWindow.complete(key, "response");
+            intKeyWindow.recycle(future);
+            return future;
+        }
+        Integer key = sequence.incrementAndGet();
+        if (concurrentWindow != null) {
+            concurrentWindow.offer(key, "request", 30000);
+            return concurrentWindow.complete(key, "response");
+        } else {
+            window.offer(key, "request", 30000);
+            return window.complete(key, "response");
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object offerComplete1Thread() throws Exception {
+        return offerAndComplete();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object offerComplete4Threads() throws Exception {
+        return offerAndComplete();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object offerComplete8Threads() throws Exception {
+        return offerAndComplete();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Object offerComplete64Threads() throws Exception {
+        return offerAndComplete();
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.cloudhopper.commons.benchmarks;
+
+/*
+ * #%L
+ * ch-commons-benchmarks
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.cloudhopper.commons.util.windowing.ConcurrentWindow;
+import com.cloudhopper.commons.util.windowing.Window;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of one monitor tick (cancelAllExpired) on a full window where nothing
+ * is due yet, which is what almost every tick of a busy window looks like.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WindowExpireBenchmark {
+
+    @Param({ "Window", "ConcurrentWindow" })
+    public String impl;
+
+    @Param({ "64", "4096" })
+    public int windowSize;
+
+    private Window<Integer,String,String> window;
+    private ConcurrentWindow<Integer,String,String> concurrentWindow;
+
+    @Setup
+    public void setup() throws Exception {
+        if ("ConcurrentWindow".equals(impl)) {
+            concurrentWindow = new ConcurrentWindow<Integer,String,String>(windowSize);
+            for (int i = 0; i < windowSize; i++) {
+                concurrentWindow.offer(i, "request", 0, 3600000L);
+            }
+        } else {
+            window = new Window<Integer,String,String>(windowSize);
+            for (int i = 0; i < windowSize; i++) {
+                window.offer(i, "request", 0, 3600000L);
+            }
+        }
+    }
+
+    @TearDown
+    public void teardown() {
+        if (concurrentWindow != null) {
+            concurrentWindow.destroy();
+        } else {
+            window.destroy();
+        }
+    }
+
+    @Benchmark
+    public Object cancelAllExpired() {
+        if (concurrentWindow != null) {
+            return concurrentWindow.cancelAllExpired();
+        } else {
+            return window.cancelAllExpired();
+        }
+    }
+
+}
@@ -40,6 +40,8 @@ public class AirwideIA5Charset extends GSMCharset {
         { (byte)0x02, (byte)0x24 }, // $
         { (byte)0x11, (byte)0x5F }, // _
     };
+    // constant time translation table built from the override table above
+    static final byte[] AIRWIDE_TO_GSM = buildTranslationTable(AIRWIDE_OVERRIDE_TABLE, AIRWIDE_COL, GSM_COL);
 
     @Override
     public byte[] encode(CharSequence str0) {
@@ -48,39 +50,54 @@ public class AirwideIA5Charset extends GSMCharset {
     }
 
     @Override
-    public void decode(byte[] bytes, StringBuilder buffer) {
-        int length = (bytes == null ? 0 : bytes.length);
+    public void decode(byte[] bytes, int off, int len, StringBuilder buffer) {
+        if (bytes == null) {
+            return;
+        }
+        checkBounds(bytes.length, off, len);
+        byte[] gsmBytes = toGSM(bytes, off, len);
+        if (gsmBytes == null) {
+            super.decode(bytes, off, len, buffer);
+        } else {
+            super.decode(gsmBytes, 0, len, buffer);
+        }
+    }
 
-        // we promise to not change any of the bytes -- an optimization is a
-        // lazy "copy" of the byte array in case we don't encounter any bytes
-        // that need to be converted
-        byte[] bytes2 = null;
+    @Override
+    public int decode(byte[] bytes, int off, int len, char[] dst, int dstOff, int dstLen) {
+        if (bytes == null) {
+            return super.decode(bytes, off, len, dst, dstOff, dstLen);
+        }
+        checkBounds(bytes.length, off, len);
+        byte[] gsmBytes = toGSM(bytes, off, len);
+        if (gsmBytes == null) {
+            return super.decode(bytes, off, len, dst, dstOff, dstLen);
+        } else {
+            return super.decode(gsmBytes, 0, len, dst, dstOff, dstLen);
+        }
+    }
 
-        // decoding "AIRWIDE-GSM" to unicode is nearly same process as "GSM", but
-        // a few byte values need to be converted -- we'll first convert from AIRWIDE-GSM to GSM
-        // a little slow to run thru this again, but SMS are so tiny its not worth optimizing
-        MAIN_LOOP:
-        for (int i = 0; i < length; i++) {
-            OVERRIDE_LOOP:
-            for (int j = 0; j < AIRWIDE_OVERRIDE_TABLE.length; j++) {
-                // if we find a AIRWIDE-GSM byte value in our AIRWIDE column
-                // we need to swap its value with a replacement value
-                if (bytes[i] == AIRWIDE_OVERRIDE_TABLE[j][AIRWIDE_COL]) {
-                    // we found a special byte value, check if we need to copy
-                    // the byte array now for a "lazy" copy
-                    if (bytes2 == null) {
-                        bytes2 = Arrays.copyOf(bytes, bytes.length);
-                    }
-                    bytes2[i] = AIRWIDE_OVERRIDE_TABLE[j][GSM_COL];
-                    // need to immediately exit search so that we don't run into
-                    // the bug where 0x00 -> 0x40 and then 0x40 -> 0xA1
-                    break OVERRIDE_LOOP;
+    /**
+     * Converts a range of AIRWIDE-GSM bytes to GSM bytes.  We promise to not
+     * change any of the bytes -- an optimization is a lazy "copy" of the range
+     * in case we don't encounter any bytes that need to be converted.
+     * @return A new byte array of the converted range or null if no bytes
+     *      in the range needed to be converted
+     */
+    static private byte[] toGSM(byte[] bytes, int off, int len) {
+        byte[] bytes2 = null;
+        for (int i = 0; i < len; i++) {
+            byte b = AIRWIDE_TO_GSM[bytes[off+i] & 0xFF];
+            if (b != bytes[off+i]) {
+                // we found a special byte value, check if we need to copy
+                // the byte array now for a "lazy" copy
+                if (bytes2 == null) {
+                    bytes2 = Arrays.copyOfRange(bytes, off, off+len);
                 }
+                bytes2[i] = b;
             }
         }
-
-        // delegate to parent (pick which byte array is correct)
-        super.decode((bytes2 == null ? bytes : bytes2), buffer);
+        return bytes2;
     }
 
 }
@@ -0,0 +1,231 @@
+package com.cloudhopper.commons.charset;
+
+/*
+ * #%L
+ * ch-commons-charset
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Bulk copy loops for the leading run of ASCII (or Latin-1) text used as a
+ * fast path by several charsets.  Each loop checks 8 chars or bytes per step
+ * by OR'ing them together and testing the high bits of the result once, and
+ * only then does a straight narrowing/widening copy.  A step that contains
+ * a char or byte outside the range falls through to a char-by-char loop that
+ * stops at the first one, so the general path of the charset can handle the
+ * rest of the input.
+ */
+class AsciiUtil {
+
+    /** Mask of the bits that must be clear for a char to be ASCII. */
+    static final int ASCII_CHAR_MASK = 0xFF80;
+
+    /** Mask of the bits that must be clear for a char to be Latin-1. */
+    static final int LATIN1_CHAR_MASK = 0xFF00;
+
+    /**
+     * Narrows the leading run of chars with no bits set in the mask into the
+     * destination (one byte per char).
+     * @param str0 The chars to encode
+     * @param start The index of the first char
+     * @param dst The destination byte array
+     * @param off The offset in the destination
+     * @param len The maximum number of bytes to write
+     * @param mask ASCII_CHAR_MASK or LATIN1_CHAR_MASK
+     * @return The number of chars (and bytes) copied
+     */
+    static int encodeNarrow(CharSequence str0, int start, byte[] dst, int off, int len, int mask) {
+        int n = Math.min(str0.length() - start, len);
+        int i = 0;
+        for (; i + 8 <= n; i += 8) {
+            int p = start + i;
+            char c0 = str0.charAt(p);
+            char c1 = str0.charAt(p+1);
+            char c2 = str0.charAt(p+2);
+            char c3 = str0.charAt(p+3);
+            char c4 = str0.charAt(p+4);
+            char c5 = str0.charAt(p+5);
+            char c6 = str0.charAt(p+6);
+            char c7 = str0.charAt(p+7);
+            if (((c0 | c1 | c2 | c3 | c4 | c5 | c6 | c7) & mask) != 0) {
+                break;
+            }
+            int d = off + i;
+            dst[d] = (byte)c0;
+            dst[d+1] = (byte)c1;
+            dst[d+2] = (byte)c2;
+            dst[d+3] = (byte)c3;
+            dst[d+4] = (byte)c4;
+            dst[d+5] = (byte)c5;
+            dst[d+6] = (byte)c6;
+            dst[d+7] = (byte)c7;
+        }
+        for (; i < n; i++) {
+            char c = str0.charAt(start+i);
+            if ((c & mask) != 0) {
+                break;
+            }
+            dst[off+i] = (byte)c;
+        }
+        return i;
+    }
+
+    /**
+     * Encodes the leading run of ASCII chars as big-endian UCS-2 (two bytes
+     * per char) into the destination.
+     * @param str0 The chars to encode
+     * @param start The index of the first char
+     * @param dst The destination byte array
+     * @param off The offset in the destination
+     * @param len The maximum number of bytes to write
+     * @return The number of chars copied (half the number of bytes)
+     */
+    static int encodeAsciiUCS2(CharSequence str0, int start, byte[] dst, int off, int len) {
+        int n = Math.min(str0.length() - start, len / 2);
+        int i = 0;
+        for (; i + 8 <= n; i += 8) {
+            int p = start + i;
+            char c0 = str0.charAt(p);
+            char c1 = str0.charAt(p+1);
+            char c2 = str0.charAt(p+2);
+            char c3 = str0.charAt(p+3);
+            char c4 = str0.charAt(p+4);
+            char c5 = str0.charAt(p+5);
+            char c6 = str0.charAt(p+6);
+            char c7 = str0.charAt(p+7);
+            if (((c0 | c1 | c2 | c3 | c4 | c5 | c6 | c7) & ASCII_CHAR_MASK) != 0) {
+                break;
+            }
+            int d = off + (i * 2);
+            dst[d] = 0;
+            dst[d+1] = (byte)c0;
+            dst[d+2] = 0;
+            dst[d+3] = (byte)c1;
+            dst[d+4] = 0;
+            dst[d+5] = (byte)c2;
+            dst[d+6] = 0;
+            dst[d+7] = (byte)c3;
+            dst[d+8] = 0;
+            dst[d+9] = (byte)c4;
+            dst[d+10] = 0;
+            dst[d+11] = (byte)c5;
+            dst[d+12] = 0;
+            dst[d+13] = (byte)c6;
+            dst[d+14] = 0;
+            dst[d+15] = (byte)c7;
+        }
+        for (; i < n; i++) {
+            char c = str0.charAt(start+i);
+            if ((c & ASCII_CHAR_MASK) != 0) {
+                break;
+            }
+            dst[off+(i*2)] = 0;
+            dst[off+(i*2)+1] = (byte)c;
+        }
+        return i;
+    }
+
+    /**
+     * Widens the leading run of ASCII bytes into the destination.
+     * @param bytes The bytes to decode
+     * @param off The offset of the first byte
+     * @param len The number of bytes available
+     * @param dst The destination char array
+     * @param dstOff The offset in the destination
+     * @param dstLen The maximum number of chars to write
+     * @return The number of bytes (and chars) copied
+     */
+    static int decodeAscii(byte[] bytes, int off, int len, char[] dst, int dstOff, int dstLen) {
+        int n = Math.min(len, dstLen);
+        int i = 0;
+        for (; i + 8 <= n; i += 8) {
+            int p = off + i;
+            byte b0 = bytes[p];
+            byte b1 = bytes[p+1];
+            byte b2 = bytes[p+2];
+            byte b3 = bytes[p+3];
+            byte b4 = bytes[p+4];
+            byte b5 = bytes[p+5];
+            byte b6 = bytes[p+6];
+            byte b7 = bytes[p+7];
+            // the sign bit of any non-ASCII byte survives the OR
+            if ((b0 | b1 | b2 | b3 | b4 | b5 | b6 | b7) < 0) {
+                break;
+            }
+            int d = dstOff + i;
+            dst[d] = (char)b0;
+            dst[d+1] = (char)b1;
+            dst[d+2] = (char)b2;
+            dst[d+3] = (char)b3;
+            dst[d+4] = (char)b4;
+            dst[d+5] = (char)b5;
+            dst[d+6] = (char)b6;
+            dst[d+7] = (char)b7;
+        }
+        for (; i < n; i++) {
+            byte b = bytes[off+i];
+            if (b < 0) {
+                break;
+            }
+            dst[dstOff+i] = (char)b;
+        }
+        return i;
+    }
+
+    /**
+     * Decodes the leading run of big-endian UCS-2 ASCII chars (a zero byte
+     * followed by an ASCII byte) into the destination.
+     * @param bytes The bytes to decode
+     * @param off The offset of the first byte
+     * @param len The number of bytes available
+     * @param dst The destination char array
+     * @param dstOff The offset in the destination
+     * @param dstLen The maximum number of chars to write
+     * @return The number of chars copied (half the number of bytes)
+     */
+    static int decodeAsciiUCS2(byte[] bytes, int off, int len, char[] dst, int dstOff, int dstLen) {
+        int n = Math.min(len / 2, dstLen);
+        int i = 0;
+        for (; i + 8 <= n; i += 8) {
+            int p = off + (i * 2);
+            // high bytes must all be zero and low bytes all non-negative
+            int hi = bytes[p] | bytes[p+2] | bytes[p+4] | bytes[p+6] | bytes[p+8] | bytes[p+10] | bytes[p+12] | bytes[p+14];
+            int lo = bytes[p+1] | bytes[p+3] | bytes[p+5] | bytes[p+7] | bytes[p+9] | bytes[p+11] | bytes[p+13] | bytes[p+15];
+            if ((hi | (lo & 0x80)) != 0) {
+                break;
+            }
+            int d = dstOff + i;
+            dst[d] = (char)bytes[p+1];
+            dst[d+1] = (char)bytes[p+3];
+            dst[d+2] = (char)bytes[p+5];
+            dst[d+3] = (char)bytes[p+7];
+            dst[d+4] = (char)bytes[p+9];
+            dst[d+5] = (char)bytes[p+11];
+            dst[d+6] = (char)bytes[p+13];
+            dst[d+7] = (char)bytes[p+15];
+        }
+        for (; i < n; i++) {
+            int p = off + (i * 2);
+            if ((bytes[p] | (bytes[p+1] & 0x80)) != 0) {
+                break;
+            }
+            dst[dstOff+i] = (char)bytes[p+1];
+        }
+        return i;
+    }
+
+}
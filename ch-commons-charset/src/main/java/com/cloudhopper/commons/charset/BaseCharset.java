@@ -20,6 +20,11 @@ package com.cloudhopper.commons.charset;
  * #L%
  */
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
 /**
  * Base Charset class implementing common functionality.
  *
@@ -53,4 +58,156 @@ public abstract class BaseCharset implements Charset {
         return buf.toString();
     }
 
+    /**
+     * Default implementation that encodes to a new byte array and then copies
+     * it into the destination.  Charsets should override this method to
+     * provide an impl that writes directly into the destination.
+     */
+    @Override
+    public int encode(CharSequence str0, byte[] dst, int off, int len) {
+        checkBounds(dst.length, off, len);
+        byte[] bytes = encode(str0);
+        if (bytes == null) {
+            return 0;
+        }
+        if (bytes.length > len) {
+            throw new IndexOutOfBoundsException("Destination too small: " + bytes.length + " bytes required but only " + len + " available");
+        }
+        System.arraycopy(bytes, 0, dst, off, bytes.length);
+        return bytes.length;
+    }
+
+    @Override
+    public int encode(CharSequence str0, byte[] dst, int off) {
+        return encode(str0, dst, off, dst.length - off);
+    }
+
+    /**
+     * Default implementation that encodes directly into the backing array of
+     * a heap buffer.  Direct (or read-only) buffers require an intermediate
+     * byte array.
+     */
+    @Override
+    public int encode(CharSequence str0, ByteBuffer dst) {
+        if (str0 == null) {
+            return 0;
+        }
+        int count = 0;
+        if (dst.hasArray()) {
+            try {
+                count = encode(str0, dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+            } catch (IndexOutOfBoundsException e) {
+                throw new BufferOverflowException();
+            }
+            dst.position(dst.position() + count);
+        } else {
+            byte[] bytes = encode(str0);
+            if (bytes.length > dst.remaining()) {
+                throw new BufferOverflowException();
+            }
+            dst.put(bytes);
+            count = bytes.length;
+        }
+        return count;
+    }
+
+    /**
+     * Default implementation that copies the range of bytes into a new byte
+     * array (only if its not the entire array) and then decodes it.  Charsets
+     * should override this method to provide an impl that reads directly from
+     * the range.
+     */
+    @Override
+    public void decode(final byte[] bytes, int off, int len, StringBuilder buffer) {
+        if (bytes == null) {
+            return;
+        }
+        checkBounds(bytes.length, off, len);
+        if (off == 0 && len == bytes.length) {
+            decode(bytes, buffer);
+        } else {
+            decode(Arrays.copyOfRange(bytes, off, off+len), buffer);
+        }
+    }
+
+    /**
+     * Default implementation that decodes to a new StringBuilder and then
+     * copies the chars into the destination.  Charsets should override this
+     * method to provide an impl that writes directly into the destination.
+     */
+    @Override
+    public int decode(final byte[] bytes, int off, int len, char[] dst, int dstOff, int dstLen) {
+        checkBounds(dst.length, dstOff, dstLen);
+        if (bytes == null) {
+            return 0;
+        }
+        StringBuilder buffer = new StringBuilder(len);
+        decode(bytes, off, len, buffer);
+        if (buffer.length() > dstLen) {
+            throw new IndexOutOfBoundsException("Destination too small: " + buffer.length() + " chars required but only " + dstLen + " available");
+        }
+        buffer.getChars(0, buffer.length(), dst, dstOff);
+        return buffer.length();
+    }
+
+    /**
+     * Default implementation that decodes directly from the backing array of
+     * a heap byte buffer into the backing array of a heap char buffer.  Direct
+     * (or read-only) buffers require an intermediate array.
+     */
+    @Override
+    public int decode(ByteBuffer src, CharBuffer dst) {
+        int len = src.remaining();
+        byte[] bytes;
+        int off;
+        if (src.hasArray()) {
+            bytes = src.array();
+            off = src.arrayOffset() + src.position();
+        } else {
+            bytes = new byte[len];
+            src.duplicate().get(bytes);
+            off = 0;
+        }
+        int count = 0;
+        if (dst.hasArray()) {
+            try {
+                count = decode(bytes, off, len, dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+            } catch (IndexOutOfBoundsException e) {
+                throw new BufferOverflowException();
+            }
+            dst.position(dst.position() + count);
+        } else {
+            StringBuilder buffer = new StringBuilder(len);
+            decode(bytes, off, len, buffer);
+            if (buffer.length() > dst.remaining()) {
+                throw new BufferOverflowException();
+            }
+            dst.append(buffer);
+            count = buffer.length();
+        }
+        src.position(src.limit());
+        return count;
+    }
+
+    /**
+     * Checks the offset and length are valid for an array.
+     * @param arrayLength The length of the array
+     * @param off The offset in the array
+     * @param len The length from the offset
+     * @throws IndexOutOfBoundsException Thrown if the range is not within
+     *      the array
+     */
+    static protected void checkBounds(int arrayLength, int off, int len) {
+        if ((off | len | (off + len) | (arrayLength - (off + len))) < 0) {
+            throw new IndexOutOfBoundsException("Invalid range [offset=" + off + ", length=" + len + "] for array of length " + arrayLength);
+        }
+    }
+
+    /**
+     * Creates the exception thrown when a destination array runs out of room.
+     */
+    static protected IndexOutOfBoundsException destinationTooSmall() {
+        return new IndexOutOfBoundsException("Destination too small for encoded/decoded data");
+    }
+
 }
@@ -20,6 +20,9 @@ package com.cloudhopper.commons.charset;
  * #L%
  */
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
 /**
  * Interface for any charset.
  * 
@@ -36,6 +39,45 @@ public interface Charset {
      */
     public byte[] encode(CharSequence str0);
 
+    /**
+     * Encode the Java string into an existing byte array starting at the
+     * offset. No intermediate byte array is allocated by charsets that
+     * provide an optimized implementation.
+     * @param str0 The Java string to encode
+     * @param dst The destination byte array
+     * @param off The offset in the destination byte array to start writing at
+     * @return The number of bytes written to the destination byte array
+     * @throws IndexOutOfBoundsException Thrown if the destination byte array
+     *      does not have enough room for the encoded bytes
+     */
+    public int encode(CharSequence str0, byte[] dst, int off);
+
+    /**
+     * Encode the Java string into an existing byte array starting at the
+     * offset and writing no more than the length.
+     * @param str0 The Java string to encode
+     * @param dst The destination byte array
+     * @param off The offset in the destination byte array to start writing at
+     * @param len The maximum number of bytes to write
+     * @return The number of bytes written to the destination byte array
+     * @throws IndexOutOfBoundsException Thrown if the offset/length are not
+     *      valid for the destination byte array or if the encoded bytes do
+     *      not fit within the length
+     */
+    public int encode(CharSequence str0, byte[] dst, int off, int len);
+
+    /**
+     * Encode the Java string into the byte buffer starting at its current
+     * position. On success, the position of the buffer is advanced by the
+     * number of bytes written.
+     * @param str0 The Java string to encode
+     * @param dst The destination byte buffer
+     * @return The number of bytes written to the byte buffer
+     * @throws java.nio.BufferOverflowException Thrown if the remaining space
+     *      in the byte buffer is not large enough (its position is unchanged)
+     */
+    public int encode(CharSequence str0, ByteBuffer dst);
+
     public int estimateDecodeCharLength(byte[] bytes);
 
     /**
@@ -56,6 +98,48 @@ public interface Charset {
      *      the given charset.
      */
     public String decode(final byte[] bytes);
+
+    /**
+     * Decode a range of the byte array to a Java string that is appended to
+     * the buffer.  Implementations of this method will not change any of the
+     * byte values contained in the byte array.
+     * @param bytes The array of bytes to decode
+     * @param off The offset in the byte array to start decoding from
+     * @param len The number of bytes to decode
+     * @param buffer The String buffer to append chars to
+     * @throws IndexOutOfBoundsException Thrown if the offset/length are not
+     *      valid for the byte array
+     */
+    public void decode(final byte[] bytes, int off, int len, StringBuilder buffer);
+
+    /**
+     * Decode a range of the byte array into an existing char array.
+     * Implementations of this method will not change any of the byte values
+     * contained in the byte array.
+     * @param bytes The array of bytes to decode
+     * @param off The offset in the byte array to start decoding from
+     * @param len The number of bytes to decode
+     * @param dst The destination char array
+     * @param dstOff The offset in the destination char array to start writing at
+     * @param dstLen The maximum number of chars to write
+     * @return The number of chars written to the destination char array
+     * @throws IndexOutOfBoundsException Thrown if any of the offsets/lengths
+     *      are not valid or if the decoded chars do not fit within dstLen
+     */
+    public int decode(final byte[] bytes, int off, int len, char[] dst, int dstOff, int dstLen);
+
+    /**
+     * Decode all remaining bytes in the byte buffer into the char buffer.  The
+     * remaining bytes must contain complete encoded characters.  On success,
+     * the position of the byte buffer is advanced to its limit and the position
+     * of the char buffer is advanced by the number of chars written.
+     * @param src The source byte buffer
+     * @param dst The destination char buffer
+     * @return The number of chars written to the char buffer
+     * @throws java.nio.BufferOverflowException Thrown if the remaining space
+     *      in the char buffer is not large enough (neither position is changed)
+     */
+    public int decode(ByteBuffer src, CharBuffer dst);
     
     /**
      * Normalize the characters of the source string to characters that can be
@@ -106,6 +106,26 @@ public class CharsetUtil {
         return charsets.get(upperCharsetName);
     }
 
+    /**
+     * Maps the name of any cloudhopper charset to a standard Java charset with
+     * incremental encoders and decoders (e.g. for use with an InputStreamReader
+     * or OutputStreamWriter).  Does not rely on the JDK finding the
+     * CloudhopperCharsetProvider via the system class loader.
+     * @param charsetName The name of the cloudhopper charset
+     * @return The Java charset or null if the charset is not supported
+     */
+    static public java.nio.charset.Charset mapToNioCharset(String charsetName) {
+        if (map(charsetName) == null) {
+            return null;
+        }
+        java.nio.charset.Charset charset = CloudhopperCharsetProvider.lookup(charsetName);
+        if (charset == null) {
+            // all others are identical to the charsets built into the JDK
+            charset = java.nio.charset.Charset.forName(charsetName);
+        }
+        return charset;
+    }
+
     static public byte[] encode(CharSequence str0, String charsetName) {
         Charset charset = map(charsetName);
         if (charset == null) {
@@ -0,0 +1,99 @@
+package com.cloudhopper.commons.charset;
+
+/*
+ * #%L
+ * ch-commons-charset
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.nio.charset.spi.CharsetProvider;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Provider registered via META-INF/services so that java.nio.charset.Charset.forName()
+ * finds every cloudhopper charset the JDK does not already support (such as
+ * "GSM", "PACKED-GSM", "AIRWIDE-IA5", "TMOBILE-NL-GSM", etc).  The remaining
+ * cloudhopper charsets ("ISO-8859-1", "ISO-8859-15", and "UTF-8") are
+ * identical to the charsets already built into the JDK.
+ *
+ * <p>NOTE: The JDK only looks up providers using the system class loader.  If
+ * this library is loaded by another class loader (e.g. a webapp), use
+ * CharsetUtil.mapToNioCharset() instead.</p>
+ *
+ * @see CharsetUtil#mapToNioCharset(java.lang.String)
+ */
+public class CloudhopperCharsetProvider extends CharsetProvider {
+
+    private static final Map<String,NioCharset> charsets;
+    private static final Set<java.nio.charset.Charset> uniqueCharsets;
+
+    public static final NioCharset NIO_CHARSET_GSM = new GSMNioCharset(CharsetUtil.NAME_GSM, new String[] { CharsetUtil.NAME_GSM8 }, CharsetUtil.CHARSET_GSM, false, false, null, null);
+    public static final NioCharset NIO_CHARSET_PACKED_GSM = new GSMNioCharset(CharsetUtil.NAME_PACKED_GSM, new String[] { CharsetUtil.NAME_GSM7 }, CharsetUtil.CHARSET_PACKED_GSM, true, false, null, null);
+    public static final NioCharset NIO_CHARSET_AIRWIDE_IA5 = new GSMNioCharset(CharsetUtil.NAME_AIRWIDE_IA5, new String[] { CharsetUtil.NAME_AIRWIDE_GSM }, CharsetUtil.CHARSET_AIRWIDE_IA5, false, false, null, AirwideIA5Charset.AIRWIDE_TO_GSM);
+    public static final NioCharset NIO_CHARSET_VFD2_GSM = new GSMNioCharset(CharsetUtil.NAME_VFD2_GSM, null, CharsetUtil.CHARSET_VFD2_GSM, false, false, VFD2GSMCharset.GSM_TO_VFD2, VFD2GSMCharset.VFD2_TO_GSM);
+    public static final NioCharset NIO_CHARSET_VFTR_GSM = new GSMNioCharset(CharsetUtil.NAME_VFTR_GSM, null, CharsetUtil.CHARSET_VFTR_GSM, false, false, VFTRGSMCharset.GSM_TO_VFTR, VFTRGSMCharset.VFTR_TO_GSM);
+    public static final NioCharset NIO_CHARSET_TMOBILENL_GSM = new GSMNioCharset(CharsetUtil.NAME_TMOBILENL_GSM, null, CharsetUtil.CHARSET_TMOBILENL_GSM, false, true, null, null);
+    public static final NioCharset NIO_CHARSET_MODIFIED_UTF8 = new ModifiedUTF8NioCharset(CharsetUtil.NAME_MODIFIED_UTF8, null, CharsetUtil.CHARSET_MODIFIED_UTF8);
+    public static final NioCharset NIO_CHARSET_UCS_2 = new DelegatingNioCharset(CharsetUtil.NAME_UCS_2, null, CharsetUtil.CHARSET_UCS_2, java.nio.charset.Charset.forName("UTF-16BE"));
+    public static final NioCharset NIO_CHARSET_UCS_2LE = new DelegatingNioCharset(CharsetUtil.NAME_UCS_2LE, null, CharsetUtil.CHARSET_UCS_2LE, java.nio.charset.Charset.forName("UTF-16LE"));
+
+    static {
+        charsets = new LinkedHashMap<String,NioCharset>();
+        register(NIO_CHARSET_GSM);
+        register(NIO_CHARSET_PACKED_GSM);
+        register(NIO_CHARSET_AIRWIDE_IA5);
+        register(NIO_CHARSET_VFD2_GSM);
+        register(NIO_CHARSET_VFTR_GSM);
+        register(NIO_CHARSET_TMOBILENL_GSM);
+        register(NIO_CHARSET_MODIFIED_UTF8);
+        register(NIO_CHARSET_UCS_2);
+        register(NIO_CHARSET_UCS_2LE);
+        uniqueCharsets = Collections.unmodifiableSet(new LinkedHashSet<java.nio.charset.Charset>(charsets.values()));
+    }
+
+    static private void register(NioCharset charset) {
+        charsets.put(charset.name().toUpperCase(), charset);
+        for (String alias : charset.aliases()) {
+            charsets.put(alias.toUpperCase(), charset);
+        }
+    }
+
+    /**
+     * Looks up a charset by its name or alias (case insensitive).
+     * @param charsetName The name or alias of the charset
+     * @return The charset or null if not provided by this provider
+     */
+    static public NioCharset lookup(String charsetName) {
+        return charsets.get(charsetName.toUpperCase());
+    }
+
+    @Override
+    public Iterator<java.nio.charset.Charset> charsets() {
+        return uniqueCharsets.iterator();
+    }
+
+    @Override
+    public java.nio.charset.Charset charsetForName(String charsetName) {
+        return lookup(charsetName);
+    }
+
+}
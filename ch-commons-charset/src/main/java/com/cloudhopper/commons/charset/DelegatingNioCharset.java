@@ -0,0 +1,135 @@
+package com.cloudhopper.commons.charset;
+
+/*
+ * #%L
+ * ch-commons-charset
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Java charset for a cloudhopper charset that is byte-for-byte identical to
+ * an existing JDK charset (such as "UCS-2" which is really "UTF-16BE"), but
+ * which the JDK does not know by the cloudhopper name.  The encoder and
+ * decoder delegate to the JDK charset's encoder and decoder.
+ */
+public class DelegatingNioCharset extends NioCharset {
+
+    private final java.nio.charset.Charset target;
+
+    public DelegatingNioCharset(String canonicalName, String[] aliases, Charset charset, java.nio.charset.Charset target) {
+        super(canonicalName, aliases, charset);
+        this.target = target;
+    }
+
+    public java.nio.charset.Charset getTarget() {
+        return this.target;
+    }
+
+    @Override
+    public CharsetEncoder newEncoder() {
+        return new Encoder(target.newEncoder());
+    }
+
+    @Override
+    public CharsetDecoder newDecoder() {
+        return new Decoder(target.newDecoder());
+    }
+
+    private class Encoder extends CharsetEncoder {
+
+        private final CharsetEncoder delegate;
+
+        Encoder(CharsetEncoder delegate) {
+            super(DelegatingNioCharset.this, delegate.averageBytesPerChar(), delegate.maxBytesPerChar(), delegate.replacement());
+            // errors are reported back to us so that our actions are applied
+            this.delegate = delegate
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        }
+
+        @Override
+        public boolean canEncode(char c) {
+            return delegate.canEncode(c);
+        }
+
+        @Override
+        public boolean canEncode(CharSequence cs) {
+            return delegate.canEncode(cs);
+        }
+
+        @Override
+        protected CoderResult encodeLoop(CharBuffer in, ByteBuffer out) {
+            // end of input is signaled to the delegate in implFlush()
+            return delegate.encode(in, out, false);
+        }
+
+        @Override
+        protected CoderResult implFlush(ByteBuffer out) {
+            CoderResult result = delegate.encode(CharBuffer.allocate(0), out, true);
+            if (result.isUnderflow()) {
+                result = delegate.flush(out);
+            }
+            return result;
+        }
+
+        @Override
+        protected void implReset() {
+            delegate.reset();
+        }
+    }
+
+    private class Decoder extends CharsetDecoder {
+
+        private final CharsetDecoder delegate;
+
+        Decoder(CharsetDecoder delegate) {
+            super(DelegatingNioCharset.this, delegate.averageCharsPerByte(), delegate.maxCharsPerByte());
+            // errors are reported back to us so that our actions are applied
+            this.delegate = delegate
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        }
+
+        @Override
+        protected CoderResult decodeLoop(ByteBuffer in, CharBuffer out) {
+            // end of input is signaled to the delegate in implFlush()
+            return delegate.decode(in, out, false);
+        }
+
+        @Override
+        protected CoderResult implFlush(CharBuffer out) {
+            CoderResult result = delegate.decode(ByteBuffer.allocate(0), out, true);
+            if (result.isUnderflow()) {
+                result = delegate.flush(out);
+            }
+            return result;
+        }
+
+        @Override
+        protected void implReset() {
+            delegate.reset();
+        }
+    }
+
+}
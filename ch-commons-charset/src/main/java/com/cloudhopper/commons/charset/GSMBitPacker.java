@@ -56,24 +56,102 @@ public class GSMBitPacker {
         }
 
         int packedLen = unpacked.length - (unpacked.length / 8);
-        //byte[] out = new byte[(int)Math.ceil((unpacked.length * 7) / 8f)];
         byte[] packed = new byte[packedLen];
+        pack(unpacked, 0, unpacked.length, packed, 0, 0);
+        return packed;
+    }
 
-        int len = unpacked.length;
-        int current = 0;
-        int bitpos = 0;
-        for (int i = 0; i < len; i++) {
-            byte b = (byte)(unpacked[i] & 0x7F); // remove top bit
-            // assign first half of partial bits
-            packed[current] |= (byte) ((b & 0xFF) << bitpos);
-            // assign second half of partial bits (if exist)
-            if (bitpos >= 2)
-                packed[++current] |= (b >> (8 - bitpos));
-            bitpos = (bitpos + 7) % 8;
-            if (bitpos == 0)
-                current++;
+    /**
+     * Packs a range of unpacked septets into a destination byte array without
+     * allocating.  Each group of 8 septets is packed into 7 octets in a single
+     * step using long arithmetic; only a partial group at the start or end of
+     * the range falls back to packing septet-by-septet.
+     * <p>
+     * The septet offset is the number of septets that precede the packed
+     * text in the destination starting at <code>packedOff</code>.  This is
+     * required when a user data header (UDH) precedes the text since the
+     * text must begin on a septet boundary.  For example, a 6 octet UDH
+     * occupies 48 bits, so the text starts at septet 7 (bit 49).  Any bits in
+     * the destination that precede the septet offset are left untouched (e.g.
+     * the UDH itself), so the fill bits must already be zero and a long text
+     * can be packed in several calls by passing the septets already packed
+     * as the septet offset.
+     * <p>
+     * The source and destination may be the same array and the same offset
+     * if the septet offset is zero (an in-place pack) since the packed form
+     * never overtakes the septets still to be read.
+     * @param unpacked The unpacked septets
+     * @param off The offset in the unpacked array to start with
+     * @param len The number of septets to pack
+     * @param packed The destination to pack into
+     * @param packedOff The offset in the destination where the packed user
+     *      data (including any septets covered by the septet offset) begins
+     * @param septetOffset The number of septets preceding the text (e.g. the
+     *      length of a UDH in septets, rounded up)
+     * @return The number of octets the packed user data occupies starting at
+     *      <code>packedOff</code>, including octets covered by the septet offset
+     * @throws IndexOutOfBoundsException If either range is out of bounds or
+     *      the destination is too small.
+     */
+    static public int pack(byte[] unpacked, int off, int len, byte[] packed, int packedOff, int septetOffset) {
+        if (off < 0 || len < 0 || off > unpacked.length - len || septetOffset < 0) {
+            throw new IndexOutOfBoundsException("Invalid unpacked range [off=" + off + ", len=" + len + ", septetOffset=" + septetOffset + "]");
         }
-        return packed;
+
+        int packedLen = (((septetOffset + len) * 7) + 7) >> 3;
+        if (packedOff < 0 || packedOff > packed.length - packedLen) {
+            throw new IndexOutOfBoundsException("Destination too small [packedOff=" + packedOff + ", required=" + packedLen + ", length=" + packed.length + "]");
+        }
+
+        int i = 0;
+        int septet = septetOffset;
+        while (i < len) {
+            int groupPos = septet & 7;
+            int base = packedOff + ((septet >> 3) * 7);
+            int s = off + i;
+            if (groupPos == 0 && len - i >= 8) {
+                // fast path: 8 full septets into 7 octets (all reads happen
+                // before any writes which is what makes in-place packing safe)
+                long bits = (long)(unpacked[s] & 0x7F)
+                        | ((long)(unpacked[s+1] & 0x7F) << 7)
+                        | ((long)(unpacked[s+2] & 0x7F) << 14)
+                        | ((long)(unpacked[s+3] & 0x7F) << 21)
+                        | ((long)(unpacked[s+4] & 0x7F) << 28)
+                        | ((long)(unpacked[s+5] & 0x7F) << 35)
+                        | ((long)(unpacked[s+6] & 0x7F) << 42)
+                        | ((long)(unpacked[s+7] & 0x7F) << 49);
+                packed[base] = (byte)bits;
+                packed[base+1] = (byte)(bits >>> 8);
+                packed[base+2] = (byte)(bits >>> 16);
+                packed[base+3] = (byte)(bits >>> 24);
+                packed[base+4] = (byte)(bits >>> 32);
+                packed[base+5] = (byte)(bits >>> 40);
+                packed[base+6] = (byte)(bits >>> 48);
+                i += 8;
+                septet += 8;
+            } else {
+                // partial group: either following the septet offset or at the
+                // end of the text
+                int n = Math.min(8 - groupPos, len - i);
+                long bits = 0;
+                for (int j = 0; j < n; j++) {
+                    bits |= (long)(unpacked[s+j] & 0x7F) << (7 * (groupPos + j));
+                }
+                int startBit = 7 * groupPos;
+                int firstByte = startBit >> 3;
+                int lastByte = ((7 * (groupPos + n)) - 1) >> 3;
+                // preserve any bits preceding the first septet (e.g. a UDH)
+                int v = (int)(bits >>> (firstByte << 3)) & 0xFF;
+                packed[base+firstByte] = (byte)(v | (packed[base+firstByte] & ((1 << (startBit & 7)) - 1)));
+                for (int b = firstByte + 1; b <= lastByte; b++) {
+                    packed[base+b] = (byte)(bits >>> (b << 3));
+                }
+                i += n;
+                septet += n;
+            }
+        }
+
+        return packedLen;
     }
 
     /**
@@ -156,42 +234,100 @@ public class GSMBitPacker {
 
         int unpackedLen = (packed.length * 8) / 7;
         byte[] unpacked = new byte[unpackedLen];
-        int len = unpacked.length;
-        int current = 0;
-        int bitpos = 0;
-        for (int i = 0; i < len; i++) {
-            // remove top bit and assign first half of partial bits
-            unpacked[i] = (byte)(((packed[current] & 0xFF) >> bitpos) & 0x7F);
-            // remove top bit and assign second half of partial bits (if exist)
-            if (bitpos >= 2)
-                unpacked[i] |= (byte)((packed[++current] << (8 - bitpos)) & 0x7F);
-            bitpos = (bitpos + 7) % 8;
-            if (bitpos == 0)
-                current++;
-        }
-        // this fixes an ambiguity bug in the specs
-        // where the last of 8 packed bytes is 0
-        // and it's impossible to distinguish whether it is a
-        // trailing '@' character (which is mapped to 0)
-        // or extra zero-bit padding for 7 actual data bytes.
-        //
-        // we opt for the latter, since it's far more likely,
-        // at the cost of losing a trailing '@' character
-        // in strings whose unpacked size modulo 8 is 0,
-        // and whose last character is '@'.
-        //
-        // an application that wishes to handle this rare case
-        // properly must disambiguate this case externally, such
-        // as by obtaining the original string length, and
-        // appending the trailing '@' if the length
-        // shows that there is one character missing.
-        if (len % 8 == 0 && len > 0 && unpacked[len-1] == 0) {
-            //System.err.println("Hit special case...");
-            byte[] fixed = new byte[len-1];
-            System.arraycopy(unpacked, 0, fixed, 0, len-1);
+        int len = unpack(packed, 0, packed.length, unpacked, 0, 0);
+        if (len != unpackedLen) {
+            // trailing zero-bit padding was dropped
+            byte[] fixed = new byte[len];
+            System.arraycopy(unpacked, 0, fixed, 0, len);
             unpacked = fixed;
         }
         return unpacked;
     }
 
+    /**
+     * Unpacks a range of packed user data into a destination byte array
+     * without allocating.  Each group of 7 octets is unpacked into 8 septets
+     * in a single step using long arithmetic.
+     * <p>
+     * The septet offset is the number of septets at the start of the range
+     * to skip (e.g. a UDH that precedes the text, rounded up to a septet
+     * boundary).  The same trailing '@' vs. padding ambiguity described in
+     * {@link #unpack(byte[])} is resolved the same way: if the user data is
+     * an exact multiple of 7 octets and the last septet is zero, it is
+     * treated as padding and not returned.
+     * @param packed The packed user data
+     * @param off The offset in the packed array where the user data begins
+     * @param len The number of octets of packed user data (including octets
+     *      covered by the septet offset)
+     * @param unpacked The destination for the unpacked septets
+     * @param unpackedOff The offset in the destination to start writing
+     * @param septetOffset The number of leading septets to skip
+     * @return The number of septets written into the destination
+     * @throws IndexOutOfBoundsException If either range is out of bounds or
+     *      the destination is too small.
+     */
+    static public int unpack(byte[] packed, int off, int len, byte[] unpacked, int unpackedOff, int septetOffset) {
+        if (off < 0 || len < 0 || off > packed.length - len || septetOffset < 0) {
+            throw new IndexOutOfBoundsException("Invalid packed range [off=" + off + ", len=" + len + ", septetOffset=" + septetOffset + "]");
+        }
+
+        int totalSeptets = (len * 8) / 7;
+        // see unpack(byte[]) for the explanation of this ambiguity: the
+        // last septet of an exact group lives in the top 7 bits of the last octet
+        if (len > 0 && len % 7 == 0 && (packed[off+len-1] & 0xFE) == 0) {
+            totalSeptets--;
+        }
+        int count = totalSeptets - septetOffset;
+        if (count <= 0) {
+            return 0;
+        }
+        if (unpackedOff < 0 || unpackedOff > unpacked.length - count) {
+            throw new IndexOutOfBoundsException("Destination too small [unpackedOff=" + unpackedOff + ", required=" + count + ", length=" + unpacked.length + "]");
+        }
+
+        int i = 0;
+        int septet = septetOffset;
+        while (i < count) {
+            int groupPos = septet & 7;
+            int base = off + ((septet >> 3) * 7);
+            int d = unpackedOff + i;
+            if (groupPos == 0 && count - i >= 8) {
+                // fast path: 7 octets into 8 full septets
+                long bits = (long)(packed[base] & 0xFF)
+                        | ((long)(packed[base+1] & 0xFF) << 8)
+                        | ((long)(packed[base+2] & 0xFF) << 16)
+                        | ((long)(packed[base+3] & 0xFF) << 24)
+                        | ((long)(packed[base+4] & 0xFF) << 32)
+                        | ((long)(packed[base+5] & 0xFF) << 40)
+                        | ((long)(packed[base+6] & 0xFF) << 48);
+                unpacked[d] = (byte)(bits & 0x7F);
+                unpacked[d+1] = (byte)((bits >>> 7) & 0x7F);
+                unpacked[d+2] = (byte)((bits >>> 14) & 0x7F);
+                unpacked[d+3] = (byte)((bits >>> 21) & 0x7F);
+                unpacked[d+4] = (byte)((bits >>> 28) & 0x7F);
+                unpacked[d+5] = (byte)((bits >>> 35) & 0x7F);
+                unpacked[d+6] = (byte)((bits >>> 42) & 0x7F);
+                unpacked[d+7] = (byte)((bits >>> 49) & 0x7F);
+                i += 8;
+                septet += 8;
+            } else {
+                // partial group: only read the octets actually covered
+                int n = Math.min(8 - groupPos, count - i);
+                int firstByte = (7 * groupPos) >> 3;
+                int lastByte = ((7 * (groupPos + n)) - 1) >> 3;
+                long bits = 0;
+                for (int b = firstByte; b <= lastByte; b++) {
+                    bits |= (long)(packed[base+b] & 0xFF) << (b << 3);
+                }
+                for (int j = 0; j < n; j++) {
+                    unpacked[d+j] = (byte)((bits >>> (7 * (groupPos + j))) & 0x7F);
+                }
+                i += n;
+                septet += n;
+            }
+        }
+
+        return count;
+    }
+
 }
@@ -20,8 +20,7 @@ package com.cloudhopper.commons.charset;
  * #L%
  */
 
-import com.cloudhopper.commons.util.FastByteArrayOutputStream;
-import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * This class encodes and decodes Java Strings to and from the SMS default
@@ -83,6 +82,60 @@ public class GSMCharset extends BaseCharset {
             0, 0, 0, 0, 0, 0, 0, 0,
     };
     
+    /**
+     * Flag OR'ed into a reverse lookup value to indicate the septet is located
+     * in the extension table (and must be preceded by an escape).
+     */
+    static final int EXT_FLAG = 0x100;
+
+    /** Reverse lookup value for a char that has no GSM representation. */
+    static final int UNMAPPED = -1;
+
+    /** Septet written for any char that has no GSM representation ('?'). */
+    static final int UNMAPPED_SEPTET = 0x3f;
+
+    /**
+     * Reverse lookup table (char -> septet) of the default and extension
+     * tables.  Shared with MobileTextAnalyzer so analysis always matches what
+     * this charset actually encodes.
+     */
+    static final GSMSeptetTable SEPTET_TABLE = new GSMSeptetTable(CHAR_TABLE, EXT_CHAR_TABLE);
+
+    /**
+     * Looks up the septet for a char in constant time (or a tiny binary search
+     * for the handful of chars above 0x00FF such as Greek capitals and the
+     * euro sign).
+     * @param c The char to lookup
+     * @return The septet value (0x00 to 0x7F) if in the default table, the
+     *      septet value OR'ed with EXT_FLAG if in the extension table, or
+     *      UNMAPPED if the char has no GSM representation.
+     */
+    static int lookupSeptet(char c) {
+        return SEPTET_TABLE.lookup(c);
+    }
+    
+    /**
+     * Builds a 256 entry byte-to-byte translation table from an override table
+     * of byte pairs.  Byte values not found in the override table translate to
+     * themselves.  If a byte value appears more than once in the "from" column,
+     * the first occurrence wins (same as a linear search that stops at the
+     * first match).
+     * @param overrides The override table of byte pairs
+     * @param fromCol The column in the override table to translate from
+     * @param toCol The column in the override table to translate to
+     * @return The translation table indexed by unsigned byte value
+     */
+    static byte[] buildTranslationTable(byte[][] overrides, int fromCol, int toCol) {
+        byte[] table = new byte[256];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (byte)i;
+        }
+        for (int j = overrides.length - 1; j >= 0; j--) {
+            table[overrides[j][fromCol] & 0xFF] = overrides[j][toCol];
+        }
+        return table;
+    }
+
     /**
      * Verifies that this charset can represent every character in the Java
      * String (char sequence).
@@ -172,43 +225,61 @@ public class GSMCharset extends BaseCharset {
             return null;
         }
 
-        // estimate the length of the dynamic byte array
-        int estimatedByteLength = estimateEncodeByteLength(str0);
-        FastByteArrayOutputStream baos = new FastByteArrayOutputStream(estimatedByteLength);
+        // start with the estimated length and only grow in the rare case
+        // there are a lot of chars from the extension table
+        byte[] buf = new byte[estimateEncodeByteLength(str0)];
+        int pos = 0;
 
-        try {
-            int len = str0.length();
-            for (int i = 0; i < len; i++) {
-                int search = 0;
-                char c = str0.charAt(i);
-                for (; search < CHAR_TABLE.length; search++) {
-                    if (search == EXTENDED_ESCAPE) {
-                        continue;
-                    }
-
-                    if (c == CHAR_TABLE[search]) {
-                        baos.write(search);
-                        break;
-                    }
-
-                    if (c == EXT_CHAR_TABLE[search]) {
-                        baos.write(EXTENDED_ESCAPE);
-                        baos.write(search);
-                        break;
-                    }
-                }
-                if (search == CHAR_TABLE.length) {
-                    // A '?' character.
-                    baos.write(0x3f);
-                }
+        int len = str0.length();
+        for (int i = 0; i < len; i++) {
+            // worst case is 2 bytes for an extended char
+            if (pos + 2 > buf.length) {
+                buf = Arrays.copyOf(buf, buf.length + (len - i) + 10);
+            }
+            int septet = lookupSeptet(str0.charAt(i));
+            if (septet == UNMAPPED) {
+                // A '?' character.
+                buf[pos++] = (byte)UNMAPPED_SEPTET;
+            } else if ((septet & EXT_FLAG) != 0) {
+                buf[pos++] = (byte)EXTENDED_ESCAPE;
+                buf[pos++] = (byte)(septet & 0x7F);
+            } else {
+                buf[pos++] = (byte)septet;
             }
-        } catch (IOException e) {
-            // should be an impossible error
-            throw new RuntimeException("Impossible error with FastByteArrayOutputStream: " + e.getMessage(), e);
         }
 
-        return baos.toByteArray();
+        return (pos == buf.length ? buf : Arrays.copyOf(buf, pos));
+    }
+
+    @Override
+    public int encode(CharSequence str0, byte[] dst, int off, int len) {
+        checkBounds(dst.length, off, len);
+        if (str0 == null) {
+            return 0;
+        }
 
+        int pos = off;
+        int end = off + len;
+        int strLen = str0.length();
+        for (int i = 0; i < strLen; i++) {
+            int septet = lookupSeptet(str0.charAt(i));
+            if (septet == UNMAPPED) {
+                // A '?' character.
+                septet = UNMAPPED_SEPTET;
+            } else if ((septet & EXT_FLAG) != 0) {
+                if (pos >= end) {
+                    throw destinationTooSmall();
+                }
+                dst[pos++] = (byte)EXTENDED_ESCAPE;
+                septet &= 0x7F;
+            }
+            if (pos >= end) {
+                throw destinationTooSmall();
+            }
+            dst[pos++] = (byte)septet;
+        }
+
+        return pos - off;
     }
 
     @Override
@@ -232,9 +303,20 @@ public class GSMCharset extends BaseCharset {
             // append nothing
             return;
         }
+        decode(bytes, 0, bytes.length, buffer);
+    }
 
+    @Override
+    public void decode(byte[] bytes, int off, int len, StringBuilder buffer) {
+        if (bytes == null) {
+            // append nothing
+            return;
+        }
+        checkBounds(bytes.length, off, len);
+
+        int end = off + len;
         char[] table = CHAR_TABLE;
-        for (int i = 0; i < bytes.length; i++) {
+        for (int i = off; i < end; i++) {
             int code = (int)bytes[i] & 0x000000ff;
             if (code == EXTENDED_ESCAPE) {
                 // take next char from extension table
@@ -246,4 +328,33 @@ public class GSMCharset extends BaseCharset {
             }
         }
     }
+
+    @Override
+    public int decode(byte[] bytes, int off, int len, char[] dst, int dstOff, int dstLen) {
+        checkBounds(dst.length, dstOff, dstLen);
+        if (bytes == null) {
+            return 0;
+        }
+        checkBounds(bytes.length, off, len);
+
+        int end = off + len;
+        int pos = dstOff;
+        int dstEnd = dstOff + dstLen;
+        char[] table = CHAR_TABLE;
+        for (int i = off; i < end; i++) {
+            int code = (int)bytes[i] & 0x000000ff;
+            if (code == EXTENDED_ESCAPE) {
+                // take next char from extension table
+                table = EXT_CHAR_TABLE;
+            } else {
+                if (pos >= dstEnd) {
+                    throw destinationTooSmall();
+                }
+                dst[pos++] = ((code >= table.length) ? '?' : table[code]);
+                // go back to the default table
+                table = CHAR_TABLE;
+            }
+        }
+        return pos - dstOff;
+    }
 }
@@ -0,0 +1,147 @@
+package com.cloudhopper.commons.charset;
+
+/*
+ * #%L
+ * ch-commons-charset
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * A national language locking shift and/or single shift table as defined in
+ * 3GPP TS 23.038 (GSM 03.38).  A locking shift table replaces the default
+ * alphabet and a single shift table replaces the default extension table.
+ * Either one is signalled to the handset by a UDH information element (0x25
+ * for a locking shift, 0x24 for a single shift) that carries the language
+ * identifier.
+ */
+public class GSMNationalLanguage {
+
+    /** Information element identifier for a national language single shift. */
+    public static final int IEI_SINGLE_SHIFT = 0x24;
+
+    /** Information element identifier for a national language locking shift. */
+    public static final int IEI_LOCKING_SHIFT = 0x25;
+
+    public static final char[] TURKISH_LOCKING_SHIFT_TABLE = {
+        '@', '\u00a3', '$', '\u00a5', '\u20ac', '\u00e9', '\u00f9', '\u0131',
+        '\u00f2', '\u00c7', '\n', '\u011e', '\u011f', '\r', '\u00c5', '\u00e5',
+        '\u0394', '_', '\u03a6', '\u0393', '\u039b', '\u03a9', '\u03a0', '\u03a8',
+        '\u03a3', '\u0398', '\u039e', 0, '\u015e', '\u015f', '\u00df', '\u00c9',   // 0x1B is the escape
+        ' ', '!', '"', '#', '\u00a4', '%', '&', '\'',
+        '(', ')', '*', '+', ',', '-', '.', '/',
+        '0', '1', '2', '3', '4', '5', '6', '7',
+        '8', '9', ':', ';', '<', '=', '>', '?',
+        '\u0130', 'A', 'B', 'C', 'D', 'E', 'F', 'G',
+        'H', 'I', 'J', 'K', 'L', 'M', 'N', 'O',
+        'P', 'Q', 'R', 'S', 'T', 'U', 'V', 'W',
+        'X', 'Y', 'Z', '\u00c4', '\u00d6', '\u00d1', '\u00dc', '\u00a7',
+        '\u00e7', 'a', 'b', 'c', 'd', 'e', 'f', 'g',
+        'h', 'i', 'j', 'k', 'l', 'm', 'n', 'o',
+        'p', 'q', 'r', 's', 't', 'u', 'v', 'w',
+        'x', 'y', 'z', '\u00e4', '\u00f6', '\u00f1', '\u00fc', '\u00e0',
+    };
+
+    public static final char[] TURKISH_SINGLE_SHIFT_TABLE = {
+            0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, '\f', 0, 0, 0, 0, 0,
+            0, 0, 0, 0, '^', 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0,
+            '{', '}', 0, 0, 0, 0, 0, '\\',
+            0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, '[', '~', ']', 0,
+            '|', 0, 0, 0, 0, 0, 0, '\u011e',
+            0, '\u0130', 0, 0, 0, 0, 0, 0,
+            0, 0, 0, '\u015e', 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, '\u00e7', 0, '\u20ac', 0, '\u011f',
+            0, '\u0131', 0, 0, 0, 0, 0, 0,
+            0, 0, 0, '\u015f', 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0,
+    };
+
+    public static final char[] SPANISH_SINGLE_SHIFT_TABLE = {
+            0, 0, 0, 0, 0, 0, 0, 0,
+            0, '\u00e7', '\f', 0, 0, 0, 0, 0,
+            0, 0, 0, 0, '^', 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0,
+            '{', '}', 0, 0, 0, 0, 0, '\\',
+            0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, '[', '~', ']', 0,
+            '|', '\u00c1', 0, 0, 0, 0, 0, 0,
+            0, '\u00cd', 0, 0, 0, 0, 0, '\u00d3',
+            0, 0, 0, 0, 0, '\u00da', 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0,
+            0, '\u00e1', 0, 0, 0, '\u20ac', 0, 0,
+            0, '\u00ed', 0, 0, 0, 0, 0, '\u00f3',
+            0, 0, 0, 0, 0, '\u00fa', 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0,
+    };
+
+    /** Turkish: both a locking shift and single shift table. */
+    public static final GSMNationalLanguage TURKISH = new GSMNationalLanguage("Turkish", 0x01, TURKISH_LOCKING_SHIFT_TABLE, TURKISH_SINGLE_SHIFT_TABLE);
+
+    /** Spanish: only a single shift table. */
+    public static final GSMNationalLanguage SPANISH = new GSMNationalLanguage("Spanish", 0x02, null, SPANISH_SINGLE_SHIFT_TABLE);
+
+    private final String name;
+    private final int identifier;
+    private final char[] lockingShiftTable;
+    private final char[] singleShiftTable;
+
+    private GSMNationalLanguage(String name, int identifier, char[] lockingShiftTable, char[] singleShiftTable) {
+        this.name = name;
+        this.identifier = identifier;
+        this.lockingShiftTable = lockingShiftTable;
+        this.singleShiftTable = singleShiftTable;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Gets the language identifier carried in the UDH information element.
+     * @return The language identifier
+     */
+    public int getIdentifier() {
+        return this.identifier;
+    }
+
+    /**
+     * Gets the locking shift table that replaces the default alphabet.
+     * @return The locking shift table or null if the language doesn't define one
+     */
+    public char[] getLockingShiftTable() {
+        return this.lockingShiftTable;
+    }
+
+    /**
+     * Gets the single shift table that replaces the default extension table.
+     * @return The single shift table or null if the language doesn't define one
+     */
+    public char[] getSingleShiftTable() {
+        return this.singleShiftTable;
+    }
+
+    @Override
+    public String toString() {
+        return this.name;
+    }
+
+}
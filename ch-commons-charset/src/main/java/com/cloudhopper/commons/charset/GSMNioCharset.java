@@ -0,0 +1,301 @@
+package com.cloudhopper.commons.charset;
+
+/*
+ * #%L
+ * ch-commons-charset
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+
+/**
+ * Java charset for the GSM default alphabet (and its vendor specific
+ * variants) with support for both unpacked (8-bit) and packed (7-bit) forms.
+ * The encoder and decoder are incremental -- an escape to the extension table
+ * or a septet split across a buffer boundary is carried over to the next call.
+ * The encoded bytes and decoded chars are identical to the cloudhopper charset
+ * returned by getCharset().
+ *
+ * @see GSMCharset
+ * @see PackedGSMCharset
+ */
+public class GSMNioCharset extends NioCharset {
+
+    private final boolean packed;
+    private final boolean tmobile;
+    // optional vendor specific translation tables (GSM byte <-> vendor byte)
+    private final byte[] encodeTable;
+    private final byte[] decodeTable;
+
+    /**
+     * Creates a new GSM charset.
+     * @param canonicalName The canonical name of the charset
+     * @param aliases The aliases of the charset
+     * @param charset The cloudhopper charset with the identical mapping
+     * @param packed True if septets are packed into 7-bits
+     * @param tmobile True if the "T-Mobile NL" variant (no extension table
+     *      other than the euro sign encoded as 0x80)
+     * @param encodeTable The optional table for translating GSM bytes into
+     *      vendor specific bytes during encoding
+     * @param decodeTable The optional table for translating vendor specific
+     *      bytes into GSM bytes during decoding
+     */
+    public GSMNioCharset(String canonicalName, String[] aliases, Charset charset, boolean packed, boolean tmobile, byte[] encodeTable, byte[] decodeTable) {
+        super(canonicalName, aliases, charset);
+        if (packed && (tmobile || encodeTable != null || decodeTable != null)) {
+            throw new IllegalArgumentException("Packing is only supported for the default GSM alphabet");
+        }
+        this.packed = packed;
+        this.tmobile = tmobile;
+        this.encodeTable = encodeTable;
+        this.decodeTable = decodeTable;
+    }
+
+    public boolean isPacked() {
+        return this.packed;
+    }
+
+    @Override
+    public CharsetEncoder newEncoder() {
+        return new Encoder();
+    }
+
+    @Override
+    public CharsetDecoder newDecoder() {
+        return new Decoder();
+    }
+
+    private boolean canRepresent(CharSequence str0) {
+        return (tmobile ? TMobileNlGSMCharset.canRepresent(str0) : GSMCharset.canRepresent(str0));
+    }
+
+    /**
+     * Gets the septet (or T-Mobile euro byte) to encode a char to, which may
+     * be OR'ed with GSMCharset.EXT_FLAG if it requires an escape.  Unmappable
+     * chars are encoded as a '?' exactly like the cloudhopper charsets.
+     */
+    private int toSeptet(char c) {
+        if (tmobile) {
+            if (c == TMobileNlGSMCharset.EURO_MARK) {
+                return TMobileNlGSMCharset.TMO_EURO_BYTE;
+            }
+            int septet = GSMCharset.lookupSeptet(c);
+            if (septet == GSMCharset.UNMAPPED || (septet & GSMCharset.EXT_FLAG) != 0) {
+                return GSMCharset.UNMAPPED_SEPTET;
+            }
+            return septet;
+        }
+        int septet = GSMCharset.lookupSeptet(c);
+        return (septet == GSMCharset.UNMAPPED ? GSMCharset.UNMAPPED_SEPTET : septet);
+    }
+
+    private class Encoder extends CharsetEncoder {
+
+        // bits waiting to be written (only used if packed)
+        private int bitBuffer;
+        private int bitCount;
+
+        Encoder() {
+            super(GSMNioCharset.this, (packed ? 0.875f : 1.0f), (tmobile ? 1.0f : 2.0f), new byte[] { (byte)GSMCharset.UNMAPPED_SEPTET });
+        }
+
+        @Override
+        public boolean canEncode(char c) {
+            return canRepresent(String.valueOf(c));
+        }
+
+        @Override
+        public boolean canEncode(CharSequence cs) {
+            return canRepresent(cs);
+        }
+
+        @Override
+        protected CoderResult encodeLoop(CharBuffer in, ByteBuffer out) {
+            while (in.hasRemaining()) {
+                int septet = toSeptet(in.get(in.position()));
+                boolean extended = ((septet & GSMCharset.EXT_FLAG) != 0);
+                int septetCount = (extended ? 2 : 1);
+                // exact number of bytes that will be written for this char
+                int byteCount = (packed ? (bitCount + (7 * septetCount)) >> 3 : septetCount);
+                if (out.remaining() < byteCount) {
+                    return CoderResult.OVERFLOW;
+                }
+                in.get();
+                if (extended) {
+                    write(out, GSMCharset.EXTENDED_ESCAPE);
+                    write(out, septet & 0x7F);
+                } else {
+                    write(out, septet);
+                }
+            }
+            return CoderResult.UNDERFLOW;
+        }
+
+        private void write(ByteBuffer out, int value) {
+            if (packed) {
+                bitBuffer |= (value << bitCount);
+                bitCount += 7;
+                if (bitCount >= 8) {
+                    out.put((byte)bitBuffer);
+                    bitBuffer >>>= 8;
+                    bitCount -= 8;
+                }
+            } else if (encodeTable != null) {
+                out.put(encodeTable[value & 0xFF]);
+            } else {
+                out.put((byte)value);
+            }
+        }
+
+        @Override
+        protected CoderResult implFlush(ByteBuffer out) {
+            // any remaining bits are padded with zeroes
+            if (bitCount > 0) {
+                if (!out.hasRemaining()) {
+                    return CoderResult.OVERFLOW;
+                }
+                out.put((byte)bitBuffer);
+                bitBuffer = 0;
+                bitCount = 0;
+            }
+            return CoderResult.UNDERFLOW;
+        }
+
+        @Override
+        protected void implReset() {
+            bitBuffer = 0;
+            bitCount = 0;
+        }
+    }
+
+    private class Decoder extends CharsetDecoder {
+
+        // true if the last septet was an escape to the extension table
+        private boolean escaped;
+        // bits waiting to be decoded (only used if packed)
+        private int bitBuffer;
+        private int bitCount;
+        // index of the next septet within a group of 8 septets (7 bytes)
+        private int groupIndex;
+        // a zero septet at the end of a group is either an '@' or padding --
+        // we only know once we see if any other septets follow it
+        private boolean pendingZero;
+
+        Decoder() {
+            super(GSMNioCharset.this, (packed ? 1.143f : 1.0f), (packed ? 2.0f : 1.0f));
+        }
+
+        @Override
+        protected CoderResult decodeLoop(ByteBuffer in, CharBuffer out) {
+            if (packed) {
+                return decodePacked(in, out);
+            }
+            while (in.hasRemaining()) {
+                int code = in.get(in.position()) & 0xFF;
+                if (decodeTable != null) {
+                    code = decodeTable[code] & 0xFF;
+                }
+                if (!decode(code, out)) {
+                    return CoderResult.OVERFLOW;
+                }
+                in.get();
+            }
+            return CoderResult.UNDERFLOW;
+        }
+
+        private CoderResult decodePacked(ByteBuffer in, CharBuffer out) {
+            while (true) {
+                if (bitCount < 7) {
+                    if (!in.hasRemaining()) {
+                        return CoderResult.UNDERFLOW;
+                    }
+                    bitBuffer |= ((in.get() & 0xFF) << bitCount);
+                    bitCount += 8;
+                    continue;
+                }
+                if (pendingZero) {
+                    // another septet follows, so the zero septet was not padding
+                    if (!decode(0, out)) {
+                        return CoderResult.OVERFLOW;
+                    }
+                    pendingZero = false;
+                }
+                int septet = bitBuffer & 0x7F;
+                if (groupIndex == 7 && septet == 0) {
+                    pendingZero = true;
+                } else if (!decode(septet, out)) {
+                    return CoderResult.OVERFLOW;
+                }
+                bitBuffer >>>= 7;
+                bitCount -= 7;
+                groupIndex = (groupIndex + 1) & 0x07;
+            }
+        }
+
+        /**
+         * Decodes a single GSM byte value into the char buffer.
+         * @return False if the char buffer was full
+         */
+        private boolean decode(int code, CharBuffer out) {
+            if (tmobile) {
+                if (!out.hasRemaining()) {
+                    return false;
+                }
+                if (code == TMobileNlGSMCharset.TMO_EURO_BYTE) {
+                    out.put(TMobileNlGSMCharset.EURO_MARK);
+                } else {
+                    out.put((code >= GSMCharset.CHAR_TABLE.length) ? '?' : GSMCharset.CHAR_TABLE[code]);
+                }
+                return true;
+            }
+            if (code == GSMCharset.EXTENDED_ESCAPE) {
+                // take next char from extension table
+                escaped = true;
+                return true;
+            }
+            if (!out.hasRemaining()) {
+                return false;
+            }
+            char[] table = (escaped ? GSMCharset.EXT_CHAR_TABLE : GSMCharset.CHAR_TABLE);
+            out.put((code >= table.length) ? '?' : table[code]);
+            // go back to the default table
+            escaped = false;
+            return true;
+        }
+
+        @Override
+        protected CoderResult implFlush(CharBuffer out) {
+            // a trailing zero septet at the end of a group is padding and a
+            // trailing escape is ignored (same as the cloudhopper charsets)
+            return CoderResult.UNDERFLOW;
+        }
+
+        @Override
+        protected void implReset() {
+            escaped = false;
+            bitBuffer = 0;
+            bitCount = 0;
+            groupIndex = 0;
+            pendingZero = false;
+        }
+    }
+
+}
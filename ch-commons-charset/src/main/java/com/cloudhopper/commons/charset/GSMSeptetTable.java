@@ -0,0 +1,96 @@
+package com.cloudhopper.commons.charset;
+
+/*
+ * #%L
+ * ch-commons-charset
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reverse lookup table (char -> septet) for a pair of GSM tables: a basic
+ * table and the extension (single shift) table accessed via the escape.
+ * GSMCharset encodes with one of these (see GSMCharset.SEPTET_TABLE), so
+ * the tables of national languages are mapped exactly the same way.
+ */
+class GSMSeptetTable {
+
+    // dense reverse lookup table for chars 0x0000 to 0x00FF
+    private final short[] latinTable;
+    // sparse reverse lookup table for chars above 0x00FF (sorted keys)
+    private final char[] sparseKeys;
+    private final short[] sparseValues;
+
+    /**
+     * Creates a new reverse lookup table.  The escape slot is ignored.  If a
+     * char appears more than once, the lowest septet wins (basic before
+     * extension table at the same index).  That's the precedence of the
+     * original GSMCharset encoder, which searched both tables from the start
+     * and took the first match; walking the tables backwards preserves it.
+     * Note the zero chars of unused slots are mapped as well, which is how
+     * GSMCharset has always encoded '\0'.
+     * @param basicTable The 128 entry basic table
+     * @param extTable The 128 entry extension table
+     */
+    public GSMSeptetTable(char[] basicTable, char[] extTable) {
+        this.latinTable = new short[0x100];
+        Arrays.fill(this.latinTable, (short)GSMCharset.UNMAPPED);
+        TreeMap<Character,Short> sparse = new TreeMap<Character,Short>();
+        for (int search = basicTable.length - 1; search >= 0; search--) {
+            if (search == GSMCharset.EXTENDED_ESCAPE) {
+                continue;
+            }
+            put(sparse, extTable[search], (short)(GSMCharset.EXT_FLAG | search));
+            put(sparse, basicTable[search], (short)search);
+        }
+        this.sparseKeys = new char[sparse.size()];
+        this.sparseValues = new short[sparse.size()];
+        int i = 0;
+        for (Map.Entry<Character,Short> entry : sparse.entrySet()) {
+            this.sparseKeys[i] = entry.getKey();
+            this.sparseValues[i] = entry.getValue();
+            i++;
+        }
+    }
+
+    private void put(Map<Character,Short> sparse, char c, short value) {
+        if (c < latinTable.length) {
+            latinTable[c] = value;
+        } else {
+            sparse.put(c, value);
+        }
+    }
+
+    /**
+     * Looks up the septet for a char.
+     * @param c The char to lookup
+     * @return The septet value (0x00 to 0x7F) if in the basic table, the
+     *      septet value OR'ed with GSMCharset.EXT_FLAG if in the extension
+     *      table, or GSMCharset.UNMAPPED if the char has no representation.
+     */
+    public int lookup(char c) {
+        if (c < latinTable.length) {
+            return latinTable[c];
+        }
+        int idx = Arrays.binarySearch(sparseKeys, c);
+        return (idx < 0 ? GSMCharset.UNMAPPED : sparseValues[idx]);
+    }
+
+}
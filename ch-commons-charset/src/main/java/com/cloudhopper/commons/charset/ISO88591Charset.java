@@ -50,4 +50,58 @@ public class ISO88591Charset extends JavaCharset {
         return bytes.length;
     }
 
+    @Override
+    public int encode(CharSequence str0, byte[] dst, int off, int len) {
+        checkBounds(dst.length, off, len);
+        if (str0 == null) {
+            return 0;
+        }
+        // bulk copy the leading run of Latin-1 chars
+        int n = AsciiUtil.encodeNarrow(str0, 0, dst, off, len, AsciiUtil.LATIN1_CHAR_MASK);
+        int pos = off + n;
+        int end = off + len;
+        int strLen = str0.length();
+        for (int i = n; i < strLen; i++) {
+            char c = str0.charAt(i);
+            if (c >= '\uD800' && c <= '\uDFFF') {
+                // let the Java encoder handle surrogates (pairs are replaced by a single '?')
+                return (pos - off) + encodeWithEncoder(str0, i, dst, pos, end - pos);
+            }
+            if (pos >= end) {
+                throw destinationTooSmall();
+            }
+            dst[pos++] = (c <= 0xFF ? (byte)c : (byte)'?');
+        }
+        return pos - off;
+    }
+
+    @Override
+    public void decode(byte[] bytes, int off, int len, StringBuilder buffer) {
+        if (bytes == null) {
+            return;
+        }
+        checkBounds(bytes.length, off, len);
+        buffer.ensureCapacity(buffer.length() + len);
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            buffer.append((char)(bytes[i] & 0xFF));
+        }
+    }
+
+    @Override
+    public int decode(byte[] bytes, int off, int len, char[] dst, int dstOff, int dstLen) {
+        checkBounds(dst.length, dstOff, dstLen);
+        if (bytes == null) {
+            return 0;
+        }
+        checkBounds(bytes.length, off, len);
+        if (len > dstLen) {
+            throw destinationTooSmall();
+        }
+        for (int i = 0; i < len; i++) {
+            dst[dstOff+i] = (char)(bytes[off+i] & 0xFF);
+        }
+        return len;
+    }
+
 }
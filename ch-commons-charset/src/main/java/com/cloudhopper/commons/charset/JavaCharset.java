@@ -23,6 +23,10 @@ package com.cloudhopper.commons.charset;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.UnsupportedCharsetException;
 
 /**
@@ -70,4 +74,89 @@ public abstract class JavaCharset extends BaseCharset {
         return new String(bytes, charset);
     }
 
+    @Override
+    public int encode(CharSequence str0, byte[] dst, int off, int len) {
+        checkBounds(dst.length, off, len);
+        if (str0 == null) {
+            return 0;
+        }
+        return encodeWithEncoder(str0, 0, dst, off, len);
+    }
+
+    @Override
+    public void decode(byte[] bytes, int off, int len, StringBuilder buffer) {
+        if (bytes == null) {
+            return;
+        }
+        checkBounds(bytes.length, off, len);
+        buffer.append(charset.decode(ByteBuffer.wrap(bytes, off, len)));
+    }
+
+    @Override
+    public int decode(byte[] bytes, int off, int len, char[] dst, int dstOff, int dstLen) {
+        checkBounds(dst.length, dstOff, dstLen);
+        if (bytes == null) {
+            return 0;
+        }
+        checkBounds(bytes.length, off, len);
+        return decodeWithDecoder(bytes, off, len, dst, dstOff, dstLen);
+    }
+
+    /**
+     * Encodes the chars of the sequence (starting at an index) with the
+     * underlying Java charset directly into the destination byte array.
+     * Unmappable or malformed chars are replaced exactly like String.getBytes().
+     * Subclasses with an optimized encoder may use this method to handle the
+     * rest of a string once they hit a char they do not want to handle.
+     * @param str0 The char sequence to encode
+     * @param start The index of the first char to encode
+     * @param dst The destination byte array
+     * @param off The offset in the destination byte array
+     * @param len The maximum number of bytes to write
+     * @return The number of bytes written
+     */
+    protected int encodeWithEncoder(CharSequence str0, int start, byte[] dst, int off, int len) {
+        CharsetEncoder encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer out = ByteBuffer.wrap(dst, off, len);
+        CoderResult result = encoder.encode(CharBuffer.wrap(str0, start, str0.length()), out, true);
+        if (result.isUnderflow()) {
+            result = encoder.flush(out);
+        }
+        if (result.isOverflow()) {
+            throw destinationTooSmall();
+        }
+        return out.position() - off;
+    }
+
+    /**
+     * Decodes the range of bytes with the underlying Java charset directly
+     * into the destination char array.  Malformed bytes are replaced exactly
+     * like new String(bytes, charset).  Subclasses with an optimized decoder
+     * may use this method to handle the rest of a byte array once they hit a
+     * byte they do not want to handle.
+     * @param bytes The bytes to decode
+     * @param off The offset in the bytes to start decoding from
+     * @param len The number of bytes to decode
+     * @param dst The destination char array
+     * @param dstOff The offset in the destination char array
+     * @param dstLen The maximum number of chars to write
+     * @return The number of chars written
+     */
+    protected int decodeWithDecoder(byte[] bytes, int off, int len, char[] dst, int dstOff, int dstLen) {
+        CharsetDecoder decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer out = CharBuffer.wrap(dst, dstOff, dstLen);
+        CoderResult result = decoder.decode(ByteBuffer.wrap(bytes, off, len), out, true);
+        if (result.isUnderflow()) {
+            result = decoder.flush(out);
+        }
+        if (result.isOverflow()) {
+            throw destinationTooSmall();
+        }
+        return out.position() - dstOff;
+    }
+
 }
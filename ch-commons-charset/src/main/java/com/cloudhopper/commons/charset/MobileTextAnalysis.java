@@ -0,0 +1,186 @@
+package com.cloudhopper.commons.charset;
+
+/*
+ * #%L
+ * ch-commons-charset
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * The result of analyzing outbound text with a MobileTextAnalyzer: the
+ * cheapest encoding that can represent the text, its exact encoded length,
+ * and the number of segments (individual SMS) it'll be sent as.
+ *
+ * @see MobileTextAnalyzer
+ */
+public class MobileTextAnalysis {
+
+    /**
+     * The encodings considered, in order of preference when the number of
+     * segments is the same.
+     */
+    public enum Encoding {
+        /** GSM default alphabet and extension table (7-bit). */
+        GSM,
+        /** GSM with a national language locking and/or single shift table (7-bit). */
+        GSM_NATIONAL_LANGUAGE,
+        /** ISO-8859-1 (8-bit). */
+        ISO_8859_1,
+        /** UCS-2 (16-bit). */
+        UCS_2
+    }
+
+    private final Encoding encoding;
+    private final GSMNationalLanguage nationalLanguage;
+    private final boolean lockingShift;
+    private final boolean singleShift;
+    private final int encodedLength;
+    private final int segmentCount;
+    private final int segmentCountWithoutUdh;
+    private final int bytesWritten;
+
+    MobileTextAnalysis(Encoding encoding, GSMNationalLanguage nationalLanguage, boolean lockingShift, boolean singleShift, int encodedLength, int segmentCount, int segmentCountWithoutUdh, int bytesWritten) {
+        this.encoding = encoding;
+        this.nationalLanguage = nationalLanguage;
+        this.lockingShift = lockingShift;
+        this.singleShift = singleShift;
+        this.encodedLength = encodedLength;
+        this.segmentCount = segmentCount;
+        this.segmentCountWithoutUdh = segmentCountWithoutUdh;
+        this.bytesWritten = bytesWritten;
+    }
+
+    public Encoding getEncoding() {
+        return this.encoding;
+    }
+
+    /**
+     * Gets the national language whose shift table(s) are required if the
+     * encoding is GSM_NATIONAL_LANGUAGE.
+     * @return The national language or null
+     */
+    public GSMNationalLanguage getNationalLanguage() {
+        return this.nationalLanguage;
+    }
+
+    /**
+     * Whether the national language locking shift table replaces the default
+     * alphabet (requires a UDH information element).
+     */
+    public boolean isLockingShift() {
+        return this.lockingShift;
+    }
+
+    /**
+     * Whether the national language single shift table replaces the default
+     * extension table (requires a UDH information element).
+     */
+    public boolean isSingleShift() {
+        return this.singleShift;
+    }
+
+    /**
+     * Gets the exact length of the encoded text.  For the 7-bit GSM encodings
+     * this is the number of unpacked septets (including escapes), otherwise
+     * it's the number of bytes.
+     * @return The encoded length
+     */
+    public int getEncodedLength() {
+        return this.encodedLength;
+    }
+
+    /**
+     * Gets the number of octets of user data header required by the national
+     * language shift table information elements (including the UDH length
+     * octet), or zero if none are required.
+     * @return The length of the UDH without any concatenation
+     */
+    public int getShiftUserDataHeaderLength() {
+        return getShiftUserDataHeaderLength(this.lockingShift, this.singleShift);
+    }
+
+    static int getShiftUserDataHeaderLength(boolean lockingShift, boolean singleShift) {
+        int len = (lockingShift ? 3 : 0) + (singleShift ? 3 : 0);
+        return (len > 0 ? len + 1 : 0);
+    }
+
+    /**
+     * Gets the number of segments if the text is split into concatenated
+     * messages with a UDH in each segment (8-bit reference number).  Escape
+     * sequences and UTF-16 surrogate pairs are never split across segments.
+     * @return The number of segments (an empty text is one segment)
+     */
+    public int getSegmentCount() {
+        return this.segmentCount;
+    }
+
+    /**
+     * Gets the number of segments if the text is split without a
+     * concatenation UDH (for example if concatenation is signalled with SMPP
+     * "sar" optional parameters instead).  Any national language shift
+     * information elements still occupy the user data.
+     * @return The number of segments (an empty text is one segment)
+     */
+    public int getSegmentCountWithoutUdh() {
+        return this.segmentCountWithoutUdh;
+    }
+
+    /**
+     * Gets the number of bytes written into the caller's buffer during the
+     * analysis, which is always getEncodedLength() if the text was encoded.
+     * @return The number of bytes written or -1 if no buffer was supplied or
+     *      the buffer was too small (in which case its contents are undefined).
+     */
+    public int getBytesWritten() {
+        return this.bytesWritten;
+    }
+
+    /**
+     * Gets the charset that encodes the text the same as the analysis did.
+     * @return The charset or null for GSM_NATIONAL_LANGUAGE which has no
+     *      equivalent charset.
+     */
+    public Charset getCharset() {
+        switch (this.encoding) {
+            case GSM:
+                return CharsetUtil.CHARSET_GSM;
+            case ISO_8859_1:
+                return CharsetUtil.CHARSET_ISO_8859_1;
+            case UCS_2:
+                return CharsetUtil.CHARSET_UCS_2;
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder(80);
+        buf.append("[encoding=").append(this.encoding);
+        if (this.nationalLanguage != null) {
+            buf.append(", nationalLanguage=").append(this.nationalLanguage);
+            buf.append(", lockingShift=").append(this.lockingShift);
+            buf.append(", singleShift=").append(this.singleShift);
+        }
+        buf.append(", encodedLength=").append(this.encodedLength);
+        buf.append(", segmentCount=").append(this.segmentCount);
+        buf.append(", segmentCountWithoutUdh=").append(this.segmentCountWithoutUdh);
+        buf.append("]");
+        return buf.toString();
+    }
+
+}
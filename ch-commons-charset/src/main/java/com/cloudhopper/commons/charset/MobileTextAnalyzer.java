@@ -0,0 +1,329 @@
+package com.cloudhopper.commons.charset;
+
+/*
+ * #%L
+ * ch-commons-charset
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+
+/**
+ * Analyzes outbound text in a single pass to find the cheapest encoding that
+ * can represent it (fewest segments, then GSM, GSM with national language
+ * shift tables, ISO-8859-1 and finally UCS-2), its exact encoded length, and
+ * the number of segments it'll be sent as.  This replaces the typical
+ * sequence of GSMCharset.canRepresent(), estimateEncodeByteLength(),
+ * encode() and segment math that walks the text several times.
+ * <p>
+ * The text can optionally be encoded into a caller supplied buffer during
+ * the same pass.  The text is encoded as it's analyzed using the preferred
+ * encoding that can still represent it -- the prefix is only re-encoded if
+ * a char forces a switch to a different encoding (at most a few times), or
+ * at the end if a different encoding results in fewer segments or the
+ * speculative encoding didn't fit in the buffer.
+ * <p>
+ * This class is immutable and thread-safe.
+ */
+public class MobileTextAnalyzer {
+
+    /** Maximum number of octets of user data in a single SMS. */
+    public static final int MAX_USER_DATA_LENGTH = 140;
+
+    /** Length of a UDH with only an 8-bit reference concatenation element. */
+    public static final int CONCAT_UDH_LENGTH = 6;
+
+    static private final int TYPE_GSM = 0;
+    static private final int TYPE_ISO_8859_1 = 1;
+    static private final int TYPE_UCS_2 = 2;
+
+    static private final GSMSeptetTable DEFAULT_TABLE = GSMCharset.SEPTET_TABLE;
+
+    /**
+     * An encoding under consideration along with its segment capacities.
+     */
+    static private class Candidate {
+        final int type;
+        final GSMSeptetTable table;
+        final GSMNationalLanguage language;
+        final boolean lockingShift;
+        final boolean singleShift;
+        // units per segment (septets or bytes) without and with concatenation
+        final int capacity;
+        final int concatCapacity;
+
+        Candidate(int type, GSMSeptetTable table, GSMNationalLanguage language, boolean lockingShift, boolean singleShift) {
+            this.type = type;
+            this.table = table;
+            this.language = language;
+            this.lockingShift = lockingShift;
+            this.singleShift = singleShift;
+            int shiftUdhLength = MobileTextAnalysis.getShiftUserDataHeaderLength(lockingShift, singleShift);
+            this.capacity = capacity(type, shiftUdhLength);
+            // the UDH length octet is shared with the shift elements
+            this.concatCapacity = capacity(type, (shiftUdhLength > 0 ? shiftUdhLength + CONCAT_UDH_LENGTH - 1 : CONCAT_UDH_LENGTH));
+        }
+
+        static private int capacity(int type, int udhLength) {
+            int octets = MAX_USER_DATA_LENGTH - udhLength;
+            switch (type) {
+                case TYPE_GSM:
+                    return (octets * 8) / 7;
+                case TYPE_ISO_8859_1:
+                    return octets;
+                default:
+                    // only whole UCS-2 chars
+                    return octets & ~1;
+            }
+        }
+
+        MobileTextAnalysis.Encoding getEncoding() {
+            switch (type) {
+                case TYPE_GSM:
+                    return (language == null ? MobileTextAnalysis.Encoding.GSM : MobileTextAnalysis.Encoding.GSM_NATIONAL_LANGUAGE);
+                case TYPE_ISO_8859_1:
+                    return MobileTextAnalysis.Encoding.ISO_8859_1;
+                default:
+                    return MobileTextAnalysis.Encoding.UCS_2;
+            }
+        }
+    }
+
+    private final Candidate[] candidates;
+
+    /**
+     * Creates a new analyzer that considers every encoding: GSM, GSM with the
+     * Turkish and Spanish shift tables, ISO-8859-1 and UCS-2.
+     */
+    public MobileTextAnalyzer() {
+        this(true, GSMNationalLanguage.TURKISH, GSMNationalLanguage.SPANISH);
+    }
+
+    /**
+     * Creates a new analyzer.  GSM and UCS-2 are always considered.
+     * @param latin1Enabled True if ISO-8859-1 should be considered
+     * @param nationalLanguages The national languages whose shift tables
+     *      should be considered (in order of preference)
+     */
+    public MobileTextAnalyzer(boolean latin1Enabled, GSMNationalLanguage ... nationalLanguages) {
+        ArrayList<Candidate> list = new ArrayList<Candidate>();
+        list.add(new Candidate(TYPE_GSM, DEFAULT_TABLE, null, false, false));
+        for (GSMNationalLanguage language : nationalLanguages) {
+            char[] locking = language.getLockingShiftTable();
+            char[] single = language.getSingleShiftTable();
+            if (single != null) {
+                list.add(new Candidate(TYPE_GSM, new GSMSeptetTable(GSMCharset.CHAR_TABLE, single), language, false, true));
+            }
+            if (locking != null) {
+                list.add(new Candidate(TYPE_GSM, new GSMSeptetTable(locking, GSMCharset.EXT_CHAR_TABLE), language, true, false));
+            }
+            if (locking != null && single != null) {
+                list.add(new Candidate(TYPE_GSM, new GSMSeptetTable(locking, single), language, true, true));
+            }
+        }
+        if (latin1Enabled) {
+            list.add(new Candidate(TYPE_ISO_8859_1, null, null, false, false));
+        }
+        list.add(new Candidate(TYPE_UCS_2, null, null, false, false));
+        this.candidates = list.toArray(new Candidate[list.size()]);
+    }
+
+    /**
+     * Analyzes the text without encoding it.
+     * @param str0 The text to analyze (null is treated as empty)
+     * @return The analysis
+     */
+    public MobileTextAnalysis analyze(CharSequence str0) {
+        return analyze(str0, null, 0, 0);
+    }
+
+    /**
+     * Analyzes the text and encodes it into the buffer during the same pass.
+     * GSM encodings are written as unpacked septets (the same bytes as
+     * GSMCharset), UCS-2 is written big-endian.  Nothing outside the range
+     * is ever written, but any bytes in the range past the final encoded
+     * length may have been overwritten by a speculative encoding.
+     * @param str0 The text to analyze (null is treated as empty)
+     * @param dst The buffer to encode into or null to only analyze
+     * @param off The offset in the buffer to start writing
+     * @param len The maximum number of bytes to write
+     * @return The analysis.  If the buffer was too small to hold the encoded
+     *      text, getBytesWritten() will return -1.
+     * @throws IndexOutOfBoundsException If the range is not within the buffer
+     */
+    public MobileTextAnalysis analyze(CharSequence str0, byte[] dst, int off, int len) {
+        if (dst != null && (off < 0 || len < 0 || off > dst.length - len)) {
+            throw new IndexOutOfBoundsException("Invalid range [off=" + off + ", len=" + len + ", length=" + dst.length + "]");
+        }
+
+        int count = candidates.length;
+        boolean[] viable = new boolean[count];
+        int[] length = new int[count];
+        int[] fill = new int[count];
+        int[] segments = new int[count];
+        int[] fillWithoutUdh = new int[count];
+        int[] segmentsWithoutUdh = new int[count];
+        for (int k = 0; k < count; k++) {
+            viable[k] = true;
+            segments[k] = 1;
+            segmentsWithoutUdh[k] = 1;
+        }
+
+        int end = off + len;
+        int pos = off;
+        boolean encoding = (dst != null);
+        int encodeIdx = 0;
+
+        int strLen = (str0 == null ? 0 : str0.length());
+        for (int i = 0; i < strLen; i++) {
+            char c = str0.charAt(i);
+            for (int k = 0; k < count; k++) {
+                if (!viable[k]) {
+                    continue;
+                }
+                Candidate candidate = candidates[k];
+                int units;
+                if (candidate.type == TYPE_GSM) {
+                    int septet = candidate.table.lookup(c);
+                    // the encoder maps '\0' to an unused extension slot, but
+                    // like GSMCharset.canRepresent() it doesn't really count
+                    if (septet == GSMCharset.UNMAPPED || c == 0) {
+                        viable[k] = false;
+                        continue;
+                    }
+                    units = ((septet & GSMCharset.EXT_FLAG) != 0 ? 2 : 1);
+                } else if (candidate.type == TYPE_ISO_8859_1) {
+                    if (c > 0xFF) {
+                        viable[k] = false;
+                        continue;
+                    }
+                    units = 1;
+                } else {
+                    // a surrogate pair is counted entirely with its high surrogate
+                    if (Character.isHighSurrogate(c) && i+1 < strLen && Character.isLowSurrogate(str0.charAt(i+1))) {
+                        units = 4;
+                    } else if (Character.isLowSurrogate(c) && i > 0 && Character.isHighSurrogate(str0.charAt(i-1))) {
+                        continue;
+                    } else {
+                        units = 2;
+                    }
+                }
+                length[k] += units;
+                // escapes and surrogate pairs never straddle segments
+                if (fill[k] + units > candidate.concatCapacity) {
+                    segments[k]++;
+                    fill[k] = units;
+                } else {
+                    fill[k] += units;
+                }
+                if (fillWithoutUdh[k] + units > candidate.capacity) {
+                    segmentsWithoutUdh[k]++;
+                    fillWithoutUdh[k] = units;
+                } else {
+                    fillWithoutUdh[k] += units;
+                }
+            }
+
+            if (encoding) {
+                if (viable[encodeIdx]) {
+                    pos = encode(candidates[encodeIdx], str0, i, i+1, dst, pos, end);
+                } else {
+                    // switch to the next preferred encoding (UCS-2 is always
+                    // viable) and re-encode everything so far
+                    while (!viable[encodeIdx]) {
+                        encodeIdx++;
+                    }
+                    pos = encode(candidates[encodeIdx], str0, 0, i+1, dst, off, end);
+                }
+                encoding = (pos >= 0);
+            }
+        }
+
+        // fewest segments wins, ties go to the preferred encoding
+        int best = -1;
+        int bestSegments = Integer.MAX_VALUE;
+        for (int k = 0; k < count; k++) {
+            if (!viable[k]) {
+                continue;
+            }
+            if (length[k] <= candidates[k].capacity) {
+                // fits in a single segment: no concatenation required
+                segments[k] = 1;
+            }
+            if (segments[k] < bestSegments) {
+                best = k;
+                bestSegments = segments[k];
+            }
+        }
+
+        int bytesWritten = -1;
+        if (dst != null) {
+            if (!encoding || best != encodeIdx) {
+                // the speculative encoding either lost or didn't fit
+                pos = (length[best] <= len ? encode(candidates[best], str0, 0, strLen, dst, off, end) : -1);
+            }
+            bytesWritten = (pos >= 0 ? pos - off : -1);
+        }
+
+        Candidate candidate = candidates[best];
+        return new MobileTextAnalysis(candidate.getEncoding(), candidate.language, candidate.lockingShift, candidate.singleShift,
+                length[best], segments[best], segmentsWithoutUdh[best], bytesWritten);
+    }
+
+    /**
+     * Encodes a range of chars (all of which are representable).
+     * @return The new position or -1 if the buffer is too small
+     */
+    static private int encode(Candidate candidate, CharSequence str0, int from, int to, byte[] dst, int pos, int end) {
+        for (int i = from; i < to; i++) {
+            char c = str0.charAt(i);
+            if (candidate.type == TYPE_GSM) {
+                int septet = candidate.table.lookup(c);
+                if ((septet & GSMCharset.EXT_FLAG) != 0) {
+                    if (pos + 2 > end) {
+                        return -1;
+                    }
+                    dst[pos++] = (byte)GSMCharset.EXTENDED_ESCAPE;
+                    dst[pos++] = (byte)(septet & 0x7F);
+                } else {
+                    if (pos >= end) {
+                        return -1;
+                    }
+                    dst[pos++] = (byte)septet;
+                }
+            } else if (candidate.type == TYPE_ISO_8859_1) {
+                if (pos >= end) {
+                    return -1;
+                }
+                dst[pos++] = (byte)c;
+            } else {
+                if (pos + 2 > end) {
+                    return -1;
+                }
+                // lone surrogates are replaced (same as the UCS-2 charset)
+                if ((Character.isHighSurrogate(c) && (i+1 >= str0.length() || !Character.isLowSurrogate(str0.charAt(i+1))))
+                        || (Character.isLowSurrogate(c) && (i == 0 || !Character.isHighSurrogate(str0.charAt(i-1))))) {
+                    c = '\uFFFD';
+                }
+                dst[pos++] = (byte)(c >>> 8);
+                dst[pos++] = (byte)c;
+            }
+        }
+        return pos;
+    }
+
+}
@@ -113,4 +113,22 @@ public class MobileTextUtil {
         return replaced;
     }
 
+    static private final MobileTextAnalyzer ANALYZER = new MobileTextAnalyzer();
+
+    /**
+     * Analyzes the text in a single pass to find the cheapest encoding that
+     * can represent it, its exact encoded length, and the number of segments
+     * it'll be sent as.  Every encoding is considered (including the GSM
+     * national language shift tables and ISO-8859-1) -- create a
+     * MobileTextAnalyzer to limit the encodings or to encode the text into a
+     * buffer during the same pass.
+     *
+     * @param str0 The text to analyze
+     * @return The analysis
+     * @see MobileTextAnalyzer
+     */
+    static public MobileTextAnalysis analyze(CharSequence str0) {
+        return ANALYZER.analyze(str0);
+    }
+
 }
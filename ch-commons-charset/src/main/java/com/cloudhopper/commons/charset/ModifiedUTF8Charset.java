@@ -144,6 +144,69 @@ public class ModifiedUTF8Charset extends BaseCharset {
         //return new String(charBuffer, 0, charLength);
     }
     
+    @Override
+    public int encode(CharSequence charSeq, byte[] dst, int off, int len) {
+        checkBounds(dst.length, off, len);
+        if (charSeq == null) {
+            return 0;
+        }
+        CharArrayWrapper wrapper = CharSequenceAccessor.access(charSeq);
+        if (wrapper != null) {
+            // use more efficient direct access to char array using the wrapper
+            int utf8len = calculateByteLength(null, wrapper.value, wrapper.offset, wrapper.length);
+            if (utf8len > len) {
+                throw destinationTooSmall();
+            }
+            return encodeToByteArray(null, wrapper.value, wrapper.offset, wrapper.length, dst, off);
+        } else {
+            // encode based on charAt() method (slightly less efficient)
+            int utf8len = calculateByteLength(charSeq, null, 0, 0);
+            if (utf8len > len) {
+                throw destinationTooSmall();
+            }
+            return encodeToByteArray(charSeq, null, 0, 0, dst, off);
+        }
+    }
+
+    @Override
+    public void decode(byte[] bytes, int off, int len, StringBuilder buffer) {
+        if (bytes == null) {
+            return;
+        }
+        checkBounds(bytes.length, off, len);
+        // expand buffer as necessary to support all possible UTF-8 bytes
+        buffer.ensureCapacity(buffer.length()+len);
+        CharArrayWrapper wrapper = CharSequenceAccessor.access(buffer);
+        // since we want to mimic an "append", the "length" of the existing char
+        // array represents how much data is currently contained inside it
+        // we'll start our "append" at that offset
+        int charLength = decodeToCharArray(bytes, off, len, wrapper.value, wrapper.length);
+        // the "wrapper" is merely prepped for reading
+        // we'll need to do a final update of it's values
+        CharSequenceAccessor.updateStringBuilder(buffer, charLength+wrapper.length);
+    }
+
+    @Override
+    public int decode(byte[] bytes, int off, int len, char[] dst, int dstOff, int dstLen) {
+        checkBounds(dst.length, dstOff, dstLen);
+        if (bytes == null) {
+            return 0;
+        }
+        checkBounds(bytes.length, off, len);
+        // decoding will never be more than 1 char = 1 byte
+        if (len <= dstLen) {
+            return decodeToCharArray(bytes, off, len, dst, dstOff);
+        }
+        // the destination may still be large enough, but we'll need a temp buffer
+        char[] charBuffer = new char[len];
+        int charLength = decodeToCharArray(bytes, off, len, charBuffer, 0);
+        if (charLength > dstLen) {
+            throw destinationTooSmall();
+        }
+        System.arraycopy(charBuffer, 0, dst, dstOff, charLength);
+        return charLength;
+    }
+    
     /**
      * Highly efficient method for calculating the byte length of
      * a String if it was encoded as modified UTF-8 bytes. Since no byte array
@@ -0,0 +1,152 @@
+package com.cloudhopper.commons.charset;
+
+/*
+ * #%L
+ * ch-commons-charset
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+
+/**
+ * Java charset for "Modified UTF-8".  Every Java char (including each half
+ * of a surrogate pair) is encoded independently as 1 to 3 bytes.
+ *
+ * @see ModifiedUTF8Charset
+ */
+public class ModifiedUTF8NioCharset extends NioCharset {
+
+    public ModifiedUTF8NioCharset(String canonicalName, String[] aliases, Charset charset) {
+        super(canonicalName, aliases, charset);
+    }
+
+    @Override
+    public CharsetEncoder newEncoder() {
+        return new Encoder();
+    }
+
+    @Override
+    public CharsetDecoder newDecoder() {
+        return new Decoder();
+    }
+
+    private class Encoder extends CharsetEncoder {
+
+        Encoder() {
+            super(ModifiedUTF8NioCharset.this, 1.1f, 3.0f);
+        }
+
+        @Override
+        public boolean canEncode(char c) {
+            return true;
+        }
+
+        @Override
+        protected CoderResult encodeLoop(CharBuffer in, ByteBuffer out) {
+            while (in.hasRemaining()) {
+                char c = in.get(in.position());
+                if (c <= 0x007F) {
+                    if (out.remaining() < 1) {
+                        return CoderResult.OVERFLOW;
+                    }
+                    out.put((byte)c);
+                } else if (c > 0x07FF) {
+                    if (out.remaining() < 3) {
+                        return CoderResult.OVERFLOW;
+                    }
+                    out.put((byte)(0xE0 | ((c >> 12) & 0x0F)));
+                    out.put((byte)(0x80 | ((c >> 6) & 0x3F)));
+                    out.put((byte)(0x80 | (c & 0x3F)));
+                } else {
+                    if (out.remaining() < 2) {
+                        return CoderResult.OVERFLOW;
+                    }
+                    out.put((byte)(0xC0 | ((c >> 6) & 0x1F)));
+                    out.put((byte)(0x80 | (c & 0x3F)));
+                }
+                in.get();
+            }
+            return CoderResult.UNDERFLOW;
+        }
+    }
+
+    private class Decoder extends CharsetDecoder {
+
+        Decoder() {
+            super(ModifiedUTF8NioCharset.this, 1.0f, 1.0f);
+        }
+
+        @Override
+        protected CoderResult decodeLoop(ByteBuffer in, CharBuffer out) {
+            while (in.hasRemaining()) {
+                int pos = in.position();
+                int c = in.get(pos) & 0xFF;
+                int length;
+                switch (c >> 4) {
+                    case 0: case 1: case 2: case 3: case 4: case 5: case 6: case 7:
+                        // 0xxxxxxx
+                        length = 1;
+                        break;
+                    case 12: case 13:
+                        // 110x xxxx then 10xx xxxx
+                        length = 2;
+                        break;
+                    case 14:
+                        // 1110 xxxx then 10xx xxxx then 10xx xxxx
+                        length = 3;
+                        break;
+                    default:
+                        // 10xx xxxx,  1111 xxxx
+                        return CoderResult.malformedForLength(1);
+                }
+                if (in.remaining() < length) {
+                    // wait for the rest of the char
+                    return CoderResult.UNDERFLOW;
+                }
+                if (!out.hasRemaining()) {
+                    return CoderResult.OVERFLOW;
+                }
+                if (length == 1) {
+                    out.put((char)c);
+                } else if (length == 2) {
+                    int char2 = in.get(pos+1);
+                    if ((char2 & 0xC0) != 0x80) {
+                        return CoderResult.malformedForLength(1);
+                    }
+                    out.put((char)(((c & 0x1F) << 6) | (char2 & 0x3F)));
+                } else {
+                    int char2 = in.get(pos+1);
+                    int char3 = in.get(pos+2);
+                    if ((char2 & 0xC0) != 0x80) {
+                        return CoderResult.malformedForLength(1);
+                    }
+                    if ((char3 & 0xC0) != 0x80) {
+                        return CoderResult.malformedForLength(2);
+                    }
+                    out.put((char)(((c & 0x0F) << 12) | ((char2 & 0x3F) << 6) | (char3 & 0x3F)));
+                }
+                in.position(pos + length);
+            }
+            return CoderResult.UNDERFLOW;
+        }
+    }
+
+}
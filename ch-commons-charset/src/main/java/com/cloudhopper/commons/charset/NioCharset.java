@@ -0,0 +1,55 @@
+package com.cloudhopper.commons.charset;
+
+/*
+ * #%L
+ * ch-commons-charset
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Base class for exposing a cloudhopper charset as a standard Java
+ * <code>java.nio.charset.Charset</code> with incremental encoders and
+ * decoders.  This lets any cloudhopper charset be used anywhere the JDK
+ * expects a charset such as an <code>InputStreamReader</code> or an
+ * <code>OutputStreamWriter</code> to stream large files without loading them
+ * into memory.
+ *
+ * @see CloudhopperCharsetProvider
+ */
+public abstract class NioCharset extends java.nio.charset.Charset {
+
+    private final Charset charset;
+
+    protected NioCharset(String canonicalName, String[] aliases, Charset charset) {
+        super(canonicalName, aliases);
+        this.charset = charset;
+    }
+
+    /**
+     * Gets the cloudhopper charset this Java charset is based on.
+     * @return The cloudhopper charset
+     */
+    public Charset getCharset() {
+        return this.charset;
+    }
+
+    @Override
+    public boolean contains(java.nio.charset.Charset cs) {
+        return this.equals(cs);
+    }
+
+}
@@ -40,11 +40,43 @@ public class PackedGSMCharset extends GSMCharset {
     }
 
     @Override
-    public void decode(byte[] bytes, StringBuilder buffer) {
-        // unpack the byte array first
-        byte[] unpacked = GSMBitPacker.unpack(bytes);
+    public int encode(CharSequence str0, byte[] dst, int off, int len) {
+        checkBounds(dst.length, off, len);
+        if (str0 == null) {
+            return 0;
+        }
+        byte[] unpacked = super.encode(str0);
+        if (unpacked.length - (unpacked.length / 8) > len) {
+            throw destinationTooSmall();
+        }
+        // pack directly into the destination
+        return GSMBitPacker.pack(unpacked, 0, unpacked.length, dst, off, 0);
+    }
+
+    @Override
+    public void decode(byte[] bytes, int off, int len, StringBuilder buffer) {
+        if (bytes == null) {
+            return;
+        }
+        checkBounds(bytes.length, off, len);
+        // unpack the range of the byte array first
+        byte[] unpacked = new byte[(len * 8) / 7];
+        int unpackedLen = GSMBitPacker.unpack(bytes, off, len, unpacked, 0, 0);
+        // delegate to parent
+        super.decode(unpacked, 0, unpackedLen, buffer);
+    }
+
+    @Override
+    public int decode(byte[] bytes, int off, int len, char[] dst, int dstOff, int dstLen) {
+        if (bytes == null) {
+            return super.decode(bytes, off, len, dst, dstOff, dstLen);
+        }
+        checkBounds(bytes.length, off, len);
+        // unpack the range of the byte array first
+        byte[] unpacked = new byte[(len * 8) / 7];
+        int unpackedLen = GSMBitPacker.unpack(bytes, off, len, unpacked, 0, 0);
         // delegate to parent
-        super.decode(unpacked, buffer);
+        return super.decode(unpacked, 0, unpackedLen, dst, dstOff, dstLen);
     }
 
 }
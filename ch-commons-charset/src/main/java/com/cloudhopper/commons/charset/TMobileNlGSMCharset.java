@@ -20,9 +20,6 @@ package com.cloudhopper.commons.charset;
  * #L%
  */
 
-import com.cloudhopper.commons.util.FastByteArrayOutputStream;
-import java.io.IOException;
-
 /**
  * The <b>TmobileNlGSMCharset</b> class handles a charset unique to the "T-Mobile Netherlands"
  * SMSC vendor.  
@@ -118,52 +115,55 @@ public class TMobileNlGSMCharset extends GSMCharset {
         }
 
         // T-Mo-NL doesn't use multi-byte encoding, so encoded length = input length
-        int estimatedByteLength = str0.length();
-        FastByteArrayOutputStream baos = new FastByteArrayOutputStream(estimatedByteLength);
-
-        try {
-            int len = str0.length();
-            for (int i = 0; i < len; i++) {
-                int search = 0;
-                char c = str0.charAt(i);
-
-                // T-Mo-NL's one extended char is Euro mark, encoded as 0x80
-                if (c == EURO_MARK)
-                    baos.write(TMO_EURO_BYTE);
-                else {
-                    for (; search < CHAR_TABLE.length; search++) {
-                        if (search == EXTENDED_ESCAPE) {
-                            continue;
-                        }
-
-                        if (c == CHAR_TABLE[search]) {
-                            baos.write(search);
-                            break;
-                        }
-                    }
-                    if (search == CHAR_TABLE.length) {
-                        // A '?' character.
-                        baos.write(0x3f);
-                    }
+        byte[] buf = new byte[str0.length()];
+        encode(str0, buf, 0, buf.length);
+        return buf;
+    }
+
+    @Override
+    public int encode(CharSequence str0, byte[] dst, int off, int len) {
+        checkBounds(dst.length, off, len);
+        if (str0 == null) {
+            return 0;
+        }
+
+        // T-Mo-NL doesn't use multi-byte encoding, so encoded length = input length
+        int strLen = str0.length();
+        if (strLen > len) {
+            throw destinationTooSmall();
+        }
+
+        for (int i = 0; i < strLen; i++) {
+            char c = str0.charAt(i);
+
+            // T-Mo-NL's one extended char is Euro mark, encoded as 0x80
+            if (c == EURO_MARK) {
+                dst[off+i] = (byte)TMO_EURO_BYTE;
+            } else {
+                int septet = lookupSeptet(c);
+                if (septet == UNMAPPED || (septet & EXT_FLAG) != 0) {
+                    // A '?' character (no extension table support)
+                    dst[off+i] = (byte)UNMAPPED_SEPTET;
+                } else {
+                    dst[off+i] = (byte)septet;
                 }
             }
-        } catch (IOException e) {
-            // should be an impossible error
-            throw new RuntimeException("Impossible error with FastByteArrayOutputStream: " + e.getMessage(), e);
         }
 
-        return baos.toByteArray();
+        return strLen;
     }
 
     @Override
-    public void decode(byte[] bytes, StringBuilder buffer) {
+    public void decode(byte[] bytes, int off, int len, StringBuilder buffer) {
         if (bytes == null) {
             // append nothing
             return;
         }
+        checkBounds(bytes.length, off, len);
 
+        int end = off + len;
         char[] table = CHAR_TABLE;
-        for (int i = 0; i < bytes.length; i++) {
+        for (int i = off; i < end; i++) {
             int code = (int)bytes[i] & 0x000000ff;
             if (code == TMO_EURO_BYTE) {
                 buffer.append(EURO_MARK);
@@ -173,4 +173,27 @@ public class TMobileNlGSMCharset extends GSMCharset {
         }
     }
 
+    @Override
+    public int decode(byte[] bytes, int off, int len, char[] dst, int dstOff, int dstLen) {
+        checkBounds(dst.length, dstOff, dstLen);
+        if (bytes == null) {
+            return 0;
+        }
+        checkBounds(bytes.length, off, len);
+        if (len > dstLen) {
+            throw destinationTooSmall();
+        }
+
+        char[] table = CHAR_TABLE;
+        for (int i = 0; i < len; i++) {
+            int code = (int)bytes[off+i] & 0x000000ff;
+            if (code == TMO_EURO_BYTE) {
+                dst[dstOff+i] = EURO_MARK;
+            } else {
+                dst[dstOff+i] = ((code >= table.length) ? '?' : table[code]);
+            }
+        }
+        return len;
+    }
+
 }
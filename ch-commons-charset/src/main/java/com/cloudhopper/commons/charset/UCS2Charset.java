@@ -20,6 +20,8 @@ package com.cloudhopper.commons.charset;
  * #L%
  */
 
+import java.util.Arrays;
+
 /**
  * Charset for UCS2 (ISO-10646-UCS-2 in Java).
  *
@@ -52,4 +54,114 @@ public class UCS2Charset extends JavaCharset {
         }
     }
 
+    @Override
+    public byte[] encode(CharSequence str0) {
+        if (str0 == null) {
+            return null;
+        }
+        // every char (or replaced lone surrogate) is exactly 2 bytes and
+        // every surrogate pair is exactly 4 bytes
+        byte[] bytes = new byte[str0.length() * 2];
+        int len = encodeBigEndian(str0, bytes, 0, bytes.length);
+        return (len == bytes.length ? bytes : Arrays.copyOf(bytes, len));
+    }
+
+    @Override
+    public int encode(CharSequence str0, byte[] dst, int off, int len) {
+        checkBounds(dst.length, off, len);
+        if (str0 == null) {
+            return 0;
+        }
+        return encodeBigEndian(str0, dst, off, len);
+    }
+
+    // not overridable since subclasses (little endian) post-process the bytes
+    private int encodeBigEndian(CharSequence str0, byte[] dst, int off, int len) {
+        // bulk copy the leading run of ASCII chars
+        int n = AsciiUtil.encodeAsciiUCS2(str0, 0, dst, off, len);
+        int pos = off + (n * 2);
+        int end = off + len;
+        int strLen = str0.length();
+        for (int i = n; i < strLen; i++) {
+            char c = str0.charAt(i);
+            if (c >= '\uD800' && c <= '\uDFFF') {
+                // let the Java encoder validate surrogates
+                return (pos - off) + encodeWithEncoder(str0, i, dst, pos, end - pos);
+            }
+            if (pos + 2 > end) {
+                throw destinationTooSmall();
+            }
+            dst[pos++] = (byte)(c >> 8);
+            dst[pos++] = (byte)c;
+        }
+        return pos - off;
+    }
+
+    @Override
+    public String decode(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        char[] chars = new char[estimateDecodeCharLength(bytes)];
+        int len = decodeBigEndian(bytes, 0, bytes.length, chars, 0, chars.length);
+        return new String(chars, 0, len);
+    }
+
+    @Override
+    public void decode(byte[] bytes, int off, int len, StringBuilder buffer) {
+        if (bytes == null) {
+            return;
+        }
+        checkBounds(bytes.length, off, len);
+        buffer.ensureCapacity(buffer.length() + (len / 2));
+        int end = off + len;
+        int i = off;
+        for (; i + 1 < end; i += 2) {
+            char c = (char)(((bytes[i] & 0xFF) << 8) | (bytes[i+1] & 0xFF));
+            if (c >= '\uD800' && c <= '\uDFFF') {
+                break;
+            }
+            buffer.append(c);
+        }
+        if (i < end) {
+            // let the Java decoder handle surrogates or a trailing odd byte
+            super.decode(bytes, i, end - i, buffer);
+        }
+    }
+
+    @Override
+    public int decode(byte[] bytes, int off, int len, char[] dst, int dstOff, int dstLen) {
+        checkBounds(dst.length, dstOff, dstLen);
+        if (bytes == null) {
+            return 0;
+        }
+        checkBounds(bytes.length, off, len);
+        return decodeBigEndian(bytes, off, len, dst, dstOff, dstLen);
+    }
+
+    // not overridable since subclasses (little endian) pre-process the bytes
+    private int decodeBigEndian(byte[] bytes, int off, int len, char[] dst, int dstOff, int dstLen) {
+        // bulk copy the leading run of ASCII chars
+        int n = AsciiUtil.decodeAsciiUCS2(bytes, off, len, dst, dstOff, dstLen);
+        int end = off + len;
+        int pos = dstOff + n;
+        int dstEnd = dstOff + dstLen;
+        int i = off + (n * 2);
+        for (; i + 1 < end; i += 2) {
+            char c = (char)(((bytes[i] & 0xFF) << 8) | (bytes[i+1] & 0xFF));
+            if (c >= '\uD800' && c <= '\uDFFF') {
+                break;
+            }
+            if (pos >= dstEnd) {
+                throw destinationTooSmall();
+            }
+            dst[pos++] = c;
+        }
+        if (i < end) {
+            // let the Java decoder handle surrogates or a trailing odd byte
+            pos += super.decode(bytes, i, end - i, dst, pos, dstEnd - pos);
+        }
+        return pos - dstOff;
+    }
+
 }
@@ -44,6 +44,51 @@ public class UCS2LECharset extends UCS2Charset {
       return super.decode(getLittleEndianBytes(bytes));
     }
 
+    @Override
+    public int encode(CharSequence str0, byte[] dst, int off, int len) {
+      // encode as big endian, then swap each pair of bytes in-place
+      int count = super.encode(str0, dst, off, len);
+      int end = off + count - 1;
+      for (int i = off; i < end; i += 2) {
+        byte b = dst[i];
+        dst[i] = dst[i+1];
+        dst[i+1] = b;
+      }
+      return count;
+    }
+
+    @Override
+    public void decode(byte[] bytes, int off, int len, StringBuilder buffer) {
+      if (bytes == null) {
+          return;
+      }
+      checkBounds(bytes.length, off, len);
+      super.decode(getLittleEndianBytes(bytes, off, len), 0, len, buffer);
+    }
+
+    @Override
+    public int decode(byte[] bytes, int off, int len, char[] dst, int dstOff, int dstLen) {
+      if (bytes == null) {
+          return super.decode(bytes, off, len, dst, dstOff, dstLen);
+      }
+      checkBounds(bytes.length, off, len);
+      return super.decode(getLittleEndianBytes(bytes, off, len), 0, len, dst, dstOff, dstLen);
+    }
+
+    private byte[] getLittleEndianBytes(byte[] bytes, int off, int len) {
+      byte[] swapped = new byte[len];
+      int i = 0;
+      for (; i + 1 < len; i += 2) {
+        swapped[i] = bytes[off+i+1];
+        swapped[i+1] = bytes[off+i];
+      }
+      if (i < len) {
+        // trailing odd byte (malformed)
+        swapped[i] = bytes[off+i];
+      }
+      return swapped;
+    }
+
     private byte[] getLittleEndianBytes(byte [] bytes) {
       if (bytes == null) {
           return null;
@@ -49,6 +49,193 @@ public class UTF8Charset extends JavaCharset {
         return bytes.length;
     }
 
+    @Override
+    public int encode(CharSequence str0, byte[] dst, int off, int len) {
+        checkBounds(dst.length, off, len);
+        if (str0 == null) {
+            return 0;
+        }
+        int charLength = str0.length();
+        int n = AsciiUtil.encodeNarrow(str0, 0, dst, off, len, AsciiUtil.ASCII_CHAR_MASK);
+        if (n == charLength) {
+            return n;
+        }
+        // an ASCII char is never part of a surrogate pair so it's safe to
+        // pick up from here
+        return n + encodeMultiByte(str0, n, dst, off + n, len - n);
+    }
+
+    @Override
+    public void decode(byte[] bytes, StringBuilder buffer) {
+        if (bytes == null) {
+            return;
+        }
+        decode(bytes, 0, bytes.length, buffer);
+    }
+
+    @Override
+    public void decode(byte[] bytes, int off, int len, StringBuilder buffer) {
+        if (bytes == null) {
+            return;
+        }
+        checkBounds(bytes.length, off, len);
+        // UTF-8 never decodes to more chars than bytes (even when malformed)
+        char[] chars = new char[len];
+        int n = decode(bytes, off, len, chars, 0, len);
+        buffer.append(chars, 0, n);
+    }
+
+    @Override
+    public int decode(byte[] bytes, int off, int len, char[] dst, int dstOff, int dstLen) {
+        checkBounds(dst.length, dstOff, dstLen);
+        if (bytes == null) {
+            return 0;
+        }
+        checkBounds(bytes.length, off, len);
+        int n = AsciiUtil.decodeAscii(bytes, off, len, dst, dstOff, dstLen);
+        if (n == len) {
+            return n;
+        }
+        // an ASCII byte is never part of a multi-byte sequence so it's safe
+        // to pick up from here
+        return n + decodeMultiByte(bytes, off + n, len - n, dst, dstOff + n, dstLen - n);
+    }
+
+    /**
+     * Encodes the chars of the sequence (starting at an index) directly into
+     * the destination byte array.  Kept out of encode() so its ASCII fast
+     * path stays small.  Unpaired surrogates are replaced exactly like
+     * String.getBytes().
+     * @return The number of bytes written
+     */
+    static private int encodeMultiByte(CharSequence str0, int start, byte[] dst, int off, int len) {
+        int charLength = str0.length();
+        int pos = off;
+        int end = off + len;
+        for (int i = start; i < charLength; i++) {
+            char c = str0.charAt(i);
+            if (c < 0x80) {
+                if (pos >= end) {
+                    throw destinationTooSmall();
+                }
+                dst[pos++] = (byte)c;
+            } else if (c < 0x800) {
+                if (pos + 2 > end) {
+                    throw destinationTooSmall();
+                }
+                dst[pos++] = (byte)(0xC0 | (c >> 6));
+                dst[pos++] = (byte)(0x80 | (c & 0x3F));
+            } else if (c < Character.MIN_SURROGATE || c > Character.MAX_SURROGATE) {
+                if (pos + 3 > end) {
+                    throw destinationTooSmall();
+                }
+                dst[pos++] = (byte)(0xE0 | (c >> 12));
+                dst[pos++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+                dst[pos++] = (byte)(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i+1 < charLength && Character.isLowSurrogate(str0.charAt(i+1))) {
+                if (pos + 4 > end) {
+                    throw destinationTooSmall();
+                }
+                int cp = Character.toCodePoint(c, str0.charAt(++i));
+                dst[pos++] = (byte)(0xF0 | (cp >> 18));
+                dst[pos++] = (byte)(0x80 | ((cp >> 12) & 0x3F));
+                dst[pos++] = (byte)(0x80 | ((cp >> 6) & 0x3F));
+                dst[pos++] = (byte)(0x80 | (cp & 0x3F));
+            } else {
+                // an unpaired surrogate is replaced exactly like String.getBytes()
+                if (pos >= end) {
+                    throw destinationTooSmall();
+                }
+                dst[pos++] = (byte)'?';
+            }
+        }
+        return pos - off;
+    }
+
+    /**
+     * Decodes the range of bytes directly into the destination char array.
+     * Kept out of decode() so its ASCII fast path stays small.  Malformed
+     * bytes are replaced exactly like new String(bytes, charset).
+     * @return The number of chars written
+     */
+    private int decodeMultiByte(byte[] bytes, int off, int len, char[] dst, int dstOff, int dstLen) {
+        int i = off;
+        int end = off + len;
+        int pos = dstOff;
+        int dstEnd = dstOff + dstLen;
+        while (i < end) {
+            int b1 = bytes[i];
+            if (b1 >= 0) {
+                if (pos >= dstEnd) {
+                    throw destinationTooSmall();
+                }
+                dst[pos++] = (char)b1;
+                i++;
+            } else if ((b1 >> 5) == -2 && (b1 & 0x1E) != 0) {
+                // 2 bytes (0x80 to 0x7FF)
+                if (i + 1 >= end) {
+                    break;
+                }
+                int b2 = bytes[i+1];
+                if ((b2 & 0xC0) != 0x80) {
+                    break;
+                }
+                if (pos >= dstEnd) {
+                    throw destinationTooSmall();
+                }
+                dst[pos++] = (char)(((b1 & 0x1F) << 6) | (b2 & 0x3F));
+                i += 2;
+            } else if ((b1 >> 4) == -2) {
+                // 3 bytes (0x800 to 0xFFFF, except surrogates)
+                if (i + 2 >= end) {
+                    break;
+                }
+                int b2 = bytes[i+1];
+                int b3 = bytes[i+2];
+                if ((b2 & 0xC0) != 0x80 || (b3 & 0xC0) != 0x80) {
+                    break;
+                }
+                char c = (char)(((b1 & 0x0F) << 12) | ((b2 & 0x3F) << 6) | (b3 & 0x3F));
+                if (c < 0x800 || (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE)) {
+                    break;
+                }
+                if (pos >= dstEnd) {
+                    throw destinationTooSmall();
+                }
+                dst[pos++] = c;
+                i += 3;
+            } else if ((b1 >> 3) == -2) {
+                // 4 bytes (a surrogate pair)
+                if (i + 3 >= end) {
+                    break;
+                }
+                int b2 = bytes[i+1];
+                int b3 = bytes[i+2];
+                int b4 = bytes[i+3];
+                if ((b2 & 0xC0) != 0x80 || (b3 & 0xC0) != 0x80 || (b4 & 0xC0) != 0x80) {
+                    break;
+                }
+                int cp = ((b1 & 0x07) << 18) | ((b2 & 0x3F) << 12) | ((b3 & 0x3F) << 6) | (b4 & 0x3F);
+                if (cp < Character.MIN_SUPPLEMENTARY_CODE_POINT || cp > Character.MAX_CODE_POINT) {
+                    break;
+                }
+                if (pos + 2 > dstEnd) {
+                    throw destinationTooSmall();
+                }
+                pos += Character.toChars(cp, dst, pos);
+                i += 4;
+            } else {
+                break;
+            }
+        }
+        if (i < end) {
+            // everything before is well-formed, so the Java decoder replaces
+            // the malformed (or truncated) rest exactly like new String()
+            pos += decodeWithDecoder(bytes, i, end - i, dst, pos, dstEnd - pos);
+        }
+        return pos - dstOff;
+    }
+
     /**
      * Does not actually calculate a proper UTF-8 length, but rather a Modified
      * UTF-8 byte length.  It normally matches a real UTF-8 encoding but isn't
@@ -51,6 +51,9 @@ public class VFD2GSMCharset extends GSMCharset {
         { (byte)0x7D, (byte)0x1E }, // ñ
         { (byte)0x7E, (byte)0x7D }, // ü
     };
+    // constant time translation tables built from the override table above
+    static final byte[] GSM_TO_VFD2 = buildTranslationTable(VFD2_OVERRIDE_TABLE, GSM_COL, VFD2_COL);
+    static final byte[] VFD2_TO_GSM = buildTranslationTable(VFD2_OVERRIDE_TABLE, VFD2_COL, GSM_COL);
 
     @Override
     public byte[] encode(CharSequence str0) {
@@ -60,59 +63,78 @@ public class VFD2GSMCharset extends GSMCharset {
 
         //logger.debug(HexUtil.toHexString(gsmBytes));
 
-        // a little slow to run thru this again, but SMS are so tiny its not worth optimizing
-        MAIN_LOOP:
+        // only a single translation per byte so that we don't run into
+        // the bug where 0x00 -> 0x40 and then 0x40 -> 0xA1
         for (int i = 0; i < gsmBytes.length; i++) {
-            OVERRIDE_LOOP:
-            for (int j = 0; j < VFD2_OVERRIDE_TABLE.length; j++) {
-                // if we find a GSM byte value in our override GSM column
-                // we need to swap its value with a replacement value
-                if (gsmBytes[i] == VFD2_OVERRIDE_TABLE[j][GSM_COL]) {
-                    gsmBytes[i] = VFD2_OVERRIDE_TABLE[j][VFD2_COL];
-                    // need to immediately exit search so that we don't run into
-                    // the bug where 0x00 -> 0x40 and then 0x40 -> 0xA1
-                    break OVERRIDE_LOOP;
-                }
-            }
+            gsmBytes[i] = GSM_TO_VFD2[gsmBytes[i] & 0xFF];
         }
 
         return gsmBytes;
     }
 
     @Override
-    public void decode(byte[] bytes, StringBuilder buffer) {
-        int length = (bytes == null ? 0 : bytes.length);
-        
-        // we promise to not change any of the bytes -- an optimization is a
-        // lazy "copy" of the byte array in case we don't encounter any bytes
-        // that need to be converted
-        byte[] bytes2 = null;
+    public int encode(CharSequence str0, byte[] dst, int off, int len) {
+        // first, encode to GSM directly into the destination
+        int count = super.encode(str0, dst, off, len);
+
+        // second, translate the GSM bytes in-place (once per byte)
+        int end = off + count;
+        for (int i = off; i < end; i++) {
+            dst[i] = GSM_TO_VFD2[dst[i] & 0xFF];
+        }
 
-        // decoding "VFD2-GSM" to unicode is nearly same process as "GSM", but
-        // a few byte values need to be converted -- we'll first convert from VFD2-GSM to GSM
-        // a little slow to run thru this again, but SMS are so tiny its not worth optimizing
-        MAIN_LOOP:
-        for (int i = 0; i < length; i++) {
-            OVERRIDE_LOOP:
-            for (int j = 0; j < VFD2_OVERRIDE_TABLE.length; j++) {
-                // if we find a VFD2-GSM byte value in our VFD2 column
-                // we need to swap its value with a replacement value
-                if (bytes[i] == VFD2_OVERRIDE_TABLE[j][VFD2_COL]) {
-                    // we found a special byte value, check if we need to copy
-                    // the byte array now for a "lazy" copy
-                    if (bytes2 == null) {
-                        bytes2 = Arrays.copyOf(bytes, bytes.length);
-                    }
-                    bytes2[i] = VFD2_OVERRIDE_TABLE[j][GSM_COL];
-                    // need to immediately exit search so that we don't run into
-                    // the bug where 0x00 -> 0x40 and then 0x40 -> 0xA1
-                    break OVERRIDE_LOOP;
+        return count;
+    }
+
+    @Override
+    public void decode(byte[] bytes, int off, int len, StringBuilder buffer) {
+        if (bytes == null) {
+            return;
+        }
+        checkBounds(bytes.length, off, len);
+        byte[] gsmBytes = toVFD2GSM(bytes, off, len);
+        if (gsmBytes == null) {
+            super.decode(bytes, off, len, buffer);
+        } else {
+            super.decode(gsmBytes, 0, len, buffer);
+        }
+    }
+
+    @Override
+    public int decode(byte[] bytes, int off, int len, char[] dst, int dstOff, int dstLen) {
+        if (bytes == null) {
+            return super.decode(bytes, off, len, dst, dstOff, dstLen);
+        }
+        checkBounds(bytes.length, off, len);
+        byte[] gsmBytes = toVFD2GSM(bytes, off, len);
+        if (gsmBytes == null) {
+            return super.decode(bytes, off, len, dst, dstOff, dstLen);
+        } else {
+            return super.decode(gsmBytes, 0, len, dst, dstOff, dstLen);
+        }
+    }
+
+    /**
+     * Converts a range of VFD2-GSM bytes to GSM bytes.  We promise to not change
+     * any of the bytes -- an optimization is a lazy "copy" of the range in
+     * case we don't encounter any bytes that need to be converted.
+     * @return A new byte array of the converted range or null if no bytes
+     *      in the range needed to be converted
+     */
+    static private byte[] toVFD2GSM(byte[] bytes, int off, int len) {
+        byte[] bytes2 = null;
+        for (int i = 0; i < len; i++) {
+            byte b = VFD2_TO_GSM[bytes[off+i] & 0xFF];
+            if (b != bytes[off+i]) {
+                // we found a special byte value, check if we need to copy
+                // the byte array now for a "lazy" copy
+                if (bytes2 == null) {
+                    bytes2 = Arrays.copyOfRange(bytes, off, off+len);
                 }
+                bytes2[i] = b;
             }
         }
-
-        // delegate to parent (pick which byte array is correct)
-        super.decode((bytes2 == null ? bytes : bytes2), buffer);
+        return bytes2;
     }
 
 }
@@ -27,8 +27,12 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.util.Arrays;
 import java.util.Map;
+import java.util.Random;
 
 /**
  *
@@ -452,6 +456,123 @@ public class CharsetUtilTest {
         }
     }
 
+    // mix of ascii, extended gsm, latin-1, greek, euro, and a surrogate pair
+    private static final String MIXED_STRING = "Hello @ $ {world} [_] \u20AC\u00e9\u00fc\u0394 \u6025 \uD83D\uDE00 end";
+
+    @Test
+    public void encodeToByteArrayAllCharsets() throws Exception {
+        for (Map.Entry<String,Charset> entry : CharsetUtil.getCharsetMap().entrySet()) {
+            Charset charset = entry.getValue();
+            byte[] expectedBytes = charset.encode(MIXED_STRING);
+            byte[] dst = new byte[expectedBytes.length + 10];
+            Arrays.fill(dst, (byte)0x55);
+            int count = charset.encode(MIXED_STRING, dst, 3);
+            Assert.assertEquals("Charset " + entry.getKey() + " impl broken", expectedBytes.length, count);
+            Assert.assertArrayEquals("Charset " + entry.getKey() + " impl broken", expectedBytes, Arrays.copyOfRange(dst, 3, 3+count));
+            // bytes outside the range were not touched
+            Assert.assertEquals((byte)0x55, dst[2]);
+            Assert.assertEquals((byte)0x55, dst[3+count]);
+            // null encodes nothing
+            Assert.assertEquals(0, charset.encode(null, dst, 0));
+        }
+    }
+
+    @Test
+    public void encodeToByteArrayTooSmallAllCharsets() throws Exception {
+        for (Map.Entry<String,Charset> entry : CharsetUtil.getCharsetMap().entrySet()) {
+            Charset charset = entry.getValue();
+            byte[] expectedBytes = charset.encode(MIXED_STRING);
+            byte[] dst = new byte[expectedBytes.length + 10];
+            try {
+                charset.encode(MIXED_STRING, dst, 3, expectedBytes.length - 1);
+                Assert.fail("Charset " + entry.getKey() + " did not throw exception");
+            } catch (IndexOutOfBoundsException e) {
+                // correct behavior
+            }
+            // must not write past the length even if the array is larger
+            Assert.assertEquals((byte)0x00, dst[3+expectedBytes.length-1]);
+        }
+    }
+
+    @Test
+    public void decodeRangeAllCharsets() throws Exception {
+        for (Map.Entry<String,Charset> entry : CharsetUtil.getCharsetMap().entrySet()) {
+            Charset charset = entry.getValue();
+            byte[] bytes = charset.encode(MIXED_STRING);
+            String expectedString = charset.decode(bytes);
+            // embed the bytes in a larger "pdu" buffer
+            byte[] pdu = new byte[bytes.length + 7];
+            System.arraycopy(bytes, 0, pdu, 5, bytes.length);
+
+            StringBuilder sb = new StringBuilder("T");
+            charset.decode(pdu, 5, bytes.length, sb);
+            Assert.assertEquals("Charset " + entry.getKey() + " impl broken", "T"+expectedString, sb.toString());
+
+            char[] chars = new char[expectedString.length() + 4];
+            int count = charset.decode(pdu, 5, bytes.length, chars, 2, expectedString.length());
+            Assert.assertEquals("Charset " + entry.getKey() + " impl broken", expectedString, new String(chars, 2, count));
+
+            try {
+                charset.decode(pdu, 5, bytes.length, chars, 2, expectedString.length() - 1);
+                Assert.fail("Charset " + entry.getKey() + " did not throw exception");
+            } catch (IndexOutOfBoundsException e) {
+                // correct behavior
+            }
+
+            try {
+                charset.decode(pdu, 5, pdu.length, sb);
+                Assert.fail("Charset " + entry.getKey() + " did not throw exception");
+            } catch (IndexOutOfBoundsException e) {
+                // correct behavior
+            }
+        }
+    }
+
+    @Test
+    public void encodeDecodeBuffersAllCharsets() throws Exception {
+        for (Map.Entry<String,Charset> entry : CharsetUtil.getCharsetMap().entrySet()) {
+            Charset charset = entry.getValue();
+            byte[] expectedBytes = charset.encode(MIXED_STRING);
+            String expectedString = charset.decode(expectedBytes);
+
+            for (ByteBuffer bb : new ByteBuffer[] { ByteBuffer.allocate(200), ByteBuffer.allocateDirect(200) }) {
+                bb.put((byte)0x01);
+                int count = charset.encode(MIXED_STRING, bb);
+                Assert.assertEquals("Charset " + entry.getKey() + " impl broken", expectedBytes.length, count);
+                Assert.assertEquals(1+count, bb.position());
+                bb.flip();
+                bb.get();
+
+                for (CharBuffer cb : new CharBuffer[] { CharBuffer.allocate(200), ByteBuffer.allocateDirect(400).asCharBuffer() }) {
+                    ByteBuffer src = bb.duplicate();
+                    cb.put('T');
+                    Assert.assertEquals("Charset " + entry.getKey() + " impl broken", expectedString.length(), charset.decode(src, cb));
+                    Assert.assertEquals(0, src.remaining());
+                    cb.flip();
+                    Assert.assertEquals("Charset " + entry.getKey() + " impl broken", "T"+expectedString, cb.toString());
+                }
+
+                // not enough room in the char buffer
+                try {
+                    charset.decode(bb.duplicate(), CharBuffer.allocate(expectedString.length() - 1));
+                    Assert.fail("Charset " + entry.getKey() + " did not throw exception");
+                } catch (BufferOverflowException e) {
+                    // correct behavior
+                }
+            }
+
+            // not enough room in the byte buffer
+            ByteBuffer small = ByteBuffer.allocate(expectedBytes.length - 1);
+            try {
+                charset.encode(MIXED_STRING, small);
+                Assert.fail("Charset " + entry.getKey() + " did not throw exception");
+            } catch (BufferOverflowException e) {
+                // correct behavior
+            }
+            Assert.assertEquals(0, small.position());
+        }
+    }
+
     @Test
     public void normalize() throws Exception {
         String in = null;
@@ -488,4 +609,104 @@ public class CharsetUtilTest {
         Assert.assertEquals("\u6025", CharsetUtil.normalize(in, CharsetUtil.CHARSET_UTF_8));
         Assert.assertEquals("?", CharsetUtil.normalize(in, CharsetUtil.CHARSET_TMOBILENL_GSM));
     }
+
+    @Test
+    public void asciiFastPathsMatchJavaCharsets() throws Exception {
+        Charset[] charsets = new Charset[] { CharsetUtil.CHARSET_UTF_8, CharsetUtil.CHARSET_ISO_8859_1, CharsetUtil.CHARSET_UCS_2 };
+        String[] javaNames = new String[] { "UTF-8", "ISO-8859-1", "UTF-16BE" };
+        // a non-ASCII char (or surrogate pair) at every position before, in
+        // and after an 8 char step
+        String[] others = new String[] { "\u00e9", "\u00ff", "\u07ff", "\u0800", "\u6025", "\uffff", "\uD83D\uDE00", "\uD83D", "\uDE00" };
+        for (int c = 0; c < charsets.length; c++) {
+            Charset charset = charsets[c];
+            for (int len = 0; len < 26; len++) {
+                for (int pos = -1; pos < len; pos++) {
+                    for (String other : others) {
+                        StringBuilder buf = new StringBuilder();
+                        for (int i = 0; i < len; i++) {
+                            if (i == pos) {
+                                buf.append(other);
+                            } else {
+                                buf.append((char)('a' + (i % 26)));
+                            }
+                        }
+                        String s = buf.toString();
+                        String msg = javaNames[c] + " [" + s + "]";
+                        byte[] expected = s.getBytes(javaNames[c]);
+                        Assert.assertArrayEquals(msg, expected, charset.encode(s));
+
+                        byte[] dst = new byte[expected.length + 4];
+                        Assert.assertEquals(msg, expected.length, charset.encode(s, dst, 2, expected.length));
+                        Assert.assertArrayEquals(msg, expected, Arrays.copyOfRange(dst, 2, 2 + expected.length));
+
+                        String decoded = new String(expected, javaNames[c]);
+                        Assert.assertEquals(msg, decoded, charset.decode(expected));
+                        StringBuilder sb = new StringBuilder("x");
+                        charset.decode(expected, sb);
+                        Assert.assertEquals(msg, "x" + decoded, sb.toString());
+                        char[] chars = new char[decoded.length() + 2];
+                        Assert.assertEquals(msg, decoded.length(), charset.decode(expected, 0, expected.length, chars, 1, decoded.length()));
+                        Assert.assertEquals(msg, decoded, new String(chars, 1, decoded.length()));
+                    }
+                }
+            }
+        }
+
+        // a destination one byte too small for the multi-byte chars
+        String s = "abcdefghij\u00e9\u6025\uD83D\uDE00";
+        byte[] expected = s.getBytes("UTF-8");
+        try {
+            CharsetUtil.CHARSET_UTF_8.encode(s, new byte[expected.length], 0, expected.length - 1);
+            Assert.fail();
+        } catch (IndexOutOfBoundsException e) {
+            // correct behavior
+        }
+
+        // malformed UTF-8 after a run of ASCII
+        byte[] malformed = HexUtil.toByteArray("616263646566676869C0FF6A");
+        Assert.assertEquals(new String(malformed, "UTF-8"), CharsetUtil.CHARSET_UTF_8.decode(malformed));
+        // odd trailing byte after a run of UCS-2 ASCII
+        byte[] odd = HexUtil.toByteArray("006100620063006400650066006700680069FF");
+        Assert.assertEquals(new String(odd, "UTF-16BE"), CharsetUtil.CHARSET_UCS_2.decode(odd));
+    }
+
+    @Test
+    public void utf8MatchesJavaCharsetForRandomData() throws Exception {
+        Random random = new Random(1234);
+        // lead and continuation bytes of every length (valid and not)
+        byte[] pool = HexUtil.toByteArray("41617A7F80BF90A09FC0C1C2DFE0EDEFF0F4F5F8FF");
+        for (int n = 0; n < 20000; n++) {
+            byte[] bytes = new byte[random.nextInt(24)];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = pool[random.nextInt(pool.length)];
+            }
+            String expected = new String(bytes, "UTF-8");
+            String msg = "[" + HexUtil.toHexString(bytes) + "]";
+            char[] chars = new char[bytes.length + 2];
+            Assert.assertEquals(msg, expected.length(), CharsetUtil.CHARSET_UTF_8.decode(bytes, 0, bytes.length, chars, 1, bytes.length));
+            Assert.assertEquals(msg, expected, new String(chars, 1, expected.length()));
+            StringBuilder sb = new StringBuilder("x");
+            CharsetUtil.CHARSET_UTF_8.decode(bytes, sb);
+            Assert.assertEquals(msg, "x" + expected, sb.toString());
+
+            // and back again (which also covers every unpaired surrogate)
+            byte[] encoded = expected.getBytes("UTF-8");
+            byte[] dst = new byte[encoded.length];
+            Assert.assertEquals(msg, encoded.length, CharsetUtil.CHARSET_UTF_8.encode(expected, dst, 0, dst.length));
+            Assert.assertArrayEquals(msg, encoded, dst);
+        }
+
+        // every char (including surrogates) in between two ASCII chars
+        for (int c = 0; c <= 0xFFFF; c++) {
+            String s = "a" + (char)c + "b";
+            byte[] encoded = s.getBytes("UTF-8");
+            byte[] dst = new byte[encoded.length];
+            Assert.assertEquals("char " + c, encoded.length, CharsetUtil.CHARSET_UTF_8.encode(s, dst, 0, dst.length));
+            Assert.assertArrayEquals("char " + c, encoded, dst);
+            String decoded = new String(encoded, "UTF-8");
+            char[] chars = new char[encoded.length];
+            Assert.assertEquals("char " + c, decoded.length(), CharsetUtil.CHARSET_UTF_8.decode(encoded, 0, encoded.length, chars, 0, chars.length));
+            Assert.assertEquals("char " + c, decoded, new String(chars, 0, decoded.length()));
+        }
+    }
 }
@@ -0,0 +1,168 @@
+package com.cloudhopper.commons.charset;
+
+/*
+ * #%L
+ * ch-commons-charset
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+// third party imports
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Map;
+import org.junit.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tests the Java charsets are identical to the cloudhopper charsets.
+ */
+public class CloudhopperCharsetProviderTest {
+    private static final Logger logger = LoggerFactory.getLogger(CloudhopperCharsetProviderTest.class);
+
+    private static final String MIXED_STRING = "Hello @ $ {world} [_] \u20AC\u00E9\u00FC\u0394 \u6025 \uD83D\uDE00 end\u00A7";
+
+    // input stream returning a single byte per read (forces buffer boundaries everywhere)
+    static private class TrickleInputStream extends InputStream {
+        private final ByteArrayInputStream in;
+        public TrickleInputStream(byte[] bytes) {
+            this.in = new ByteArrayInputStream(bytes);
+        }
+        @Override
+        public int read() {
+            return in.read();
+        }
+        @Override
+        public int read(byte[] b, int off, int len) {
+            return in.read(b, off, (len > 0 ? 1 : 0));
+        }
+    }
+
+    @Test
+    public void forName() throws Exception {
+        // registered via META-INF/services
+        Assert.assertSame(CloudhopperCharsetProvider.NIO_CHARSET_PACKED_GSM, java.nio.charset.Charset.forName("PACKED-GSM"));
+        Assert.assertSame(CloudhopperCharsetProvider.NIO_CHARSET_PACKED_GSM, java.nio.charset.Charset.forName("gsm7"));
+        Assert.assertSame(CloudhopperCharsetProvider.NIO_CHARSET_GSM, java.nio.charset.Charset.forName("GSM"));
+        Assert.assertSame(CloudhopperCharsetProvider.NIO_CHARSET_TMOBILENL_GSM, java.nio.charset.Charset.forName("TMOBILE-NL-GSM"));
+        Assert.assertNull(CharsetUtil.mapToNioCharset("BAD-CHARSET"));
+        // every cloudhopper charset is available
+        for (String name : CharsetUtil.getCharsetMap().keySet()) {
+            Assert.assertNotNull("Charset " + name + " missing", CharsetUtil.mapToNioCharset(name));
+            Assert.assertTrue("Charset " + name + " missing", java.nio.charset.Charset.isSupported(name));
+        }
+    }
+
+    @Test
+    public void encodeDecodeAllCharsets() throws Exception {
+        for (Map.Entry<String,Charset> entry : CharsetUtil.getCharsetMap().entrySet()) {
+            java.nio.charset.Charset nio = CharsetUtil.mapToNioCharset(entry.getKey());
+            // try various lengths to test every possible packing boundary
+            for (int i = 0; i <= MIXED_STRING.length(); i++) {
+                String s = MIXED_STRING.substring(0, i);
+                byte[] expectedBytes = entry.getValue().encode(s);
+                ByteBuffer bb = nio.encode(s);
+                byte[] actualBytes = new byte[bb.remaining()];
+                bb.get(actualBytes);
+                Assert.assertArrayEquals("Charset " + entry.getKey() + " broken for [" + s + "]", expectedBytes, actualBytes);
+
+                String expectedString = entry.getValue().decode(expectedBytes);
+                Assert.assertEquals("Charset " + entry.getKey() + " broken for [" + s + "]", expectedString, nio.decode(ByteBuffer.wrap(expectedBytes)).toString());
+            }
+        }
+    }
+
+    @Test
+    public void streamAllCharsets() throws Exception {
+        for (Map.Entry<String,Charset> entry : CharsetUtil.getCharsetMap().entrySet()) {
+            java.nio.charset.Charset nio = CharsetUtil.mapToNioCharset(entry.getKey());
+            byte[] expectedBytes = entry.getValue().encode(MIXED_STRING);
+            String expectedString = entry.getValue().decode(expectedBytes);
+
+            // write one char at a time
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            Writer writer = new OutputStreamWriter(baos, nio);
+            for (int i = 0; i < MIXED_STRING.length(); i++) {
+                writer.write(MIXED_STRING.charAt(i));
+                writer.flush();
+            }
+            writer.close();
+            Assert.assertArrayEquals("Charset " + entry.getKey() + " broken", expectedBytes, baos.toByteArray());
+
+            // read one byte at a time
+            Reader reader = new InputStreamReader(new TrickleInputStream(expectedBytes), nio);
+            StringBuilder sb = new StringBuilder();
+            int c;
+            while ((c = reader.read()) >= 0) {
+                sb.append((char)c);
+            }
+            Assert.assertEquals("Charset " + entry.getKey() + " broken", expectedString, sb.toString());
+        }
+    }
+
+    @Test
+    public void packedTrailingAtSign() throws Exception {
+        java.nio.charset.Charset nio = CloudhopperCharsetProvider.NIO_CHARSET_PACKED_GSM;
+        // 8 septets with a trailing '@' is ambiguous with 7 septets and padding
+        String s = "1234567@";
+        byte[] bytes = CharsetUtil.CHARSET_PACKED_GSM.encode(s);
+        Assert.assertEquals(7, bytes.length);
+        Assert.assertEquals("1234567", nio.decode(ByteBuffer.wrap(bytes)).toString());
+        // but it is not ambiguous if more septets follow
+        s = "1234567@@@";
+        bytes = CharsetUtil.CHARSET_PACKED_GSM.encode(s);
+        Assert.assertEquals(s, nio.decode(ByteBuffer.wrap(bytes)).toString());
+        Assert.assertEquals(s, CharsetUtil.CHARSET_PACKED_GSM.decode(bytes));
+    }
+
+    @Test
+    public void canEncode() throws Exception {
+        Assert.assertTrue(CloudhopperCharsetProvider.NIO_CHARSET_GSM.newEncoder().canEncode("Hello {world} \u20AC"));
+        Assert.assertFalse(CloudhopperCharsetProvider.NIO_CHARSET_GSM.newEncoder().canEncode('\u6025'));
+        Assert.assertTrue(CloudhopperCharsetProvider.NIO_CHARSET_TMOBILENL_GSM.newEncoder().canEncode('\u20AC'));
+        Assert.assertFalse(CloudhopperCharsetProvider.NIO_CHARSET_TMOBILENL_GSM.newEncoder().canEncode('{'));
+    }
+
+    @Test
+    public void decodeWithSmallOutputBuffer() throws Exception {
+        // every char requires an escape in the middle of a packed stream
+        String s = "{}[]\u20AC~|^\\ab{}";
+        byte[] bytes = CharsetUtil.CHARSET_PACKED_GSM.encode(s);
+        java.nio.charset.CharsetDecoder decoder = CloudhopperCharsetProvider.NIO_CHARSET_PACKED_GSM.newDecoder();
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        StringBuilder sb = new StringBuilder();
+        CharBuffer out = CharBuffer.allocate(1);
+        while (true) {
+            java.nio.charset.CoderResult result = decoder.decode(in, out, true);
+            out.flip();
+            sb.append(out);
+            out.clear();
+            if (result.isUnderflow()) {
+                break;
+            }
+        }
+        decoder.flush(out);
+        Assert.assertEquals(s, sb.toString());
+    }
+}
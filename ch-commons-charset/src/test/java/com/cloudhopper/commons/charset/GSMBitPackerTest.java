@@ -22,6 +22,8 @@ package com.cloudhopper.commons.charset;
 
 // third party imports
 import com.cloudhopper.commons.util.HexUtil;
+import java.util.Arrays;
+import java.util.Random;
 import org.junit.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -110,4 +112,127 @@ private static final Logger logger = LoggerFactory.getLogger(GSMBitPackerTest.cl
         Assert.assertArrayEquals(unpacked, GSMBitPacker.unpack(packed));
         Assert.assertArrayEquals(packed, GSMBitPacker.pack(unpacked));
     }
+
+    // original septet-by-septet algorithm used as a reference
+    static private byte[] referencePack(byte[] unpacked) {
+        byte[] packed = new byte[unpacked.length - (unpacked.length / 8)];
+        int current = 0;
+        int bitpos = 0;
+        for (int i = 0; i < unpacked.length; i++) {
+            byte b = (byte)(unpacked[i] & 0x7F);
+            packed[current] |= (byte) ((b & 0xFF) << bitpos);
+            if (bitpos >= 2)
+                packed[++current] |= (b >> (8 - bitpos));
+            bitpos = (bitpos + 7) % 8;
+            if (bitpos == 0)
+                current++;
+        }
+        return packed;
+    }
+
+    @Test
+    public void packMatchesReferenceForAllLengths() throws Exception {
+        Random random = new Random(1234);
+        for (int len = 0; len < 200; len++) {
+            byte[] unpacked = new byte[len];
+            random.nextBytes(unpacked);
+            byte[] expected = referencePack(unpacked);
+            Assert.assertArrayEquals("len=" + len, expected, GSMBitPacker.pack(unpacked));
+
+            // into the middle of a larger buffer full of garbage
+            byte[] dst = new byte[expected.length + 6];
+            Arrays.fill(dst, (byte)0xAA);
+            Assert.assertEquals(expected.length, GSMBitPacker.pack(unpacked, 0, len, dst, 3, 0));
+            Assert.assertArrayEquals(expected, Arrays.copyOfRange(dst, 3, 3 + expected.length));
+            Assert.assertEquals((byte)0xAA, dst[2]);
+            Assert.assertEquals((byte)0xAA, dst[3 + expected.length]);
+
+            // in-place
+            byte[] inplace = Arrays.copyOf(unpacked, len);
+            Assert.assertEquals(expected.length, GSMBitPacker.pack(inplace, 0, len, inplace, 0, 0));
+            Assert.assertArrayEquals(expected, Arrays.copyOf(inplace, expected.length));
+
+            // and back again (values are only 7-bit after the round trip)
+            byte[] septets = new byte[len];
+            for (int i = 0; i < len; i++) {
+                septets[i] = (byte)(unpacked[i] & 0x7F);
+            }
+            byte[] unpackedAgain = GSMBitPacker.unpack(expected);
+            if (len % 8 == 0 && len > 0 && septets[len-1] == 0) {
+                // trailing '@' ambiguity
+                Assert.assertArrayEquals(Arrays.copyOf(septets, len-1), unpackedAgain);
+            } else {
+                Assert.assertArrayEquals("len=" + len, septets, unpackedAgain);
+            }
+        }
+    }
+
+    @Test
+    public void packAndUnpackWithSeptetOffset() throws Exception {
+        Random random = new Random(5678);
+        for (int udhLen = 1; udhLen < 12; udhLen++) {
+            int septetOffset = ((udhLen * 8) + 6) / 7;
+            for (int len = 1; len < 40; len++) {
+                byte[] text = new byte[len];
+                for (int i = 0; i < len; i++) {
+                    // avoid a trailing '@' and its ambiguity
+                    text[i] = (byte)(1 + random.nextInt(127));
+                }
+                byte[] udh = new byte[udhLen];
+                random.nextBytes(udh);
+
+                byte[] dst = new byte[200];
+                System.arraycopy(udh, 0, dst, 0, udhLen);
+                // garbage past the fill bits is overwritten
+                Arrays.fill(dst, udhLen + 1, dst.length, (byte)0xFF);
+                int userDataLen = GSMBitPacker.pack(text, 0, len, dst, 0, septetOffset);
+                Assert.assertEquals((((septetOffset + len) * 7) + 7) / 8, userDataLen);
+
+                // the UDH is untouched and any fill bits are zero
+                Assert.assertArrayEquals(udh, Arrays.copyOf(dst, udhLen));
+                int fillBits = (septetOffset * 7) - (udhLen * 8);
+                if (fillBits > 0) {
+                    Assert.assertEquals(0, (dst[udhLen] & 0xFF) & ((1 << fillBits) - 1));
+                }
+
+                // identical to packing zero septets followed by the text
+                byte[] padded = new byte[septetOffset + len];
+                System.arraycopy(text, 0, padded, septetOffset, len);
+                byte[] expected = GSMBitPacker.pack(padded);
+                Assert.assertArrayEquals(Arrays.copyOfRange(expected, udhLen, userDataLen), Arrays.copyOfRange(dst, udhLen, userDataLen));
+
+                byte[] unpacked = new byte[len];
+                Assert.assertEquals(len, GSMBitPacker.unpack(dst, 0, userDataLen, unpacked, 0, septetOffset));
+                Assert.assertArrayEquals(text, unpacked);
+
+                // packing in two calls is identical to packing in one
+                int split = len / 3;
+                byte[] twice = new byte[200];
+                System.arraycopy(udh, 0, twice, 0, udhLen);
+                GSMBitPacker.pack(text, 0, split, twice, 0, septetOffset);
+                Assert.assertEquals(userDataLen, GSMBitPacker.pack(text, split, len - split, twice, 0, septetOffset + split));
+                Assert.assertArrayEquals(Arrays.copyOf(dst, userDataLen), Arrays.copyOf(twice, userDataLen));
+            }
+        }
+    }
+
+    @Test
+    public void packAndUnpackDestinationTooSmall() throws Exception {
+        byte[] unpacked = "JoeyBlue".getBytes("ISO-8859-1");
+        try {
+            GSMBitPacker.pack(unpacked, 0, unpacked.length, new byte[6], 0, 0);
+            Assert.fail();
+        } catch (IndexOutOfBoundsException e) {
+            // correct behavior
+        }
+        byte[] packed = HexUtil.toByteArray("CA77392F64D7CB");
+        try {
+            GSMBitPacker.unpack(packed, 0, packed.length, new byte[7], 0, 0);
+            Assert.fail();
+        } catch (IndexOutOfBoundsException e) {
+            // correct behavior
+        }
+        // skipping more septets than exist is nothing
+        Assert.assertEquals(0, GSMBitPacker.unpack(packed, 0, packed.length, new byte[0], 0, 9));
+    }
 }
@@ -72,4 +72,42 @@ public class GSMCharsetTest {
         
         Assert.assertEquals(true, GSMCharset.canRepresent(s.toString()));
     }
+
+    // reference implementation of the original linear search encoder
+    static private byte[] linearSearchEncode(char c) {
+        for (int search = 0; search < GSMCharset.CHAR_TABLE.length; search++) {
+            if (search == GSMCharset.EXTENDED_ESCAPE) {
+                continue;
+            }
+            if (c == GSMCharset.CHAR_TABLE[search]) {
+                return new byte[] { (byte)search };
+            }
+            if (c == GSMCharset.EXT_CHAR_TABLE[search]) {
+                return new byte[] { (byte)GSMCharset.EXTENDED_ESCAPE, (byte)search };
+            }
+        }
+        return new byte[] { 0x3f };
+    }
+
+    @Test
+    public void encodeMatchesLinearSearchForEveryChar() throws Exception {
+        GSMCharset charset = new GSMCharset();
+        for (int i = 0; i <= Character.MAX_VALUE; i++) {
+            char c = (char)i;
+            Assert.assertArrayEquals("char 0x" + Integer.toHexString(i), linearSearchEncode(c), charset.encode(String.valueOf(c)));
+        }
+    }
+
+    @Test
+    public void encodeManyExtendedChars() throws Exception {
+        // every char requires an escape -- forces the encode buffer to grow
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            s.append("{}[]\u20ac");
+        }
+        GSMCharset charset = new GSMCharset();
+        byte[] encoded = charset.encode(s);
+        Assert.assertEquals(s.length()*2, encoded.length);
+        Assert.assertEquals(s.toString(), charset.decode(encoded));
+    }
 }
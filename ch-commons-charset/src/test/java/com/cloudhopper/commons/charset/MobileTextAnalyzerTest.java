@@ -0,0 +1,229 @@
+package com.cloudhopper.commons.charset;
+
+/*
+ * #%L
+ * ch-commons-charset
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+// third party imports
+import java.util.Arrays;
+import org.junit.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class MobileTextAnalyzerTest {
+    private static final Logger logger = LoggerFactory.getLogger(MobileTextAnalyzerTest.class);
+
+    static private String repeat(String s, int count) {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            buf.append(s);
+        }
+        return buf.toString();
+    }
+
+    @Test
+    public void gsmRepresentableMatchesCanRepresent() throws Exception {
+        MobileTextAnalyzer analyzer = new MobileTextAnalyzer(false);
+        for (int i = 0; i <= 0xFFFF; i++) {
+            String s = String.valueOf((char)i);
+            MobileTextAnalysis analysis = analyzer.analyze(s);
+            if (GSMCharset.canRepresent(s)) {
+                Assert.assertEquals("char " + i, MobileTextAnalysis.Encoding.GSM, analysis.getEncoding());
+            } else {
+                Assert.assertEquals("char " + i, MobileTextAnalysis.Encoding.UCS_2, analysis.getEncoding());
+            }
+        }
+    }
+
+    @Test
+    public void gsmEncodedLengthMatchesGSMCharset() throws Exception {
+        MobileTextAnalyzer analyzer = new MobileTextAnalyzer(false);
+        GSMCharset charset = new GSMCharset();
+        for (int i = 0; i <= 0xFFFF; i++) {
+            String s = String.valueOf((char)i);
+            if (!GSMCharset.canRepresent(s)) {
+                continue;
+            }
+            Assert.assertEquals("char " + i, charset.encode(s).length, analyzer.analyze(s).getEncodedLength());
+        }
+    }
+
+    @Test
+    public void emptyAndNull() throws Exception {
+        MobileTextAnalysis analysis = MobileTextUtil.analyze(null);
+        Assert.assertEquals(MobileTextAnalysis.Encoding.GSM, analysis.getEncoding());
+        Assert.assertEquals(0, analysis.getEncodedLength());
+        Assert.assertEquals(1, analysis.getSegmentCount());
+        Assert.assertEquals(-1, analysis.getBytesWritten());
+
+        analysis = new MobileTextAnalyzer().analyze("", new byte[0], 0, 0);
+        Assert.assertEquals(0, analysis.getEncodedLength());
+        Assert.assertEquals(1, analysis.getSegmentCountWithoutUdh());
+        Assert.assertEquals(0, analysis.getBytesWritten());
+    }
+
+    @Test
+    public void gsmSegments() throws Exception {
+        MobileTextAnalysis analysis = MobileTextUtil.analyze(repeat("a", 160));
+        Assert.assertEquals(MobileTextAnalysis.Encoding.GSM, analysis.getEncoding());
+        Assert.assertEquals(160, analysis.getEncodedLength());
+        Assert.assertEquals(1, analysis.getSegmentCount());
+        Assert.assertEquals(1, analysis.getSegmentCountWithoutUdh());
+        Assert.assertEquals(CharsetUtil.CHARSET_GSM, analysis.getCharset());
+
+        analysis = MobileTextUtil.analyze(repeat("a", 161));
+        Assert.assertEquals(2, analysis.getSegmentCount());
+        Assert.assertEquals(2, analysis.getSegmentCountWithoutUdh());
+
+        Assert.assertEquals(2, MobileTextUtil.analyze(repeat("a", 306)).getSegmentCount());
+        Assert.assertEquals(3, MobileTextUtil.analyze(repeat("a", 307)).getSegmentCount());
+        Assert.assertEquals(2, MobileTextUtil.analyze(repeat("a", 320)).getSegmentCountWithoutUdh());
+
+        // escape sequence can't be split across the first and second segment
+        analysis = MobileTextUtil.analyze(repeat("a", 152) + "{" + repeat("a", 152));
+        Assert.assertEquals(306, analysis.getEncodedLength());
+        Assert.assertEquals(3, analysis.getSegmentCount());
+    }
+
+    @Test
+    public void ucs2Segments() throws Exception {
+        MobileTextAnalysis analysis = MobileTextUtil.analyze(repeat("\u4e00", 70));
+        Assert.assertEquals(MobileTextAnalysis.Encoding.UCS_2, analysis.getEncoding());
+        Assert.assertEquals(140, analysis.getEncodedLength());
+        Assert.assertEquals(1, analysis.getSegmentCount());
+
+        Assert.assertEquals(2, MobileTextUtil.analyze(repeat("\u4e00", 71)).getSegmentCount());
+        Assert.assertEquals(2, MobileTextUtil.analyze(repeat("\u4e00", 134)).getSegmentCount());
+        Assert.assertEquals(3, MobileTextUtil.analyze(repeat("\u4e00", 135)).getSegmentCount());
+
+        // surrogate pair can't be split across the first and second segment
+        String pair = "\ud83d\ude00";
+        Assert.assertEquals(2, MobileTextUtil.analyze(repeat("\u4e00", 66) + pair + repeat("\u4e00", 65)).getSegmentCount());
+        analysis = MobileTextUtil.analyze(repeat("\u4e00", 66) + pair + repeat("\u4e00", 66));
+        Assert.assertEquals(268, analysis.getEncodedLength());
+        Assert.assertEquals(3, analysis.getSegmentCount());
+    }
+
+    @Test
+    public void latin1OnlyWhenCheaper() throws Exception {
+        // extended chars are cheaper in latin-1 if it saves a segment
+        MobileTextAnalysis analysis = MobileTextUtil.analyze(repeat("{", 130));
+        Assert.assertEquals(MobileTextAnalysis.Encoding.ISO_8859_1, analysis.getEncoding());
+        Assert.assertEquals(130, analysis.getEncodedLength());
+        Assert.assertEquals(1, analysis.getSegmentCount());
+        // but not if it's a tie
+        Assert.assertEquals(MobileTextAnalysis.Encoding.GSM, MobileTextUtil.analyze(repeat("{", 10)).getEncoding());
+        // or if disabled
+        Assert.assertEquals(MobileTextAnalysis.Encoding.GSM, new MobileTextAnalyzer(false).analyze(repeat("{", 130)).getEncoding());
+        // latin-1 only char
+        Assert.assertEquals(MobileTextAnalysis.Encoding.ISO_8859_1, MobileTextUtil.analyze("caf\u00ea").getEncoding());
+    }
+
+    @Test
+    public void nationalLanguages() throws Exception {
+        MobileTextAnalysis analysis = MobileTextUtil.analyze("\u015fi\u015f");
+        Assert.assertEquals(MobileTextAnalysis.Encoding.GSM_NATIONAL_LANGUAGE, analysis.getEncoding());
+        Assert.assertEquals(GSMNationalLanguage.TURKISH, analysis.getNationalLanguage());
+        Assert.assertTrue(analysis.isSingleShift());
+        Assert.assertFalse(analysis.isLockingShift());
+        Assert.assertEquals(5, analysis.getEncodedLength());
+        Assert.assertEquals(4, analysis.getShiftUserDataHeaderLength());
+        Assert.assertNull(analysis.getCharset());
+
+        // locking shift saves the escapes
+        analysis = MobileTextUtil.analyze(repeat("\u015f", 100));
+        Assert.assertEquals(GSMNationalLanguage.TURKISH, analysis.getNationalLanguage());
+        Assert.assertTrue(analysis.isLockingShift());
+        Assert.assertFalse(analysis.isSingleShift());
+        Assert.assertEquals(100, analysis.getEncodedLength());
+        Assert.assertEquals(1, analysis.getSegmentCount());
+
+        // shift elements reduce the capacity of each segment
+        analysis = MobileTextUtil.analyze("\u015f" + repeat("a", 154));
+        Assert.assertEquals(1, analysis.getSegmentCount());
+        analysis = MobileTextUtil.analyze("\u015f" + repeat("a", 155));
+        Assert.assertEquals(2, analysis.getSegmentCount());
+        Assert.assertEquals(2, analysis.getSegmentCountWithoutUdh());
+
+        // spanish is preferred over latin-1 for the same number of segments
+        analysis = MobileTextUtil.analyze("\u00e1rbol");
+        Assert.assertEquals(GSMNationalLanguage.SPANISH, analysis.getNationalLanguage());
+        Assert.assertEquals(MobileTextAnalysis.Encoding.ISO_8859_1, new MobileTextAnalyzer(true).analyze("\u00e1rbol").getEncoding());
+        Assert.assertEquals(MobileTextAnalysis.Encoding.UCS_2, new MobileTextAnalyzer(false).analyze("\u00e1rbol").getEncoding());
+    }
+
+    @Test
+    public void encodeMatchesCharsets() throws Exception {
+        MobileTextAnalyzer analyzer = new MobileTextAnalyzer();
+        String[] strings = new String[] {
+            "Hello World",
+            "Hello {World} \u20ac",
+            "\u00c5 caf\u00ea",
+            "abc\u4e00",
+            "\u20ac\u0394 \u00e9 \ud83d\ude00 x",
+            "lone \uD83D surrogate \uDE00",
+            repeat("{", 130),
+            repeat("a", 500) + "\u4e00",
+        };
+        for (String s : strings) {
+            byte[] dst = new byte[2000];
+            Arrays.fill(dst, (byte)0x55);
+            MobileTextAnalysis analysis = analyzer.analyze(s, dst, 5, 1500);
+            byte[] expected = analysis.getCharset().encode(s);
+            Assert.assertEquals(s, expected.length, analysis.getEncodedLength());
+            Assert.assertEquals(s, expected.length, analysis.getBytesWritten());
+            Assert.assertArrayEquals(s, expected, Arrays.copyOfRange(dst, 5, 5 + expected.length));
+            // nothing outside the range was touched
+            Assert.assertEquals((byte)0x55, dst[4]);
+            Assert.assertEquals((byte)0x55, dst[1505]);
+        }
+    }
+
+    @Test
+    public void encodeNationalLanguage() throws Exception {
+        byte[] dst = new byte[10];
+        // single shift: escape then the septet
+        MobileTextAnalysis analysis = new MobileTextAnalyzer().analyze("a\u015f", dst, 0, dst.length);
+        Assert.assertEquals(3, analysis.getBytesWritten());
+        Assert.assertArrayEquals(new byte[] { 0x61, 0x1B, 0x73 }, Arrays.copyOf(dst, 3));
+
+        // locking shift only: single septet
+        analysis = new MobileTextAnalyzer(false, GSMNationalLanguage.TURKISH).analyze(repeat("\u015f", 100), new byte[100], 0, 100);
+        Assert.assertTrue(analysis.isLockingShift());
+        Assert.assertEquals(100, analysis.getBytesWritten());
+    }
+
+    @Test
+    public void encodeBufferTooSmall() throws Exception {
+        byte[] dst = new byte[10];
+        Arrays.fill(dst, (byte)0x55);
+        MobileTextAnalysis analysis = new MobileTextAnalyzer().analyze("Hello World", dst, 2, 5);
+        Assert.assertEquals(11, analysis.getEncodedLength());
+        Assert.assertEquals(-1, analysis.getBytesWritten());
+        Assert.assertEquals((byte)0x55, dst[1]);
+        Assert.assertEquals((byte)0x55, dst[7]);
+
+        try {
+            new MobileTextAnalyzer().analyze("Hello World", dst, 8, 5);
+            Assert.fail();
+        } catch (IndexOutOfBoundsException e) {
+            // correct behavior
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.cloudhopper.commons.charset.demo;
+
+/*
+ * #%L
+ * ch-commons-charset
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.cloudhopper.commons.charset.Charset;
+import com.cloudhopper.commons.charset.CharsetUtil;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Benchmark for the ASCII fast paths in the UTF-8, ISO-8859-1 and UCS-2
+ * charsets.  Each iteration encodes to a new byte array, encodes into an
+ * existing buffer, decodes to a String and decodes into a StringBuilder.
+ * Compares them against the Java charset methods the charsets originally
+ * delegated to for ASCII, Latin-1 and emoji-heavy text.
+ */
+public class AsciiFastPathBenchmarkMain {
+    private static final Logger logger = LoggerFactory.getLogger(AsciiFastPathBenchmarkMain.class);
+
+    static public void main(String[] args) throws Exception {
+        String asciiString = "Your verification code is 123456. It expires in 10 minutes. Reply STOP to opt-out or HELP for help. Msg&data rates may apply.";
+        String latin1String = "Votre code de v\u00e9rification est 123456. Il expire dans 10 minutes. R\u00e9pondez STOP pour vous d\u00e9sabonner. \u00c0 bient\u00f4t!";
+        String emojiString = "Happy birthday \uD83C\uDF89\uD83C\uDF82\uD83C\uDF88 see you soon \uD83D\uDE00\uD83D\uDE00 \uD83D\uDC4D\uD83D\uDC4D\uD83D\uDC4D love \u2764\ufe0f\uD83D\uDE18";
+
+        Charset[] charsets = new Charset[] { CharsetUtil.CHARSET_UTF_8, CharsetUtil.CHARSET_ISO_8859_1, CharsetUtil.CHARSET_UCS_2 };
+        String[] javaNames = new String[] { "UTF-8", "ISO-8859-1", "UTF-16BE" };
+        String[] names = new String[] { "ascii", "latin-1", "emoji" };
+        String[] strings = new String[] { asciiString, latin1String, emojiString };
+
+        int count = 2000000;
+
+        for (int c = 0; c < charsets.length; c++) {
+            // optionally only run a single charset (e.g. UTF-8) per JVM
+            if (args.length > 0 && !args[0].equalsIgnoreCase(javaNames[c])) {
+                continue;
+            }
+            for (int s = 0; s < strings.length; s++) {
+                java.nio.charset.Charset javaCharset = java.nio.charset.Charset.forName(javaNames[c]);
+                String label = javaNames[c] + " " + names[s];
+                String str = strings[s];
+                byte[] bytes = str.getBytes(javaCharset);
+
+                byte[] dst = new byte[bytes.length];
+                StringBuilder sb = new StringBuilder(str.length());
+
+                // warm up both methods
+                for (int i = 0; i < 200000; i++) {
+                    runJava(javaCharset, str, bytes, dst, sb);
+                    runCharset(charsets[c], str, bytes, dst, sb);
+                }
+
+                long start = System.currentTimeMillis();
+                for (int i = 0; i < count; i++) {
+                    runJava(javaCharset, str, bytes, dst, sb);
+                }
+                long stop = System.currentTimeMillis();
+                System.out.println("[" + label + "] Java charset took " + (stop-start) + " ms to run " + count + " times");
+
+                start = System.currentTimeMillis();
+                for (int i = 0; i < count; i++) {
+                    runCharset(charsets[c], str, bytes, dst, sb);
+                }
+                stop = System.currentTimeMillis();
+                System.out.println("[" + label + "] Charset took " + (stop-start) + " ms to run " + count + " times");
+            }
+        }
+    }
+
+    /**
+     * The methods the charsets originally delegated to: encoding into a
+     * buffer and decoding into a StringBuilder used a new coder each time.
+     */
+    static private void runJava(java.nio.charset.Charset javaCharset, String str, byte[] bytes, byte[] dst, StringBuilder sb) {
+        str.getBytes(javaCharset);
+        javaCharset.newEncoder().encode(CharBuffer.wrap(str), ByteBuffer.wrap(dst), true);
+        new String(bytes, javaCharset);
+        sb.setLength(0);
+        sb.append(javaCharset.decode(ByteBuffer.wrap(bytes)));
+    }
+
+    static private void runCharset(Charset charset, String str, byte[] bytes, byte[] dst, StringBuilder sb) {
+        charset.encode(str);
+        charset.encode(str, dst, 0);
+        charset.decode(bytes);
+        sb.setLength(0);
+        charset.decode(bytes, sb);
+    }
+
+}
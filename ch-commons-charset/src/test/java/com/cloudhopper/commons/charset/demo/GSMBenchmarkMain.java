@@ -21,11 +21,15 @@ package com.cloudhopper.commons.charset.demo;
  */
 
 import com.cloudhopper.commons.charset.GSMCharset;
+import com.cloudhopper.commons.util.FastByteArrayOutputStream;
+import java.util.Arrays;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Benchmark for GSM canRepresent().
+ * Benchmark for GSM canRepresent() and encode().  The encode() benchmark
+ * compares the reverse lookup tables against the linear table search the
+ * charset originally used.
  * 
  * @author joelauer
  */
@@ -61,7 +65,70 @@ public class GSMBenchmarkMain {
 
         long encodeStop = System.currentTimeMillis();
 
-        System.out.println("took " + (encodeStop-encodeStart) + " ms to run " + count + " times");
+        System.out.println("canRepresent took " + (encodeStop-encodeStart) + " ms to run " + count + " times");
+
+        // a typical MT message: mostly ascii with a couple extended chars
+        String smsString = "Your code is 123456. Reply STOP to opt-out {help} costs 1\u20ac @ \u00e9t\u00e9 [info]";
+        GSMCharset charset = new GSMCharset();
+
+        for (String str : new String[] { gsmString, smsString }) {
+            // make sure both methods produce identical bytes
+            if (!Arrays.equals(linearSearchEncode(str), charset.encode(str))) {
+                throw new Exception("Linear search and reverse lookup encoding did not match for: " + str);
+            }
+
+            // warm up both methods
+            for (int i = 0; i < 100000; i++) {
+                linearSearchEncode(str);
+                charset.encode(str);
+            }
+
+            long linearStart = System.currentTimeMillis();
+            for (int i = 0; i < count; i++) {
+                linearSearchEncode(str);
+            }
+            long linearStop = System.currentTimeMillis();
+
+            long lookupStart = System.currentTimeMillis();
+            for (int i = 0; i < count; i++) {
+                charset.encode(str);
+            }
+            long lookupStop = System.currentTimeMillis();
+
+            System.out.println("encode [" + str.length() + " chars] linear search took " + (linearStop-linearStart) + " ms to run " + count + " times");
+            System.out.println("encode [" + str.length() + " chars] reverse lookup took " + (lookupStop-lookupStart) + " ms to run " + count + " times");
+        }
+    }
+
+    /**
+     * The original GSMCharset.encode() method that searched the char tables.
+     */
+    static private byte[] linearSearchEncode(CharSequence str0) throws Exception {
+        FastByteArrayOutputStream baos = new FastByteArrayOutputStream(str0.length() + 10);
+        int len = str0.length();
+        for (int i = 0; i < len; i++) {
+            int search = 0;
+            char c = str0.charAt(i);
+            for (; search < GSMCharset.CHAR_TABLE.length; search++) {
+                if (search == GSMCharset.EXTENDED_ESCAPE) {
+                    continue;
+                }
+                if (c == GSMCharset.CHAR_TABLE[search]) {
+                    baos.write(search);
+                    break;
+                }
+                if (c == GSMCharset.EXT_CHAR_TABLE[search]) {
+                    baos.write(GSMCharset.EXTENDED_ESCAPE);
+                    baos.write(search);
+                    break;
+                }
+            }
+            if (search == GSMCharset.CHAR_TABLE.length) {
+                // A '?' character.
+                baos.write(0x3f);
+            }
+        }
+        return baos.toByteArray();
     }
     
 }
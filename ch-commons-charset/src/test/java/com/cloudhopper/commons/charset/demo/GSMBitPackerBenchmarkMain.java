@@ -0,0 +1,99 @@
+package com.cloudhopper.commons.charset.demo;
+
+/*
+ * #%L
+ * ch-commons-charset
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.cloudhopper.commons.charset.GSMBitPacker;
+import java.util.Arrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Benchmark for GSMBitPacker pack() and unpack().  Compares the word-at-a-time
+ * packing into a reusable buffer against the septet-by-septet algorithm the
+ * packer originally used.
+ */
+public class GSMBitPackerBenchmarkMain {
+    private static final Logger logger = LoggerFactory.getLogger(GSMBitPackerBenchmarkMain.class);
+
+    static public void main(String[] args) throws Exception {
+        // a full 160 septet message
+        byte[] unpacked = new byte[160];
+        for (int i = 0; i < unpacked.length; i++) {
+            unpacked[i] = (byte)(0x20 + (i % 0x5F));
+        }
+
+        byte[] packed = new byte[140];
+        byte[] unpackedAgain = new byte[160];
+        if (!Arrays.equals(septetPack(unpacked), GSMBitPacker.pack(unpacked))) {
+            throw new Exception("Septet and word-at-a-time packing did not match");
+        }
+
+        int count = 5000000;
+
+        // warm up all methods
+        for (int i = 0; i < 200000; i++) {
+            septetPack(unpacked);
+            GSMBitPacker.pack(unpacked, 0, unpacked.length, packed, 0, 0);
+            GSMBitPacker.unpack(packed, 0, packed.length, unpackedAgain, 0, 0);
+        }
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            septetPack(unpacked);
+        }
+        long stop = System.currentTimeMillis();
+        System.out.println("pack [septet-by-septet] took " + (stop-start) + " ms to run " + count + " times");
+
+        start = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            GSMBitPacker.pack(unpacked, 0, unpacked.length, packed, 0, 0);
+        }
+        stop = System.currentTimeMillis();
+        System.out.println("pack [word-at-a-time] took " + (stop-start) + " ms to run " + count + " times");
+
+        start = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            GSMBitPacker.unpack(packed, 0, packed.length, unpackedAgain, 0, 0);
+        }
+        stop = System.currentTimeMillis();
+        System.out.println("unpack [word-at-a-time] took " + (stop-start) + " ms to run " + count + " times");
+    }
+
+    /**
+     * The original GSMBitPacker.pack() method.
+     */
+    static private byte[] septetPack(byte[] unpacked) {
+        byte[] packed = new byte[unpacked.length - (unpacked.length / 8)];
+        int current = 0;
+        int bitpos = 0;
+        for (int i = 0; i < unpacked.length; i++) {
+            byte b = (byte)(unpacked[i] & 0x7F);
+            packed[current] |= (byte) ((b & 0xFF) << bitpos);
+            if (bitpos >= 2)
+                packed[++current] |= (b >> (8 - bitpos));
+            bitpos = (bitpos + 7) % 8;
+            if (bitpos == 0)
+                current++;
+        }
+        return packed;
+    }
+
+}
@@ -24,7 +24,9 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,6 +42,11 @@ public class E164CountryCodeUtil {
     // dynamic max prefix length in our list of prefixes -- specifically for
     // speeding up lookups within the hash
     private static int maxPrefixLength;
+    // all country codes indexed by prefix length and numeric value of prefix
+    // (a perfect hash of every possible prefix) so lookups never allocate
+    private static E164CountryCode[] byNumericPrefix;
+    // index of the first prefix of each length in byNumericPrefix
+    private static int[] prefixLengthOffsets;
 
     static {
         // load the resource file
@@ -64,6 +71,23 @@ public class E164CountryCodeUtil {
                 maxPrefixLength = code.getPrefix().length();
             }
         }
+
+        // 10 1-digit prefixes, then 100 2-digit prefixes, etc.
+        prefixLengthOffsets = new int[maxPrefixLength+2];
+        int prefixCount = 10;
+        for (int len = 1; len <= maxPrefixLength; len++) {
+            prefixLengthOffsets[len+1] = prefixLengthOffsets[len] + prefixCount;
+            prefixCount *= 10;
+        }
+        byNumericPrefix = new E164CountryCode[prefixLengthOffsets[maxPrefixLength+1]];
+        for (E164CountryCode code : byPrefix.values()) {
+            String prefix = code.getPrefix();
+            int value = 0;
+            for (int i = 0; i < prefix.length(); i++) {
+                value = (value * 10) + (prefix.charAt(i) - '0');
+            }
+            byNumericPrefix[prefixLengthOffsets[prefix.length()] + value] = code;
+        }
     }
 
     private E164CountryCodeUtil() {
@@ -77,18 +101,79 @@ public class E164CountryCodeUtil {
      * @return
      */
     public static E164CountryCode lookup(String address) {
+        return lookup((CharSequence)address);
+    }
+
+    /**
+     * Looks up an E164CountryCode object by analyzing the address and returning
+     * the best match (the longest matching prefix).  Never allocates, so it
+     * can be used for every message.
+     * @param address The address to lookup such as a String or StringBuilder.
+     * @return The best match or null if no prefix matched
+     */
+    public static E164CountryCode lookup(CharSequence address) {
         // analyze just the first few chars -- max of 4 or length of address
         int len = (address.length() > maxPrefixLength ? maxPrefixLength : address.length());
-        // search backwards first, return the first result
-        for (int i = len; i > 0; i--) {
-            String prefix = address.substring(0, i);
-            E164CountryCode entry = byPrefix.get(prefix);
+        E164CountryCode best = null;
+        int value = 0;
+        for (int i = 0; i < len; i++) {
+            int digit = address.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                // no prefix contains a non-digit
+                break;
+            }
+            value = (value * 10) + digit;
+            E164CountryCode entry = byNumericPrefix[prefixLengthOffsets[i+1] + value];
             if (entry != null) {
-                return entry;
+                best = entry;
             }
         }
-        // nothing found
-        return null;
+        return best;
+    }
+
+    /**
+     * Looks up an E164CountryCode object by analyzing a BCD encoded address
+     * (as decoded by ByteUtil.decodeBcd) such as found inside PDUs: the first
+     * digit is in the low nibble of each byte and an F nibble ends the address.
+     * Never allocates.
+     * @param data The bytes containing the address
+     * @param offset The offset of the address in the bytes
+     * @param len The number of bytes of the address
+     * @return The best match or null if no prefix matched
+     */
+    public static E164CountryCode lookupBcd(byte[] data, int offset, int len) {
+        E164CountryCode best = null;
+        int value = 0;
+        int digitCount = 0;
+        for (int i = offset; i < (offset + len) && digitCount < maxPrefixLength; i++) {
+            for (int nibble = 0; nibble < 2 && digitCount < maxPrefixLength; nibble++) {
+                int digit = (nibble == 0 ? data[i] & 0x0F : (data[i] >> 4) & 0x0F);
+                if (digit > 9) {
+                    return best;
+                }
+                value = (value * 10) + digit;
+                digitCount++;
+                E164CountryCode entry = byNumericPrefix[prefixLengthOffsets[digitCount] + value];
+                if (entry != null) {
+                    best = entry;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Looks up the E164CountryCode of every address of a batch (such as the
+     * messages of a rating batch).
+     * @param addresses The addresses to lookup.
+     * @return The best match (or null) of each address, in the same order
+     */
+    public static List<E164CountryCode> lookupAll(List<? extends CharSequence> addresses) {
+        List<E164CountryCode> results = new ArrayList<E164CountryCode>(addresses.size());
+        for (CharSequence address : addresses) {
+            results.add(lookup(address));
+        }
+        return results;
     }
 
     public static HashMap<String,E164CountryCode> parse(InputStream is) throws IOException {
@@ -0,0 +1,308 @@
+package com.cloudhopper.commons.locale;
+
+/*
+ * #%L
+ * ch-commons-locale
+ * %%
+ * Copyright (C) 2012 - 2013 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A read-only database of numbering prefixes and exact numbers (such as
+ * ported numbers) mapped to operators, served straight from a memory-mapped
+ * file compiled by PrefixDatabaseCompiler.  Opening a database only maps the
+ * file and reads its operator names, so startup is instant no matter how
+ * many entries it has, and the entries live in the OS page cache rather
+ * than the heap.  Lookups are binary searches over the mapped buffer that
+ * never allocate, and a database may be shared by any number of threads.
+ * <br>
+ * A lookup first tries an exact match of the whole number, then falls back
+ * to the longest matching prefix.  Numbers are at most 15 digits (the max
+ * length of an E.164 number); a lookup only considers the digits up to the
+ * first non-digit char.
+ * <br>
+ * File format (big endian): a header (magic, version, operator count,
+ * prefix count, exact count), the operator names (unsigned short length +
+ * UTF-8 bytes each), the prefix entries sorted by key (long key, int
+ * operator, int index of the nearest enclosing prefix entry or -1), the
+ * exact entries sorted by key (long key, int operator), then the key of
+ * every 64th prefix entry and every 64th exact entry.  A key is the digits
+ * padded with zeros to 15 digits, times 16, plus the number of digits, so
+ * a prefix sorts before every number it's a prefix of.
+ * <br>
+ * The sparse indexes of every 64th key (1/128th the size of the entries)
+ * are the only part of the file loaded on the heap.  A lookup binary
+ * searches an index, then the block of 64 entries it points to, so it only
+ * touches a single 1KB block of the mapped file.
+ */
+public class PrefixDatabase {
+    private static final Logger logger = LoggerFactory.getLogger(PrefixDatabase.class);
+
+    static final int MAGIC = 0x43485044;    // "CHPD"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 20;
+    static final int PREFIX_ENTRY_SIZE = 16;
+    static final int EXACT_ENTRY_SIZE = 12;
+    static final int MAX_DIGITS = 15;
+    static final int INDEX_STRIDE = 64;
+
+    static final long[] POWERS_OF_10 = new long[MAX_DIGITS+1];
+    static {
+        POWERS_OF_10[0] = 1;
+        for (int i = 1; i <= MAX_DIGITS; i++) {
+            POWERS_OF_10[i] = POWERS_OF_10[i-1] * 10;
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final String[] operators;
+    private final int prefixCount;
+    private final int prefixOffset;
+    private final int exactCount;
+    private final int exactOffset;
+    // key of every INDEX_STRIDE'th entry
+    private final long[] prefixIndex;
+    private final long[] exactIndex;
+
+    private PrefixDatabase(ByteBuffer buffer, String[] operators, int prefixCount, int prefixOffset, int exactCount, int exactOffset) {
+        this.buffer = buffer;
+        this.operators = operators;
+        this.prefixCount = prefixCount;
+        this.prefixOffset = prefixOffset;
+        this.exactCount = exactCount;
+        this.exactOffset = exactOffset;
+        int indexOffset = exactOffset + (exactCount * EXACT_ENTRY_SIZE);
+        this.prefixIndex = readIndex(buffer, indexOffset, indexSize(prefixCount));
+        this.exactIndex = readIndex(buffer, indexOffset + (this.prefixIndex.length * 8), indexSize(exactCount));
+    }
+
+    static int indexSize(int count) {
+        return (count + INDEX_STRIDE - 1) / INDEX_STRIDE;
+    }
+
+    static private long[] readIndex(ByteBuffer buffer, int offset, int size) {
+        long[] index = new long[size];
+        for (int i = 0; i < size; i++) {
+            index[i] = buffer.getLong(offset + (i * 8));
+        }
+        return index;
+    }
+
+    /**
+     * Opens a database by memory mapping its file.  The file must not be
+     * modified while it's mapped; to reload, compile a new file and open it.
+     * @param file The file compiled by PrefixDatabaseCompiler
+     * @return The database
+     * @throws IOException Thrown if the file can't be mapped or isn't a valid
+     *      database
+     */
+    public static PrefixDatabase open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Prefix database " + file + " is larger than 2GB");
+            }
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            PrefixDatabase database = open(buffer);
+            logger.info("Opened prefix database {} with {} prefixes and {} exact numbers", new Object[] { file, database.getPrefixCount(), database.getExactCount() });
+            return database;
+        } finally {
+            try { raf.close(); } catch (Exception e) {}
+        }
+    }
+
+    /**
+     * Opens a database from a buffer containing a compiled file.
+     * @param buffer The buffer
+     * @return The database
+     * @throws IOException Thrown if the buffer isn't a valid database
+     */
+    public static PrefixDatabase open(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a prefix database (bad magic number)");
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("Unsupported prefix database version " + buffer.getInt(4));
+            }
+            int operatorCount = buffer.getInt(8);
+            int prefixCount = buffer.getInt(12);
+            int exactCount = buffer.getInt(16);
+
+            String[] operators = new String[operatorCount];
+            int offset = HEADER_SIZE;
+            for (int i = 0; i < operatorCount; i++) {
+                int length = buffer.getShort(offset) & 0xFFFF;
+                byte[] bytes = new byte[length];
+                for (int j = 0; j < length; j++) {
+                    bytes[j] = buffer.get(offset + 2 + j);
+                }
+                operators[i] = new String(bytes, "UTF-8");
+                offset += 2 + length;
+            }
+
+            int prefixOffset = offset;
+            int exactOffset = prefixOffset + (prefixCount * PREFIX_ENTRY_SIZE);
+            long indexOffset = (long)exactOffset + ((long)exactCount * EXACT_ENTRY_SIZE);
+            if (indexOffset + (8L * (indexSize(prefixCount) + indexSize(exactCount))) != buffer.capacity()) {
+                throw new IOException("Prefix database is truncated or corrupt");
+            }
+            return new PrefixDatabase(buffer, operators, prefixCount, prefixOffset, exactCount, exactOffset);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Prefix database is truncated or corrupt", e);
+        }
+    }
+
+    public int getPrefixCount() {
+        return this.prefixCount;
+    }
+
+    public int getExactCount() {
+        return this.exactCount;
+    }
+
+    public int getOperatorCount() {
+        return this.operators.length;
+    }
+
+    /**
+     * Looks up the operator of an address: the operator of the exact number
+     * if it's in the database (such as a ported number), otherwise of the
+     * longest matching prefix.
+     * @param address The address to lookup
+     * @return The operator or null if nothing matched
+     */
+    public String lookup(CharSequence address) {
+        String operator = lookupExact(address);
+        if (operator == null) {
+            operator = lookupPrefix(address);
+        }
+        return operator;
+    }
+
+    /**
+     * Looks up the operator of an exact number.
+     * @param address The address to lookup
+     * @return The operator or null if the exact number isn't in the database
+     *      (or the address isn't all digits)
+     */
+    public String lookupExact(CharSequence address) {
+        int length = address.length();
+        if (this.exactCount == 0 || length > MAX_DIGITS) {
+            return null;
+        }
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            int digit = address.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return null;
+            }
+            value = (value * 10) + digit;
+        }
+        int index = floor(this.exactIndex, this.exactOffset, this.exactCount, EXACT_ENTRY_SIZE, key(value, length));
+        if (index < 0 || this.buffer.getLong(this.exactOffset + (index * EXACT_ENTRY_SIZE)) != key(value, length)) {
+            return null;
+        }
+        return this.operators[this.buffer.getInt(this.exactOffset + (index * EXACT_ENTRY_SIZE) + 8)];
+    }
+
+    /**
+     * Looks up the operator of the longest prefix matching the address.
+     * @param address The address to lookup
+     * @return The operator or null if no prefix matched
+     */
+    public String lookupPrefix(CharSequence address) {
+        if (this.prefixCount == 0) {
+            return null;
+        }
+        int length = 0;
+        long value = 0;
+        int maxLength = Math.min(address.length(), MAX_DIGITS);
+        while (length < maxLength) {
+            int digit = address.charAt(length) - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            value = (value * 10) + digit;
+            length++;
+        }
+        long padded = value * POWERS_OF_10[MAX_DIGITS - length];
+
+        // every prefix sorting between the longest matching prefix and the
+        // address has that prefix as a prefix, so it's the greatest entry
+        // <= address or one of the prefixes enclosing that entry
+        int index = floor(this.prefixIndex, this.prefixOffset, this.prefixCount, PREFIX_ENTRY_SIZE, (padded << 4) | length);
+        while (index >= 0) {
+            int position = this.prefixOffset + (index * PREFIX_ENTRY_SIZE);
+            long key = this.buffer.getLong(position);
+            int prefixLength = (int)(key & 0x0F);
+            long divisor = POWERS_OF_10[MAX_DIGITS - prefixLength];
+            if (prefixLength <= length && (key >>> 4) / divisor == padded / divisor) {
+                return this.operators[this.buffer.getInt(position + 8)];
+            }
+            index = this.buffer.getInt(position + 12);
+        }
+        return null;
+    }
+
+    /**
+     * Finds the index of the greatest entry with a key <= the key.
+     */
+    private int floor(long[] index, int offset, int count, int entrySize, long key) {
+        // find the block in the index first
+        int low = 0;
+        int high = index.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (index[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (high < 0) {
+            return -1;
+        }
+        low = high * INDEX_STRIDE;
+        high = Math.min(low + INDEX_STRIDE, count) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midKey = this.buffer.getLong(offset + (mid * entrySize));
+            if (midKey <= key) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    static long key(long value, int length) {
+        return ((value * POWERS_OF_10[MAX_DIGITS - length]) << 4) | length;
+    }
+
+}
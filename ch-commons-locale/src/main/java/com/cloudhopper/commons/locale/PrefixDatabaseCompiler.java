@@ -0,0 +1,501 @@
+package com.cloudhopper.commons.locale;
+
+/*
+ * #%L
+ * ch-commons-locale
+ * %%
+ * Copyright (C) 2012 - 2013 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compiles a text dataset of prefixes and exact numbers (such as ported
+ * numbers) mapped to operators into the sorted binary file served by
+ * PrefixDatabase.  Each line of the dataset is a prefix (digits followed by
+ * a '*') or an exact number, whitespace, then the operator:
+ * <pre>
+ * # comments and blank lines are skipped
+ * 447* GB-VODAFONE
+ * 4477* GB-O2
+ * 447700900123 GB-EE
+ * </pre>
+ * If a prefix or number is listed more than once, the last line wins.
+ * <br>
+ * Entries are sorted in chunks of a bounded size, each spilled to a
+ * temporary file, then merged into the database, so datasets of tens of
+ * millions of entries compile without needing them all on the heap.  Only
+ * the distinct operator names are held in memory.
+ */
+public class PrefixDatabaseCompiler {
+    private static final Logger logger = LoggerFactory.getLogger(PrefixDatabaseCompiler.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    private final int chunkSize;
+    private final File tempDir;
+
+    public PrefixDatabaseCompiler() {
+        this(DEFAULT_CHUNK_SIZE, null);
+    }
+
+    /**
+     * Creates a new compiler.
+     * @param chunkSize The max number of entries sorted in memory at once
+     *      (each uses 24 bytes while sorting)
+     * @param tempDir The directory of the temporary files or null for the
+     *      default temporary directory
+     */
+    public PrefixDatabaseCompiler(int chunkSize, File tempDir) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be > 0");
+        }
+        this.chunkSize = chunkSize;
+        this.tempDir = tempDir;
+    }
+
+    /**
+     * Compiles a dataset into a database file.
+     * @param in The dataset
+     * @param file The database file to create (or replace)
+     * @throws IOException Thrown if the dataset can't be read or parsed or the
+     *      file can't be written
+     */
+    public void compile(InputStream in, File file) throws IOException {
+        List<String> operators = new ArrayList<String>();
+        HashMap<String,Integer> operatorIds = new HashMap<String,Integer>();
+        Chunk prefixes = new Chunk(this.chunkSize);
+        Chunk exacts = new Chunk(this.chunkSize);
+        List<File> prefixRuns = new ArrayList<File>();
+        List<File> exactRuns = new ArrayList<File>();
+
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+            String line = null;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.equals("") || line.startsWith("#")) {
+                    continue;
+                }
+                int pos = indexOfWhitespace(line);
+                if (pos < 0) {
+                    throw new IOException("Invalid format on line " + lineNumber + ", could not parse operator: " + line);
+                }
+                String digits = line.substring(0, pos);
+                String operator = line.substring(pos+1).trim();
+                boolean prefix = digits.endsWith("*");
+                if (prefix) {
+                    digits = digits.substring(0, digits.length()-1);
+                }
+                long key = parseKey(digits, prefix, lineNumber);
+
+                Integer operatorId = operatorIds.get(operator);
+                if (operatorId == null) {
+                    operatorId = operators.size();
+                    operatorIds.put(operator, operatorId);
+                    operators.add(operator);
+                }
+
+                Chunk chunk = (prefix ? prefixes : exacts);
+                chunk.add(key, operatorId);
+                if (chunk.isFull()) {
+                    (prefix ? prefixRuns : exactRuns).add(spill(chunk));
+                }
+            }
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 65536));
+            int prefixCount;
+            int exactCount;
+            try {
+                out.writeInt(PrefixDatabase.MAGIC);
+                out.writeInt(PrefixDatabase.VERSION);
+                out.writeInt(operators.size());
+                // counts are filled in once known
+                out.writeInt(0);
+                out.writeInt(0);
+                for (String operator : operators) {
+                    byte[] bytes = operator.getBytes("UTF-8");
+                    if (bytes.length > 0xFFFF) {
+                        throw new IOException("Operator name too long: " + operator);
+                    }
+                    out.writeShort(bytes.length);
+                    out.write(bytes);
+                }
+                LongList prefixIndex = new LongList();
+                LongList exactIndex = new LongList();
+                prefixCount = merge(prefixes, prefixRuns, out, true, prefixIndex);
+                exactCount = merge(exacts, exactRuns, out, false, exactIndex);
+                prefixIndex.writeTo(out);
+                exactIndex.writeTo(out);
+            } finally {
+                out.close();
+            }
+
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.seek(12);
+                raf.writeInt(prefixCount);
+                raf.writeInt(exactCount);
+            } finally {
+                raf.close();
+            }
+            logger.info("Compiled prefix database {} with {} prefixes and {} exact numbers", new Object[] { file, prefixCount, exactCount });
+        } finally {
+            deleteAll(prefixRuns);
+            deleteAll(exactRuns);
+        }
+    }
+
+    /**
+     * Compiles a dataset file into a database file.
+     * @param dataset The dataset
+     * @param file The database file to create (or replace)
+     * @throws IOException Thrown if the dataset can't be read or parsed or the
+     *      file can't be written
+     */
+    public void compile(File dataset, File file) throws IOException {
+        InputStream in = new FileInputStream(dataset);
+        try {
+            compile(in, file);
+        } finally {
+            try { in.close(); } catch (Exception e) {}
+        }
+    }
+
+    static private int indexOfWhitespace(String line) {
+        for (int i = 0; i < line.length(); i++) {
+            if (Character.isWhitespace(line.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static private long parseKey(String digits, boolean prefix, int lineNumber) throws IOException {
+        int length = digits.length();
+        if (length > PrefixDatabase.MAX_DIGITS || (!prefix && length == 0)) {
+            throw new IOException("Invalid number on line " + lineNumber + ": must be " + (prefix ? 0 : 1) + " to " + PrefixDatabase.MAX_DIGITS + " digits");
+        }
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            int digit = digits.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IOException("Invalid number on line " + lineNumber + ": unsupported char [" + digits.charAt(i) + "] at index [" + i + "]");
+            }
+            value = (value * 10) + digit;
+        }
+        return PrefixDatabase.key(value, length);
+    }
+
+    /**
+     * Sorts a full chunk and writes it to a temporary file.
+     */
+    private File spill(Chunk chunk) throws IOException {
+        chunk.sort();
+        File run = File.createTempFile("prefixdb", ".run", this.tempDir);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 65536));
+        try {
+            for (int i = 0; i < chunk.size; i++) {
+                out.writeLong(chunk.keys[i]);
+                out.writeInt(chunk.values[i]);
+            }
+        } finally {
+            out.close();
+        }
+        chunk.clear();
+        return run;
+    }
+
+    /**
+     * Merges the sorted runs and the last chunk (in the order they were
+     * read, so later entries win) and writes the entries of a section.
+     * @return The number of entries written
+     */
+    private int merge(Chunk last, List<File> runs, DataOutputStream out, boolean prefix, LongList index) throws IOException {
+        last.sort();
+        Run[] sources = new Run[runs.size() + 1];
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                sources[i] = new FileRun(runs.get(i));
+            }
+            sources[runs.size()] = new ChunkRun(last);
+
+            // stack of the enclosing prefixes of the current entry
+            long[] stackKeys = new long[PrefixDatabase.MAX_DIGITS + 1];
+            int[] stackIndexes = new int[PrefixDatabase.MAX_DIGITS + 1];
+            int stackSize = 0;
+            int count = 0;
+
+            while (true) {
+                // find the smallest key, the last source with it wins
+                int winner = -1;
+                for (int i = 0; i < sources.length; i++) {
+                    if (sources[i].hasNext() && (winner < 0 || sources[i].key <= sources[winner].key)) {
+                        winner = i;
+                    }
+                }
+                if (winner < 0) {
+                    break;
+                }
+                long key = sources[winner].key;
+                int value = sources[winner].value;
+                for (int i = 0; i < sources.length; i++) {
+                    while (sources[i].hasNext() && sources[i].key == key) {
+                        sources[i].next();
+                    }
+                }
+
+                if ((count % PrefixDatabase.INDEX_STRIDE) == 0) {
+                    index.add(key);
+                }
+                out.writeLong(key);
+                out.writeInt(value);
+                if (prefix) {
+                    while (stackSize > 0 && !isPrefixOf(stackKeys[stackSize-1], key)) {
+                        stackSize--;
+                    }
+                    out.writeInt(stackSize > 0 ? stackIndexes[stackSize-1] : -1);
+                    stackKeys[stackSize] = key;
+                    stackIndexes[stackSize] = count;
+                    stackSize++;
+                }
+                if (count == Integer.MAX_VALUE) {
+                    throw new IOException("Too many entries for a prefix database");
+                }
+                count++;
+            }
+            return count;
+        } finally {
+            for (Run source : sources) {
+                if (source != null) {
+                    source.close();
+                }
+            }
+        }
+    }
+
+    static boolean isPrefixOf(long prefixKey, long key) {
+        int prefixLength = (int)(prefixKey & 0x0F);
+        long divisor = PrefixDatabase.POWERS_OF_10[PrefixDatabase.MAX_DIGITS - prefixLength];
+        return (prefixLength <= (int)(key & 0x0F) && (prefixKey >>> 4) / divisor == (key >>> 4) / divisor);
+    }
+
+    static private void deleteAll(List<File> files) {
+        for (File file : files) {
+            if (!file.delete()) {
+                logger.warn("Unable to delete temporary file {}", file);
+            }
+        }
+    }
+
+    /**
+     * Keys of the sparse index of a section.
+     */
+    static private class LongList {
+        private long[] values = new long[1024];
+        private int size;
+
+        public void add(long value) {
+            if (this.size == this.values.length) {
+                long[] newValues = new long[this.size * 2];
+                System.arraycopy(this.values, 0, newValues, 0, this.size);
+                this.values = newValues;
+            }
+            this.values[this.size++] = value;
+        }
+
+        public void writeTo(DataOutputStream out) throws IOException {
+            for (int i = 0; i < this.size; i++) {
+                out.writeLong(this.values[i]);
+            }
+        }
+    }
+
+    /**
+     * Entries read into memory, sorted by key (keeping the last value of
+     * duplicate keys) before they're spilled or merged.
+     */
+    static private class Chunk {
+        private final int capacity;
+        private long[] keys;
+        private int[] values;
+        private int size;
+
+        public Chunk(int capacity) {
+            this.capacity = capacity;
+            this.keys = new long[Math.min(capacity, 1024)];
+            this.values = new int[this.keys.length];
+        }
+
+        public void add(long key, int value) {
+            if (this.size == this.keys.length) {
+                int length = (int)Math.min((long)this.capacity, this.keys.length * 2L);
+                long[] newKeys = new long[length];
+                int[] newValues = new int[length];
+                System.arraycopy(this.keys, 0, newKeys, 0, this.size);
+                System.arraycopy(this.values, 0, newValues, 0, this.size);
+                this.keys = newKeys;
+                this.values = newValues;
+            }
+            this.keys[this.size] = key;
+            this.values[this.size] = value;
+            this.size++;
+        }
+
+        public boolean isFull() {
+            return this.size >= this.capacity;
+        }
+
+        public void clear() {
+            this.size = 0;
+        }
+
+        /**
+         * Stable merge sort, then drops all but the last of equal keys.
+         */
+        public void sort() {
+            long[] keyBuffer = new long[this.size];
+            int[] valueBuffer = new int[this.size];
+            long[] fromKeys = this.keys;
+            int[] fromValues = this.values;
+            long[] toKeys = keyBuffer;
+            int[] toValues = valueBuffer;
+            for (int width = 1; width < this.size; width *= 2) {
+                for (int low = 0; low < this.size; low += 2 * width) {
+                    int mid = Math.min(low + width, this.size);
+                    int high = Math.min(low + 2 * width, this.size);
+                    int i = low, j = mid, k = low;
+                    while (i < mid && j < high) {
+                        if (fromKeys[j] < fromKeys[i]) {
+                            toKeys[k] = fromKeys[j];
+                            toValues[k++] = fromValues[j++];
+                        } else {
+                            toKeys[k] = fromKeys[i];
+                            toValues[k++] = fromValues[i++];
+                        }
+                    }
+                    while (i < mid) {
+                        toKeys[k] = fromKeys[i];
+                        toValues[k++] = fromValues[i++];
+                    }
+                    while (j < high) {
+                        toKeys[k] = fromKeys[j];
+                        toValues[k++] = fromValues[j++];
+                    }
+                }
+                long[] swapKeys = fromKeys; fromKeys = toKeys; toKeys = swapKeys;
+                int[] swapValues = fromValues; fromValues = toValues; toValues = swapValues;
+            }
+            // keep the last of equal keys
+            int size0 = 0;
+            for (int i = 0; i < this.size; i++) {
+                if ((i+1) < this.size && fromKeys[i+1] == fromKeys[i]) {
+                    continue;
+                }
+                fromKeys[size0] = fromKeys[i];
+                fromValues[size0] = fromValues[i];
+                size0++;
+            }
+            this.keys = fromKeys;
+            this.values = fromValues;
+            this.size = size0;
+        }
+    }
+
+    /**
+     * A sorted source of entries being merged.
+     */
+    static private abstract class Run {
+        protected long key;
+        protected int value;
+        protected boolean hasNext;
+
+        public boolean hasNext() {
+            return this.hasNext;
+        }
+
+        public abstract void next() throws IOException;
+
+        public void close() {
+            // do nothing
+        }
+    }
+
+    static private class FileRun extends Run {
+        private final DataInputStream in;
+
+        public FileRun(File file) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+            next();
+        }
+
+        @Override
+        public void next() throws IOException {
+            try {
+                this.key = this.in.readLong();
+                this.value = this.in.readInt();
+                this.hasNext = true;
+            } catch (EOFException e) {
+                this.hasNext = false;
+            }
+        }
+
+        @Override
+        public void close() {
+            try { this.in.close(); } catch (Exception e) {}
+        }
+    }
+
+    static private class ChunkRun extends Run {
+        private final Chunk chunk;
+        private int index;
+
+        public ChunkRun(Chunk chunk) {
+            this.chunk = chunk;
+            this.index = -1;
+            next();
+        }
+
+        @Override
+        public void next() {
+            this.index++;
+            this.hasNext = (this.index < this.chunk.size);
+            if (this.hasNext) {
+                this.key = this.chunk.keys[this.index];
+                this.value = this.chunk.values[this.index];
+            }
+        }
+    }
+}
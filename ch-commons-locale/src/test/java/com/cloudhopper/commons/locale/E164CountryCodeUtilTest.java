@@ -22,7 +22,11 @@ package com.cloudhopper.commons.locale;
 
 import com.cloudhopper.commons.locale.Country;
 import com.cloudhopper.commons.locale.CountryUtil;
+import com.cloudhopper.commons.util.ByteUtil;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import org.junit.*;
 import org.slf4j.Logger;
@@ -84,5 +88,63 @@ public class E164CountryCodeUtilTest {
         Assert.assertEquals("GB", result0.getIso());
     }
 
-    
+    @Test
+    public void lookupCharSequence() throws Exception {
+        Assert.assertEquals("JM", E164CountryCodeUtil.lookup(new StringBuilder("18765551212")).getIso());
+        Assert.assertEquals("GB", E164CountryCodeUtil.lookup(new StringBuilder("44")).getIso());
+        // a non-digit ends the prefix
+        Assert.assertEquals("US", E164CountryCodeUtil.lookup("1+876").getIso());
+        Assert.assertEquals(null, E164CountryCodeUtil.lookup("+18765551212"));
+        Assert.assertEquals(null, E164CountryCodeUtil.lookup(new StringBuilder()));
+    }
+
+    @Test
+    public void lookupBcd() throws Exception {
+        byte[] bcd = ByteUtil.encodeBcd("18765551212", 6);
+        Assert.assertEquals("JM", E164CountryCodeUtil.lookupBcd(bcd, 0, bcd.length).getIso());
+        bcd = ByteUtil.encodeBcd("448765551212", 6);
+        Assert.assertEquals("GB", E164CountryCodeUtil.lookupBcd(bcd, 0, bcd.length).getIso());
+        // odd number of digits padded with F
+        bcd = ByteUtil.encodeBcd("1", 1);
+        Assert.assertEquals("US", E164CountryCodeUtil.lookupBcd(bcd, 0, bcd.length).getIso());
+        bcd = ByteUtil.encodeBcd("1416", 2);
+        Assert.assertEquals("CA", E164CountryCodeUtil.lookupBcd(bcd, 0, bcd.length).getIso());
+        // at an offset, limited by the number of bytes
+        byte[] pdu = new byte[8];
+        System.arraycopy(ByteUtil.encodeBcd("14165551212", 6), 0, pdu, 2, 6);
+        Assert.assertEquals("CA", E164CountryCodeUtil.lookupBcd(pdu, 2, 6).getIso());
+        Assert.assertEquals("US", E164CountryCodeUtil.lookupBcd(pdu, 2, 1).getIso());
+        Assert.assertEquals(null, E164CountryCodeUtil.lookupBcd(pdu, 2, 0));
+    }
+
+    @Test
+    public void lookupAll() throws Exception {
+        List<String> addresses = Arrays.asList("13135551212", "", "14165551212", "448765551212");
+        List<E164CountryCode> results = E164CountryCodeUtil.lookupAll(addresses);
+        Assert.assertEquals(4, results.size());
+        Assert.assertEquals("US", results.get(0).getIso());
+        Assert.assertEquals(null, results.get(1));
+        Assert.assertEquals("CA", results.get(2).getIso());
+        Assert.assertEquals("GB", results.get(3).getIso());
+    }
+
+    @Test
+    public void lookupMatchesEveryPrefix() throws Exception {
+        InputStream is = E164CountryCodeUtil.class.getResourceAsStream("e164CountryCode.txt");
+        HashMap<String,E164CountryCode> codes;
+        try {
+            codes = E164CountryCodeUtil.parse(is);
+        } finally {
+            is.close();
+        }
+        for (String prefix : codes.keySet()) {
+            String iso = codes.get(prefix).getIso();
+            // the longest prefix always wins, so an exact prefix is found as is
+            Assert.assertEquals(prefix, iso, E164CountryCodeUtil.lookup(prefix).getIso());
+            Assert.assertEquals(prefix, iso, E164CountryCodeUtil.lookup(prefix + "99999999").getIso());
+            byte[] bcd = ByteUtil.encodeBcd(prefix + "99999999", 8);
+            Assert.assertEquals(prefix, iso, E164CountryCodeUtil.lookupBcd(bcd, 0, bcd.length).getIso());
+        }
+    }
+
 }
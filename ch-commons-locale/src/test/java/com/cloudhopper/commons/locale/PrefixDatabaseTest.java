@@ -0,0 +1,192 @@
+package com.cloudhopper.commons.locale;
+
+/*
+ * #%L
+ * ch-commons-locale
+ * %%
+ * Copyright (C) 2012 - 2013 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class PrefixDatabaseTest {
+    private static final Logger logger = LoggerFactory.getLogger(PrefixDatabaseTest.class);
+
+    private File file;
+
+    @Before
+    public void createFile() throws Exception {
+        this.file = File.createTempFile("prefixdb", ".db");
+    }
+
+    @After
+    public void deleteFile() throws Exception {
+        this.file.delete();
+    }
+
+    private PrefixDatabase compile(String dataset, int chunkSize) throws Exception {
+        new PrefixDatabaseCompiler(chunkSize, null).compile(new ByteArrayInputStream(dataset.getBytes("UTF-8")), this.file);
+        return PrefixDatabase.open(this.file);
+    }
+
+    @Test
+    public void lookup() throws Exception {
+        String dataset = "# operators\n"
+            + "\n"
+            + "44* GB-OTHER\n"
+            + "447* GB-VODAFONE\n"
+            + "4477* GB-O2\n"
+            + "447700900123 GB-EE\n"
+            + "1* NANP\n"
+            + "1416* CA-ROGERS\n"
+            + "01* LEADING-ZERO\n"
+            + "447* GB-VODAFONE-2\n"
+            + "  49151\tDE-T-MOBILE  \n";
+        // a tiny chunk size spills and merges several runs
+        for (int chunkSize : new int[] { 2, 3, 1000 }) {
+            PrefixDatabase db = compile(dataset, chunkSize);
+            Assert.assertEquals(6, db.getPrefixCount());
+            Assert.assertEquals(2, db.getExactCount());
+            Assert.assertEquals(9, db.getOperatorCount());
+
+            Assert.assertEquals("GB-EE", db.lookup("447700900123"));
+            Assert.assertEquals("GB-O2", db.lookup("447700900124"));
+            Assert.assertEquals("GB-O2", db.lookup(new StringBuilder("4477")));
+            // the last line for the same prefix wins
+            Assert.assertEquals("GB-VODAFONE-2", db.lookup("447800900123"));
+            Assert.assertEquals("GB-OTHER", db.lookup("4420"));
+            Assert.assertEquals("GB-OTHER", db.lookup("44"));
+            Assert.assertEquals(null, db.lookup("4"));
+            Assert.assertEquals("CA-ROGERS", db.lookup("14165551212"));
+            Assert.assertEquals("NANP", db.lookup("14175551212"));
+            Assert.assertEquals("LEADING-ZERO", db.lookup("0123"));
+            Assert.assertEquals("DE-T-MOBILE", db.lookup("49151"));
+            Assert.assertEquals(null, db.lookup("491512"));
+            Assert.assertEquals(null, db.lookup(""));
+            // digits up to a non-digit are matched against prefixes
+            Assert.assertEquals("GB-O2", db.lookup("447700900123/TYPE=PLMN"));
+            Assert.assertEquals(null, db.lookup("+447700900123"));
+            // more than 15 digits can't be exact
+            Assert.assertEquals("GB-O2", db.lookup("4477009001230000"));
+
+            Assert.assertEquals("GB-EE", db.lookupExact("447700900123"));
+            Assert.assertEquals(null, db.lookupExact("4477"));
+            Assert.assertEquals("GB-O2", db.lookupPrefix("447700900123"));
+        }
+    }
+
+    @Test
+    public void defaultPrefix() throws Exception {
+        PrefixDatabase db = compile("* DEFAULT\n1* NANP\n", 1000);
+        Assert.assertEquals("NANP", db.lookup("1416"));
+        Assert.assertEquals("DEFAULT", db.lookup("44"));
+        Assert.assertEquals("DEFAULT", db.lookup(""));
+    }
+
+    @Test
+    public void emptyDataset() throws Exception {
+        PrefixDatabase db = compile("# nothing\n", 1000);
+        Assert.assertEquals(0, db.getPrefixCount());
+        Assert.assertEquals(0, db.getExactCount());
+        Assert.assertEquals(null, db.lookup("1"));
+    }
+
+    @Test
+    public void matchesBruteForce() throws Exception {
+        // fixed seed so every run compiles the same dataset
+        Random random = new Random(20140101L);
+        Map<String,String> prefixes = new HashMap<String,String>();
+        Map<String,String> exacts = new HashMap<String,String>();
+        StringBuilder dataset = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            boolean prefix = random.nextInt(4) != 0;
+            String digits = randomDigits(random, (prefix ? 1 + random.nextInt(7) : 8 + random.nextInt(8)));
+            String operator = "OP" + random.nextInt(50);
+            (prefix ? prefixes : exacts).put(digits, operator);
+            dataset.append(digits).append(prefix ? "* " : " ").append(operator).append("\n");
+        }
+        PrefixDatabase db = compile(dataset.toString(), 1500);
+        Assert.assertEquals(prefixes.size(), db.getPrefixCount());
+        Assert.assertEquals(exacts.size(), db.getExactCount());
+
+        for (String number : exacts.keySet()) {
+            Assert.assertEquals(number, exacts.get(number), db.lookup(number));
+        }
+        for (int i = 0; i < 50000; i++) {
+            String address = randomDigits(random, 1 + random.nextInt(15));
+            String expected = exacts.get(address);
+            for (int length = address.length(); expected == null && length >= 0; length--) {
+                expected = prefixes.get(address.substring(0, length));
+            }
+            Assert.assertEquals(address, expected, db.lookup(address));
+        }
+    }
+
+    @Test
+    public void invalidDataset() throws Exception {
+        String[] datasets = new String[] { "447\n", "44a* OP\n", "4*4 OP\n", "1234567890123456 OP\n", " OP\n" };
+        for (String dataset : datasets) {
+            try {
+                compile(dataset, 1000);
+                Assert.fail("dataset should have been invalid: " + dataset);
+            } catch (IOException e) {
+                // correct behavior
+            }
+        }
+    }
+
+    @Test
+    public void corruptFile() throws Exception {
+        try {
+            PrefixDatabase.open(ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }));
+            Assert.fail();
+        } catch (IOException e) {
+            // correct behavior
+        }
+
+        compile("447* GB-VODAFONE\n", 1000);
+        RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+        try {
+            raf.setLength(raf.length() - 1);
+        } finally {
+            raf.close();
+        }
+        try {
+            PrefixDatabase.open(this.file);
+            Assert.fail();
+        } catch (IOException e) {
+            // correct behavior
+        }
+    }
+
+    static private String randomDigits(Random random, int length) {
+        char[] digits = new char[length];
+        for (int i = 0; i < length; i++) {
+            digits[i] = (char)('0' + random.nextInt(10));
+        }
+        return new String(digits);
+    }
+}
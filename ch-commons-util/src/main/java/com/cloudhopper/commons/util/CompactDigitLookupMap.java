@@ -0,0 +1,493 @@
+package com.cloudhopper.commons.util;
+
+/*
+ * #%L
+ * ch-commons-util
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * An immutable, compactly encoded version of a DigitLookupMap for large
+ * routing tables that are read far more often than they change.  Where a
+ * DigitLookupMap allocates a Node object (with its own array of 10 children)
+ * per digit, this map stores its trie in a handful of flat arrays indexed by
+ * node number: a bitmask of the digits each node has children for, the index
+ * of its first child (children of a node are numbered consecutively), and the
+ * index of its specific and prefix values.  That's ~14 bytes per node with no
+ * object headers or pointers to chase, and lookups never allocate.  Values
+ * are shared by identity: an identical value object used by many keys is
+ * stored once, while values that are merely equal are stored separately.
+ * <br>
+ * Lookups match exactly like a DigitLookupMap: a specific key only matches
+ * the same key and otherwise the longest matching prefix key wins.
+ * <br>
+ * Build one from a DigitLookupMap with copyOf() or by bulk loading keys into
+ * a Builder (fastest when they are added in ascending order).  Since it's
+ * immutable, a map can be shared by any number of threads and replaced as a
+ * whole on reload (see ConcurrentDigitLookupMap).  Calling put() throws an
+ * UnsupportedOperationException.
+ */
+public class CompactDigitLookupMap<V> implements SimpleMap<V> {
+
+    private final int size;
+    // bit (1 << digit) is set if the node has a child for the digit
+    private final short[] childMasks;
+    // node number of the child for the lowest digit in the mask
+    private final int[] firstChildren;
+    // index into values, -1 if the node has no such value
+    private final int[] specificValues;
+    private final int[] prefixValues;
+    private final Object[] values;
+
+    private CompactDigitLookupMap(int size, short[] childMasks, int[] firstChildren, int[] specificValues, int[] prefixValues, Object[] values) {
+        this.size = size;
+        this.childMasks = childMasks;
+        this.firstChildren = firstChildren;
+        this.specificValues = specificValues;
+        this.prefixValues = prefixValues;
+        this.values = values;
+    }
+
+    /**
+     * Creates a compact copy of the current mappings of a DigitLookupMap.
+     * @param map The map to copy
+     * @return The compact map
+     */
+    static public <V> CompactDigitLookupMap<V> copyOf(DigitLookupMap<V> map) {
+        Builder<V> builder = new Builder<V>();
+        map.copyTo(builder);
+        return builder.build();
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the number of nodes in the trie (including the root node), which
+     * is useful to estimate the memory used by the map.
+     * @return The number of nodes
+     */
+    public int getNodeCount() {
+        return this.childMasks.length;
+    }
+
+    @Override
+    public V get(String key) throws IllegalArgumentException {
+        return get((CharSequence)key);
+    }
+
+    /**
+     * Same as get(String), but the key can be any sequence of digits such as
+     * a StringBuilder or a CharBuffer, so no String needs to be created per
+     * lookup.
+     * @param key The key whose associated value is to be returned.
+     * @return The best matched value or null
+     * @throws IllegalArgumentException Thrown if the key is not valid
+     */
+    @SuppressWarnings("unchecked")
+    public V get(CharSequence key) throws IllegalArgumentException {
+        DigitLookupMap.assertValidGetKey(key);
+
+        int keyLength = key.length();
+        int node = 0;
+        int bestMatchedValue = this.prefixValues[0];
+
+        for (int i = 0; i < keyLength; i++) {
+            int child = getChild(node, key.charAt(i) - '0');
+            if ((i+1) == keyLength) {
+                // a "specific" value is definitely the best value to return
+                if (child >= 0 && this.specificValues[child] >= 0) {
+                    return (V)this.values[this.specificValues[child]];
+                }
+            } else {
+                if (child < 0) {
+                    break;
+                }
+                node = child;
+                if (this.prefixValues[node] >= 0) {
+                    bestMatchedValue = this.prefixValues[node];
+                }
+            }
+        }
+
+        return (bestMatchedValue < 0 ? null : (V)this.values[bestMatchedValue]);
+    }
+
+    /**
+     * Same as get(String), but the key is a range of ASCII digits in a byte
+     * array (such as a line of a file), so no String needs to be created per
+     * lookup.
+     * @param digits The bytes containing the key
+     * @param offset The offset of the key in the bytes
+     * @param length The length of the key
+     * @return The best matched value or null
+     * @throws IllegalArgumentException Thrown if the key is not valid
+     */
+    @SuppressWarnings("unchecked")
+    public V get(byte[] digits, int offset, int length) throws IllegalArgumentException {
+        DigitLookupMap.assertValidGetKey(digits, offset, length);
+
+        int node = 0;
+        int bestMatchedValue = this.prefixValues[0];
+
+        for (int i = 0; i < length; i++) {
+            int child = getChild(node, digits[offset+i] - '0');
+            if ((i+1) == length) {
+                if (child >= 0 && this.specificValues[child] >= 0) {
+                    return (V)this.values[this.specificValues[child]];
+                }
+            } else {
+                if (child < 0) {
+                    break;
+                }
+                node = child;
+                if (this.prefixValues[node] >= 0) {
+                    bestMatchedValue = this.prefixValues[node];
+                }
+            }
+        }
+
+        return (bestMatchedValue < 0 ? null : (V)this.values[bestMatchedValue]);
+    }
+
+    /**
+     * Returns every value matching the key rather than only the best one:
+     * the values of all the prefix keys along the key, from the shortest to
+     * the longest, followed by the value of the specific key if one exists.
+     * The last value is the one get() would return.
+     * @param key The key to match
+     * @return The matched values or an empty list if none matched
+     * @throws IllegalArgumentException Thrown if the key is not valid
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> getAllMatches(CharSequence key) throws IllegalArgumentException {
+        DigitLookupMap.assertValidGetKey(key);
+
+        List<V> matches = new ArrayList<V>();
+        int node = 0;
+        if (this.prefixValues[0] >= 0) {
+            matches.add((V)this.values[this.prefixValues[0]]);
+        }
+
+        int keyLength = key.length();
+        for (int i = 0; i < keyLength; i++) {
+            int child = getChild(node, key.charAt(i) - '0');
+            if ((i+1) == keyLength) {
+                if (child >= 0 && this.specificValues[child] >= 0) {
+                    matches.add((V)this.values[this.specificValues[child]]);
+                }
+            } else {
+                if (child < 0) {
+                    break;
+                }
+                node = child;
+                if (this.prefixValues[node] >= 0) {
+                    matches.add((V)this.values[this.prefixValues[node]]);
+                }
+            }
+        }
+
+        return matches;
+    }
+
+    /**
+     * Looks up a batch of keys, such as the numbers of a bulk campaign.
+     * @param keys The keys to look up
+     * @return The best matched value (or null) of each key, in the same order
+     * @throws IllegalArgumentException Thrown if any key is not valid
+     */
+    public List<V> getBatch(List<? extends CharSequence> keys) throws IllegalArgumentException {
+        return newBatchLookup().getBatch(keys);
+    }
+
+    /**
+     * Looks up a batch of keys, splitting large batches into chunks that are
+     * looked up in parallel by the executor (such as a thread pool or a
+     * ForkJoinPool) and by the calling thread.
+     * @param keys The keys to look up
+     * @param executor The executor to run chunks of the batch
+     * @return The best matched value (or null) of each key, in the same order
+     * @throws IllegalArgumentException Thrown if any key is not valid
+     * @throws InterruptedException Thrown if interrupted while waiting for
+     *      the chunks to be looked up
+     */
+    public List<V> getBatch(List<? extends CharSequence> keys, ExecutorService executor) throws IllegalArgumentException, InterruptedException {
+        return newBatchLookup().getBatch(keys, executor);
+    }
+
+    private DigitBatchLookup<V> newBatchLookup() {
+        return new DigitBatchLookup<V>() {
+            @Override
+            V lookup(CharSequence key) {
+                return get(key);
+            }
+        };
+    }
+
+    /**
+     * Always throws an UnsupportedOperationException since this map is
+     * immutable.  Build a new map instead.
+     */
+    @Override
+    public V put(String key, V value) throws IllegalArgumentException {
+        throw new UnsupportedOperationException("CompactDigitLookupMap is immutable");
+    }
+
+    /**
+     * Gets the value of exactly this key (specific or prefix with a trailing
+     * '*') rather than the best match for it.
+     */
+    @SuppressWarnings("unchecked")
+    V getKeyValue(String key) {
+        boolean prefix = key.endsWith("*");
+        int pathLength = (prefix ? key.length()-1 : key.length());
+        int node = 0;
+        for (int i = 0; i < pathLength; i++) {
+            node = getChild(node, key.charAt(i) - '0');
+            if (node < 0) {
+                return null;
+            }
+        }
+        int valueIndex = (prefix ? this.prefixValues[node] : this.specificValues[node]);
+        return (valueIndex < 0 ? null : (V)this.values[valueIndex]);
+    }
+
+    /**
+     * Puts every key-value mapping of this map into the builder in ascending
+     * key order.
+     */
+    void copyTo(Builder<V> builder) {
+        copyNode(0, new StringBuilder(), builder);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void copyNode(int node, StringBuilder path, Builder<V> builder) {
+        if (this.specificValues[node] >= 0) {
+            builder.put(path.toString(), (V)this.values[this.specificValues[node]]);
+        }
+        if (this.prefixValues[node] >= 0) {
+            builder.put(path.toString() + "*", (V)this.values[this.prefixValues[node]]);
+        }
+        for (int digit = 0; digit < 10; digit++) {
+            int child = getChild(node, digit);
+            if (child >= 0) {
+                path.append((char)('0' + digit));
+                copyNode(child, path, builder);
+                path.setLength(path.length() - 1);
+            }
+        }
+    }
+
+    private int getChild(int node, int digit) {
+        int mask = this.childMasks[node];
+        int bit = 1 << digit;
+        if ((mask & bit) == 0) {
+            return -1;
+        }
+        return this.firstChildren[node] + Integer.bitCount(mask & (bit - 1));
+    }
+
+    /**
+     * Bulk loads keys and values for a new CompactDigitLookupMap.  Keys are
+     * validated like DigitLookupMap.put() and, like it, putting the same key
+     * again replaces its value and a null value removes the key.  Adding keys
+     * in ascending order (as copyOf() does) skips sorting them on build().
+     * A builder isn't thread-safe.
+     */
+    static public class Builder<V> {
+
+        private final List<Entry> entries;
+        private Entry lastEntry;
+        private boolean sorted;
+
+        public Builder() {
+            this.entries = new ArrayList<Entry>();
+            this.sorted = true;
+        }
+
+        public Builder<V> put(String key, V value) throws IllegalArgumentException {
+            DigitLookupMap.assertValidPutKey(key);
+            Entry entry = new Entry(key, value, this.entries.size());
+            if (this.lastEntry != null && this.lastEntry.compareTo(entry) >= 0) {
+                this.sorted = false;
+            }
+            this.entries.add(entry);
+            this.lastEntry = entry;
+            return this;
+        }
+
+        public CompactDigitLookupMap<V> build() {
+            if (!this.sorted) {
+                // ties are sorted by the order they were put
+                Collections.sort(this.entries);
+            }
+
+            // keep the last value put for each key, then drop removed keys
+            List<Entry> mappings = new ArrayList<Entry>(this.entries.size());
+            for (int i = 0; i < this.entries.size(); i++) {
+                Entry entry = this.entries.get(i);
+                if ((i+1) < this.entries.size() && this.entries.get(i+1).sameKey(entry)) {
+                    continue;
+                }
+                if (entry.value != null) {
+                    mappings.add(entry);
+                }
+            }
+
+            // an identical value object is only stored once (equal ones aren't)
+            IdentityHashMap<Object,Integer> valueIndexes = new IdentityHashMap<Object,Integer>();
+            List<Object> values = new ArrayList<Object>();
+
+            NodeArrays nodes = new NodeArrays(Math.max(16, mappings.size() * 2));
+            nodes.add(0, mappings.size(), 0);
+
+            // nodes are numbered in breadth first order, so each node is
+            // processed after its parent and its children end up consecutive
+            for (int node = 0; node < nodes.count; node++) {
+                int start = nodes.rangeStarts[node];
+                int end = nodes.rangeEnds[node];
+                int depth = nodes.depths[node];
+                int i = start;
+                // keys ending at this node sort first within its range
+                while (i < end && mappings.get(i).path.length() == depth) {
+                    Entry entry = mappings.get(i);
+                    Integer valueIndex = valueIndexes.get(entry.value);
+                    if (valueIndex == null) {
+                        valueIndex = values.size();
+                        valueIndexes.put(entry.value, valueIndex);
+                        values.add(entry.value);
+                    }
+                    if (entry.prefix) {
+                        nodes.prefixValues[node] = valueIndex;
+                    } else {
+                        nodes.specificValues[node] = valueIndex;
+                    }
+                    i++;
+                }
+                // then a range of keys per next digit
+                int mask = 0;
+                nodes.firstChildren[node] = nodes.count;
+                while (i < end) {
+                    char c = mappings.get(i).path.charAt(depth);
+                    int j = i + 1;
+                    while (j < end && mappings.get(j).path.charAt(depth) == c) {
+                        j++;
+                    }
+                    mask |= 1 << (c - '0');
+                    nodes.add(i, j, depth + 1);
+                    i = j;
+                }
+                nodes.childMasks[node] = (short)mask;
+            }
+
+            int count = nodes.count;
+            return new CompactDigitLookupMap<V>(mappings.size(),
+                Arrays.copyOf(nodes.childMasks, count),
+                Arrays.copyOf(nodes.firstChildren, count),
+                Arrays.copyOf(nodes.specificValues, count),
+                Arrays.copyOf(nodes.prefixValues, count),
+                values.toArray());
+        }
+    }
+
+    /**
+     * A key and value put into a builder.  Sorted by the digits of the key,
+     * then specific before prefix keys, then the order they were put.
+     */
+    static private class Entry implements Comparable<Entry> {
+        private final String path;
+        private final boolean prefix;
+        private final Object value;
+        private final int order;
+
+        public Entry(String key, Object value, int order) {
+            this.prefix = key.endsWith("*");
+            this.path = (this.prefix ? key.substring(0, key.length()-1) : key);
+            this.value = value;
+            this.order = order;
+        }
+
+        public boolean sameKey(Entry other) {
+            return (this.prefix == other.prefix && this.path.equals(other.path));
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int c = this.path.compareTo(other.path);
+            if (c != 0) {
+                return c;
+            }
+            if (this.prefix != other.prefix) {
+                return (this.prefix ? 1 : -1);
+            }
+            return (this.order < other.order ? -1 : (this.order == other.order ? 0 : 1));
+        }
+    }
+
+    /**
+     * Growable arrays of the nodes being built, plus the range of sorted
+     * entries under each node.
+     */
+    static private class NodeArrays {
+        private int count;
+        private short[] childMasks;
+        private int[] firstChildren;
+        private int[] specificValues;
+        private int[] prefixValues;
+        private int[] rangeStarts;
+        private int[] rangeEnds;
+        private int[] depths;
+
+        public NodeArrays(int capacity) {
+            this.childMasks = new short[capacity];
+            this.firstChildren = new int[capacity];
+            this.specificValues = new int[capacity];
+            this.prefixValues = new int[capacity];
+            this.rangeStarts = new int[capacity];
+            this.rangeEnds = new int[capacity];
+            this.depths = new int[capacity];
+        }
+
+        public void add(int rangeStart, int rangeEnd, int depth) {
+            if (this.count == this.childMasks.length) {
+                int capacity = this.count * 2;
+                this.childMasks = Arrays.copyOf(this.childMasks, capacity);
+                this.firstChildren = Arrays.copyOf(this.firstChildren, capacity);
+                this.specificValues = Arrays.copyOf(this.specificValues, capacity);
+                this.prefixValues = Arrays.copyOf(this.prefixValues, capacity);
+                this.rangeStarts = Arrays.copyOf(this.rangeStarts, capacity);
+                this.rangeEnds = Arrays.copyOf(this.rangeEnds, capacity);
+                this.depths = Arrays.copyOf(this.depths, capacity);
+            }
+            this.specificValues[this.count] = -1;
+            this.prefixValues[this.count] = -1;
+            this.rangeStarts[this.count] = rangeStart;
+            this.rangeEnds[this.count] = rangeEnd;
+            this.depths[this.count] = depth;
+            this.count++;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.cloudhopper.commons.util;
+
+/*
+ * #%L
+ * ch-commons-util
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A thread-safe DigitLookupMap for routing tables shared by many threads
+ * that are read constantly and changed every so often.  Lookups go to an
+ * immutable CompactDigitLookupMap snapshot held by an AtomicReference, so
+ * readers never lock or block.  Every change is copy-on-write: a new
+ * snapshot is built off to the side and then published atomically, so
+ * readers see either the old or the new snapshot, never a partially applied
+ * change.
+ * <br>
+ * Since each change copies the whole table, group changes into a Batch and
+ * apply() them together rather than calling put() per key.  To rebuild the
+ * table from scratch, replaceAll() with the new (key, value) pairs or
+ * reload() a snapshot built elsewhere.  Writers are serialized by a lock
+ * that readers never touch.
+ */
+public class ConcurrentDigitLookupMap<V> implements SimpleMap<V> {
+
+    private final AtomicReference<CompactDigitLookupMap<V>> snapshot;
+    private final ReentrantLock writeLock;
+
+    public ConcurrentDigitLookupMap() {
+        this(new CompactDigitLookupMap.Builder<V>().build());
+    }
+
+    public ConcurrentDigitLookupMap(CompactDigitLookupMap<V> snapshot) {
+        if (snapshot == null) {
+            throw new NullPointerException("A null snapshot is not permitted");
+        }
+        this.snapshot = new AtomicReference<CompactDigitLookupMap<V>>(snapshot);
+        this.writeLock = new ReentrantLock();
+    }
+
+    /**
+     * Gets the current snapshot of this map.  Multiple lookups against the
+     * same snapshot are consistent with each other even if a change is
+     * published in between.
+     * @return The current snapshot
+     */
+    public CompactDigitLookupMap<V> getSnapshot() {
+        return this.snapshot.get();
+    }
+
+    /**
+     * Atomically replaces the current snapshot.
+     * @param snapshot The new snapshot
+     * @return The previous snapshot
+     */
+    public CompactDigitLookupMap<V> reload(CompactDigitLookupMap<V> snapshot) {
+        if (snapshot == null) {
+            throw new NullPointerException("A null snapshot is not permitted");
+        }
+        this.writeLock.lock();
+        try {
+            return this.snapshot.getAndSet(snapshot);
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    /**
+     * Builds a new snapshot with only the (key, value) pairs of the iterator
+     * (for example as they are read from a file or database) and atomically
+     * replaces the current snapshot with it.  Readers keep using the current
+     * snapshot while the new one is built.  Pairs are applied in order, so a
+     * later pair for the same key wins and a null value removes the key.
+     * @param entries The pairs of keys (as passed to put) and values
+     * @return The previous snapshot
+     * @throws IllegalArgumentException Thrown if a key is not valid, in which
+     *      case the current snapshot is not replaced
+     */
+    public CompactDigitLookupMap<V> replaceAll(Iterator<? extends Map.Entry<String,? extends V>> entries) throws IllegalArgumentException {
+        CompactDigitLookupMap.Builder<V> builder = new CompactDigitLookupMap.Builder<V>();
+        while (entries.hasNext()) {
+            Map.Entry<String,? extends V> entry = entries.next();
+            builder.put(entry.getKey(), entry.getValue());
+        }
+        return reload(builder.build());
+    }
+
+    /**
+     * Applies every change of the batch to a copy of the current snapshot and
+     * atomically publishes the copy.
+     * @param batch The changes to apply
+     * @return The new snapshot
+     */
+    public CompactDigitLookupMap<V> apply(Batch<V> batch) {
+        this.writeLock.lock();
+        try {
+            CompactDigitLookupMap.Builder<V> builder = new CompactDigitLookupMap.Builder<V>();
+            this.snapshot.get().copyTo(builder);
+            for (int i = 0; i < batch.keys.size(); i++) {
+                builder.put(batch.keys.get(i), batch.values.get(i));
+            }
+            CompactDigitLookupMap<V> newSnapshot = builder.build();
+            this.snapshot.set(newSnapshot);
+            return newSnapshot;
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    @Override
+    public V get(String key) throws IllegalArgumentException {
+        return this.snapshot.get().get(key);
+    }
+
+    /**
+     * Same as get(String) for any sequence of digits.
+     * @see CompactDigitLookupMap#get(CharSequence)
+     */
+    public V get(CharSequence key) throws IllegalArgumentException {
+        return this.snapshot.get().get(key);
+    }
+
+    /**
+     * Same as get(String) for a range of ASCII digits in a byte array.
+     * @see CompactDigitLookupMap#get(byte[], int, int)
+     */
+    public V get(byte[] digits, int offset, int length) throws IllegalArgumentException {
+        return this.snapshot.get().get(digits, offset, length);
+    }
+
+    /**
+     * Returns every value matching the key rather than only the best one.
+     * @see CompactDigitLookupMap#getAllMatches(CharSequence)
+     */
+    public List<V> getAllMatches(CharSequence key) throws IllegalArgumentException {
+        return this.snapshot.get().getAllMatches(key);
+    }
+
+    /**
+     * Looks up a batch of keys against the current snapshot.
+     * @see CompactDigitLookupMap#getBatch(List)
+     */
+    public List<V> getBatch(List<? extends CharSequence> keys) throws IllegalArgumentException {
+        return this.snapshot.get().getBatch(keys);
+    }
+
+    /**
+     * Looks up a batch of keys against the current snapshot, in parallel
+     * chunks run by the executor.
+     * @see CompactDigitLookupMap#getBatch(List, ExecutorService)
+     */
+    public List<V> getBatch(List<? extends CharSequence> keys, ExecutorService executor) throws IllegalArgumentException, InterruptedException {
+        return this.snapshot.get().getBatch(keys, executor);
+    }
+
+    /**
+     * Associates the value with the key by copying and publishing a new
+     * snapshot, which is expensive for a large map.  Use a Batch to change
+     * many keys at once.
+     * @param key The key with which the specified value is to be associated.
+     * @param value The value to be associated with the specified key or null
+     *      to remove the key.
+     * @return The previous value associated with the key or null
+     * @throws IllegalArgumentException Thrown if the key is not valid
+     */
+    @Override
+    public V put(String key, V value) throws IllegalArgumentException {
+        DigitLookupMap.assertValidPutKey(key);
+        this.writeLock.lock();
+        try {
+            V previousValue = this.snapshot.get().getKeyValue(key);
+            apply(new Batch<V>().put(key, value));
+            return previousValue;
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    /**
+     * Removes the key by copying and publishing a new snapshot.
+     * @param key The key to remove
+     * @return The previous value associated with the key or null
+     * @throws IllegalArgumentException Thrown if the key is not valid
+     */
+    public V remove(String key) throws IllegalArgumentException {
+        return put(key, null);
+    }
+
+    @Override
+    public int size() {
+        return this.snapshot.get().size();
+    }
+
+    /**
+     * A group of puts and removes to apply to a ConcurrentDigitLookupMap
+     * together, in the order they were added.  Keys are validated as they are
+     * added.  A batch isn't thread-safe, but may be applied more than once.
+     */
+    static public class Batch<V> {
+
+        private final List<String> keys;
+        private final List<V> values;
+
+        public Batch() {
+            this.keys = new ArrayList<String>();
+            this.values = new ArrayList<V>();
+        }
+
+        public Batch<V> put(String key, V value) throws IllegalArgumentException {
+            DigitLookupMap.assertValidPutKey(key);
+            this.keys.add(key);
+            this.values.add(value);
+            return this;
+        }
+
+        public Batch<V> remove(String key) throws IllegalArgumentException {
+            return put(key, null);
+        }
+
+        public int size() {
+            return this.keys.size();
+        }
+    }
+
+}
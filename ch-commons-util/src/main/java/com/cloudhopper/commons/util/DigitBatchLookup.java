@@ -0,0 +1,104 @@
+package com.cloudhopper.commons.util;
+
+/*
+ * #%L
+ * ch-commons-util
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Looks up a batch of keys against a digit map, optionally splitting the
+ * batch into chunks looked up in parallel by an ExecutorService.  Results
+ * are always returned in the same order as the keys.
+ */
+abstract class DigitBatchLookup<V> {
+
+    // keys per task: large enough that a task costs far more than submitting it
+    static final int CHUNK_SIZE = 1024;
+
+    abstract V lookup(CharSequence key) throws IllegalArgumentException;
+
+    public List<V> getBatch(List<? extends CharSequence> keys) throws IllegalArgumentException {
+        List<V> results = new ArrayList<V>(keys.size());
+        for (CharSequence key : keys) {
+            results.add(lookup(key));
+        }
+        return results;
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<V> getBatch(List<? extends CharSequence> keys, ExecutorService executor) throws IllegalArgumentException, InterruptedException {
+        if (keys.size() <= CHUNK_SIZE) {
+            return getBatch(keys);
+        }
+
+        final CharSequence[] keyArray = keys.toArray(new CharSequence[keys.size()]);
+        final Object[] results = new Object[keyArray.length];
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        try {
+            // the calling thread does the first chunk itself
+            for (int start = CHUNK_SIZE; start < keyArray.length; start += CHUNK_SIZE) {
+                final int chunkStart = start;
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        lookup(keyArray, chunkStart, results);
+                    }
+                }));
+            }
+            lookup(keyArray, 0, results);
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException)cause;
+                    }
+                    throw new IllegalStateException("Batch lookup failed", cause);
+                }
+            }
+        } catch (RuntimeException e) {
+            cancelAll(futures);
+            throw e;
+        } catch (InterruptedException e) {
+            cancelAll(futures);
+            throw e;
+        }
+        return (List<V>)Arrays.asList(results);
+    }
+
+    private void lookup(CharSequence[] keys, int start, Object[] results) {
+        int end = Math.min(start + CHUNK_SIZE, keys.length);
+        for (int i = start; i < end; i++) {
+            results[i] = lookup(keys[i]);
+        }
+    }
+
+    static private void cancelAll(List<Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(false);
+        }
+    }
+}
@@ -20,6 +20,9 @@ package com.cloudhopper.commons.util;
  * #L%
  */
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -70,6 +73,18 @@ public class DigitLookupMap<V> implements SimpleMap<V> {
 
     @Override
     public V get(String key) throws IllegalArgumentException {
+        return get((CharSequence)key);
+    }
+
+    /**
+     * Same as get(String), but the key can be any sequence of digits such as
+     * a StringBuilder or a CharBuffer, so no String needs to be created per
+     * lookup.
+     * @param key The key whose associated value is to be returned.
+     * @return The best matched value or null
+     * @throws IllegalArgumentException Thrown if the key is not valid
+     */
+    public V get(CharSequence key) throws IllegalArgumentException {
         assertValidGetKey(key);
         
         char c;
@@ -124,6 +139,124 @@ public class DigitLookupMap<V> implements SimpleMap<V> {
         return bestMatchedValue;
     }
 
+    /**
+     * Same as get(String), but the key is a range of ASCII digits in a byte
+     * array (such as a line of a file), so no String needs to be created per
+     * lookup.
+     * @param digits The bytes containing the key
+     * @param offset The offset of the key in the bytes
+     * @param length The length of the key
+     * @return The best matched value or null
+     * @throws IllegalArgumentException Thrown if the key is not valid
+     */
+    public V get(byte[] digits, int offset, int length) throws IllegalArgumentException {
+        assertValidGetKey(digits, offset, length);
+
+        if (this.root == null) {
+            return null;
+        }
+
+        Node<V> currentNode = this.root;
+        V bestMatchedValue = currentNode.getPrefixValue();
+
+        for (int i = 0; i < length; i++) {
+            int index = digits[offset+i] - '0';
+            if ((i+1) == length) {
+                Node<V> specificNode = currentNode.getNode(index);
+                if (specificNode != null && specificNode.getSpecificValue() != null) {
+                    return specificNode.getSpecificValue();
+                }
+            } else {
+                currentNode = currentNode.getNode(index);
+                if (currentNode == null) {
+                    return bestMatchedValue;
+                } else if (currentNode.getPrefixValue() != null) {
+                    bestMatchedValue = currentNode.getPrefixValue();
+                }
+            }
+        }
+
+        return bestMatchedValue;
+    }
+
+    /**
+     * Returns every value matching the key rather than only the best one:
+     * the values of all the prefix keys along the key, from the shortest to
+     * the longest, followed by the value of the specific key if one exists.
+     * The last value is the one get() would return.
+     * @param key The key to match
+     * @return The matched values or an empty list if none matched
+     * @throws IllegalArgumentException Thrown if the key is not valid
+     */
+    public List<V> getAllMatches(CharSequence key) throws IllegalArgumentException {
+        assertValidGetKey(key);
+
+        List<V> matches = new ArrayList<V>();
+        if (this.root == null) {
+            return matches;
+        }
+
+        Node<V> currentNode = this.root;
+        if (currentNode.getPrefixValue() != null) {
+            matches.add(currentNode.getPrefixValue());
+        }
+
+        int keyLength = key.length();
+        for (int i = 0; i < keyLength; i++) {
+            int index = key.charAt(i) - '0';
+            if ((i+1) == keyLength) {
+                Node<V> specificNode = currentNode.getNode(index);
+                if (specificNode != null && specificNode.getSpecificValue() != null) {
+                    matches.add(specificNode.getSpecificValue());
+                }
+            } else {
+                currentNode = currentNode.getNode(index);
+                if (currentNode == null) {
+                    break;
+                } else if (currentNode.getPrefixValue() != null) {
+                    matches.add(currentNode.getPrefixValue());
+                }
+            }
+        }
+
+        return matches;
+    }
+
+    /**
+     * Looks up a batch of keys, such as the numbers of a bulk campaign.
+     * @param keys The keys to look up
+     * @return The best matched value (or null) of each key, in the same order
+     * @throws IllegalArgumentException Thrown if any key is not valid
+     */
+    public List<V> getBatch(List<? extends CharSequence> keys) throws IllegalArgumentException {
+        return newBatchLookup().getBatch(keys);
+    }
+
+    /**
+     * Looks up a batch of keys, splitting large batches into chunks that are
+     * looked up in parallel by the executor (such as a thread pool or a
+     * ForkJoinPool) and by the calling thread.  The map must not be modified
+     * while the batch is looked up.
+     * @param keys The keys to look up
+     * @param executor The executor to run chunks of the batch
+     * @return The best matched value (or null) of each key, in the same order
+     * @throws IllegalArgumentException Thrown if any key is not valid
+     * @throws InterruptedException Thrown if interrupted while waiting for
+     *      the chunks to be looked up
+     */
+    public List<V> getBatch(List<? extends CharSequence> keys, ExecutorService executor) throws IllegalArgumentException, InterruptedException {
+        return newBatchLookup().getBatch(keys, executor);
+    }
+
+    private DigitBatchLookup<V> newBatchLookup() {
+        return new DigitBatchLookup<V>() {
+            @Override
+            V lookup(CharSequence key) {
+                return get(key);
+            }
+        };
+    }
+
     /**
      * Associates the value with the key in this map. If the
      * map previously contained a mapping for this key, the old value is replaced
@@ -226,7 +359,18 @@ public class DigitLookupMap<V> implements SimpleMap<V> {
     }
 
     static protected void assertValidGetKey(String key) throws NullPointerException, IllegalArgumentException {
-        assertValidKey(key);
+        assertValidGetKey((CharSequence)key);
+    }
+
+    static protected void assertValidGetKey(CharSequence key) throws NullPointerException, IllegalArgumentException {
+        // null keys are not permitted
+        if (key == null) {
+            throw new NullPointerException("A null key is not permitted");
+        }
+        // the address must be at least 1 char long
+        if (key.length() <= 0) {
+            throw new IllegalArgumentException("Illegal key [" + key + "]: must be a minimum length of 1");
+        }
         int len = key.length();
         for (int i = 0; i < len; i++) {
             char c = key.charAt(i);
@@ -237,6 +381,32 @@ public class DigitLookupMap<V> implements SimpleMap<V> {
         }
     }
 
+    static protected void assertValidGetKey(byte[] digits, int offset, int length) throws NullPointerException, IllegalArgumentException {
+        if (digits == null) {
+            throw new NullPointerException("A null key is not permitted");
+        }
+        if (offset < 0 || length < 0 || offset + length > digits.length) {
+            throw new IndexOutOfBoundsException("Illegal offset [" + offset + "] or length [" + length + "] for [" + digits.length + "] bytes");
+        }
+        if (length <= 0) {
+            throw new IllegalArgumentException("Illegal key []: must be a minimum length of 1");
+        }
+        for (int i = 0; i < length; i++) {
+            byte b = digits[offset+i];
+            if (b < '0' || b > '9') {
+                throw new IllegalArgumentException("Illegal key [" + toAsciiString(digits, offset, length) + "]: unsupported char [" + (char)(b & 0xFF) + "] at index [" + i + "]");
+            }
+        }
+    }
+
+    static private String toAsciiString(byte[] bytes, int offset, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char)(bytes[offset+i] & 0xFF);
+        }
+        return new String(chars);
+    }
+
     static protected void assertValidPutKey(String key) throws NullPointerException, IllegalArgumentException {
         assertValidKey(key);
         int len = key.length();
@@ -284,6 +454,31 @@ public class DigitLookupMap<V> implements SimpleMap<V> {
     }
 
 
+    /**
+     * Puts every key-value mapping of this map into the builder in ascending
+     * key order.
+     */
+    void copyTo(CompactDigitLookupMap.Builder<V> builder) {
+        copyNode(this.root, new StringBuilder(), builder);
+    }
+
+    private void copyNode(Node<V> node, StringBuilder path, CompactDigitLookupMap.Builder<V> builder) {
+        if (node == null) {
+            return;
+        }
+        if (node.getSpecificValue() != null) {
+            builder.put(path.toString(), node.getSpecificValue());
+        }
+        if (node.getPrefixValue() != null) {
+            builder.put(path.toString() + "*", node.getPrefixValue());
+        }
+        for (int index = 0; index < 10; index++) {
+            path.append((char)('0' + index));
+            copyNode(node.getNode(index), path, builder);
+            path.setLength(path.length() - 1);
+        }
+    }
+
     /**
      * Prints out a dump of the hierarchy of this AddressTree
      * to the specified PrintStream.
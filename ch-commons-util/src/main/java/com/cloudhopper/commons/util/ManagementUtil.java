@@ -20,6 +20,7 @@ package com.cloudhopper.commons.util;
  * #L%
  */
 
+import java.lang.management.ManagementFactory;
 import javax.management.*;
 
 /**
@@ -56,4 +57,47 @@ public class ManagementUtil {
         return serverId;
     }
 
+    /**
+     * Registers an MBean with the platform MBeanServer, replacing any MBean
+     * already registered with the same name (such as one left behind by an
+     * object with the same name that was never unregistered).
+     *
+     * @param name The ObjectName to register as, such as
+     *      "com.cloudhopper:type=WindowMetrics,name=bind1"
+     * @param mbean The MBean to register
+     * @return The ObjectName the MBean was registered as
+     * @throws JMException Thrown if the name is malformed or the object is
+     *      not a compliant MBean.
+     */
+    public static ObjectName registerMBean(String name, Object mbean) throws JMException {
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName(name);
+        if (mbs.isRegistered(objectName)) {
+            try {
+                mbs.unregisterMBean(objectName);
+            } catch (InstanceNotFoundException e) {
+                // unregistered in the meantime
+            }
+        }
+        mbs.registerMBean(mbean, objectName);
+        return objectName;
+    }
+
+    /**
+     * Unregisters an MBean from the platform MBeanServer.
+     *
+     * @param name The ObjectName the MBean was registered as
+     * @return True if the MBean was unregistered, false if it wasn't registered
+     * @throws JMException Thrown if the name is malformed.
+     */
+    public static boolean unregisterMBean(String name) throws JMException {
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        try {
+            mbs.unregisterMBean(new ObjectName(name));
+            return true;
+        } catch (InstanceNotFoundException e) {
+            return false;
+        }
+    }
+
 }
@@ -41,8 +41,6 @@ public class RunningAverage extends RunningTotal {
     /**
      * Returns a string representing the current running average. Will return
      * a String of the double with the precision set in the constructor.
-     * <br>
-     * NOTE: Will use a readLock to get a thread-safe version.
      * @return
      */
     @Override
@@ -53,8 +51,6 @@ public class RunningAverage extends RunningTotal {
     /**
      * Returns a string representing the current running average, but will use
      * the new precision rather than the one in the constructor.
-     * <br>
-     * NOTE: Will use a readLock to get a thread-safe version.
      * @return
      */
     public String toString(int temporaryPrecision) {
@@ -21,20 +21,21 @@ package com.cloudhopper.commons.util;
  */
 
 // java imports
-import java.util.Deque;
-import java.util.ArrayDeque;
-import java.util.concurrent.locks.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * Helps maintain a running total of X number of longs.  Internally,
- * this class maintains a list of X number of last long values.  Adding a new value
+ * this class maintains a ring of X number of last long values.  Adding a new value
  * will evict the oldest value and the new running total will be recomputed.
  * The toString() method will return the running total.  If an average is preferred
  * then please considering using the RunningAverage class.
  *
  * NOTE: This class is thread-safe since its typical multiple threads would want
- * to call this class.  Internally, this uses a ReadWrite lock to ensure
- * efficient usage of this class.
+ * to call this class.  Internally, values are stored in a ring of primitive
+ * longs that is updated with atomic operations, so neither adding nor reading
+ * takes a lock or creates any garbage.  Reads are not a snapshot: a total or
+ * average read while values are being added may include some of them only.
  *
  * NOTE: This class internally stores the running total as a long -- avoid
  * using large values, otherwise this class may cause an overflow.
@@ -43,99 +44,70 @@ import java.util.concurrent.locks.*;
  */
 public class RunningTotal {
     
-    private long total;
-    private int size;
-    private Deque<Long> values;
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
-    private final Lock readLock = lock.readLock();
-    private final Lock writeLock = lock.writeLock();
+    private final int size;
+    // ring of the last "size" values (unused slots are 0)
+    private final AtomicLongArray values;
+    // number of values ever added (the next one goes in slot count % size)
+    private final AtomicLong count;
+    private final AtomicLong total;
 
     public RunningTotal(int size) {
-        this.total = 0;
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be > 0");
+        }
         this.size = size;
-        this.values = new ArrayDeque<Long>(size);
+        this.values = new AtomicLongArray(size);
+        this.count = new AtomicLong();
+        this.total = new AtomicLong();
     }
 
     /**
      * Adds a new value to our running total. If the running total has already
      * reached its max size, this method will evict the oldest value.
      * <br>
-     * NOTE: This method will use a writeLock to ensure thread-safety.
+     * NOTE: This method is lock-free.
      * @param value The new long value to add
      */
     public void add(long value) {
-        writeLock.lock();
-        try {
-            // do we need to evict anything?
-            if (this.values.size() >= this.size) {
-                Long oldValue = this.values.pollFirst();
-                // subtract from running total
-                this.total -= oldValue.longValue();
-            }
-            // add this new value onto the end
-            this.values.add(value);
-            // add to our total
-            this.total += value;
-        } finally {
-            writeLock.unlock();
-        }
+        int slot = (int)(this.count.getAndIncrement() % this.size);
+        // evicts the oldest value (or 0 if the ring isn't full yet)
+        long oldValue = this.values.getAndSet(slot, value);
+        this.total.addAndGet(value - oldValue);
     }
 
     /**
      * Returns current number of values in our running total.  This should always
      * max out at the size value provided in our constructor.
-     * <br>
-     * NOTE: This method will use a readLock for thread-safety.
      * @return Current number of values in our running total.
      */
     public long getSize() {
-        readLock.lock();
-        try {
-            return this.values.size();
-        } finally {
-            readLock.unlock();
-        }
+        return Math.min(this.count.get(), this.size);
     }
 
     /**
      * Returns current value of our running total.
-     * <br>
-     * NOTE: This method will use a readLock for thread-safety.
      * @return The current running total.
      */
     public long getTotal() {
-        readLock.lock();
-        try {
-            return this.total;
-        } finally {
-            readLock.unlock();
-        }
+        return this.total.get();
     }
 
     /**
      * Returns current average of our running total.
-     * <br>
-     * NOTE: This method will use a readLock for thread-safety.
      * @return The current average of our running total.
      */
     public double getAverage() {
-        readLock.lock();
-        try {
-            // any values at all, needed to avoid a DivideByZero exception
-            if (this.values.size() <= 0) {
-                return 0;
-            }
-            return ((double)this.total / (double)this.values.size());
-        } finally {
-            readLock.unlock();
+        long size0 = getSize();
+        // any values at all, needed to avoid a DivideByZero exception
+        if (size0 <= 0) {
+            return 0;
         }
+        return ((double)this.total.get() / (double)size0);
     }
 
     /**
      * Returns a string representing the current running total. The same value
      * the toString() value a Long class would return.
-     * <br>
-     * NOTE: Will use a readLock to get a thread-safe version.
      * @return
      */
     @Override
@@ -0,0 +1,153 @@
+package com.cloudhopper.commons.util.metrics;
+
+/*
+ * #%L
+ * ch-commons-util
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative long values with constant memory and
+ * lock-free recording (in the style of an HdrHistogram).  Values are counted
+ * in buckets that are linear up to 32 and then log-linear with 32 buckets per
+ * power of 2, so any reported value is within ~3% of the actual value.
+ * Values larger than 2^31 are counted in the last bucket.
+ * <br><br>
+ * Reads are not an atomic snapshot of concurrent recordings, which is fine
+ * for monitoring.
+ */
+public class AtomicHistogram {
+
+    static private final int SUB_BUCKET_BITS = 5;
+    static private final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    static private final int MAX_MAGNITUDE = 31;
+    static final int BUCKET_COUNT = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 2) << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong count;
+    private final AtomicLong sum;
+    private final AtomicLong max;
+
+    public AtomicHistogram() {
+        this.counts = new AtomicLongArray(BUCKET_COUNT);
+        this.count = new AtomicLong();
+        this.sum = new AtomicLong();
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * Records a value.  Negative values are recorded as 0.
+     * @param value The value to record
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        this.counts.incrementAndGet(index(value));
+        this.count.incrementAndGet();
+        this.sum.addAndGet(value);
+        long currentMax;
+        while (value > (currentMax = this.max.get())) {
+            if (this.max.compareAndSet(currentMax, value)) {
+                break;
+            }
+        }
+    }
+
+    public long getCount() {
+        return this.count.get();
+    }
+
+    public long getSum() {
+        return this.sum.get();
+    }
+
+    public long getMax() {
+        return this.max.get();
+    }
+
+    public double getMean() {
+        long count0 = this.count.get();
+        return (count0 == 0 ? 0.0d : (double)this.sum.get() / (double)count0);
+    }
+
+    /**
+     * Gets the value at the percentile, which is the highest value counted in
+     * the same bucket as the value that percentile of all recorded values are
+     * less than or equal to.
+     * @param percentile The percentile (such as 99.9)
+     * @return The value at the percentile or 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += this.counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long)Math.ceil((percentile / 100.0d) * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += this.counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestValue(i), this.max.get());
+            }
+        }
+        return this.max.get();
+    }
+
+    /**
+     * Clears all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            this.counts.set(i, 0);
+        }
+        this.count.set(0);
+        this.sum.set(0);
+        this.max.set(0);
+    }
+
+    long getCountAtIndex(int index) {
+        return this.counts.get(index);
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int)value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        if (magnitude > MAX_MAGNITUDE) {
+            return BUCKET_COUNT - 1;
+        }
+        int shift = magnitude - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int)(value >>> shift) - SUB_BUCKET_COUNT;
+    }
+
+    static long highestValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index >> SUB_BUCKET_BITS) - 1;
+        long subBucket = (index & (SUB_BUCKET_COUNT - 1)) + SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,185 @@
+package com.cloudhopper.commons.util.metrics;
+
+/*
+ * #%L
+ * ch-commons-util
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Measures the rate of events (such as messages per second) over sliding
+ * windows of up to 5 minutes.  Events are counted in one-second buckets,
+ * striped by thread like a StripedCounter, so marking an event is a single
+ * uncontended CAS with no locking or allocation.  A rate is the number of
+ * events in the last complete seconds divided by the number of seconds, so
+ * the one second rate is the number of events in the previous second.
+ * <br><br>
+ * Each bucket packs the second it belongs to together with its count into a
+ * single long, so a bucket is reused for a new second in the same CAS that
+ * counts the first event of that second and no event is ever lost to a
+ * rotating window.  Events should be marked with the current time: an event
+ * marked far in the past takes over the bucket of a more recent second.
+ * <br><br>
+ * Export the rates over JMX with ManagementUtil.registerMBean().
+ */
+public class RateMeter implements RateMeterMBean {
+
+    static public final int MAX_SECONDS = 300;
+
+    static private final int COUNT_BITS = 40;
+    static private final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    static private final long TAG_MASK = (1L << (64 - COUNT_BITS)) - 1;
+    // a power of 2 > MAX_SECONDS, so the bucket of a second is a mask away
+    // and a bucket isn't reused while it's still within the longest window
+    static private final int BUCKETS = 512;
+    static private final int BUCKET_MASK = BUCKETS - 1;
+
+    private final int stripeMask;
+    // buckets of each stripe are contiguous: [stripe * BUCKETS + bucket]
+    private final AtomicLongArray buckets;
+    private final StripedCounter count;
+
+    public RateMeter() {
+        this(StripedCounter.defaultStripes());
+    }
+
+    /**
+     * Creates a new meter.
+     * @param stripes The number of stripes, rounded up to a power of 2
+     */
+    public RateMeter(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("stripes must be > 0");
+        }
+        int stripeCount = StripedCounter.powerOfTwo(stripes);
+        this.stripeMask = stripeCount - 1;
+        this.buckets = new AtomicLongArray(stripeCount * BUCKETS);
+        this.count = new StripedCounter(stripeCount);
+    }
+
+    /**
+     * Marks the occurrence of one event now.
+     */
+    public void mark() {
+        mark(1, System.currentTimeMillis());
+    }
+
+    /**
+     * Marks the occurrence of a number of events now.
+     * @param n The number of events
+     */
+    public void mark(long n) {
+        mark(n, System.currentTimeMillis());
+    }
+
+    /**
+     * Marks the occurrence of a number of events at a time, which saves a
+     * call to System.currentTimeMillis() if the caller already has it.
+     * @param n The number of events
+     * @param timestamp The time the events occurred in milliseconds
+     */
+    public void mark(long n, long timestamp) {
+        long second = timestamp / 1000;
+        long tag = second & TAG_MASK;
+        int index = (StripedCounter.stripe(this.stripeMask) * BUCKETS) + (int)(second & BUCKET_MASK);
+        while (true) {
+            long bucket = this.buckets.get(index);
+            long next;
+            if ((bucket >>> COUNT_BITS) == tag) {
+                next = bucket + n;
+            } else {
+                // first event of this second: reuse the bucket
+                next = (tag << COUNT_BITS) | n;
+            }
+            if (this.buckets.compareAndSet(index, bucket, next)) {
+                break;
+            }
+        }
+        this.count.add(n);
+    }
+
+    /**
+     * Gets the total number of events ever marked.
+     * @return The number of events
+     */
+    @Override
+    public long getCount() {
+        return this.count.get();
+    }
+
+    @Override
+    public double getOneSecondRate() {
+        return getRate(1);
+    }
+
+    @Override
+    public double getOneMinuteRate() {
+        return getRate(60);
+    }
+
+    @Override
+    public double getFiveMinuteRate() {
+        return getRate(MAX_SECONDS);
+    }
+
+    /**
+     * Gets the average number of events per second over the last complete
+     * seconds.
+     * @param seconds The number of seconds (from 1 to 300)
+     * @return The rate of events per second
+     */
+    public double getRate(int seconds) {
+        return getRate(seconds, System.currentTimeMillis());
+    }
+
+    /**
+     * Gets the average number of events per second over the complete seconds
+     * before a time.
+     * @param seconds The number of seconds (from 1 to 300)
+     * @param now The current time in milliseconds
+     * @return The rate of events per second
+     */
+    public double getRate(int seconds, long now) {
+        return (double)getCount(seconds, now) / (double)seconds;
+    }
+
+    /**
+     * Gets the number of events over the complete seconds before a time.
+     * @param seconds The number of seconds (from 1 to 300)
+     * @param now The current time in milliseconds
+     * @return The number of events
+     */
+    public long getCount(int seconds, long now) {
+        if (seconds <= 0 || seconds > MAX_SECONDS) {
+            throw new IllegalArgumentException("seconds must be between 1 and " + MAX_SECONDS);
+        }
+        long nowSecond = now / 1000;
+        long sum = 0;
+        for (int stripe = 0; stripe < this.buckets.length(); stripe += BUCKETS) {
+            for (long second = nowSecond - seconds; second < nowSecond; second++) {
+                long bucket = this.buckets.get(stripe + (int)(second & BUCKET_MASK));
+                if ((bucket >>> COUNT_BITS) == (second & TAG_MASK)) {
+                    sum += (bucket & COUNT_MASK);
+                }
+            }
+        }
+        return sum;
+    }
+
+}
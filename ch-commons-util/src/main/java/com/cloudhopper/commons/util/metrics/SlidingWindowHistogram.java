@@ -0,0 +1,225 @@
+package com.cloudhopper.commons.util.metrics;
+
+/*
+ * #%L
+ * ch-commons-util
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of the values recorded over a sliding window of time (such as
+ * the latency of the messages of the last minute).  The window is split into
+ * intervals, each recorded into its own AtomicHistogram, and the oldest
+ * interval is cleared and reused once it slides out of the window.  Recording
+ * a value is lock-free and never allocates; reads merge the intervals still
+ * within the window.
+ * <br><br>
+ * The window always includes the current partial interval, so it covers
+ * between (intervals - 1) and intervals full intervals of time.  Values
+ * recorded while an interval is being reused may be lost, which only affects
+ * a handful of values at the edge of an interval.
+ * <br><br>
+ * Export the percentiles over JMX with ManagementUtil.registerMBean().
+ */
+public class SlidingWindowHistogram implements SlidingWindowHistogramMBean {
+
+    static public final long DEFAULT_WINDOW_MILLIS = 60000;
+    static public final int DEFAULT_INTERVALS = 6;
+
+    private final long intervalMillis;
+    private final AtomicHistogram[] histograms;
+    // the interval (time / intervalMillis) each histogram is recording
+    private final AtomicLongArray intervals;
+
+    public SlidingWindowHistogram() {
+        this(DEFAULT_WINDOW_MILLIS, DEFAULT_INTERVALS);
+    }
+
+    /**
+     * Creates a new histogram.
+     * @param windowMillis The length of the window in milliseconds
+     * @param intervals The number of intervals the window is split into.  More
+     *      intervals make the window slide more smoothly, but each uses a
+     *      constant ~7KB of memory.
+     */
+    public SlidingWindowHistogram(long windowMillis, int intervals) {
+        if (intervals <= 0) {
+            throw new IllegalArgumentException("intervals must be > 0");
+        }
+        if (windowMillis < intervals) {
+            throw new IllegalArgumentException("windowMillis must be >= intervals");
+        }
+        this.intervalMillis = windowMillis / intervals;
+        this.histograms = new AtomicHistogram[intervals];
+        for (int i = 0; i < intervals; i++) {
+            this.histograms[i] = new AtomicHistogram();
+        }
+        this.intervals = new AtomicLongArray(intervals);
+        for (int i = 0; i < intervals; i++) {
+            this.intervals.set(i, Long.MIN_VALUE);
+        }
+    }
+
+    public long getIntervalMillis() {
+        return this.intervalMillis;
+    }
+
+    /**
+     * Records a value now.
+     * @param value The value to record
+     */
+    public void record(long value) {
+        record(value, System.currentTimeMillis());
+    }
+
+    /**
+     * Records a value at a time, which saves a call to
+     * System.currentTimeMillis() if the caller already has it.  Values
+     * recorded for a time before the window are ignored.
+     * @param value The value to record
+     * @param timestamp The time of the value in milliseconds
+     */
+    public void record(long value, long timestamp) {
+        long interval = timestamp / this.intervalMillis;
+        int i = (int)(interval % this.histograms.length);
+        long current = this.intervals.get(i);
+        if (current != interval) {
+            if (current > interval) {
+                // too old: the histogram already slid forward
+                return;
+            }
+            if (this.intervals.compareAndSet(i, current, interval)) {
+                this.histograms[i].reset();
+            }
+        }
+        this.histograms[i].record(value);
+    }
+
+    @Override
+    public long getCount() {
+        return getCount(System.currentTimeMillis());
+    }
+
+    public long getCount(long now) {
+        long count = 0;
+        long interval = now / this.intervalMillis;
+        for (int i = 0; i < this.histograms.length; i++) {
+            if (inWindow(i, interval)) {
+                count += this.histograms[i].getCount();
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public double getMean() {
+        return getMean(System.currentTimeMillis());
+    }
+
+    public double getMean(long now) {
+        long count = 0;
+        long sum = 0;
+        long interval = now / this.intervalMillis;
+        for (int i = 0; i < this.histograms.length; i++) {
+            if (inWindow(i, interval)) {
+                count += this.histograms[i].getCount();
+                sum += this.histograms[i].getSum();
+            }
+        }
+        return (count == 0 ? 0.0d : (double)sum / (double)count);
+    }
+
+    @Override
+    public long getMax() {
+        return getMax(System.currentTimeMillis());
+    }
+
+    public long getMax(long now) {
+        long max = 0;
+        long interval = now / this.intervalMillis;
+        for (int i = 0; i < this.histograms.length; i++) {
+            if (inWindow(i, interval)) {
+                max = Math.max(max, this.histograms[i].getMax());
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public long get50thPercentile() {
+        return getValueAtPercentile(50.0d);
+    }
+
+    @Override
+    public long get99thPercentile() {
+        return getValueAtPercentile(99.0d);
+    }
+
+    @Override
+    public long get999thPercentile() {
+        return getValueAtPercentile(99.9d);
+    }
+
+    public long getValueAtPercentile(double percentile) {
+        return getValueAtPercentile(percentile, System.currentTimeMillis());
+    }
+
+    /**
+     * Gets the value at the percentile of all values within the window, with
+     * the same precision as an AtomicHistogram.
+     * @param percentile The percentile (such as 99.9)
+     * @param now The current time in milliseconds
+     * @return The value at the percentile or 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile, long now) {
+        long interval = now / this.intervalMillis;
+        long[] counts = new long[AtomicHistogram.BUCKET_COUNT];
+        long total = 0;
+        long max = 0;
+        for (int i = 0; i < this.histograms.length; i++) {
+            if (inWindow(i, interval)) {
+                AtomicHistogram histogram = this.histograms[i];
+                for (int j = 0; j < counts.length; j++) {
+                    long count = histogram.getCountAtIndex(j);
+                    counts[j] += count;
+                    total += count;
+                }
+                max = Math.max(max, histogram.getMax());
+            }
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long)Math.ceil((percentile / 100.0d) * total));
+        long seen = 0;
+        for (int j = 0; j < counts.length; j++) {
+            seen += counts[j];
+            if (seen >= target) {
+                return Math.min(AtomicHistogram.highestValue(j), max);
+            }
+        }
+        return max;
+    }
+
+    private boolean inWindow(int i, long interval) {
+        long recording = this.intervals.get(i);
+        return (recording <= interval && recording > interval - this.histograms.length);
+    }
+
+}
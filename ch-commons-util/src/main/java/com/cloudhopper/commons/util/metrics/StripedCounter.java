@@ -0,0 +1,112 @@
+package com.cloudhopper.commons.util.metrics;
+
+/*
+ * #%L
+ * ch-commons-util
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that scales under contention by spreading updates across several
+ * stripes (each on its own cache line) picked by the updating thread.  Unlike
+ * a single AtomicLong, threads on different cores rarely contend on the same
+ * CAS, so it's cheap enough to update on every message.  Reading the value
+ * sums all stripes and is not an atomic snapshot of concurrent updates.
+ */
+public class StripedCounter {
+
+    // longs per stripe so each stripe sits on its own 64-byte cache line
+    static final int PADDING = 8;
+    static final int MAX_STRIPES = 16;
+
+    private final int mask;
+    private final AtomicLongArray stripes;
+
+    public StripedCounter() {
+        this(defaultStripes());
+    }
+
+    /**
+     * Creates a new counter.
+     * @param stripes The number of stripes, rounded up to a power of 2
+     */
+    public StripedCounter(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("stripes must be > 0");
+        }
+        int count = powerOfTwo(stripes);
+        this.mask = count - 1;
+        this.stripes = new AtomicLongArray(count * PADDING);
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long delta) {
+        this.stripes.addAndGet(stripe(this.mask) * PADDING, delta);
+    }
+
+    /**
+     * Gets the sum of all stripes.
+     * @return The current value
+     */
+    public long get() {
+        long sum = 0;
+        for (int i = 0; i < this.stripes.length(); i += PADDING) {
+            sum += this.stripes.get(i);
+        }
+        return sum;
+    }
+
+    /**
+     * Resets the counter to zero.  Concurrent updates may survive the reset.
+     */
+    public void reset() {
+        for (int i = 0; i < this.stripes.length(); i += PADDING) {
+            this.stripes.set(i, 0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(get());
+    }
+
+    /**
+     * Gets the number of stripes suited to this machine: the number of
+     * processors rounded up to a power of 2, at most 16.
+     */
+    static int defaultStripes() {
+        return powerOfTwo(Math.min(Runtime.getRuntime().availableProcessors(), MAX_STRIPES));
+    }
+
+    static int powerOfTwo(int value) {
+        return (value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1);
+    }
+
+    /**
+     * Picks the stripe of the current thread.  The thread id is scrambled so
+     * that threads created one after another land on different stripes.
+     */
+    static int stripe(int mask) {
+        int h = (int)Thread.currentThread().getId() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,1071 @@
+package com.cloudhopper.commons.util.windowing;
+
+/*
+ * #%L
+ * ch-commons-util
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.cloudhopper.commons.util.UnwrappedWeakReference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An alternate implementation of a Window for many concurrent callers (such
+ * as dozens of threads sending over one bind).  It has the same API and
+ * WindowFuture semantics as Window, but:
+ * <ul>
+ *   <li>Slots are counted with an atomic "semaphore" so an offer into a
+ *      window with free slots never takes a lock.</li>
+ *   <li>Completing, failing or cancelling a request only touches the
+ *      concurrent map of futures and never takes a lock unless an offer is
+ *      blocked waiting for a slot.</li>
+ *   <li>Blocked offers wait in FIFO order on a condition of their own and a
+ *      freed slot is handed directly to the oldest one, so freeing one slot
+ *      wakes exactly one blocked offer (instead of every blocked offer and
+ *      every thread in await()) and no blocked offer is starved by new
+ *      ones.</li>
+ *   <li>Callers in WindowFuture.await() wait on a latch private to their own
+ *      future, so they are only woken when that request is done.</li>
+ * </ul>
+ * <br><br>
+ * If monitoring is enabled, it's very important to call "destroy()" if a
+ * ConcurrentWindow will no longer be used.
+ */
+public class ConcurrentWindow<K,R,P> {
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrentWindow.class);
+
+    private final int maxSize;
+    private final ConcurrentHashMap<K,ConcurrentWindowFuture<K,R,P>> futures;
+    // futures with an expire timestamp ordered by it (so monitoring doesn't scan every future)
+    private final WindowExpireIndex<ConcurrentWindowFuture<K,R,P>> expireIndex;
+    // number of slots that may still be acquired without waiting
+    private final AtomicInteger freeSlots;
+    // only taken by offers that must wait for a slot (and whoever wakes them)
+    private final ReentrantLock offerLock;
+    // offers waiting for a slot, oldest first (guarded by offerLock)
+    private final ArrayDeque<SlotWaiter<K,R,P>> slotWaiters;
+    // number of threads waiting to offer a request to be accepted
+    private final AtomicInteger pendingOffers;
+    private final AtomicBoolean pendingOffersAborted;
+    // number of non-blocking offers in slotWaiters
+    private final AtomicInteger queuedAsyncOffers;
+    // for scheduling tasks (such as expiring requests)
+    private final ScheduledExecutorService executor;
+    private ScheduledFuture<?> monitorHandle;
+    private final Monitor<K,R,P> monitor;
+    private final long monitorInterval;
+    private final CopyOnWriteArrayList<UnwrappedWeakReference<WindowListener<K,R,P>>> listeners;
+    private volatile WindowMetricsListener<K,R,P> metricsListener;
+
+    /**
+     * Creates a new window with the specified max window size.  This
+     * constructor does not enable any automatic recurring tasks from being
+     * executed (such as expiration of requests).
+     * @param size The maximum number of requests permitted to
+     *      be outstanding (unacknowledged) at a given time.  Must be > 0.
+     */
+    public ConcurrentWindow(int size) {
+        this(size, null, 0, null, null);
+    }
+
+    /**
+     * Creates a new window with the specified max window size.  This
+     * constructor enables automatic recurring tasks to be executed (such as
+     * expiration of requests).
+     * @param size The maximum number of requests permitted to
+     *      be outstanding (unacknowledged) at a given time.  Must be > 0.
+     * @param executor The scheduled executor service to execute
+     *      recurring tasks (such as expiration of requests).
+     * @param monitorInterval The number of milliseconds between executions of
+     *      monitoring tasks.
+     * @param listener A listener to send window events to
+     */
+    public ConcurrentWindow(int size, ScheduledExecutorService executor, long monitorInterval, WindowListener<K,R,P> listener) {
+        this(size, executor, monitorInterval, listener, null);
+    }
+
+    /**
+     * Creates a new window with the specified max window size.  This
+     * constructor enables automatic recurring tasks to be executed (such as
+     * expiration of requests).
+     * @param size The maximum number of requests permitted to
+     *      be outstanding (unacknowledged) at a given time.  Must be > 0.
+     * @param executor The scheduled executor service to execute
+     *      recurring tasks (such as expiration of requests).
+     * @param monitorInterval The number of milliseconds between executions of
+     *      monitoring tasks.
+     * @param listener A listener to send window events to
+     * @param monitorThreadName The thread name we'll change to when a monitor
+     *      run is executed.  Null if no name change is required.
+     */
+    public ConcurrentWindow(int size, ScheduledExecutorService executor, long monitorInterval, WindowListener<K,R,P> listener, String monitorThreadName) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be > 0");
+        }
+        this.maxSize = size;
+        this.futures = new ConcurrentHashMap<K,ConcurrentWindowFuture<K,R,P>>(size*2);
+        this.expireIndex = new WindowExpireIndex<ConcurrentWindowFuture<K,R,P>>();
+        this.freeSlots = new AtomicInteger(size);
+        this.offerLock = new ReentrantLock();
+        this.slotWaiters = new ArrayDeque<SlotWaiter<K,R,P>>();
+        this.pendingOffers = new AtomicInteger(0);
+        this.pendingOffersAborted = new AtomicBoolean(false);
+        this.queuedAsyncOffers = new AtomicInteger(0);
+        this.executor = executor;
+        this.monitorInterval = monitorInterval;
+        this.listeners = new CopyOnWriteArrayList<UnwrappedWeakReference<WindowListener<K,R,P>>>();
+        if (listener != null) {
+            this.listeners.add(new UnwrappedWeakReference<WindowListener<K,R,P>>(listener));
+        }
+        if (this.executor != null) {
+            this.monitor = new Monitor<K,R,P>(this, monitorThreadName);
+            this.monitorHandle = this.executor.scheduleWithFixedDelay(this.monitor, this.monitorInterval, this.monitorInterval, TimeUnit.MILLISECONDS);
+        } else {
+            this.monitor = null;
+            this.monitorHandle = null;
+        }
+    }
+
+    /**
+     * Gets the max size of the window.  This is the max number of requests that
+     * can be outstanding (unresponded to) in this window.
+     * @return The max size of the window
+     */
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * Gets the current number of requests in the window.
+     * @return The current number of pending requests
+     */
+    public int getSize() {
+        return this.futures.size();
+    }
+
+    /**
+     * Gets the current number of request that would be accepted by this
+     * window without blocking.  In order words, the number of free slots.
+     * This is the same count offers are admitted by, so a slot acquired by
+     * an offer that hasn't been added to the window yet isn't free.
+     * @return The free size of this window
+     */
+    public int getFreeSize() {
+        return this.freeSlots.get();
+    }
+
+    /**
+     * Returns true if and only if a future with this key exists in this window.
+     * @param key The key for the future
+     * @return True if the request exists, otherwise false.
+     */
+    public boolean containsKey(K key) {
+        return this.futures.containsKey(key);
+    }
+
+    /**
+     * Gets the a future by its key.
+     * @param key The key for the request
+     * @return The future or null if it doesn't exist.
+     */
+    public WindowFuture<K,R,P> get(K key) {
+        return this.futures.get(key);
+    }
+
+    /**
+     * Adds a new WindowListener if and only if it isn't already present.
+     * @param listener The listener to add
+     */
+    public void addListener(WindowListener<K,R,P> listener) {
+        this.listeners.addIfAbsent(new UnwrappedWeakReference<WindowListener<K,R,P>>(listener));
+    }
+
+    /**
+     * Removes a WindowListener if it is present.
+     * @param listener The listener to remove
+     */
+    public void removeListener(WindowListener<K,R,P> listener) {
+        this.listeners.remove(new UnwrappedWeakReference<WindowListener<K,R,P>>(listener));
+    }
+
+    /**
+     * Sets the listener told about every request accepted, timed out, done or
+     * expired by this window (such as a WindowMetrics collector).  Its methods
+     * are called on the offer and complete paths, so they must be fast.
+     * @param metricsListener The listener or null to stop collecting metrics
+     */
+    public void setMetricsListener(WindowMetricsListener<K,R,P> metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * Gets the listener told about every request passing thru this window.
+     * @return The listener or null if not set
+     */
+    public WindowMetricsListener<K,R,P> getMetricsListener() {
+        return this.metricsListener;
+    }
+
+    /**
+     * Gets a list of all listeners.
+     * @return A list of all listeners
+     */
+    List<UnwrappedWeakReference<WindowListener<K,R,P>>> getListeners() {
+        return this.listeners;
+    }
+
+    /**
+     * Destroy this window by freeing all resources associated with it.  All
+     * pending offers are cancelled, followed by all outstanding futures,
+     * then all listeners are removed, and monitoring is cancelled.
+     */
+    public synchronized void destroy() {
+        try {
+            this.abortPendingOffers();
+        } catch (Exception e) { }
+        this.cancelAll();
+        this.listeners.clear();
+        this.stopMonitor();
+    }
+
+    /**
+     * Starts the monitor if this window has an executor.  Safe to call multiple
+     * times.
+     * @return True if the monitor was started (true will be returned if it
+     *      was already previously started).
+     */
+    public synchronized boolean startMonitor() {
+        if (this.executor != null) {
+            if (this.monitorHandle == null) {
+                this.monitorHandle = this.executor.scheduleWithFixedDelay(this.monitor, this.monitorInterval, this.monitorInterval, TimeUnit.MILLISECONDS);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Stops the monitor if its running.  Safe to call multiple times.
+     */
+    public synchronized void stopMonitor() {
+        if (this.monitorHandle != null) {
+            this.monitorHandle.cancel(true);
+            this.monitorHandle = null;
+        }
+    }
+
+    /**
+     * Creates an ordered snapshot of the requests in this window.  The entries
+     * will be sorted by the natural ascending order of the key.  A new map
+     * is allocated when calling this method, so be careful about calling it
+     * once.
+     * @return A new map instance representing all requests sorted by
+     *      the natural ascending order of its key.
+     */
+    public Map<K,WindowFuture<K,R,P>> createSortedSnapshot() {
+        Map<K,WindowFuture<K,R,P>> sortedRequests = new TreeMap<K,WindowFuture<K,R,P>>();
+        sortedRequests.putAll(this.futures);
+        return sortedRequests;
+    }
+
+    /**
+     * Offers a request for acceptance, waiting for the specified amount of time
+     * in case it could not immediately accepted. The "caller state hint" of
+     * the returned future will be set to "NOT_WAITING". The expireTimestamp of
+     * the returned future will be set to -1 (infinity/never expires).
+     * @see Window#offer(java.lang.Object, java.lang.Object, long)
+     */
+    public WindowFuture<K,R,P> offer(K key, R request, long offerTimeoutMillis) throws DuplicateKeyException, OfferTimeoutException, InterruptedException {
+        return this.offer(key, request, offerTimeoutMillis, -1, false);
+    }
+
+    /**
+     * Offers a request for acceptance, waiting for the specified amount of time
+     * in case it could not immediately accepted. The "caller state hint" of
+     * the returned future will be set to "NOT_WAITING".
+     * @see Window#offer(java.lang.Object, java.lang.Object, long, long)
+     */
+    public WindowFuture<K,R,P> offer(K key, R request, long offerTimeoutMillis, long expireTimeoutMillis) throws DuplicateKeyException, OfferTimeoutException, InterruptedException {
+        return this.offer(key, request, offerTimeoutMillis, expireTimeoutMillis, false);
+    }
+
+    /**
+     * Offers a request for acceptance, waiting for the specified amount of time
+     * in case it could not immediately accepted.  If a slot is free the
+     * request is accepted without taking any lock.
+     * @param key The key for the request. A protocol's sequence number is a
+     *      good choice.
+     * @param request The request to offer
+     * @param offerTimeoutMillis The amount of time (in milliseconds) to wait
+     *      for the offer to be accepted.
+     * @param expireTimeoutMillis The amount of time (in milliseconds) that a
+     *      request will be set to expire after acceptance.  A value &lt; 1 is
+     *      assumed to be an infinite expiration (request never expires).
+     *      Requests are not automatically expired unless monitoring was enabled
+     *      during construction of this window.
+     * @param callerWaitingHint If true the "caller state hint" of the
+     *      future will be set to "WAITING" during construction.
+     * @return A future representing pending completion of the request
+     * @throws DuplicateKeyException Thrown if the key already exists
+     * @throws PendingOfferAbortedException Thrown if the offer could not be
+     *      immediately accepted and the caller/thread was waiting, but
+     *      the abortPendingOffers() method was called in the meantime.
+     * @throws OfferTimeoutException Thrown if the offer could not be accepted
+     *      within the specified amount of time.
+     * @throws InterruptedException Thrown if the calling thread is interrupted
+     *      while waiting for a free slot.
+     */
+    public WindowFuture<K,R,P> offer(K key, R request, long offerTimeoutMillis, long expireTimeoutMillis, boolean callerWaitingHint) throws DuplicateKeyException, OfferTimeoutException, PendingOfferAbortedException, InterruptedException {
+        if (offerTimeoutMillis < 0) {
+            throw new IllegalArgumentException("offerTimeoutMillis must be >= 0 [actual=" + offerTimeoutMillis + "]");
+        }
+
+        // does this key already exist?
+        if (this.futures.containsKey(key)) {
+            throw new DuplicateKeyException("The key [" + key + "] already exists in the window");
+        }
+
+        long offerTimestamp = System.currentTimeMillis();
+
+        // never jump ahead of offers already waiting for a slot
+        if (hasQueuedOffers() || !tryAcquireSlot()) {
+            try {
+                awaitSlot(offerTimestamp, offerTimeoutMillis);
+            } catch (OfferTimeoutException e) {
+                WindowMetricsListener<K,R,P> metricsListener0 = this.metricsListener;
+                if (metricsListener0 != null) {
+                    metricsListener0.offerTimedOut(key, offerTimeoutMillis);
+                }
+                throw e;
+            }
+        }
+
+        ConcurrentWindowFuture<K,R,P> future = acceptHelper(key, request, offerTimeoutMillis, expireTimeoutMillis, callerWaitingHint, offerTimestamp);
+        if (future == null) {
+            throw new DuplicateKeyException("The key [" + key + "] already exists in the window");
+        }
+        return future;
+    }
+
+    /*
+     * Creates the future of an accepted request and adds it to the window.
+     * Must have acquired a slot.  Returns null (and releases the slot) if
+     * another offer of the same key won the race.
+     */
+    private ConcurrentWindowFuture<K,R,P> acceptHelper(K key, R request, long offerTimeoutMillis, long expireTimeoutMillis, boolean callerWaitingHint, long offerTimestamp) {
+        long acceptTimestamp = System.currentTimeMillis();
+        long expireTimestamp = (expireTimeoutMillis > 0 ? (acceptTimestamp + expireTimeoutMillis) : -1);
+        int callerStateHint = (callerWaitingHint ? WindowFuture.CALLER_WAITING : WindowFuture.CALLER_NOT_WAITING);
+        int windowSize = this.maxSize - this.freeSlots.get();
+        ConcurrentWindowFuture<K,R,P> future = new ConcurrentWindowFuture<K,R,P>(this, key, request, callerStateHint, offerTimeoutMillis, windowSize, offerTimestamp, acceptTimestamp, expireTimestamp);
+        if (this.futures.putIfAbsent(key, future) != null) {
+            releaseSlots(1);
+            return null;
+        }
+        // only indexed once in the window: cancelAllExpired() drops any node
+        // whose future isn't in the window (yet)
+        future.expireNode = this.expireIndex.add(future);
+        if (future.expireNode != null && this.futures.get(key) != future) {
+            // already done (and removed) before its node was set
+            this.expireIndex.remove(future.expireNode);
+        }
+        WindowMetricsListener<K,R,P> metricsListener0 = this.metricsListener;
+        if (metricsListener0 != null) {
+            metricsListener0.accepted(future);
+        }
+        return future;
+    }
+
+    /**
+     * Offers a request for acceptance without blocking the caller.  If a slot
+     * is free (and no other offer is waiting), the offer is accepted
+     * immediately and without taking any lock.  Otherwise the offer is queued
+     * in FIFO order with blocked offers and accepted by whichever thread frees
+     * up a slot for it.
+     * @see Window#offerAsync(java.lang.Object, java.lang.Object, long)
+     */
+    public OfferFuture<K,R,P> offerAsync(K key, R request, long expireTimeoutMillis) throws DuplicateKeyException {
+        // does this key already exist?
+        if (this.futures.containsKey(key)) {
+            throw new DuplicateKeyException("The key [" + key + "] already exists in the window");
+        }
+
+        DefaultOfferFuture<K,R,P> offer = new DefaultOfferFuture<K,R,P>(key, request, expireTimeoutMillis, System.currentTimeMillis());
+        if (!hasQueuedOffers() && tryAcquireSlot()) {
+            offer.claim();
+            acceptOffer(offer);
+            return offer;
+        }
+
+        List<DefaultOfferFuture<K,R,P>> granted = null;
+        this.offerLock.lock();
+        try {
+            // NOTE: must be counted before granting slots, since releaseSlots()
+            // only takes the lock if it sees a queued offer
+            this.queuedAsyncOffers.incrementAndGet();
+            this.slotWaiters.addLast(new SlotWaiter<K,R,P>(null, offer));
+            granted = grantSlotWaiters();
+        } finally {
+            this.offerLock.unlock();
+        }
+        acceptOffers(granted);
+        return offer;
+    }
+
+    /*
+     * Accepts a claimed non-blocking offer that was handed a slot.  Must not
+     * hold offerLock (listeners are notified).
+     */
+    private void acceptOffer(DefaultOfferFuture<K,R,P> offer) {
+        ConcurrentWindowFuture<K,R,P> future = acceptHelper(offer.getKey(), offer.getRequest(), 0, offer.getExpireTimeoutMillis(), false, offer.getOfferTimestamp());
+        if (future == null) {
+            offer.failed(new DuplicateKeyException("The key [" + offer.getKey() + "] already exists in the window"));
+        } else {
+            offer.accepted(future);
+        }
+        offer.notifyListeners();
+    }
+
+    private void acceptOffers(List<DefaultOfferFuture<K,R,P>> offers) {
+        if (offers != null) {
+            for (DefaultOfferFuture<K,R,P> offer : offers) {
+                acceptOffer(offer);
+            }
+        }
+    }
+
+    private boolean hasQueuedOffers() {
+        return (this.pendingOffers.get() > 0 || this.queuedAsyncOffers.get() > 0);
+    }
+
+    private boolean tryAcquireSlot() {
+        while (true) {
+            int free = this.freeSlots.get();
+            if (free <= 0) {
+                return false;
+            }
+            if (this.freeSlots.compareAndSet(free, free - 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void awaitSlot(long offerTimestamp, long offerTimeoutMillis) throws OfferTimeoutException, PendingOfferAbortedException, InterruptedException {
+        List<DefaultOfferFuture<K,R,P>> granted = null;
+        boolean returnSlot = false;
+        this.offerLock.lockInterruptibly();
+        try {
+            // NOTE: must be counted before granting slots, since releaseSlots()
+            // only takes the lock if it sees a pending offer
+            this.pendingOffers.incrementAndGet();
+            SlotWaiter<K,R,P> waiter = new SlotWaiter<K,R,P>(this.offerLock.newCondition(), null);
+            try {
+                this.slotWaiters.addLast(waiter);
+                // hands out any free slot in order (possibly to this offer)
+                granted = grantSlotWaiters();
+                while (!waiter.granted) {
+                    // check if slow waiting was canceled (terminate early)
+                    if (this.pendingOffersAborted.get()) {
+                        throw new PendingOfferAbortedException("Pending offer aborted (by an explicit call to abortPendingOffers())");
+                    }
+                    // check if there time remaining to wait
+                    long currentOfferTime = System.currentTimeMillis() - offerTimestamp;
+                    if (currentOfferTime >= offerTimeoutMillis) {
+                        throw new OfferTimeoutException("Unable to accept offer within [" + offerTimeoutMillis + " ms] (window full)");
+                    }
+                    try {
+                        waiter.condition.await(offerTimeoutMillis - currentOfferTime, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        // pass the slot we were just handed along
+                        returnSlot = waiter.granted;
+                        throw e;
+                    }
+                }
+            } finally {
+                if (!waiter.granted) {
+                    this.slotWaiters.remove(waiter);
+                }
+                endPendingOffer();
+            }
+        } finally {
+            this.offerLock.unlock();
+            acceptOffers(granted);
+            if (returnSlot) {
+                releaseSlots(1);
+            }
+        }
+    }
+
+    /**
+     * Returns slots to the window.  If offers are waiting, each free slot is
+     * handed to the oldest waiting offer and only that offer is woken up (or
+     * accepted by this thread if it didn't block).
+     */
+    private void releaseSlots(int count) {
+        this.freeSlots.addAndGet(count);
+        if (hasQueuedOffers()) {
+            List<DefaultOfferFuture<K,R,P>> granted = null;
+            this.offerLock.lock();
+            try {
+                granted = grantSlotWaiters();
+            } finally {
+                this.offerLock.unlock();
+            }
+            acceptOffers(granted);
+        }
+    }
+
+    /*
+     * Hands free slots to the oldest waiting offers.  Must hold offerLock.
+     * Returns the non-blocking offers that were handed a slot (or null) to
+     * pass to acceptOffers() once the lock is released.
+     */
+    private List<DefaultOfferFuture<K,R,P>> grantSlotWaiters() {
+        List<DefaultOfferFuture<K,R,P>> granted = null;
+        while (!this.slotWaiters.isEmpty() && tryAcquireSlot()) {
+            SlotWaiter<K,R,P> waiter = this.slotWaiters.pollFirst();
+            if (waiter.offer == null) {
+                waiter.granted = true;
+                waiter.condition.signal();
+            } else {
+                this.queuedAsyncOffers.decrementAndGet();
+                if (waiter.offer.claim()) {
+                    if (granted == null) {
+                        granted = new ArrayList<DefaultOfferFuture<K,R,P>>();
+                    }
+                    granted.add(waiter.offer);
+                } else {
+                    // cancelled while queued: the slot goes to the next one
+                    this.freeSlots.incrementAndGet();
+                }
+            }
+        }
+        return granted;
+    }
+
+    /**
+     * An offer waiting for a slot: either a blocked thread (with a condition
+     * of its own) or a non-blocking offer.  Guarded by offerLock.
+     */
+    static private class SlotWaiter<K,R,P> {
+        private final Condition condition;
+        private final DefaultOfferFuture<K,R,P> offer;
+        private boolean granted;
+
+        public SlotWaiter(Condition condition, DefaultOfferFuture<K,R,P> offer) {
+            this.condition = condition;
+            this.offer = offer;
+        }
+    }
+
+    /**
+     * Gets the current number of callers/threads that are waiting for a pending
+     * offer to be accepted.
+     */
+    public int getPendingOfferCount() {
+        return this.pendingOffers.get();
+    }
+
+    /**
+     * End waiting for a pending offer to be accepted.  Decrements pendingOffers by 1.
+     * If "pendingOffersAborted" is true and pendingOffers reaches 0 then
+     * pendingOffersAborted will be reset to false.
+     */
+    private void endPendingOffer() {
+        if (this.pendingOffers.decrementAndGet() == 0) {
+            this.pendingOffersAborted.set(false);
+        }
+    }
+
+    /**
+     * Aborts all current callers/threads waiting for a pending offer to be
+     * accepted by the window.  Queued non-blocking offers are failed with a
+     * PendingOfferAbortedException.
+     * @return True if there were threads/callers that have a pending offer.
+     * @throws InterruptedException Thrown if the calling thread was interrupted
+     *      while waiting to obtain the offer lock.
+     */
+    public boolean abortPendingOffers() throws InterruptedException {
+        List<DefaultOfferFuture<K,R,P>> aborted = null;
+        boolean hadPendingOffers = false;
+        this.offerLock.lockInterruptibly();
+        try {
+            if (this.pendingOffers.get() > 0) {
+                this.pendingOffersAborted.set(true);
+                hadPendingOffers = true;
+            }
+            Iterator<SlotWaiter<K,R,P>> it = this.slotWaiters.iterator();
+            while (it.hasNext()) {
+                SlotWaiter<K,R,P> waiter = it.next();
+                if (waiter.offer == null) {
+                    waiter.condition.signal();
+                } else {
+                    it.remove();
+                    this.queuedAsyncOffers.decrementAndGet();
+                    if (waiter.offer.claim()) {
+                        waiter.offer.failed(new PendingOfferAbortedException("Pending offer aborted (by an explicit call to abortPendingOffers())"));
+                        if (aborted == null) {
+                            aborted = new ArrayList<DefaultOfferFuture<K,R,P>>();
+                        }
+                        aborted.add(waiter.offer);
+                    }
+                }
+            }
+        } finally {
+            this.offerLock.unlock();
+        }
+        if (aborted != null) {
+            for (DefaultOfferFuture<K,R,P> offer : aborted) {
+                offer.notifyListeners();
+            }
+        }
+        return (hadPendingOffers || aborted != null);
+    }
+
+    /**
+     * Successfully completes a request by setting the response on the associated future.
+     * Only callers/threads waiting on this future are signaled.  Also, since
+     * this frees up a slot in the window, one caller/thread blocked with a
+     * pending offer will be signaled to continue.
+     * @param key The key for the original request
+     * @param response The response to set on the associated future. Null
+     *      responses are not accepted (use cancel()) instead.
+     * @return A future representing the entire operation or null if the key
+     *      doesn't exist in this window.
+     * @throws InterruptedException Never thrown; declared to match Window
+     */
+    public WindowFuture<K,R,P> complete(K key, P response) throws InterruptedException {
+        if (response == null) {
+            throw new IllegalArgumentException("Null responses are illegal. Use cancel() instead.");
+        }
+        ConcurrentWindowFuture<K,R,P> future = this.futures.remove(key);
+        if (future == null) {
+            return null;
+        }
+        this.expireIndex.remove(future.expireNode);
+        boolean done = future.completeHelper(response, System.currentTimeMillis());
+        releaseSlots(1);
+        if (done) {
+            metricsDone(future);
+        }
+        future.notifyListeners();
+        return future;
+    }
+
+    /**
+     * Fails (completes) a request by setting the cause of the failure on the associated future.
+     * Only callers/threads waiting on this future are signaled.  Also, since
+     * this frees up a slot in the window, one caller/thread blocked with a
+     * pending offer will be signaled to continue.
+     * @param key The key for the original request
+     * @param t The throwable to set as the failure cause on the associated future.
+     *      Null values are not accepted (use cancel()) instead.
+     * @return A future representing the entire operation or null if the key
+     *      doesn't exist in this window.
+     * @throws InterruptedException Never thrown; declared to match Window
+     */
+    public WindowFuture<K,R,P> fail(K key, Throwable t) throws InterruptedException {
+        if (t == null) {
+            throw new IllegalArgumentException("Null throwables are illegal. Use cancel() instead.");
+        }
+        ConcurrentWindowFuture<K,R,P> future = this.futures.remove(key);
+        if (future == null) {
+            return null;
+        }
+        this.expireIndex.remove(future.expireNode);
+        boolean done = future.failedHelper(t, System.currentTimeMillis());
+        releaseSlots(1);
+        if (done) {
+            metricsDone(future);
+        }
+        future.notifyListeners();
+        return future;
+    }
+
+    /**
+     * Fails (completes) all requests by setting the same cause of the failure
+     * on all associated futures.  Since this frees up all slots in the window,
+     * all callers/threads blocked with pending offers will be signaled.
+     * @param t The throwable to set as the failure cause on all associated futures.
+     *      Null values are not accepted (use cancelAll()) instead.
+     * @return A list of all futures that were failed or null if the window
+     *      was empty.
+     * @throws InterruptedException Never thrown; declared to match Window
+     */
+    public List<WindowFuture<K,R,P>> failAll(Throwable t) throws InterruptedException {
+        if (this.futures.size() <= 0) {
+            return null;
+        }
+        List<WindowFuture<K,R,P>> failed = new ArrayList<WindowFuture<K,R,P>>();
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        for (ConcurrentWindowFuture<K,R,P> future : this.futures.values()) {
+            if (this.futures.remove(future.getKey(), future)) {
+                removed++;
+                this.expireIndex.remove(future.expireNode);
+                // skip futures completed directly (not yet removed from the window)
+                if (future.failedHelper(t, now)) {
+                    failed.add(future);
+                }
+            }
+        }
+        if (removed > 0) {
+            releaseSlots(removed);
+        }
+        metricsDone(failed);
+        notifyFutures(failed);
+        return failed;
+    }
+
+    /**
+     * Successfully completes a batch of requests (such as a burst of responses
+     * read from one packet) by setting each response on its associated future.
+     * Unlike calling complete() for each request, the freed slots are returned
+     * to the window (and handed to pending offers) all at once.
+     * @see Window#completeAll(java.util.Map)
+     */
+    public List<WindowFuture<K,R,P>> completeAll(Map<K,P> responses) throws InterruptedException {
+        if (responses.containsValue(null)) {
+            throw new IllegalArgumentException("Null responses are illegal. Use cancel() instead.");
+        }
+        List<WindowFuture<K,R,P>> completed = new ArrayList<WindowFuture<K,R,P>>(responses.size());
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        for (Map.Entry<K,P> entry : responses.entrySet()) {
+            ConcurrentWindowFuture<K,R,P> future = removeBatchHelper(entry.getKey());
+            if (future != null) {
+                removed++;
+                if (future.completeHelper(entry.getValue(), now)) {
+                    completed.add(future);
+                }
+            }
+        }
+        endBatchHelper(removed, completed);
+        return completed;
+    }
+
+    /**
+     * Successfully completes a batch of requests by setting each response on
+     * its associated future.  The freed slots are returned all at once.
+     * @see Window#completeBatch(java.lang.Object[], java.lang.Object[])
+     */
+    public List<WindowFuture<K,R,P>> completeBatch(K[] keys, P[] responses) throws InterruptedException {
+        if (keys.length != responses.length) {
+            throw new IllegalArgumentException("keys and responses must be the same length");
+        }
+        for (P response : responses) {
+            if (response == null) {
+                throw new IllegalArgumentException("Null responses are illegal. Use cancel() instead.");
+            }
+        }
+        List<WindowFuture<K,R,P>> completed = new ArrayList<WindowFuture<K,R,P>>(keys.length);
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        for (int i = 0; i < keys.length; i++) {
+            ConcurrentWindowFuture<K,R,P> future = removeBatchHelper(keys[i]);
+            if (future != null) {
+                removed++;
+                if (future.completeHelper(responses[i], now)) {
+                    completed.add(future);
+                }
+            }
+        }
+        endBatchHelper(removed, completed);
+        return completed;
+    }
+
+    /**
+     * Fails (completes) a batch of requests by setting each cause of the
+     * failure on its associated future.  The freed slots are returned all at
+     * once.
+     * @see Window#failAll(java.util.Map)
+     */
+    public List<WindowFuture<K,R,P>> failAll(Map<K,Throwable> causes) throws InterruptedException {
+        if (causes.containsValue(null)) {
+            throw new IllegalArgumentException("Null throwables are illegal. Use cancel() instead.");
+        }
+        List<WindowFuture<K,R,P>> failed = new ArrayList<WindowFuture<K,R,P>>(causes.size());
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        for (Map.Entry<K,Throwable> entry : causes.entrySet()) {
+            ConcurrentWindowFuture<K,R,P> future = removeBatchHelper(entry.getKey());
+            if (future != null) {
+                removed++;
+                if (future.failedHelper(entry.getValue(), now)) {
+                    failed.add(future);
+                }
+            }
+        }
+        endBatchHelper(removed, failed);
+        return failed;
+    }
+
+    /**
+     * Fails (completes) a batch of requests by setting each cause of the
+     * failure on its associated future.  The freed slots are returned all at
+     * once.
+     * @see Window#failBatch(java.lang.Object[], java.lang.Throwable[])
+     */
+    public List<WindowFuture<K,R,P>> failBatch(K[] keys, Throwable[] causes) throws InterruptedException {
+        if (keys.length != causes.length) {
+            throw new IllegalArgumentException("keys and causes must be the same length");
+        }
+        for (Throwable t : causes) {
+            if (t == null) {
+                throw new IllegalArgumentException("Null throwables are illegal. Use cancel() instead.");
+            }
+        }
+        List<WindowFuture<K,R,P>> failed = new ArrayList<WindowFuture<K,R,P>>(keys.length);
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        for (int i = 0; i < keys.length; i++) {
+            ConcurrentWindowFuture<K,R,P> future = removeBatchHelper(keys[i]);
+            if (future != null) {
+                removed++;
+                if (future.failedHelper(causes[i], now)) {
+                    failed.add(future);
+                }
+            }
+        }
+        endBatchHelper(removed, failed);
+        return failed;
+    }
+
+    private ConcurrentWindowFuture<K,R,P> removeBatchHelper(K key) {
+        ConcurrentWindowFuture<K,R,P> future = this.futures.remove(key);
+        if (future != null) {
+            this.expireIndex.remove(future.expireNode);
+        }
+        return future;
+    }
+
+    private void endBatchHelper(int removed, List<WindowFuture<K,R,P>> done) {
+        if (removed > 0) {
+            releaseSlots(removed);
+        }
+        metricsDone(done);
+        notifyFutures(done);
+    }
+
+    /**
+     * Cancels (completes) a request.  Only callers/threads waiting on this
+     * future are signaled.  Also, since this frees up a slot in the window,
+     * one caller/thread blocked with a pending offer will be signaled to continue.
+     * @param key The key for the original request
+     * @return A future representing the entire operation or null if the key
+     *      doesn't exist in this window.
+     * @throws InterruptedException Never thrown; declared to match Window
+     */
+    public WindowFuture<K,R,P> cancel(K key) throws InterruptedException {
+        ConcurrentWindowFuture<K,R,P> future = this.futures.remove(key);
+        if (future == null) {
+            return null;
+        }
+        this.expireIndex.remove(future.expireNode);
+        boolean done = future.cancelHelper(System.currentTimeMillis());
+        releaseSlots(1);
+        if (done) {
+            metricsDone(future);
+        }
+        future.notifyListeners();
+        return future;
+    }
+
+    /**
+     * Cancels (completes) all requests.  Since this frees up all slots in the
+     * window, all callers/threads blocked with pending offers will be signaled.
+     * @return A list of all futures that were cancelled or null if the window
+     *      was empty.
+     */
+    public List<WindowFuture<K,R,P>> cancelAll() {
+        if (this.futures.size() <= 0) {
+            return null;
+        }
+        List<WindowFuture<K,R,P>> cancelled = new ArrayList<WindowFuture<K,R,P>>();
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        for (ConcurrentWindowFuture<K,R,P> future : this.futures.values()) {
+            if (this.futures.remove(future.getKey(), future)) {
+                removed++;
+                this.expireIndex.remove(future.expireNode);
+                // skip futures completed directly (not yet removed from the window)
+                if (future.cancelHelper(now)) {
+                    cancelled.add(future);
+                }
+            }
+        }
+        if (removed > 0) {
+            releaseSlots(removed);
+        }
+        metricsDone(cancelled);
+        notifyFutures(cancelled);
+        return cancelled;
+    }
+
+    /**
+     * Cancels (completes) all expired requests. A request is considered expired
+     * if it has an expireTimestamp set and the current time is &gt;= the
+     * getExpireTimestamp() value.  Only requests that are actually due are
+     * visited (not the entire window).
+     * @return A list of all expired futures that were cancelled or null if
+     *      the window was empty.
+     */
+    public List<WindowFuture<K,R,P>> cancelAllExpired() {
+        if (this.futures.size() <= 0) {
+            return null;
+        }
+        List<WindowFuture<K,R,P>> expired = new ArrayList<WindowFuture<K,R,P>>();
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        for (ConcurrentWindowFuture<K,R,P> future : this.expireIndex.removeExpired(now)) {
+            if (this.futures.remove(future.getKey(), future)) {
+                removed++;
+                // skip futures completed directly (not yet removed from the window)
+                if (future.cancelHelper(now)) {
+                    expired.add(future);
+                }
+            }
+        }
+        if (removed > 0) {
+            releaseSlots(removed);
+        }
+        metricsExpired(expired);
+        notifyFutures(expired);
+        return expired;
+    }
+
+    private void notifyFutures(List<WindowFuture<K,R,P>> futures) {
+        for (WindowFuture<K,R,P> future : futures) {
+            ((ConcurrentWindowFuture<K,R,P>)future).notifyListeners();
+        }
+    }
+
+    private void metricsDone(WindowFuture<K,R,P> future) {
+        WindowMetricsListener<K,R,P> metricsListener0 = this.metricsListener;
+        if (metricsListener0 != null) {
+            metricsListener0.done(future);
+        }
+    }
+
+    private void metricsDone(List<WindowFuture<K,R,P>> futures) {
+        WindowMetricsListener<K,R,P> metricsListener0 = this.metricsListener;
+        if (metricsListener0 != null) {
+            for (WindowFuture<K,R,P> future : futures) {
+                metricsListener0.done(future);
+            }
+        }
+    }
+
+    private void metricsExpired(List<WindowFuture<K,R,P>> futures) {
+        WindowMetricsListener<K,R,P> metricsListener0 = this.metricsListener;
+        if (metricsListener0 != null) {
+            for (WindowFuture<K,R,P> future : futures) {
+                metricsListener0.expired(future);
+            }
+        }
+    }
+
+    /**
+     * Called by a future completed directly (not through this window).
+     * @param done True if that call completed the future (rather than it
+     *      already being done)
+     */
+    void removeHelper(K key, ConcurrentWindowFuture<K,R,P> future, boolean done) {
+        if (this.futures.remove(key, future)) {
+            this.expireIndex.remove(future.expireNode);
+            releaseSlots(1);
+        }
+        if (done) {
+            metricsDone(future);
+        }
+    }
+
+    /**
+     * Expires requests and sends them to the listeners (the equivalent of
+     * a WindowMonitor for a ConcurrentWindow).
+     */
+    static private class Monitor<K,R,P> implements Runnable {
+        private final WeakReference<ConcurrentWindow<K,R,P>> windowRef;
+        private final String monitorThreadName;
+
+        public Monitor(ConcurrentWindow<K,R,P> window, String monitorThreadName) {
+            this.windowRef = new WeakReference<ConcurrentWindow<K,R,P>>(window);
+            this.monitorThreadName = monitorThreadName;
+        }
+
+        @Override
+        public void run() {
+            String currentThreadName = null;
+            try {
+                if (this.monitorThreadName != null) {
+                    currentThreadName = Thread.currentThread().getName();
+                    Thread.currentThread().setName(monitorThreadName);
+                }
+                ConcurrentWindow<K,R,P> window = windowRef.get();
+
+                // check if the window using this monitor was GC'ed
+                if (window == null) {
+                    logger.error("The parent ConcurrentWindow was garbage collected in its monitor: missing call to destroy() to stop this monitoring thread (will throw exception to cancel this recurring execution!)");
+                    throw new IllegalStateException("Parent ConcurrentWindow was garbage collected (missing call to destroy() somewhere in code)");
+                }
+
+                List<WindowFuture<K,R,P>> expired = window.cancelAllExpired();
+                if (expired != null && expired.size() > 0) {
+                    if (logger.isTraceEnabled())
+                        logger.trace("Monitor found [" + expired.size() + "] requests expired");
+                    for (WindowFuture<K,R,P> future : expired) {
+                        for (UnwrappedWeakReference<WindowListener<K,R,P>> listenerRef : window.getListeners()) {
+                            WindowListener<K,R,P> listener = listenerRef.get();
+                            if (listener == null) {
+                                // remove this reference from our array (no good anymore)
+                                window.getListeners().remove(listenerRef);
+                            } else {
+                                try {
+                                    listener.expired(future);
+                                } catch (Throwable t) {
+                                    logger.error("Ignoring uncaught exception thrown in listener: ", t);
+                                }
+                            }
+                        }
+                    }
+                }
+            } finally {
+                if (currentThreadName != null) {
+                    // change the name of the thread back
+                    Thread.currentThread().setName(currentThreadName);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package com.cloudhopper.commons.util.windowing;
+
+/*
+ * #%L
+ * ch-commons-util
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * WindowFuture created by a ConcurrentWindow.  Unlike DefaultWindowFuture,
+ * callers in await() wait on a latch private to this future, so completing
+ * one request only wakes the threads waiting on that request.
+ */
+public class ConcurrentWindowFuture<K,R,P> implements WindowFuture<K,R,P> {
+
+    static private final int STATE_PENDING = 0;
+    static private final int STATE_COMPLETING = 1;
+    static private final int STATE_DONE = 2;
+
+    private final WeakReference<ConcurrentWindow<K,R,P>> window;
+    private final K key;
+    private final R request;
+    private final AtomicInteger state;
+    private final CountDownLatch doneLatch;
+    private volatile P response;
+    private volatile Throwable cause;
+    private volatile long doneTimestamp;
+    private final AtomicInteger callerStateHint;
+    private final long originalOfferTimeoutMillis;
+    private final int windowSize;
+    private final long offerTimestamp;
+    private final long acceptTimestamp;
+    private final long expireTimestamp;
+    private final WindowFutureListeners<K,R,P> listeners;
+    // entry in the window's expire index (null if this future never expires);
+    // set right after the future is added to the window
+    volatile WindowExpireIndex.Node<ConcurrentWindowFuture<K,R,P>> expireNode;
+
+    /**
+     * Creates a new ConcurrentWindowFuture.
+     * @param window The window that created this future.  Saved as a weak
+     *      reference to prevent circular references.
+     * @param key The key of the future
+     * @param request The request of the future
+     * @param callerStateHint The initial state of the caller hint
+     * @param originalOfferTimeoutMillis
+     * @param windowSize Size of the window after this request was added.
+     * @param offerTimestamp The timestamp when the request was offered
+     * @param acceptTimestamp The timestamp when the request was accepted
+     * @param expireTimestamp The timestamp when the request will expire or -1
+     *      if no expiration is set
+     */
+    protected ConcurrentWindowFuture(ConcurrentWindow<K,R,P> window, K key, R request, int callerStateHint, long originalOfferTimeoutMillis, int windowSize, long offerTimestamp, long acceptTimestamp, long expireTimestamp) {
+        this.window = new WeakReference<ConcurrentWindow<K,R,P>>(window);
+        this.key = key;
+        this.request = request;
+        this.state = new AtomicInteger(STATE_PENDING);
+        this.doneLatch = new CountDownLatch(1);
+        this.callerStateHint = new AtomicInteger(callerStateHint);
+        this.originalOfferTimeoutMillis = originalOfferTimeoutMillis;
+        this.windowSize = windowSize;
+        this.offerTimestamp = offerTimestamp;
+        this.acceptTimestamp = acceptTimestamp;
+        this.expireTimestamp = expireTimestamp;
+        this.listeners = new WindowFutureListeners<K,R,P>();
+    }
+
+    @Override
+    public K getKey() {
+        return this.key;
+    }
+
+    @Override
+    public R getRequest() {
+        return this.request;
+    }
+
+    @Override
+    public P getResponse() {
+        return this.response;
+    }
+
+    @Override
+    public Throwable getCause() {
+        return this.cause;
+    }
+
+    @Override
+    public int getCallerStateHint() {
+        return this.callerStateHint.get();
+    }
+
+    public void setCallerStateHint(int callerState) {
+        this.callerStateHint.set(callerState);
+    }
+
+    @Override
+    public boolean isCallerWaiting() {
+        return (this.callerStateHint.get() == CALLER_WAITING);
+    }
+
+    @Override
+    public int getWindowSize() {
+        return this.windowSize;
+    }
+
+    @Override
+    public boolean hasExpireTimestamp() {
+        return (this.expireTimestamp > 0);
+    }
+
+    @Override
+    public long getExpireTimestamp() {
+        return this.expireTimestamp;
+    }
+
+    @Override
+    public long getOfferTimestamp() {
+        return this.offerTimestamp;
+    }
+
+    @Override
+    public long getAcceptTimestamp() {
+        return this.acceptTimestamp;
+    }
+
+    @Override
+    public boolean hasDoneTimestamp() {
+        return (this.doneTimestamp > 0);
+    }
+
+    @Override
+    public long getDoneTimestamp() {
+        return this.doneTimestamp;
+    }
+
+    @Override
+    public long getOfferToAcceptTime() {
+        return (this.acceptTimestamp - this.offerTimestamp);
+    }
+
+    @Override
+    public long getOfferToDoneTime() {
+        if (isDone()) {
+            return (this.doneTimestamp - this.offerTimestamp);
+        } else {
+            return -1;
+        }
+    }
+
+    @Override
+    public long getAcceptToDoneTime() {
+        if (isDone()) {
+            return (this.doneTimestamp - this.acceptTimestamp);
+        } else {
+            return -1;
+        }
+    }
+
+    @Override
+    public boolean isDone() {
+        return (this.state.get() == STATE_DONE);
+    }
+
+    @Override
+    public boolean isSuccess() {
+        return (isDone() && this.response != null);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return (isDone() && this.response == null && this.cause == null);
+    }
+
+    @Override
+    public void complete(P response) {
+        complete(response, System.currentTimeMillis());
+    }
+
+    @Override
+    public void complete(P response, long doneTimestamp) {
+        boolean done = completeHelper(response, doneTimestamp);
+        safelyRemoveRequestInWindow(done);
+        notifyListeners();
+    }
+
+    @Override
+    public void fail(Throwable t) {
+        fail(t, System.currentTimeMillis());
+    }
+
+    @Override
+    public void fail(Throwable t, long doneTimestamp) {
+        boolean done = failedHelper(t, doneTimestamp);
+        safelyRemoveRequestInWindow(done);
+        notifyListeners();
+    }
+
+    @Override
+    public void cancel() {
+        cancel(System.currentTimeMillis());
+    }
+
+    @Override
+    public void cancel(long doneTimestamp) {
+        boolean done = cancelHelper(doneTimestamp);
+        safelyRemoveRequestInWindow(done);
+        notifyListeners();
+    }
+
+    private void safelyRemoveRequestInWindow(boolean done) {
+        ConcurrentWindow<K,R,P> window0 = this.window.get();
+        if (window0 != null) {
+            window0.removeHelper(key, this, done);
+        }
+    }
+
+    boolean completeHelper(P response, long doneTimestamp) {
+        if (response == null) {
+            throw new IllegalArgumentException("A response cannot be null if trying to complete()");
+        }
+        if (doneTimestamp <= 0) {
+            throw new IllegalArgumentException("A valid doneTime must be > 0 if trying to complete()");
+        }
+        return done(response, null, doneTimestamp);
+    }
+
+    boolean failedHelper(Throwable t, long doneTimestamp) {
+        if (t == null) {
+            throw new IllegalArgumentException("A response cannot be null if trying to failed()");
+        }
+        if (doneTimestamp <= 0) {
+            throw new IllegalArgumentException("A valid doneTimestamp must be > 0 if trying to failed()");
+        }
+        return done(null, t, doneTimestamp);
+    }
+
+    boolean cancelHelper(long doneTimestamp) {
+        if (doneTimestamp <= 0) {
+            throw new IllegalArgumentException("A valid doneTimestamp must be > 0 if trying to cancel()");
+        }
+        return done(null, null, doneTimestamp);
+    }
+
+    /**
+     * Transitions this future to done exactly once.  The outcome is published
+     * before isDone() returns true and before any waiters are released.
+     * @return True if this call completed the future, false if it was already
+     *      done (duplicate calls are ignored).
+     */
+    private boolean done(P response, Throwable cause, long doneTimestamp) {
+        if (!this.state.compareAndSet(STATE_PENDING, STATE_COMPLETING)) {
+            return false;
+        }
+        this.response = response;
+        this.cause = cause;
+        this.doneTimestamp = doneTimestamp;
+        this.state.set(STATE_DONE);
+        this.doneLatch.countDown();
+        return true;
+    }
+
+    @Override
+    public void addListener(WindowFutureListener<K,R,P> listener) {
+        this.listeners.add(this, listener);
+    }
+
+    /**
+     * Notifies listeners this future is done.  Called after one of the helper
+     * methods once the slot of this future was returned to the window.  Safe
+     * to call more than once.
+     */
+    void notifyListeners() {
+        if (isDone()) {
+            this.listeners.notify(this);
+        }
+    }
+
+    @Override
+    public boolean await() throws InterruptedException {
+        // wait for only offerTimeoutMillis - offerToAcceptTime
+        long remainingTimeoutMillis = this.originalOfferTimeoutMillis - this.getOfferToAcceptTime();
+        return this.await(remainingTimeoutMillis);
+    }
+
+    @Override
+    public boolean await(long timeoutMillis) throws InterruptedException {
+        // k, if someone actually calls this method -- make sure to set the flag
+        this.setCallerStateHint(CALLER_WAITING);
+
+        if (!this.doneLatch.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            // caller intended on waiting, but timed out while waiting for a response
+            this.setCallerStateHint(CALLER_WAITING_TIMEOUT);
+            return false;
+        }
+        return true;
+    }
+}
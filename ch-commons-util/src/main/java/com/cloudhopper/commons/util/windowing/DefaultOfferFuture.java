@@ -0,0 +1,189 @@
+package com.cloudhopper.commons.util.windowing;
+
+/*
+ * #%L
+ * ch-commons-util
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Default implementation of an OfferFuture shared by Window and
+ * ConcurrentWindow.  A window first claim()s a pending offer (after which
+ * it can no longer be cancelled), then either accepts or fails it, and
+ * finally notifies its listeners outside of any lock.
+ */
+class DefaultOfferFuture<K,R,P> implements OfferFuture<K,R,P> {
+    private static final Logger logger = LoggerFactory.getLogger(DefaultOfferFuture.class);
+
+    static private final int STATE_PENDING = 0;
+    static private final int STATE_CLAIMED = 1;
+    static private final int STATE_ACCEPTED = 2;
+    static private final int STATE_FAILED = 3;
+    static private final int STATE_CANCELLED = 4;
+
+    private final K key;
+    private final R request;
+    private final long expireTimeoutMillis;
+    private final long offerTimestamp;
+    private final AtomicInteger state;
+    private final CountDownLatch doneLatch;
+    private volatile WindowFuture<K,R,P> windowFuture;
+    private volatile Throwable cause;
+    private List<OfferFutureListener<K,R,P>> listeners;
+    private boolean notified;
+
+    public DefaultOfferFuture(K key, R request, long expireTimeoutMillis, long offerTimestamp) {
+        this.key = key;
+        this.request = request;
+        this.expireTimeoutMillis = expireTimeoutMillis;
+        this.offerTimestamp = offerTimestamp;
+        this.state = new AtomicInteger(STATE_PENDING);
+        this.doneLatch = new CountDownLatch(1);
+    }
+
+    @Override
+    public K getKey() {
+        return this.key;
+    }
+
+    @Override
+    public R getRequest() {
+        return this.request;
+    }
+
+    public long getExpireTimeoutMillis() {
+        return this.expireTimeoutMillis;
+    }
+
+    @Override
+    public long getOfferTimestamp() {
+        return this.offerTimestamp;
+    }
+
+    @Override
+    public boolean isDone() {
+        return (this.state.get() > STATE_CLAIMED);
+    }
+
+    @Override
+    public boolean isAccepted() {
+        return (this.state.get() == STATE_ACCEPTED);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return (this.state.get() == STATE_CANCELLED);
+    }
+
+    @Override
+    public WindowFuture<K,R,P> getWindowFuture() {
+        return this.windowFuture;
+    }
+
+    @Override
+    public Throwable getCause() {
+        return this.cause;
+    }
+
+    @Override
+    public boolean cancel() {
+        if (this.state.compareAndSet(STATE_PENDING, STATE_CANCELLED)) {
+            // the window drops cancelled offers when it next looks at its queue
+            this.doneLatch.countDown();
+            notifyListeners();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Claims this offer for acceptance by a window.  Once claimed, an offer
+     * can no longer be cancelled and must be either accepted or failed.
+     * @return True if claimed, false if the offer was cancelled.
+     */
+    boolean claim() {
+        return this.state.compareAndSet(STATE_PENDING, STATE_CLAIMED);
+    }
+
+    void accepted(WindowFuture<K,R,P> windowFuture) {
+        this.windowFuture = windowFuture;
+        this.state.set(STATE_ACCEPTED);
+        this.doneLatch.countDown();
+    }
+
+    void failed(Throwable t) {
+        this.cause = t;
+        this.state.set(STATE_FAILED);
+        this.doneLatch.countDown();
+    }
+
+    @Override
+    public boolean await(long timeoutMillis) throws InterruptedException {
+        return this.doneLatch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void addListener(OfferFutureListener<K,R,P> listener) {
+        synchronized (this) {
+            if (!this.notified) {
+                if (this.listeners == null) {
+                    this.listeners = new ArrayList<OfferFutureListener<K,R,P>>(2);
+                }
+                this.listeners.add(listener);
+                return;
+            }
+        }
+        notifyListener(listener);
+    }
+
+    /**
+     * Calls every listener added so far.  Must only be called once done and
+     * never while holding a window lock.  Only the first call does anything.
+     */
+    void notifyListeners() {
+        List<OfferFutureListener<K,R,P>> listeners0;
+        synchronized (this) {
+            if (this.notified) {
+                return;
+            }
+            this.notified = true;
+            listeners0 = this.listeners;
+            this.listeners = null;
+        }
+        if (listeners0 != null) {
+            for (OfferFutureListener<K,R,P> listener : listeners0) {
+                notifyListener(listener);
+            }
+        }
+    }
+
+    private void notifyListener(OfferFutureListener<K,R,P> listener) {
+        try {
+            listener.done(this);
+        } catch (Throwable t) {
+            logger.error("Ignoring uncaught exception thrown in listener: ", t);
+        }
+    }
+}
@@ -51,6 +51,9 @@ public class DefaultWindowFuture<K,R,P> implements WindowFuture<K,R,P> {
     private final long acceptTimestamp;
     private final long expireTimestamp;
     private final AtomicLong doneTimestamp;
+    private final WindowFutureListeners<K,R,P> listeners;
+    // entry in the window's expire index (null if this future never expires)
+    WindowExpireIndex.Node<DefaultWindowFuture<K,R,P>> expireNode;
 
     /**
      * Creates a new DefaultWindowFuture.
@@ -86,6 +89,7 @@ public class DefaultWindowFuture<K,R,P> implements WindowFuture<K,R,P> {
         this.acceptTimestamp = acceptTimestamp;
         this.expireTimestamp = expireTimestamp;
         this.doneTimestamp = new AtomicLong(0);    
+        this.listeners = new WindowFutureListeners<K,R,P>();
     }
     
     @Override
@@ -210,6 +214,7 @@ public class DefaultWindowFuture<K,R,P> implements WindowFuture<K,R,P> {
         completeHelper(response, doneTimestamp);
         safelyRemoveRequestInWindow();
         lockAndSignalAll();
+        notifyListeners();
     }
     
     private void safelyRemoveRequestInWindow() {
@@ -246,6 +251,7 @@ public class DefaultWindowFuture<K,R,P> implements WindowFuture<K,R,P> {
         failedHelper(t, doneTimestamp);
         safelyRemoveRequestInWindow();
         lockAndSignalAll();
+        notifyListeners();
     }
     
     void failedHelper(Throwable t, long doneTimestamp) {
@@ -278,6 +284,7 @@ public class DefaultWindowFuture<K,R,P> implements WindowFuture<K,R,P> {
         cancelHelper(doneTimestamp);
         safelyRemoveRequestInWindow();
         lockAndSignalAll();
+        notifyListeners();
     }
     
     void cancelHelper(long doneTimestamp) {
@@ -290,6 +297,22 @@ public class DefaultWindowFuture<K,R,P> implements WindowFuture<K,R,P> {
         }
     }
     
+    @Override
+    public void addListener(WindowFutureListener<K,R,P> listener) {
+        this.listeners.add(this, listener);
+    }
+    
+    /**
+     * Notifies listeners this future is done.  Must be called after one of
+     * the helper methods by whoever called it, once the window lock was
+     * released.  Safe to call more than once.
+     */
+    void notifyListeners() {
+        if (this.done.get()) {
+            this.listeners.notify(this);
+        }
+    }
+    
     @Override
     public boolean await() throws InterruptedException {
         // wait for only offerTimeoutMillis - offerToAcceptTime
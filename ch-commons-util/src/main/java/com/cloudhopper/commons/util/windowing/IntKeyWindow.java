@@ -0,0 +1,529 @@
+package com.cloudhopper.commons.util.windowing;
+
+/*
+ * #%L
+ * ch-commons-util
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A window of requests keyed by an int (such as a protocol's sequence number)
+ * that doesn't create any garbage while offering and completing requests.
+ * It has the same semantics as a Window, but:
+ * <ul>
+ *   <li>Keys are never boxed.  Futures are stored in an open-addressed hash
+ *      table of ints instead of a ConcurrentHashMap (no Integer keys and no
+ *      map entries).</li>
+ *   <li>Futures are pooled.  A future passed to recycle() once nobody uses it
+ *      anymore is reused by a later offer.  Futures that are never recycled
+ *      are simply garbage collected.</li>
+ *   <li>Callers in IntKeyWindowFuture.await() wait on their own future, so
+ *      completing a request only wakes up the threads waiting on it and at
+ *      most one blocked offer.</li>
+ *   <li>There is no monitor thread: call cancelAllExpired() periodically
+ *      if requests are offered with an expire timeout.  It scans the entire
+ *      window, which is cheap for the window sizes protocols use.</li>
+ * </ul>
+ */
+public class IntKeyWindow<R,P> {
+
+    private final int maxSize;
+    // open-addressed (linear probing) table of futures by key (guarded by lock)
+    private final IntKeyWindowFuture<R,P>[] table;
+    private final int mask;
+    private int size;
+    // recycled futures (guarded by lock)
+    private final IntKeyWindowFuture<R,P>[] pool;
+    private int poolSize;
+    private final ReentrantLock lock;
+    private final Condition slotFreedCondition;
+    // number of threads waiting to offer a request to be accepted (guarded by lock)
+    private int pendingOffers;
+    private boolean pendingOffersAborted;
+
+    /**
+     * Creates a new window with the specified max window size.
+     * @param size The maximum number of requests permitted to
+     *      be outstanding (unacknowledged) at a given time.  Must be > 0.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public IntKeyWindow(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be > 0");
+        }
+        this.maxSize = size;
+        // at most half full, so probe sequences stay short
+        int capacity = Integer.highestOneBit(size) << 2;
+        this.table = new IntKeyWindowFuture[capacity];
+        this.mask = capacity - 1;
+        this.pool = new IntKeyWindowFuture[size];
+        this.lock = new ReentrantLock();
+        this.slotFreedCondition = this.lock.newCondition();
+    }
+
+    /**
+     * Gets the max size of the window.  This is the max number of requests that
+     * can be outstanding (unresponded to) in this window.
+     * @return The max size of the window
+     */
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * Gets the current number of requests in the window.
+     * @return The current number of pending requests
+     */
+    public int getSize() {
+        this.lock.lock();
+        try {
+            return this.size;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the current number of request that would be accepted by this
+     * window without blocking.  In order words, the number of free slots.
+     * @return The free size of this window
+     */
+    public int getFreeSize() {
+        return this.maxSize - getSize();
+    }
+
+    /**
+     * Returns true if and only if a future with this key exists in this window.
+     * @param key The key for the future
+     * @return True if the request exists, otherwise false.
+     */
+    public boolean containsKey(int key) {
+        return (get(key) != null);
+    }
+
+    /**
+     * Gets the a future by its key.
+     * @param key The key for the request
+     * @return The future or null if it doesn't exist.
+     */
+    public IntKeyWindowFuture<R,P> get(int key) {
+        this.lock.lock();
+        try {
+            int index = indexOf(key);
+            return (index < 0 ? null : this.table[index]);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the current number of callers/threads that are waiting for a pending
+     * offer to be accepted.
+     */
+    public int getPendingOfferCount() {
+        this.lock.lock();
+        try {
+            return this.pendingOffers;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Offers a request for acceptance, waiting for the specified amount of time
+     * in case it could not immediately accepted. The "caller state hint" of
+     * the returned future will be set to "NOT_WAITING". The expireTimestamp of
+     * the returned future will be set to -1 (infinity/never expires).
+     * @see #offer(int, java.lang.Object, long, long, boolean)
+     */
+    public IntKeyWindowFuture<R,P> offer(int key, R request, long offerTimeoutMillis) throws DuplicateKeyException, OfferTimeoutException, InterruptedException {
+        return this.offer(key, request, offerTimeoutMillis, -1, false);
+    }
+
+    /**
+     * Offers a request for acceptance, waiting for the specified amount of time
+     * in case it could not immediately accepted. The "caller state hint" of
+     * the returned future will be set to "NOT_WAITING".
+     * @see #offer(int, java.lang.Object, long, long, boolean)
+     */
+    public IntKeyWindowFuture<R,P> offer(int key, R request, long offerTimeoutMillis, long expireTimeoutMillis) throws DuplicateKeyException, OfferTimeoutException, InterruptedException {
+        return this.offer(key, request, offerTimeoutMillis, expireTimeoutMillis, false);
+    }
+
+    /**
+     * Offers a request for acceptance, waiting for the specified amount of time
+     * in case it could not immediately accepted.
+     * @param key The key for the request. A protocol's sequence number is a
+     *      good choice.
+     * @param request The request to offer
+     * @param offerTimeoutMillis The amount of time (in milliseconds) to wait
+     *      for the offer to be accepted.
+     * @param expireTimeoutMillis The amount of time (in milliseconds) that a
+     *      request will be set to expire after acceptance.  A value &lt; 1 is
+     *      assumed to be an infinite expiration (request never expires).
+     * @param callerWaitingHint If true the "caller state hint" of the
+     *      future will be set to "WAITING" during construction.
+     * @return A future representing pending completion of the request
+     * @throws DuplicateKeyException Thrown if the key already exists
+     * @throws PendingOfferAbortedException Thrown if the offer could not be
+     *      immediately accepted and the caller/thread was waiting, but
+     *      the abortPendingOffers() method was called in the meantime.
+     * @throws OfferTimeoutException Thrown if the offer could not be accepted
+     *      within the specified amount of time.
+     * @throws InterruptedException Thrown if the calling thread is interrupted
+     *      while waiting to acquire the internal lock.
+     */
+    public IntKeyWindowFuture<R,P> offer(int key, R request, long offerTimeoutMillis, long expireTimeoutMillis, boolean callerWaitingHint) throws DuplicateKeyException, OfferTimeoutException, PendingOfferAbortedException, InterruptedException {
+        if (offerTimeoutMillis < 0) {
+            throw new IllegalArgumentException("offerTimeoutMillis must be >= 0 [actual=" + offerTimeoutMillis + "]");
+        }
+
+        long offerTimestamp = System.currentTimeMillis();
+
+        this.lock.lockInterruptibly();
+        try {
+            // does this key already exist?
+            if (indexOf(key) >= 0) {
+                throw new DuplicateKeyException("The key [" + key + "] already exists in the window");
+            }
+
+            // NOTE: multiple signals may be received that will need to be ignored
+            if (this.size >= this.maxSize) {
+                boolean slotFreed = false;
+                this.pendingOffers++;
+                try {
+                    while (this.size >= this.maxSize) {
+                        // check if slow waiting was canceled (terminate early)
+                        if (this.pendingOffersAborted) {
+                            throw new PendingOfferAbortedException("Pending offer aborted (by an explicit call to abortPendingOffers())");
+                        }
+                        // check if there time remaining to wait
+                        long currentOfferTime = System.currentTimeMillis() - offerTimestamp;
+                        if (currentOfferTime >= offerTimeoutMillis) {
+                            throw new OfferTimeoutException("Unable to accept offer within [" + offerTimeoutMillis + " ms] (window full)");
+                        }
+                        this.slotFreedCondition.await(offerTimeoutMillis - currentOfferTime, TimeUnit.MILLISECONDS);
+                    }
+                    // the key may have been added while waiting
+                    if (indexOf(key) >= 0) {
+                        throw new DuplicateKeyException("The key [" + key + "] already exists in the window");
+                    }
+                    slotFreed = true;
+                } finally {
+                    if (--this.pendingOffers == 0) {
+                        this.pendingOffersAborted = false;
+                    } else if (!slotFreed && this.size < this.maxSize) {
+                        // pass along a signal this offer may have consumed without using
+                        this.slotFreedCondition.signal();
+                    }
+                }
+            }
+
+            long acceptTimestamp = System.currentTimeMillis();
+            long expireTimestamp = (expireTimeoutMillis > 0 ? (acceptTimestamp + expireTimeoutMillis) : -1);
+            int callerStateHint = (callerWaitingHint ? WindowFuture.CALLER_WAITING : WindowFuture.CALLER_NOT_WAITING);
+            IntKeyWindowFuture<R,P> future = (this.poolSize > 0 ? this.pool[--this.poolSize] : new IntKeyWindowFuture<R,P>(this));
+            this.pool[this.poolSize] = null;
+            future.pooled = false;
+            future.init(key, request, callerStateHint, offerTimeoutMillis, this.size + 1, offerTimestamp, acceptTimestamp, expireTimestamp);
+            insert(future);
+            return future;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a future that is done to the pool of this window, so it can be
+     * reused by a later offer.  The future (and its request and response) must
+     * not be used by anyone after calling this method.
+     * @param future The future to recycle
+     * @throws IllegalArgumentException Thrown if the future was created by
+     *      another window, isn't done yet, or was already recycled.
+     */
+    public void recycle(IntKeyWindowFuture<R,P> future) {
+        if (future.window != this) {
+            throw new IllegalArgumentException("Future was created by another window");
+        }
+        this.lock.lock();
+        try {
+            // checked under the lock: a future completed directly is only done
+            // once it's no longer in the table
+            if (future.inWindow || !future.isDone()) {
+                throw new IllegalArgumentException("Only futures that are done can be recycled");
+            }
+            if (future.pooled) {
+                throw new IllegalArgumentException("Future was already recycled");
+            }
+            future.clear();
+            future.pooled = true;
+            if (this.poolSize < this.pool.length) {
+                this.pool[this.poolSize++] = future;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Successfully completes a request by setting the response on the associated
+     * future.  Only callers/threads waiting on this future are signaled.  Also,
+     * since this frees up a slot in the window, one caller/thread blocked with
+     * a pending offer will be signaled to continue.
+     * @param key The key for the original request
+     * @param response The response to set on the associated future. Null
+     *      responses are not accepted (use cancel()) instead.
+     * @return A future representing the entire operation or null if the key
+     *      doesn't exist in this window.
+     * @throws InterruptedException Thrown if the calling thread is interrupted
+     *      and we're currently waiting to acquire the internal lock.
+     */
+    public IntKeyWindowFuture<R,P> complete(int key, P response) throws InterruptedException {
+        if (response == null) {
+            throw new IllegalArgumentException("Null responses are illegal. Use cancel() instead.");
+        }
+        return doneHelper(key, response, null);
+    }
+
+    /**
+     * Fails (completes) a request by setting the cause of the failure on the
+     * associated future.  Only callers/threads waiting on this future are
+     * signaled.  Also, since this frees up a slot in the window, one
+     * caller/thread blocked with a pending offer will be signaled to continue.
+     * @param key The key for the original request
+     * @param t The throwable to set as the failure cause on the associated future.
+     *      Null values are not accepted (use cancel()) instead.
+     * @return A future representing the entire operation or null if the key
+     *      doesn't exist in this window.
+     * @throws InterruptedException Thrown if the calling thread is interrupted
+     *      and we're currently waiting to acquire the internal lock.
+     */
+    public IntKeyWindowFuture<R,P> fail(int key, Throwable t) throws InterruptedException {
+        if (t == null) {
+            throw new IllegalArgumentException("Null throwables are illegal. Use cancel() instead.");
+        }
+        return doneHelper(key, null, t);
+    }
+
+    /**
+     * Cancels (completes) a request.  Only callers/threads waiting on this
+     * future are signaled.  Also, since this frees up a slot in the window,
+     * one caller/thread blocked with a pending offer will be signaled to continue.
+     * @param key The key for the original request
+     * @return A future representing the entire operation or null if the key
+     *      doesn't exist in this window.
+     * @throws InterruptedException Thrown if the calling thread is interrupted
+     *      and we're currently waiting to acquire the internal lock.
+     */
+    public IntKeyWindowFuture<R,P> cancel(int key) throws InterruptedException {
+        return doneHelper(key, null, null);
+    }
+
+    private IntKeyWindowFuture<R,P> doneHelper(int key, P response, Throwable cause) throws InterruptedException {
+        IntKeyWindowFuture<R,P> future;
+        this.lock.lockInterruptibly();
+        try {
+            int index = indexOf(key);
+            if (index < 0) {
+                return null;
+            }
+            future = this.table[index];
+            delete(index);
+            future.doneHelper(response, cause, System.currentTimeMillis());
+            this.slotFreedCondition.signal();
+        } finally {
+            this.lock.unlock();
+        }
+        future.notifyListeners();
+        return future;
+    }
+
+    /**
+     * Fails (completes) all requests by setting the same cause of the failure
+     * on all associated futures.
+     * @param t The throwable to set as the failure cause on all associated futures.
+     *      Null values are not accepted (use cancelAll()) instead.
+     * @return A list of all futures that were failed.
+     */
+    public List<IntKeyWindowFuture<R,P>> failAll(Throwable t) {
+        if (t == null) {
+            throw new IllegalArgumentException("Null throwables are illegal. Use cancelAll() instead.");
+        }
+        return doneAllHelper(t, false);
+    }
+
+    /**
+     * Cancels (completes) all requests.
+     * @return A list of all futures that were cancelled.
+     */
+    public List<IntKeyWindowFuture<R,P>> cancelAll() {
+        return doneAllHelper(null, false);
+    }
+
+    /**
+     * Cancels (completes) all expired requests. A request is considered expired
+     * if it has an expireTimestamp set and the current time is &gt;= the
+     * getExpireTimestamp() value.
+     * @return A list of all expired futures that were cancelled.
+     */
+    public List<IntKeyWindowFuture<R,P>> cancelAllExpired() {
+        return doneAllHelper(null, true);
+    }
+
+    private List<IntKeyWindowFuture<R,P>> doneAllHelper(Throwable cause, boolean expiredOnly) {
+        List<IntKeyWindowFuture<R,P>> done = new ArrayList<IntKeyWindowFuture<R,P>>();
+        long now = System.currentTimeMillis();
+        this.lock.lock();
+        try {
+            for (IntKeyWindowFuture<R,P> future : this.table) {
+                if (future != null && (!expiredOnly || (future.hasExpireTimestamp() && now >= future.getExpireTimestamp()))) {
+                    done.add(future);
+                }
+            }
+            // deleting from the table moves entries, so delete after scanning
+            for (IntKeyWindowFuture<R,P> future : done) {
+                delete(indexOf(future.key));
+                future.doneHelper(null, cause, now);
+            }
+            if (done.size() > 0) {
+                this.slotFreedCondition.signalAll();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        for (IntKeyWindowFuture<R,P> future : done) {
+            future.notifyListeners();
+        }
+        return done;
+    }
+
+    /**
+     * Aborts all current callers/threads waiting for a pending offer to be
+     * accepted by the window.
+     * @return True if there were threads/callers that have a pending offer.
+     * @throws InterruptedException Thrown if the calling thread was interrupted
+     *      while waiting to obtain the lock.
+     */
+    public boolean abortPendingOffers() throws InterruptedException {
+        this.lock.lockInterruptibly();
+        try {
+            if (this.pendingOffers > 0) {
+                this.pendingOffersAborted = true;
+                this.slotFreedCondition.signalAll();
+                return true;
+            } else {
+                return false;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Destroy this window by aborting all pending offers and cancelling all
+     * outstanding futures.
+     */
+    public void destroy() {
+        try {
+            this.abortPendingOffers();
+        } catch (Exception e) { }
+        this.cancelAll();
+    }
+
+    /**
+     * Called by a future completed directly (not through this window).  Just
+     * like doneHelper(), the future is removed from the table before it's
+     * marked as done, so once isDone() returns true it's safe to recycle it.
+     * @return True if this call completed the future
+     */
+    boolean doneDirectlyHelper(IntKeyWindowFuture<R,P> future, P response, Throwable cause, long doneTimestamp) {
+        this.lock.lock();
+        try {
+            // a future no longer in the table was already done (or recycled)
+            if (!future.inWindow) {
+                return false;
+            }
+            delete(indexOf(future.key));
+            future.doneHelper(response, cause, doneTimestamp);
+            this.slotFreedCondition.signal();
+        } finally {
+            this.lock.unlock();
+        }
+        future.notifyListeners();
+        return true;
+    }
+
+    static private int hash(int key) {
+        // sequence numbers are consecutive: spread them over the table
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // must hold lock
+    private int indexOf(int key) {
+        int index = hash(key) & this.mask;
+        IntKeyWindowFuture<R,P> future;
+        while ((future = this.table[index]) != null) {
+            if (future.key == key) {
+                return index;
+            }
+            index = (index + 1) & this.mask;
+        }
+        return -1;
+    }
+
+    // must hold lock and have checked the key doesn't exist and a slot is free
+    private void insert(IntKeyWindowFuture<R,P> future) {
+        int index = hash(future.key) & this.mask;
+        while (this.table[index] != null) {
+            index = (index + 1) & this.mask;
+        }
+        this.table[index] = future;
+        this.size++;
+        future.inWindow = true;
+    }
+
+    // must hold lock: deletes without tombstones by shifting back any entry
+    // further along the probe sequence that would no longer be found
+    private void delete(int index) {
+        this.table[index].inWindow = false;
+        this.table[index] = null;
+        this.size--;
+        int next = index;
+        while (true) {
+            next = (next + 1) & this.mask;
+            IntKeyWindowFuture<R,P> future = this.table[next];
+            if (future == null) {
+                return;
+            }
+            int home = hash(future.key) & this.mask;
+            // can the entry stay where it is (its home is cyclically in (index, next])?
+            boolean stays = (index <= next) ? (index < home && home <= next) : (index < home || home <= next);
+            if (!stays) {
+                this.table[index] = future;
+                this.table[next] = null;
+                index = next;
+            }
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package com.cloudhopper.commons.util.windowing;
+
+/*
+ * #%L
+ * ch-commons-util
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * WindowFuture created by an IntKeyWindow.  Instances are pooled by their
+ * window and reused for new requests once passed to IntKeyWindow.recycle(),
+ * so a future must not be used by anyone after it was recycled.
+ * <br><br>
+ * Callers in await() wait on the monitor of this future, so completing one
+ * request only wakes the threads waiting on that request.
+ */
+public class IntKeyWindowFuture<R,P> implements WindowFuture<Integer,R,P> {
+
+    final IntKeyWindow<R,P> window;
+    // true while in the window's table, true while in the window's pool
+    // (both guarded by the window lock)
+    boolean inWindow;
+    boolean pooled;
+    // all fields below are (re)initialized by the window while holding its lock
+    int key;
+    private R request;
+    private volatile P response;
+    private volatile Throwable cause;
+    private volatile boolean done;
+    private volatile long doneTimestamp;
+    private volatile int callerStateHint;
+    private long originalOfferTimeoutMillis;
+    private int windowSize;
+    private long offerTimestamp;
+    private long acceptTimestamp;
+    private long expireTimestamp;
+    // created the first time a listener is added (guarded by this)
+    private WindowFutureListeners<Integer,R,P> listeners;
+
+    IntKeyWindowFuture(IntKeyWindow<R,P> window) {
+        this.window = window;
+    }
+
+    void init(int key, R request, int callerStateHint, long originalOfferTimeoutMillis, int windowSize, long offerTimestamp, long acceptTimestamp, long expireTimestamp) {
+        this.key = key;
+        this.request = request;
+        this.callerStateHint = callerStateHint;
+        this.originalOfferTimeoutMillis = originalOfferTimeoutMillis;
+        this.windowSize = windowSize;
+        this.offerTimestamp = offerTimestamp;
+        this.acceptTimestamp = acceptTimestamp;
+        this.expireTimestamp = expireTimestamp;
+    }
+
+    /**
+     * Clears this future so it can be reused (and doesn't hold on to the
+     * request or response).
+     */
+    synchronized void clear() {
+        this.request = null;
+        this.response = null;
+        this.cause = null;
+        this.done = false;
+        this.doneTimestamp = 0;
+        this.listeners = null;
+    }
+
+    /**
+     * Gets the key of the request without boxing it.
+     * @return The key of the request
+     */
+    public int getIntKey() {
+        return this.key;
+    }
+
+    /**
+     * Gets the key of the request.  Boxes the key, so use getIntKey() instead
+     * where garbage matters.
+     */
+    @Override
+    public Integer getKey() {
+        return Integer.valueOf(this.key);
+    }
+
+    @Override
+    public R getRequest() {
+        return this.request;
+    }
+
+    @Override
+    public P getResponse() {
+        return this.response;
+    }
+
+    @Override
+    public Throwable getCause() {
+        return this.cause;
+    }
+
+    @Override
+    public int getCallerStateHint() {
+        return this.callerStateHint;
+    }
+
+    public void setCallerStateHint(int callerState) {
+        this.callerStateHint = callerState;
+    }
+
+    @Override
+    public boolean isCallerWaiting() {
+        return (this.callerStateHint == CALLER_WAITING);
+    }
+
+    @Override
+    public int getWindowSize() {
+        return this.windowSize;
+    }
+
+    @Override
+    public boolean hasExpireTimestamp() {
+        return (this.expireTimestamp > 0);
+    }
+
+    @Override
+    public long getExpireTimestamp() {
+        return this.expireTimestamp;
+    }
+
+    @Override
+    public long getOfferTimestamp() {
+        return this.offerTimestamp;
+    }
+
+    @Override
+    public long getAcceptTimestamp() {
+        return this.acceptTimestamp;
+    }
+
+    @Override
+    public boolean hasDoneTimestamp() {
+        return (this.doneTimestamp > 0);
+    }
+
+    @Override
+    public long getDoneTimestamp() {
+        return this.doneTimestamp;
+    }
+
+    @Override
+    public long getOfferToAcceptTime() {
+        return (this.acceptTimestamp - this.offerTimestamp);
+    }
+
+    @Override
+    public long getOfferToDoneTime() {
+        if (isDone()) {
+            return (this.doneTimestamp - this.offerTimestamp);
+        } else {
+            return -1;
+        }
+    }
+
+    @Override
+    public long getAcceptToDoneTime() {
+        if (isDone()) {
+            return (this.doneTimestamp - this.acceptTimestamp);
+        } else {
+            return -1;
+        }
+    }
+
+    @Override
+    public boolean isDone() {
+        return this.done;
+    }
+
+    @Override
+    public boolean isSuccess() {
+        return (this.done && this.response != null);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return (this.done && this.response == null && this.cause == null);
+    }
+
+    @Override
+    public void complete(P response) {
+        complete(response, System.currentTimeMillis());
+    }
+
+    @Override
+    public void complete(P response, long doneTimestamp) {
+        if (response == null) {
+            throw new IllegalArgumentException("A response cannot be null if trying to complete()");
+        }
+        doneDirectly(response, null, doneTimestamp);
+    }
+
+    @Override
+    public void fail(Throwable t) {
+        fail(t, System.currentTimeMillis());
+    }
+
+    @Override
+    public void fail(Throwable t, long doneTimestamp) {
+        if (t == null) {
+            throw new IllegalArgumentException("A response cannot be null if trying to failed()");
+        }
+        doneDirectly(null, t, doneTimestamp);
+    }
+
+    @Override
+    public void cancel() {
+        cancel(System.currentTimeMillis());
+    }
+
+    @Override
+    public void cancel(long doneTimestamp) {
+        doneDirectly(null, null, doneTimestamp);
+    }
+
+    private void doneDirectly(P response, Throwable cause, long doneTimestamp) {
+        if (doneTimestamp <= 0) {
+            throw new IllegalArgumentException("A valid doneTimestamp must be > 0");
+        }
+        this.window.doneDirectlyHelper(this, response, cause, doneTimestamp);
+    }
+
+    /**
+     * Transitions this future to done exactly once and wakes up any callers
+     * waiting on it.
+     * @return True if this call completed the future, false if it was already
+     *      done (duplicate calls are ignored).
+     */
+    synchronized boolean doneHelper(P response, Throwable cause, long doneTimestamp) {
+        if (this.done) {
+            return false;
+        }
+        this.response = response;
+        this.cause = cause;
+        this.doneTimestamp = doneTimestamp;
+        this.done = true;
+        this.notifyAll();
+        return true;
+    }
+
+    @Override
+    public void addListener(WindowFutureListener<Integer,R,P> listener) {
+        WindowFutureListeners<Integer,R,P> listeners0;
+        synchronized (this) {
+            if (this.listeners == null) {
+                this.listeners = new WindowFutureListeners<Integer,R,P>();
+            }
+            listeners0 = this.listeners;
+        }
+        listeners0.add(this, listener);
+        // done before the first listener was added
+        if (this.done) {
+            listeners0.notify(this);
+        }
+    }
+
+    /**
+     * Notifies listeners this future is done.  Must be called without holding
+     * the window lock.  Safe to call more than once.
+     */
+    void notifyListeners() {
+        WindowFutureListeners<Integer,R,P> listeners0;
+        synchronized (this) {
+            listeners0 = this.listeners;
+        }
+        if (listeners0 != null && this.done) {
+            listeners0.notify(this);
+        }
+    }
+
+    @Override
+    public boolean await() throws InterruptedException {
+        // wait for only offerTimeoutMillis - offerToAcceptTime
+        long remainingTimeoutMillis = this.originalOfferTimeoutMillis - this.getOfferToAcceptTime();
+        return this.await(remainingTimeoutMillis);
+    }
+
+    @Override
+    public synchronized boolean await(long timeoutMillis) throws InterruptedException {
+        // k, if someone actually calls this method -- make sure to set the flag
+        this.callerStateHint = CALLER_WAITING;
+
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long remaining = timeoutMillis;
+        while (!this.done) {
+            if (remaining <= 0) {
+                // caller intended on waiting, but timed out while waiting for a response
+                this.callerStateHint = CALLER_WAITING_TIMEOUT;
+                return false;
+            }
+            this.wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        return true;
+    }
+}
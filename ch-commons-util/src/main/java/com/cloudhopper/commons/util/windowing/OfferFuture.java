@@ -0,0 +1,107 @@
+package com.cloudhopper.commons.util.windowing;
+
+/*
+ * #%L
+ * ch-commons-util
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * The result of a non-blocking offer of a request to a window.  An offer
+ * is queued until a slot is free in the window, then accepted (and a
+ * WindowFuture for the request created).  Rather than parking a thread per
+ * pending offer, callers add a listener and send the request once it has
+ * been accepted.
+ */
+public interface OfferFuture<K,R,P> {
+
+    /**
+     * Gets the key of the request offered.
+     * @return The key of the request
+     */
+    public K getKey();
+
+    /**
+     * Gets the request offered.
+     * @return The request
+     */
+    public R getRequest();
+
+    /**
+     * Gets the timestamp in milliseconds when the request was offered.
+     * @return The offer timestamp
+     */
+    public long getOfferTimestamp();
+
+    /**
+     * Returns true if the offer is done (accepted, failed, or cancelled).
+     * @return True if done, otherwise false.
+     */
+    public boolean isDone();
+
+    /**
+     * Returns true if the offer was accepted by the window.  The future of
+     * the request is then available via getWindowFuture().
+     * @return True if accepted, otherwise false.
+     */
+    public boolean isAccepted();
+
+    /**
+     * Returns true if the offer was cancelled before it was accepted.
+     * @return True if cancelled, otherwise false.
+     */
+    public boolean isCancelled();
+
+    /**
+     * Gets the future of the request once the offer was accepted.
+     * @return The future of the request or null if not accepted.
+     */
+    public WindowFuture<K,R,P> getWindowFuture();
+
+    /**
+     * Gets the cause of the failure if the offer could not be accepted such
+     * as a DuplicateKeyException or PendingOfferAbortedException.
+     * @return The cause of the failure or null if not failed.
+     */
+    public Throwable getCause();
+
+    /**
+     * Withdraws the offer if it has not yet been accepted.  Since an offer
+     * waits indefinitely for a slot, this is how a caller implements its own
+     * offer timeout.
+     * @return True if the offer was cancelled, false if it was already done.
+     */
+    public boolean cancel();
+
+    /**
+     * Waits for this offer to be done within the specified time limit.
+     * @param timeoutMillis The amount of milliseconds to wait
+     * @return True if and only if the offer was done within the specified
+     *      time limit
+     * @throws InterruptedException Thrown if the current thread was interrupted
+     */
+    public boolean await(long timeoutMillis) throws InterruptedException;
+
+    /**
+     * Adds a listener that will be called once this offer is done.  If this
+     * offer is already done, the listener is called immediately by the
+     * calling thread.
+     * @param listener The listener to add
+     */
+    public void addListener(OfferFutureListener<K,R,P> listener);
+
+}
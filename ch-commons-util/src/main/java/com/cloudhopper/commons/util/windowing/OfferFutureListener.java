@@ -0,0 +1,38 @@
+package com.cloudhopper.commons.util.windowing;
+
+/*
+ * #%L
+ * ch-commons-util
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Interface for listening for an OfferFuture to be done.
+ */
+public interface OfferFutureListener<K,R,P> {
+
+    /**
+     * Called once an offer is done (accepted, failed, or cancelled).  Called
+     * by the thread that freed up the slot (or the thread that added the
+     * listener if the offer was already done) and never while a window holds
+     * its internal lock, so it's safe to send the request, offer, or complete
+     * requests from here.
+     * @param future The offer that is done
+     */
+    public void done(OfferFuture<K,R,P> future);
+
+}
@@ -21,6 +21,7 @@ package com.cloudhopper.commons.util.windowing;
  */
 
 import com.cloudhopper.commons.util.UnwrappedWeakReference;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -77,17 +78,22 @@ public class Window<K,R,P> {
 
     private final int maxSize;
     private final ConcurrentHashMap<K,DefaultWindowFuture<K,R,P>> futures;
+    // futures with an expire timestamp ordered by it (so monitoring doesn't scan every future)
+    private final WindowExpireIndex<DefaultWindowFuture<K,R,P>> expireIndex;
     private final ReentrantLock lock;
     private final Condition completedCondition;
     // number of threads waiting to offer a request to be accepted
     private AtomicInteger pendingOffers;
     private AtomicBoolean pendingOffersAborted;
+    // non-blocking offers waiting for a slot, oldest first (guarded by lock)
+    private final ArrayDeque<DefaultOfferFuture<K,R,P>> asyncOffers;
     // for scheduling tasks (such as expiring requests)
     private final ScheduledExecutorService executor;
     private ScheduledFuture<?> monitorHandle;
     private final WindowMonitor monitor;
     private final long monitorInterval;
     private final CopyOnWriteArrayList<UnwrappedWeakReference<WindowListener<K,R,P>>> listeners;
+    private volatile WindowMetricsListener<K,R,P> metricsListener;
 
     /**
      * Creates a new window with the specified max window size.  This
@@ -136,10 +142,12 @@ public class Window<K,R,P> {
         }
         this.maxSize = size;
         this.futures = new ConcurrentHashMap<K,DefaultWindowFuture<K,R,P>>(size*2);
+        this.expireIndex = new WindowExpireIndex<DefaultWindowFuture<K,R,P>>();
         this.lock = new ReentrantLock();
         this.completedCondition = this.lock.newCondition();
         this.pendingOffers = new AtomicInteger(0);
         this.pendingOffersAborted = new AtomicBoolean(false);
+        this.asyncOffers = new ArrayDeque<DefaultOfferFuture<K,R,P>>();
         this.executor = executor;
         this.monitorInterval = monitorInterval;
         this.listeners = new CopyOnWriteArrayList<UnwrappedWeakReference<WindowListener<K,R,P>>>();
@@ -215,6 +223,24 @@ public class Window<K,R,P> {
         this.listeners.remove(new UnwrappedWeakReference<WindowListener<K,R,P>>(listener));
     }
     
+    /**
+     * Sets the listener told about every request accepted, timed out, done or
+     * expired by this window (such as a WindowMetrics collector).  Its methods
+     * are called on the offer and complete paths, so they must be fast.
+     * @param metricsListener The listener or null to stop collecting metrics
+     */
+    public void setMetricsListener(WindowMetricsListener<K,R,P> metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+    
+    /**
+     * Gets the listener told about every request passing thru this window.
+     * @return The listener or null if not set
+     */
+    public WindowMetricsListener<K,R,P> getMetricsListener() {
+        return this.metricsListener;
+    }
+    
     /**
      * Gets a list of all listeners.
      * @return A list of all listeners
@@ -377,6 +403,7 @@ public class Window<K,R,P> {
                 // check if there time remaining to wait
                 long currentOfferTime = System.currentTimeMillis() - offerTimestamp;
                 if (currentOfferTime >= offerTimeoutMillis) {
+                    metricsOfferTimedOut(key, offerTimeoutMillis);
                     throw new OfferTimeoutException("Unable to accept offer within [" + offerTimeoutMillis + " ms] (window full)");
                 }
                 
@@ -399,15 +426,144 @@ public class Window<K,R,P> {
                 }
             }
             
-            long acceptTimestamp = System.currentTimeMillis();
-            long expireTimestamp = (expireTimeoutMillis > 0 ? (acceptTimestamp + expireTimeoutMillis) : -1);
-            int callerStateHint = (callerWaitingHint ? WindowFuture.CALLER_WAITING : WindowFuture.CALLER_NOT_WAITING);
-            DefaultWindowFuture<K,R,P> future = new DefaultWindowFuture<K,R,P>(this, lock, completedCondition, key, request, callerStateHint, offerTimeoutMillis, (futures.size() + 1), offerTimestamp, acceptTimestamp, expireTimestamp);
-            this.futures.put(key, future);
-            return future;
+            return acceptHelper(key, request, offerTimeoutMillis, expireTimeoutMillis, callerWaitingHint, offerTimestamp);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    
+    /*
+     * Creates the future of an accepted request and adds it to the window.
+     * Must hold the lock and have checked a free slot exists.
+     */
+    private DefaultWindowFuture<K,R,P> acceptHelper(K key, R request, long offerTimeoutMillis, long expireTimeoutMillis, boolean callerWaitingHint, long offerTimestamp) {
+        long acceptTimestamp = System.currentTimeMillis();
+        long expireTimestamp = (expireTimeoutMillis > 0 ? (acceptTimestamp + expireTimeoutMillis) : -1);
+        int callerStateHint = (callerWaitingHint ? WindowFuture.CALLER_WAITING : WindowFuture.CALLER_NOT_WAITING);
+        DefaultWindowFuture<K,R,P> future = new DefaultWindowFuture<K,R,P>(this, lock, completedCondition, key, request, callerStateHint, offerTimeoutMillis, (futures.size() + 1), offerTimestamp, acceptTimestamp, expireTimestamp);
+        future.expireNode = this.expireIndex.add(future);
+        this.futures.put(key, future);
+        WindowMetricsListener<K,R,P> metricsListener0 = this.metricsListener;
+        if (metricsListener0 != null) {
+            metricsListener0.accepted(future);
+        }
+        return future;
+    }
+    
+    /**
+     * Offers a request for acceptance without blocking the caller.  If a slot
+     * is free, the offer is accepted immediately.  Otherwise the offer is
+     * queued (behind any other queued non-blocking offers) and accepted by
+     * whichever thread frees up a slot.  Add a listener to the returned
+     * OfferFuture to send the request once it was accepted, rather than
+     * parking a thread per pending offer.
+     * <br><br>
+     * A queued offer waits indefinitely for a slot unless cancelled via
+     * OfferFuture.cancel() or all pending offers are aborted with
+     * abortPendingOffers().  The future created on acceptance has its
+     * "caller state hint" set to "NOT_WAITING".
+     * @param key The key for the request. A protocol's sequence number is a
+     *      good choice.
+     * @param request The request to offer
+     * @param expireTimeoutMillis The amount of time (in milliseconds) that a
+     *      request will be set to expire after acceptance.  A value &lt; 1 is
+     *      assumed to be an infinite expiration (request never expires).
+     * @return A future representing pending acceptance of the request
+     * @throws DuplicateKeyException Thrown if the key already exists.  If the
+     *      key is added while the offer is queued, the OfferFuture fails with
+     *      this exception instead.
+     */
+    public OfferFuture<K,R,P> offerAsync(K key, R request, long expireTimeoutMillis) throws DuplicateKeyException {
+        // does this key already exist?
+        if (this.futures.containsKey(key)) {
+            throw new DuplicateKeyException("The key [" + key + "] already exists in the window");
+        }
+        
+        DefaultOfferFuture<K,R,P> offer = new DefaultOfferFuture<K,R,P>(key, request, expireTimeoutMillis, System.currentTimeMillis());
+        List<DefaultOfferFuture<K,R,P>> accepted = null;
+        this.lock.lock();
+        try {
+            this.asyncOffers.addLast(offer);
+            accepted = acceptAsyncOffers();
         } finally {
             this.lock.unlock();
         }
+        notifyOffers(accepted);
+        return offer;
+    }
+    
+    /*
+     * Accepts queued non-blocking offers for as long as slots are free.  Must
+     * hold the lock.  Returns the offers that are now done (or null) to pass
+     * to notifyOffers() once the lock is released.
+     */
+    private List<DefaultOfferFuture<K,R,P>> acceptAsyncOffers() {
+        List<DefaultOfferFuture<K,R,P>> done = null;
+        while (getFreeSize() > 0 && !this.asyncOffers.isEmpty()) {
+            DefaultOfferFuture<K,R,P> offer = this.asyncOffers.pollFirst();
+            // skip offers cancelled while queued
+            if (!offer.claim()) {
+                continue;
+            }
+            if (this.futures.containsKey(offer.getKey())) {
+                offer.failed(new DuplicateKeyException("The key [" + offer.getKey() + "] already exists in the window"));
+            } else {
+                offer.accepted(acceptHelper(offer.getKey(), offer.getRequest(), 0, offer.getExpireTimeoutMillis(), false, offer.getOfferTimestamp()));
+            }
+            if (done == null) {
+                done = new ArrayList<DefaultOfferFuture<K,R,P>>();
+            }
+            done.add(offer);
+        }
+        return done;
+    }
+    
+    private void notifyOffers(List<DefaultOfferFuture<K,R,P>> offers) {
+        if (offers != null) {
+            for (DefaultOfferFuture<K,R,P> offer : offers) {
+                offer.notifyListeners();
+            }
+        }
+    }
+    
+    private void notifyFutures(List<WindowFuture<K,R,P>> futures) {
+        if (futures != null) {
+            for (WindowFuture<K,R,P> future : futures) {
+                ((DefaultWindowFuture<K,R,P>)future).notifyListeners();
+            }
+        }
+    }
+    
+    private void metricsOfferTimedOut(K key, long offerTimeoutMillis) {
+        WindowMetricsListener<K,R,P> metricsListener0 = this.metricsListener;
+        if (metricsListener0 != null) {
+            metricsListener0.offerTimedOut(key, offerTimeoutMillis);
+        }
+    }
+    
+    private void metricsDone(WindowFuture<K,R,P> future) {
+        WindowMetricsListener<K,R,P> metricsListener0 = this.metricsListener;
+        if (metricsListener0 != null) {
+            metricsListener0.done(future);
+        }
+    }
+    
+    private void metricsDone(List<WindowFuture<K,R,P>> futures) {
+        WindowMetricsListener<K,R,P> metricsListener0 = this.metricsListener;
+        if (metricsListener0 != null) {
+            for (WindowFuture<K,R,P> future : futures) {
+                metricsListener0.done(future);
+            }
+        }
+    }
+    
+    private void metricsExpired(List<WindowFuture<K,R,P>> futures) {
+        WindowMetricsListener<K,R,P> metricsListener0 = this.metricsListener;
+        if (metricsListener0 != null) {
+            for (WindowFuture<K,R,P> future : futures) {
+                metricsListener0.expired(future);
+            }
+        }
     }
     
     /**
@@ -453,18 +609,31 @@ public class Window<K,R,P> {
      *      while waiting to obtain the window lock.
      */
     public boolean abortPendingOffers() throws InterruptedException {
+        List<DefaultOfferFuture<K,R,P>> aborted = null;
+        boolean hadPendingOffers = false;
         this.lock.lockInterruptibly();
         try {
             if (this.pendingOffers.get() > 0) {
                 this.pendingOffersAborted.set(true);
                 this.completedCondition.signalAll();
-                return true;
-            } else {
-                return false;
+                hadPendingOffers = true;
+            }
+            // fail any queued non-blocking offers
+            while (!this.asyncOffers.isEmpty()) {
+                DefaultOfferFuture<K,R,P> offer = this.asyncOffers.pollFirst();
+                if (offer.claim()) {
+                    offer.failed(new PendingOfferAbortedException("Pending offer aborted (by an explicit call to abortPendingOffers())"));
+                    if (aborted == null) {
+                        aborted = new ArrayList<DefaultOfferFuture<K,R,P>>();
+                    }
+                    aborted.add(offer);
+                }
             }
         } finally {
             this.lock.unlock();
         }
+        notifyOffers(aborted);
+        return (hadPendingOffers || aborted != null);
     }
     
     /**
@@ -489,24 +658,33 @@ public class Window<K,R,P> {
             return null;
         }
 
+        DefaultWindowFuture<K,R,P> future;
+        List<DefaultOfferFuture<K,R,P>> accepted;
         this.lock.lockInterruptibly();
         try {
             // try to remove future from window
-            DefaultWindowFuture<K,R,P> future = this.futures.remove(key);
+            future = this.futures.remove(key);
             if (future == null) {
                 return null;
             }
             
+            this.expireIndex.remove(future.expireNode);
+            
             // set success using helper method (bypasses signalAll and requests.remove(key))
             future.completeHelper(response, System.currentTimeMillis());
 
+            // accept non-blocking offers waiting for the freed slot
+            accepted = acceptAsyncOffers();
+
             // signal that a future is completed
             this.completedCondition.signalAll();
-
-            return future;
         } finally {
             this.lock.unlock();
         }
+        metricsDone(future);
+        future.notifyListeners();
+        notifyOffers(accepted);
+        return future;
     }
     
     /**
@@ -531,24 +709,33 @@ public class Window<K,R,P> {
             return null;
         }
 
+        DefaultWindowFuture<K,R,P> future;
+        List<DefaultOfferFuture<K,R,P>> accepted;
         this.lock.lockInterruptibly();
         try {
             // try to remove future from window
-            DefaultWindowFuture<K,R,P> future = this.futures.remove(key);
+            future = this.futures.remove(key);
             if (future == null) {
                 return null;
             }
             
+            this.expireIndex.remove(future.expireNode);
+            
             // set failed using helper method (bypasses signalAll and requests.remove(key))
             future.failedHelper(t, System.currentTimeMillis());
 
+            // accept non-blocking offers waiting for the freed slot
+            accepted = acceptAsyncOffers();
+
             // signal that a future is completed
             this.completedCondition.signalAll();
-
-            return future;
         } finally {
             this.lock.unlock();
         }
+        metricsDone(future);
+        future.notifyListeners();
+        notifyOffers(accepted);
+        return future;
     }
     
     /**
@@ -569,6 +756,7 @@ public class Window<K,R,P> {
         
         List<WindowFuture<K,R,P>> failed = new ArrayList<WindowFuture<K,R,P>>();
         long now = System.currentTimeMillis();
+        List<DefaultOfferFuture<K,R,P>> accepted = null;
         this.lock.lock();
         try {
             // check every request this window contains and see if it's expired
@@ -579,15 +767,217 @@ public class Window<K,R,P> {
             
             if (failed.size() > 0) {
                 this.futures.clear();
+                this.expireIndex.clear();
+                // accept non-blocking offers waiting for the freed slots
+                accepted = acceptAsyncOffers();
                 // signal that a future is completed
                 this.completedCondition.signalAll();
             }
         } finally {
             this.lock.unlock();
         }
+        metricsDone(failed);
+        notifyFutures(failed);
+        notifyOffers(accepted);
         return failed;
     }
     
+    /**
+     * Successfully completes a batch of requests (such as a burst of responses
+     * read from one packet) by setting each response on its associated future.
+     * Unlike calling complete() for each request, the window lock is only
+     * acquired once and waiting callers/threads are only signaled once.
+     * @param responses The responses to set on the associated futures mapped
+     *      by the key of their original requests.  Null responses are not
+     *      accepted (use cancel()) instead.
+     * @return A list of all futures that were completed.  Keys that don't
+     *      exist in this window are skipped.
+     * @throws InterruptedException Thrown if the calling thread is interrupted
+     *      and we're currently waiting to acquire the internal "windowLock".
+     */
+    public List<WindowFuture<K,R,P>> completeAll(Map<K,P> responses) throws InterruptedException {
+        if (responses.containsValue(null)) {
+            throw new IllegalArgumentException("Null responses are illegal. Use cancel() instead.");
+        }
+        
+        List<WindowFuture<K,R,P>> completed = new ArrayList<WindowFuture<K,R,P>>(responses.size());
+        long now = System.currentTimeMillis();
+        List<DefaultOfferFuture<K,R,P>> accepted;
+        this.lock.lockInterruptibly();
+        try {
+            for (Map.Entry<K,P> entry : responses.entrySet()) {
+                DefaultWindowFuture<K,R,P> future = removeBatchHelper(entry.getKey());
+                if (future != null) {
+                    future.completeHelper(entry.getValue(), now);
+                    completed.add(future);
+                }
+            }
+            accepted = endBatchHelper(completed.size());
+        } finally {
+            this.lock.unlock();
+        }
+        metricsDone(completed);
+        notifyFutures(completed);
+        notifyOffers(accepted);
+        return completed;
+    }
+    
+    /**
+     * Successfully completes a batch of requests by setting each response on
+     * its associated future.  The window lock is only acquired once.
+     * @param keys The keys of the original requests
+     * @param responses The responses to set on the associated futures (in the
+     *      same order as the keys).  Null responses are not accepted (use
+     *      cancel()) instead.
+     * @return A list of all futures that were completed.  Keys that don't
+     *      exist in this window are skipped.
+     * @throws InterruptedException Thrown if the calling thread is interrupted
+     *      and we're currently waiting to acquire the internal "windowLock".
+     * @see #completeAll(java.util.Map)
+     */
+    public List<WindowFuture<K,R,P>> completeBatch(K[] keys, P[] responses) throws InterruptedException {
+        if (keys.length != responses.length) {
+            throw new IllegalArgumentException("keys and responses must be the same length");
+        }
+        for (P response : responses) {
+            if (response == null) {
+                throw new IllegalArgumentException("Null responses are illegal. Use cancel() instead.");
+            }
+        }
+        
+        List<WindowFuture<K,R,P>> completed = new ArrayList<WindowFuture<K,R,P>>(keys.length);
+        long now = System.currentTimeMillis();
+        List<DefaultOfferFuture<K,R,P>> accepted;
+        this.lock.lockInterruptibly();
+        try {
+            for (int i = 0; i < keys.length; i++) {
+                DefaultWindowFuture<K,R,P> future = removeBatchHelper(keys[i]);
+                if (future != null) {
+                    future.completeHelper(responses[i], now);
+                    completed.add(future);
+                }
+            }
+            accepted = endBatchHelper(completed.size());
+        } finally {
+            this.lock.unlock();
+        }
+        metricsDone(completed);
+        notifyFutures(completed);
+        notifyOffers(accepted);
+        return completed;
+    }
+    
+    /**
+     * Fails (completes) a batch of requests by setting each cause of the
+     * failure on its associated future.  The window lock is only acquired once.
+     * @param causes The throwables to set as the failure cause on the
+     *      associated futures mapped by the key of their original requests.
+     *      Null values are not accepted (use cancel()) instead.
+     * @return A list of all futures that were failed.  Keys that don't exist
+     *      in this window are skipped.
+     * @throws InterruptedException Thrown if the calling thread is interrupted
+     *      and we're currently waiting to acquire the internal "windowLock".
+     * @see #completeAll(java.util.Map)
+     */
+    public List<WindowFuture<K,R,P>> failAll(Map<K,Throwable> causes) throws InterruptedException {
+        if (causes.containsValue(null)) {
+            throw new IllegalArgumentException("Null throwables are illegal. Use cancel() instead.");
+        }
+        
+        List<WindowFuture<K,R,P>> failed = new ArrayList<WindowFuture<K,R,P>>(causes.size());
+        long now = System.currentTimeMillis();
+        List<DefaultOfferFuture<K,R,P>> accepted;
+        this.lock.lockInterruptibly();
+        try {
+            for (Map.Entry<K,Throwable> entry : causes.entrySet()) {
+                DefaultWindowFuture<K,R,P> future = removeBatchHelper(entry.getKey());
+                if (future != null) {
+                    future.failedHelper(entry.getValue(), now);
+                    failed.add(future);
+                }
+            }
+            accepted = endBatchHelper(failed.size());
+        } finally {
+            this.lock.unlock();
+        }
+        metricsDone(failed);
+        notifyFutures(failed);
+        notifyOffers(accepted);
+        return failed;
+    }
+    
+    /**
+     * Fails (completes) a batch of requests by setting each cause of the
+     * failure on its associated future.  The window lock is only acquired once.
+     * @param keys The keys of the original requests
+     * @param causes The throwables to set as the failure cause on the
+     *      associated futures (in the same order as the keys).  Null values
+     *      are not accepted (use cancel()) instead.
+     * @return A list of all futures that were failed.  Keys that don't exist
+     *      in this window are skipped.
+     * @throws InterruptedException Thrown if the calling thread is interrupted
+     *      and we're currently waiting to acquire the internal "windowLock".
+     * @see #completeAll(java.util.Map)
+     */
+    public List<WindowFuture<K,R,P>> failBatch(K[] keys, Throwable[] causes) throws InterruptedException {
+        if (keys.length != causes.length) {
+            throw new IllegalArgumentException("keys and causes must be the same length");
+        }
+        for (Throwable t : causes) {
+            if (t == null) {
+                throw new IllegalArgumentException("Null throwables are illegal. Use cancel() instead.");
+            }
+        }
+        
+        List<WindowFuture<K,R,P>> failed = new ArrayList<WindowFuture<K,R,P>>(keys.length);
+        long now = System.currentTimeMillis();
+        List<DefaultOfferFuture<K,R,P>> accepted;
+        this.lock.lockInterruptibly();
+        try {
+            for (int i = 0; i < keys.length; i++) {
+                DefaultWindowFuture<K,R,P> future = removeBatchHelper(keys[i]);
+                if (future != null) {
+                    future.failedHelper(causes[i], now);
+                    failed.add(future);
+                }
+            }
+            accepted = endBatchHelper(failed.size());
+        } finally {
+            this.lock.unlock();
+        }
+        metricsDone(failed);
+        notifyFutures(failed);
+        notifyOffers(accepted);
+        return failed;
+    }
+    
+    /*
+     * Removes a future to complete as part of a batch.  Must hold the lock.
+     */
+    private DefaultWindowFuture<K,R,P> removeBatchHelper(K key) {
+        DefaultWindowFuture<K,R,P> future = this.futures.remove(key);
+        if (future != null) {
+            this.expireIndex.remove(future.expireNode);
+        }
+        return future;
+    }
+    
+    /*
+     * Hands the slots freed up by a batch to pending offers with a single
+     * signal.  Must hold the lock.  Returns the non-blocking offers to pass to
+     * notifyOffers() once the lock is released.
+     */
+    private List<DefaultOfferFuture<K,R,P>> endBatchHelper(int count) {
+        if (count <= 0) {
+            return null;
+        }
+        // accept non-blocking offers waiting for the freed slots
+        List<DefaultOfferFuture<K,R,P>> accepted = acceptAsyncOffers();
+        // signal that futures are completed
+        this.completedCondition.signalAll();
+        return accepted;
+    }
+    
     /**
      * Cancels (completes) a request. Any callers/threads waiting for completion
      * will be signaled. Also, since this frees up a slot in the window, one
@@ -602,24 +992,33 @@ public class Window<K,R,P> {
             return null;
         }
 
+        DefaultWindowFuture<K,R,P> future;
+        List<DefaultOfferFuture<K,R,P>> accepted;
         this.lock.lockInterruptibly();
         try {
             // try to remove future from window
-            DefaultWindowFuture<K,R,P> future = this.futures.remove(key);
+            future = this.futures.remove(key);
             if (future == null) {
                 return null;
             }
             
+            this.expireIndex.remove(future.expireNode);
+            
             // set failed using helper method (bypasses signalAll and requests.remove(key))
             future.cancelHelper(System.currentTimeMillis());
 
+            // accept non-blocking offers waiting for the freed slot
+            accepted = acceptAsyncOffers();
+
             // signal that a future is completed
             this.completedCondition.signalAll();
-
-            return future;
         } finally {
             this.lock.unlock();
         }
+        metricsDone(future);
+        future.notifyListeners();
+        notifyOffers(accepted);
+        return future;
     }
 
     /**
@@ -637,6 +1036,7 @@ public class Window<K,R,P> {
         
         List<WindowFuture<K,R,P>> cancelled = new ArrayList<WindowFuture<K,R,P>>();
         long now = System.currentTimeMillis();
+        List<DefaultOfferFuture<K,R,P>> accepted = null;
         this.lock.lock();
         try {
             // check every request this window contains and see if it's expired
@@ -647,12 +1047,18 @@ public class Window<K,R,P> {
             
             if (cancelled.size() > 0) {
                 this.futures.clear();
+                this.expireIndex.clear();
+                // accept non-blocking offers waiting for the freed slots
+                accepted = acceptAsyncOffers();
                 // signal that a future is completed
                 this.completedCondition.signalAll();
             }
         } finally {
             this.lock.unlock();
         }
+        metricsDone(cancelled);
+        notifyFutures(cancelled);
+        notifyOffers(accepted);
         return cancelled;
     }
     
@@ -662,6 +1068,8 @@ public class Window<K,R,P> {
      * getExpireTimestamp() value. Any callers/threads waiting for completion
      * will be signaled. Also, if more than one request was expired then all
      * callers/threads blocked with pending offers will be signaled to continue.
+     * Requests are looked up in an index ordered by expireTimestamp, so only
+     * requests that are actually due are visited (not the entire window).
      * @return A list of all expired futures that were cancelled.
      * @throws InterruptedException Thrown if the calling thread is interrupted
      *      and we're currently waiting to acquire the internal "windowLock".
@@ -673,31 +1081,52 @@ public class Window<K,R,P> {
         
         List<WindowFuture<K,R,P>> expired = new ArrayList<WindowFuture<K,R,P>>();
         long now = System.currentTimeMillis();
+        List<DefaultOfferFuture<K,R,P>> accepted = null;
+        int removed = 0;
         this.lock.lock();
         try {
-            // check every request this window contains and see if it's expired
-            for (DefaultWindowFuture<K,R,P> future : this.futures.values()) {
-                if (future.hasExpireTimestamp() && now >= future.getExpireTimestamp()) {
-                    expired.add(future);
-                    future.cancelHelper(now);
+            for (DefaultWindowFuture<K,R,P> future : this.expireIndex.removeExpired(now)) {
+                if (this.futures.remove(future.getKey(), future)) {
+                    removed++;
+                    // skip futures completed directly (not yet removed from the window)
+                    if (!future.isDone()) {
+                        future.cancelHelper(now);
+                        expired.add(future);
+                    } else {
+                        metricsDone(future);
+                    }
                 }
             }
             
-            if (expired.size() > 0) {
-                // take all expired requests and remove them from the pendingRequests
-                for (WindowFuture<K,R,P> future : expired) {
-                    this.futures.remove(future.getKey());
-                }
+            if (removed > 0) {
+                // accept non-blocking offers waiting for the freed slots
+                accepted = acceptAsyncOffers();
                 // signal that a future is completed
                 this.completedCondition.signalAll();
             }
         } finally {
             this.lock.unlock();
         }
+        metricsExpired(expired);
+        notifyFutures(expired);
+        notifyOffers(accepted);
         return expired;
     }
     
     void removeHelper(K key) {
-        this.futures.remove(key);
+        DefaultWindowFuture<K,R,P> future = this.futures.remove(key);
+        if (future != null) {
+            this.expireIndex.remove(future.expireNode);
+            metricsDone(future);
+            // a slot was freed up (without the lock) for queued non-blocking offers
+            List<DefaultOfferFuture<K,R,P>> accepted;
+            this.lock.lock();
+            try {
+                accepted = acceptAsyncOffers();
+            } finally {
+                this.lock.unlock();
+            }
+            notifyOffers(accepted);
+        }
     }
 }
@@ -0,0 +1,138 @@
+package com.cloudhopper.commons.util.windowing;
+
+/*
+ * #%L
+ * ch-commons-util
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Index of the futures in a window that have an expire timestamp, ordered by
+ * that timestamp (ties broken by the order they were added).  A monitor run
+ * only needs to look at the head of the index for futures that are actually
+ * due, rather than scanning every future in the window.  Adds and removes
+ * are O(log n) and safe to call concurrently without any external lock.
+ */
+class WindowExpireIndex<F extends WindowFuture<?,?,?>> {
+
+    /**
+     * An entry in the index.  A window keeps a reference to its future's
+     * node so it can be removed once the future is done.
+     */
+    static class Node<F extends WindowFuture<?,?,?>> {
+        private final F future;
+        private final long expireTimestamp;
+        private final long sequence;
+
+        private Node(F future, long expireTimestamp, long sequence) {
+            this.future = future;
+            this.expireTimestamp = expireTimestamp;
+            this.sequence = sequence;
+        }
+    }
+
+    static private final Comparator<Node<?>> COMPARATOR = new Comparator<Node<?>>() {
+        @Override
+        public int compare(Node<?> o1, Node<?> o2) {
+            if (o1.expireTimestamp != o2.expireTimestamp) {
+                return (o1.expireTimestamp < o2.expireTimestamp ? -1 : 1);
+            }
+            return (o1.sequence < o2.sequence ? -1 : (o1.sequence == o2.sequence ? 0 : 1));
+        }
+    };
+
+    private final AtomicLong sequence;
+    private final ConcurrentSkipListSet<Node<F>> nodes;
+
+    public WindowExpireIndex() {
+        this.sequence = new AtomicLong();
+        this.nodes = new ConcurrentSkipListSet<Node<F>>(COMPARATOR);
+    }
+
+    /**
+     * Adds a future to the index if it has an expire timestamp.
+     * @param future The future to add
+     * @return The node to pass to remove() or null if the future never
+     *      expires (and was not added)
+     */
+    public Node<F> add(F future) {
+        if (!future.hasExpireTimestamp()) {
+            return null;
+        }
+        Node<F> node = new Node<F>(future, future.getExpireTimestamp(), this.sequence.incrementAndGet());
+        this.nodes.add(node);
+        return node;
+    }
+
+    /**
+     * Removes a node from the index.  Safe to call more than once or with
+     * a null node.
+     * @param node The node returned by add()
+     */
+    public void remove(Node<F> node) {
+        if (node != null) {
+            this.nodes.remove(node);
+        }
+    }
+
+    /**
+     * Removes and returns all futures whose expire timestamp is &lt;= now in
+     * the order they expired.  Only the futures that are due are visited.
+     * @param now The current time in milliseconds
+     * @return The futures that were due (may be empty)
+     */
+    public List<F> removeExpired(long now) {
+        List<F> expired = new ArrayList<F>();
+        while (true) {
+            Node<F> first;
+            try {
+                first = this.nodes.first();
+            } catch (NoSuchElementException e) {
+                return expired;
+            }
+            if (first.expireTimestamp > now) {
+                return expired;
+            }
+            // only return it if another thread didn't remove it first
+            if (this.nodes.remove(first)) {
+                expired.add(first.future);
+            }
+        }
+    }
+
+    /**
+     * Removes every node from the index.
+     */
+    public void clear() {
+        this.nodes.clear();
+    }
+
+    /**
+     * Gets the number of futures in this index.
+     * @return The number of futures in this index
+     */
+    public int size() {
+        return this.nodes.size();
+    }
+}
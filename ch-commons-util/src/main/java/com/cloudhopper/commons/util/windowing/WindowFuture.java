@@ -254,4 +254,13 @@ public interface WindowFuture<K,R,P> {
      * @throws InterruptedException Thrown if the current thread was interrupted
      */
     public boolean await(long timeoutMillis) throws InterruptedException;
+    
+    /**
+     * Adds a listener that will be called once this future is done (either
+     * success, failure, or cancelled).  If this future is already done, the
+     * listener is called immediately by the calling thread.  Listeners are
+     * never called while a window holds its internal lock.
+     * @param listener The listener to add
+     */
+    public void addListener(WindowFutureListener<K,R,P> listener);
 }
\ No newline at end of file
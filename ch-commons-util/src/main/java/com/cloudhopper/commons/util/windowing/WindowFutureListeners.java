@@ -0,0 +1,82 @@
+package com.cloudhopper.commons.util.windowing;
+
+/*
+ * #%L
+ * ch-commons-util
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The listeners of a single WindowFuture.  Each listener is called exactly
+ * once, either by notify() or by add() if notify() was already called.
+ */
+class WindowFutureListeners<K,R,P> {
+    private static final Logger logger = LoggerFactory.getLogger(WindowFutureListeners.class);
+
+    private List<WindowFutureListener<K,R,P>> listeners;
+    private boolean notified;
+
+    /**
+     * Adds a listener, calling it immediately if the future was already
+     * notified.
+     */
+    public void add(WindowFuture<K,R,P> future, WindowFutureListener<K,R,P> listener) {
+        synchronized (this) {
+            if (!this.notified) {
+                if (this.listeners == null) {
+                    this.listeners = new ArrayList<WindowFutureListener<K,R,P>>(2);
+                }
+                this.listeners.add(listener);
+                return;
+            }
+        }
+        notifyListener(future, listener);
+    }
+
+    /**
+     * Calls every listener added so far.  Only the first call does anything.
+     */
+    public void notify(WindowFuture<K,R,P> future) {
+        List<WindowFutureListener<K,R,P>> listeners0;
+        synchronized (this) {
+            if (this.notified) {
+                return;
+            }
+            this.notified = true;
+            listeners0 = this.listeners;
+            this.listeners = null;
+        }
+        if (listeners0 != null) {
+            for (WindowFutureListener<K,R,P> listener : listeners0) {
+                notifyListener(future, listener);
+            }
+        }
+    }
+
+    static private <K,R,P> void notifyListener(WindowFuture<K,R,P> future, WindowFutureListener<K,R,P> listener) {
+        try {
+            listener.done(future);
+        } catch (Throwable t) {
+            logger.error("Ignoring uncaught exception thrown in listener: ", t);
+        }
+    }
+}
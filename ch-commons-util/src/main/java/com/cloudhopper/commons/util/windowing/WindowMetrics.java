@@ -0,0 +1,216 @@
+package com.cloudhopper.commons.util.windowing;
+
+/*
+ * #%L
+ * ch-commons-util
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.cloudhopper.commons.util.metrics.AtomicHistogram;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the latency and occupancy of a window, so it's possible to tell
+ * whether throughput is limited by a full window (long offer waits and
+ * occupancy at the max window size) or by a slow remote peer (long round-trip
+ * times).  Attach to a Window or ConcurrentWindow with setMetricsListener()
+ * and optionally register it with ManagementUtil.registerMBean().
+ * <br><br>
+ * Every method is lock-free and uses constant memory.
+ */
+public class WindowMetrics<K,R,P> implements WindowMetricsListener<K,R,P>, WindowMetricsMBean {
+
+    private final AtomicLong accepted;
+    private final AtomicLong offerTimeouts;
+    private final AtomicLong completed;
+    private final AtomicLong failed;
+    private final AtomicLong cancelled;
+    private final AtomicLong expired;
+    private final AtomicHistogram offerWaitTime;
+    private final AtomicHistogram roundTripTime;
+    private final AtomicHistogram occupancy;
+
+    public WindowMetrics() {
+        this.accepted = new AtomicLong();
+        this.offerTimeouts = new AtomicLong();
+        this.completed = new AtomicLong();
+        this.failed = new AtomicLong();
+        this.cancelled = new AtomicLong();
+        this.expired = new AtomicLong();
+        this.offerWaitTime = new AtomicHistogram();
+        this.roundTripTime = new AtomicHistogram();
+        this.occupancy = new AtomicHistogram();
+    }
+
+    @Override
+    public void accepted(WindowFuture<K,R,P> future) {
+        this.accepted.incrementAndGet();
+        this.offerWaitTime.record(future.getOfferToAcceptTime());
+        this.occupancy.record(future.getWindowSize());
+    }
+
+    @Override
+    public void offerTimedOut(K key, long offerTimeoutMillis) {
+        this.offerTimeouts.incrementAndGet();
+    }
+
+    @Override
+    public void done(WindowFuture<K,R,P> future) {
+        if (future.isCancelled()) {
+            this.cancelled.incrementAndGet();
+            return;
+        }
+        if (future.isSuccess()) {
+            this.completed.incrementAndGet();
+        } else {
+            this.failed.incrementAndGet();
+        }
+        this.roundTripTime.record(future.getAcceptToDoneTime());
+    }
+
+    @Override
+    public void expired(WindowFuture<K,R,P> future) {
+        this.expired.incrementAndGet();
+    }
+
+    @Override
+    public long getAcceptedCount() {
+        return this.accepted.get();
+    }
+
+    @Override
+    public long getOfferTimeoutCount() {
+        return this.offerTimeouts.get();
+    }
+
+    @Override
+    public long getCompletedCount() {
+        return this.completed.get();
+    }
+
+    @Override
+    public long getFailedCount() {
+        return this.failed.get();
+    }
+
+    @Override
+    public long getCancelledCount() {
+        return this.cancelled.get();
+    }
+
+    @Override
+    public long getExpiredCount() {
+        return this.expired.get();
+    }
+
+    @Override
+    public double getOfferWaitTimeMean() {
+        return this.offerWaitTime.getMean();
+    }
+
+    @Override
+    public long getOfferWaitTime50th() {
+        return this.offerWaitTime.getValueAtPercentile(50.0d);
+    }
+
+    @Override
+    public long getOfferWaitTime99th() {
+        return this.offerWaitTime.getValueAtPercentile(99.0d);
+    }
+
+    @Override
+    public long getOfferWaitTime999th() {
+        return this.offerWaitTime.getValueAtPercentile(99.9d);
+    }
+
+    @Override
+    public long getOfferWaitTimeMax() {
+        return this.offerWaitTime.getMax();
+    }
+
+    @Override
+    public double getRoundTripTimeMean() {
+        return this.roundTripTime.getMean();
+    }
+
+    @Override
+    public long getRoundTripTime50th() {
+        return this.roundTripTime.getValueAtPercentile(50.0d);
+    }
+
+    @Override
+    public long getRoundTripTime99th() {
+        return this.roundTripTime.getValueAtPercentile(99.0d);
+    }
+
+    @Override
+    public long getRoundTripTime999th() {
+        return this.roundTripTime.getValueAtPercentile(99.9d);
+    }
+
+    @Override
+    public long getRoundTripTimeMax() {
+        return this.roundTripTime.getMax();
+    }
+
+    @Override
+    public double getOccupancyMean() {
+        return this.occupancy.getMean();
+    }
+
+    @Override
+    public long getOccupancy99th() {
+        return this.occupancy.getValueAtPercentile(99.0d);
+    }
+
+    @Override
+    public long getOccupancyMax() {
+        return this.occupancy.getMax();
+    }
+
+    /**
+     * Resets all counters and histograms.  Requests in flight while resetting
+     * may be partially counted.
+     */
+    @Override
+    public void reset() {
+        this.accepted.set(0);
+        this.offerTimeouts.set(0);
+        this.completed.set(0);
+        this.failed.set(0);
+        this.cancelled.set(0);
+        this.expired.set(0);
+        this.offerWaitTime.reset();
+        this.roundTripTime.reset();
+        this.occupancy.reset();
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder(200)
+            .append("[accepted=").append(getAcceptedCount())
+            .append(" offerTimeouts=").append(getOfferTimeoutCount())
+            .append(" completed=").append(getCompletedCount())
+            .append(" failed=").append(getFailedCount())
+            .append(" cancelled=").append(getCancelledCount())
+            .append(" expired=").append(getExpiredCount())
+            .append(" offerWaitTime99th=").append(getOfferWaitTime99th())
+            .append(" roundTripTime99th=").append(getRoundTripTime99th())
+            .append(" occupancyMax=").append(getOccupancyMax())
+            .append("]").toString();
+    }
+}
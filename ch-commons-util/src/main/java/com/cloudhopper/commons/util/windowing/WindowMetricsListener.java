@@ -0,0 +1,55 @@
+package com.cloudhopper.commons.util.windowing;
+
+/*
+ * #%L
+ * ch-commons-util
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Interface for collecting metrics of every request passing thru a window.
+ * Unlike a WindowListener, these methods are called by the threads offering
+ * and completing requests (possibly while a window lock is held), so they
+ * must be fast and never block.
+ * <br><br>
+ * A WindowMetricsListener set on a window is already told about expired
+ * requests, so it should not also be added as a WindowListener.
+ */
+public interface WindowMetricsListener<K,R,P> extends WindowListener<K,R,P> {
+
+    /**
+     * Called when a request was accepted into a window.
+     * @param future The future of the accepted request
+     */
+    public void accepted(WindowFuture<K,R,P> future);
+
+    /**
+     * Called when an offer could not be accepted within its offer timeout
+     * because the window was full.
+     * @param key The key of the request that was offered
+     * @param offerTimeoutMillis The amount of time the offer waited
+     */
+    public void offerTimedOut(K key, long offerTimeoutMillis);
+
+    /**
+     * Called when a request in a window is done (successfully completed,
+     * failed or cancelled), except for requests expired by the window.
+     * @param future The future of the done request
+     */
+    public void done(WindowFuture<K,R,P> future);
+
+}
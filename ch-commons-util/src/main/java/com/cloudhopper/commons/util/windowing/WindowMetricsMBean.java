@@ -0,0 +1,64 @@
+package com.cloudhopper.commons.util.windowing;
+
+/*
+ * #%L
+ * ch-commons-util
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Defines the MBean attributes and operations exposed for WindowMetrics.
+ * All times are in milliseconds.
+ */
+public interface WindowMetricsMBean {
+
+    // Counters
+
+    public long getAcceptedCount();
+    public long getOfferTimeoutCount();
+    public long getCompletedCount();
+    public long getFailedCount();
+    public long getCancelledCount();
+    public long getExpiredCount();
+
+    // Time waiting for a slot in the window (offer -> accept)
+
+    public double getOfferWaitTimeMean();
+    public long getOfferWaitTime50th();
+    public long getOfferWaitTime99th();
+    public long getOfferWaitTime999th();
+    public long getOfferWaitTimeMax();
+
+    // Round-trip time of successful or failed requests (accept -> done)
+
+    public double getRoundTripTimeMean();
+    public long getRoundTripTime50th();
+    public long getRoundTripTime99th();
+    public long getRoundTripTime999th();
+    public long getRoundTripTimeMax();
+
+    // Number of requests in the window as each request was accepted
+
+    public double getOccupancyMean();
+    public long getOccupancy99th();
+    public long getOccupancyMax();
+
+    // Operations
+
+    public void reset();
+
+}
@@ -0,0 +1,196 @@
+package com.cloudhopper.commons.util;
+
+/*
+ * #%L
+ * ch-commons-util
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class CompactDigitLookupMapTest {
+    private static final Logger logger = LoggerFactory.getLogger(CompactDigitLookupMapTest.class);
+
+    @Test
+    public void usage() {
+        DigitLookupMap<String> map0 = new DigitLookupMap<String>();
+        map0.put("1*", "1*");
+        map0.put("234*", "234*");
+        map0.put("234", "234");
+        map0.put("234555", "234555");
+
+        CompactDigitLookupMap<String> map1 = CompactDigitLookupMap.copyOf(map0);
+        Assert.assertEquals(4, map1.size());
+        Assert.assertEquals(null, map1.get("3"));
+        Assert.assertEquals(null, map1.get("34"));
+        Assert.assertEquals(null, map1.get("1"));
+        Assert.assertEquals("1*", map1.get("13"));
+        Assert.assertEquals("234*", map1.get("2345"));
+        Assert.assertEquals("234", map1.get("234"));
+        Assert.assertEquals("234555", map1.get("234555"));
+        Assert.assertEquals("234*", map1.get("2345555"));
+        // root + 1 + 2,3,4,5,5,5
+        Assert.assertEquals(8, map1.getNodeCount());
+
+        // changing the source map doesn't change the copy
+        map0.put("*", "*");
+        Assert.assertEquals(null, map1.get("3"));
+        map1 = CompactDigitLookupMap.copyOf(map0);
+        Assert.assertEquals(5, map1.size());
+        Assert.assertEquals("*", map1.get("3"));
+        Assert.assertEquals("*", map1.get("34"));
+
+        try {
+            map1.get(null);
+            Assert.fail();
+        } catch (NullPointerException e) {
+            // correct behavior
+        }
+
+        try {
+            map1.get("12a");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // correct behavior
+        }
+
+        try {
+            map1.get("12*");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // correct behavior
+        }
+
+        try {
+            map1.put("1", "1");
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            // correct behavior
+        }
+    }
+
+    @Test
+    public void emptyMap() {
+        CompactDigitLookupMap<String> map = new CompactDigitLookupMap.Builder<String>().build();
+        Assert.assertEquals(0, map.size());
+        Assert.assertEquals(1, map.getNodeCount());
+        Assert.assertEquals(null, map.get("1"));
+        Assert.assertEquals(null, CompactDigitLookupMap.copyOf(new DigitLookupMap<String>()).get("1"));
+    }
+
+    @Test
+    public void bulkLoadUnsorted() {
+        CompactDigitLookupMap.Builder<String> builder = new CompactDigitLookupMap.Builder<String>();
+        builder.put("44*", "44*")
+            .put("1*", "1*")
+            .put("4477*", "4477*")
+            .put("447700900123", "447700900123")
+            .put("*", "*")
+            .put("1*", "new1*")
+            .put("99*", "99*")
+            .put("99*", null);
+
+        try {
+            builder.put("*1", "*1");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // correct behavior
+        }
+
+        CompactDigitLookupMap<String> map = builder.build();
+        Assert.assertEquals(5, map.size());
+        Assert.assertEquals("new1*", map.get("1555"));
+        Assert.assertEquals("447700900123", map.get("447700900123"));
+        Assert.assertEquals("4477*", map.get("447700900124"));
+        Assert.assertEquals("44*", map.get("4478"));
+        Assert.assertEquals("*", map.get("99"));
+        Assert.assertEquals("*", map.get("2"));
+    }
+
+    @Test
+    public void sharedValuesStoredOnce() {
+        String route = "route";
+        CompactDigitLookupMap.Builder<String> builder = new CompactDigitLookupMap.Builder<String>();
+        for (int i = 0; i < 100; i++) {
+            builder.put(i + "*", route);
+        }
+        CompactDigitLookupMap<String> map = builder.build();
+        Assert.assertEquals(100, map.size());
+        Assert.assertSame(route, map.get("42"));
+        Assert.assertSame(route, map.get("9999"));
+    }
+
+    @Test
+    public void matchesDigitLookupMap() throws Exception {
+        // fixed seed so every run builds the same table
+        Random random = new Random(20140101L);
+        DigitLookupMap<String> map0 = new DigitLookupMap<String>();
+        CompactDigitLookupMap.Builder<String> builder = new CompactDigitLookupMap.Builder<String>();
+        for (int i = 0; i < 20000; i++) {
+            String key = randomDigits(random, 1 + random.nextInt(8));
+            if (random.nextInt(4) != 0) {
+                key += "*";
+            }
+            String value = (random.nextInt(10) == 0 ? null : "value" + i);
+            map0.put(key, value);
+            builder.put(key, value);
+        }
+
+        CompactDigitLookupMap<String> copy = CompactDigitLookupMap.copyOf(map0);
+        CompactDigitLookupMap<String> bulk = builder.build();
+        Assert.assertEquals(map0.size(), copy.size());
+        Assert.assertEquals(map0.size(), bulk.size());
+        Assert.assertEquals(copy.getNodeCount(), bulk.getNodeCount());
+
+        List<String> addresses = new ArrayList<String>();
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 100000; i++) {
+            String address = randomDigits(random, 1 + random.nextInt(11));
+            String value = map0.get(address);
+            Assert.assertEquals(address, value, copy.get(address));
+            Assert.assertEquals(address, value, bulk.get(address));
+            byte[] digits = address.getBytes();
+            Assert.assertEquals(address, value, bulk.get(digits, 0, digits.length));
+            Assert.assertEquals(address, map0.getAllMatches(address), bulk.getAllMatches(address));
+            addresses.add(address);
+            expected.add(value);
+        }
+
+        Assert.assertEquals(expected, bulk.getBatch(addresses));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Assert.assertEquals(expected, bulk.getBatch(addresses, executor));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    static private String randomDigits(Random random, int length) {
+        char[] digits = new char[length];
+        for (int i = 0; i < length; i++) {
+            digits[i] = (char)('0' + random.nextInt(10));
+        }
+        return new String(digits);
+    }
+}
@@ -0,0 +1,186 @@
+package com.cloudhopper.commons.util;
+
+/*
+ * #%L
+ * ch-commons-util
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ConcurrentDigitLookupMapTest {
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrentDigitLookupMapTest.class);
+
+    @Test
+    public void reload() {
+        ConcurrentDigitLookupMap<String> map = new ConcurrentDigitLookupMap<String>();
+        Assert.assertEquals(0, map.size());
+        Assert.assertEquals(null, map.get("1"));
+
+        CompactDigitLookupMap<String> snapshot0 = map.getSnapshot();
+        CompactDigitLookupMap<String> snapshot1 = new CompactDigitLookupMap.Builder<String>().put("1*", "1*").build();
+        Assert.assertSame(snapshot0, map.reload(snapshot1));
+        Assert.assertSame(snapshot1, map.getSnapshot());
+        Assert.assertEquals(1, map.size());
+        Assert.assertEquals("1*", map.get("12"));
+
+        try {
+            map.reload(null);
+            Assert.fail();
+        } catch (NullPointerException e) {
+            // correct behavior
+        }
+    }
+
+    @Test
+    public void putAndRemove() {
+        ConcurrentDigitLookupMap<String> map = new ConcurrentDigitLookupMap<String>();
+        CompactDigitLookupMap<String> snapshot0 = map.getSnapshot();
+
+        Assert.assertEquals(null, map.put("1*", "1*"));
+        Assert.assertEquals(null, map.put("1", "1"));
+        Assert.assertEquals("1*", map.put("1*", "new1*"));
+        Assert.assertEquals(2, map.size());
+        Assert.assertEquals("1", map.get("1"));
+        Assert.assertEquals("new1*", map.get("12"));
+
+        Assert.assertEquals("1", map.remove("1"));
+        Assert.assertEquals(null, map.remove("1"));
+        Assert.assertEquals(1, map.size());
+        Assert.assertEquals(null, map.get("1"));
+
+        // the original snapshot never changed
+        Assert.assertEquals(0, snapshot0.size());
+        Assert.assertEquals(null, snapshot0.get("12"));
+
+        try {
+            map.put("1*2", "1*2");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // correct behavior
+        }
+    }
+
+    @Test
+    public void applyBatch() {
+        ConcurrentDigitLookupMap<String> map = new ConcurrentDigitLookupMap<String>();
+        map.put("1*", "1*");
+        map.put("44*", "44*");
+        map.put("4477*", "4477*");
+
+        ConcurrentDigitLookupMap.Batch<String> batch = new ConcurrentDigitLookupMap.Batch<String>()
+            .put("447700900123", "447700900123")
+            .remove("4477*")
+            .put("1*", "new1*")
+            .put("*", "*")
+            .put("99*", "99*")
+            .remove("99*");
+        Assert.assertEquals(6, batch.size());
+
+        try {
+            batch.put("abc", "abc");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // correct behavior
+        }
+
+        CompactDigitLookupMap<String> snapshot0 = map.getSnapshot();
+        CompactDigitLookupMap<String> snapshot1 = map.apply(batch);
+        Assert.assertSame(snapshot1, map.getSnapshot());
+        Assert.assertEquals(4, map.size());
+        Assert.assertEquals("447700900123", map.get("447700900123"));
+        Assert.assertEquals("44*", map.get("447700900124"));
+        Assert.assertEquals("new1*", map.get("12"));
+        Assert.assertEquals("*", map.get("99"));
+
+        // the previous snapshot is untouched
+        Assert.assertEquals(3, snapshot0.size());
+        Assert.assertEquals("4477*", snapshot0.get("447700900124"));
+    }
+
+    @Test
+    public void replaceAll() {
+        ConcurrentDigitLookupMap<String> map = new ConcurrentDigitLookupMap<String>();
+        map.put("1*", "1*");
+        CompactDigitLookupMap<String> snapshot0 = map.getSnapshot();
+
+        Map<String,String> routes = new LinkedHashMap<String,String>();
+        routes.put("44*", "44*");
+        routes.put("33*", "33*");
+        routes.put("3312", "3312");
+        Assert.assertSame(snapshot0, map.replaceAll(routes.entrySet().iterator()));
+        Assert.assertEquals(3, map.size());
+        Assert.assertEquals(null, map.get("12"));
+        Assert.assertEquals("33*", map.get("3311"));
+        Assert.assertEquals("3312", map.get("3312"));
+
+        // an invalid key leaves the map alone
+        routes.put("5a*", "5a*");
+        try {
+            map.replaceAll(routes.entrySet().iterator());
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // correct behavior
+        }
+        Assert.assertEquals(3, map.size());
+    }
+
+    @Test
+    public void readersSeeWholeSnapshots() throws Exception {
+        // every snapshot maps both keys to the same version
+        final ConcurrentDigitLookupMap<String> map = new ConcurrentDigitLookupMap<String>(snapshot(0));
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<String> error = new AtomicReference<String>();
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                while (running.get()) {
+                    CompactDigitLookupMap<String> snapshot = map.getSnapshot();
+                    String a = snapshot.get("1234");
+                    String b = snapshot.get("5678");
+                    if (a == null || !a.equals(b)) {
+                        error.set(a + " != " + b);
+                    }
+                }
+            }
+        };
+        reader.start();
+        for (int i = 1; i <= 1000; i++) {
+            if ((i % 2) == 0) {
+                map.reload(snapshot(i));
+            } else {
+                String value = Integer.toString(i);
+                map.apply(new ConcurrentDigitLookupMap.Batch<String>().put("*", value).put("12*", value).put("5678", value));
+            }
+        }
+        running.set(false);
+        reader.join();
+        Assert.assertNull(error.get());
+        Assert.assertEquals("1000", map.get("1"));
+    }
+
+    static private CompactDigitLookupMap<String> snapshot(int version) {
+        String value = Integer.toString(version);
+        return new CompactDigitLookupMap.Builder<String>().put("*", value).put("12*", value).put("5678", value).build();
+    }
+}
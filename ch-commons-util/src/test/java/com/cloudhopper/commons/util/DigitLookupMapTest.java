@@ -20,6 +20,13 @@ package com.cloudhopper.commons.util;
  * #L%
  */
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 // third party imports
 import org.junit.*;
 import org.slf4j.Logger;
@@ -111,4 +118,94 @@ public class DigitLookupMapTest {
         Assert.assertEquals(4, map0.size());
     }
 
+    @Test
+    public void getAllMatchesAndOverloads() throws Exception {
+        DigitLookupMap<String> map0 = new DigitLookupMap<String>();
+        Assert.assertEquals(Collections.emptyList(), map0.getAllMatches("1"));
+        Assert.assertEquals(null, map0.get(new byte[] { '1' }, 0, 1));
+
+        map0.put("*", "*");
+        map0.put("4*", "4*");
+        map0.put("447*", "447*");
+        map0.put("4477*", "4477*");
+        map0.put("447700900123", "447700900123");
+
+        Assert.assertEquals(Arrays.asList("*", "4*", "447*", "4477*", "447700900123"), map0.getAllMatches("447700900123"));
+        Assert.assertEquals(Arrays.asList("*", "4*", "447*", "4477*"), map0.getAllMatches("447700900124"));
+        Assert.assertEquals(Arrays.asList("*", "4*", "447*"), map0.getAllMatches("4478"));
+        Assert.assertEquals(Arrays.asList("*", "4*"), map0.getAllMatches("4488"));
+        // like get(), a prefix doesn't match a key of the same length
+        Assert.assertEquals(Arrays.asList("*", "4*"), map0.getAllMatches("447"));
+        Assert.assertEquals(Arrays.asList("*"), map0.getAllMatches(new StringBuilder("5")));
+
+        Assert.assertEquals("4477*", map0.get(new StringBuilder("447700900124")));
+        byte[] line = "x447700900123,447700900124".getBytes("US-ASCII");
+        Assert.assertEquals("447700900123", map0.get(line, 1, 12));
+        Assert.assertEquals("4477*", map0.get(line, 14, 12));
+        Assert.assertEquals("447*", map0.get(line, 14, 4));
+
+        try {
+            map0.get(line, 0, 12);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // correct behavior
+        }
+
+        try {
+            map0.get(line, 20, 12);
+            Assert.fail();
+        } catch (IndexOutOfBoundsException e) {
+            // correct behavior
+        }
+
+        try {
+            map0.getAllMatches("44*");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // correct behavior
+        }
+    }
+
+    @Test
+    public void getBatch() throws Exception {
+        DigitLookupMap<String> map0 = new DigitLookupMap<String>();
+        map0.put("1*", "1*");
+        map0.put("44*", "44*");
+        map0.put("4477*", "4477*");
+
+        List<CharSequence> keys = new ArrayList<CharSequence>();
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 10000; i++) {
+            StringBuilder key = new StringBuilder();
+            switch (i % 4) {
+                case 0: key.append("1"); expected.add("1*"); break;
+                case 1: key.append("440"); expected.add("44*"); break;
+                case 2: key.append("4477"); expected.add("4477*"); break;
+                default: key.append("2"); expected.add(null); break;
+            }
+            key.append(i);
+            keys.add(key);
+        }
+
+        Assert.assertEquals(expected, map0.getBatch(keys));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Assert.assertEquals(expected, map0.getBatch(keys, executor));
+            // small batches are done by the calling thread
+            Assert.assertEquals(expected.subList(0, 10), map0.getBatch(keys.subList(0, 10), executor));
+
+            // an invalid key in any chunk fails the batch
+            keys.set(9000, "9a");
+            try {
+                map0.getBatch(keys, executor);
+                Assert.fail();
+            } catch (IllegalArgumentException e) {
+                // correct behavior
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
 }
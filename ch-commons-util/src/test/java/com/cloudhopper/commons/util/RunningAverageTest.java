@@ -48,4 +48,48 @@ public class RunningAverageTest {
         Assert.assertEquals("4.000", avg.toString(3));
         Assert.assertEquals("4", avg.toString(0));
     }
+
+    @Test
+    public void runningTotal() {
+        RunningTotal total = new RunningTotal(3);
+        Assert.assertEquals(0, total.getSize());
+        Assert.assertEquals(0, total.getTotal());
+        Assert.assertEquals(0.0d, total.getAverage(), 0.0d);
+        total.add(2);
+        total.add(-3);
+        Assert.assertEquals(2, total.getSize());
+        Assert.assertEquals(-1, total.getTotal());
+        total.add(4);
+        total.add(5);
+        total.add(6);
+        // 2 and -3 were evicted
+        Assert.assertEquals(3, total.getSize());
+        Assert.assertEquals(15, total.getTotal());
+        Assert.assertEquals(5.0d, total.getAverage(), 0.0d);
+        Assert.assertEquals("15", total.toString());
+    }
+
+    @Test
+    public void runningTotalConcurrentAdds() throws Exception {
+        final RunningTotal total = new RunningTotal(100);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 100000; j++) {
+                        total.add(1);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // every add was counted once and every eviction subtracted once
+        Assert.assertEquals(100, total.getSize());
+        Assert.assertEquals(100, total.getTotal());
+        Assert.assertEquals(1.0d, total.getAverage(), 0.0d);
+    }
 }
@@ -0,0 +1,77 @@
+package com.cloudhopper.commons.util.metrics;
+
+/*
+ * #%L
+ * ch-commons-util
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import org.junit.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class AtomicHistogramTest {
+    private static final Logger logger = LoggerFactory.getLogger(AtomicHistogramTest.class);
+
+    @Test
+    public void bucketsCoverEveryValue() throws Exception {
+        int lastIndex = -1;
+        for (long value = 0; value < 100000; value++) {
+            int index = AtomicHistogram.index(value);
+            // buckets are in order and never skipped
+            Assert.assertTrue(index == lastIndex || index == lastIndex + 1);
+            Assert.assertTrue(value <= AtomicHistogram.highestValue(index));
+            if (index > 0) {
+                Assert.assertTrue(value > AtomicHistogram.highestValue(index - 1));
+            }
+            // within ~3%
+            Assert.assertTrue(AtomicHistogram.highestValue(index) - value <= (value / 32));
+            lastIndex = index;
+        }
+        Assert.assertEquals(AtomicHistogram.BUCKET_COUNT - 1, AtomicHistogram.index(Long.MAX_VALUE));
+        Assert.assertEquals(AtomicHistogram.BUCKET_COUNT - 1, AtomicHistogram.index(1L << 32));
+        Assert.assertTrue(AtomicHistogram.index((1L << 32) - 1) < AtomicHistogram.BUCKET_COUNT);
+    }
+
+    @Test
+    public void percentiles() throws Exception {
+        AtomicHistogram histogram = new AtomicHistogram();
+        Assert.assertEquals(0, histogram.getValueAtPercentile(99.0d));
+        Assert.assertEquals(0.0d, histogram.getMean(), 0.0d);
+
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        histogram.record(-5);
+
+        Assert.assertEquals(1001, histogram.getCount());
+        Assert.assertEquals(1000, histogram.getMax());
+        Assert.assertEquals(500500.0d / 1001.0d, histogram.getMean(), 0.0001d);
+        Assert.assertEquals(0, histogram.getValueAtPercentile(0.0d));
+        long p50 = histogram.getValueAtPercentile(50.0d);
+        Assert.assertTrue("" + p50, p50 >= 500 && p50 <= 515);
+        long p99 = histogram.getValueAtPercentile(99.0d);
+        Assert.assertTrue("" + p99, p99 >= 990 && p99 <= 1000);
+        Assert.assertEquals(1000, histogram.getValueAtPercentile(100.0d));
+
+        histogram.reset();
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(0, histogram.getMax());
+        Assert.assertEquals(0, histogram.getValueAtPercentile(50.0d));
+    }
+}
@@ -0,0 +1,140 @@
+package com.cloudhopper.commons.util.metrics;
+
+/*
+ * #%L
+ * ch-commons-util
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.cloudhopper.commons.util.ManagementUtil;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import javax.management.ObjectName;
+import org.junit.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class RateMeterTest {
+    private static final Logger logger = LoggerFactory.getLogger(RateMeterTest.class);
+
+    @Test
+    public void ratesOverCompleteSeconds() throws Exception {
+        RateMeter meter = new RateMeter(4);
+        long start = 1000000000000L;
+
+        // 10 events per second for 2 minutes
+        for (int second = 0; second < 120; second++) {
+            for (int i = 0; i < 10; i++) {
+                meter.mark(1, start + (second * 1000L) + (i * 100));
+            }
+        }
+        // partial current second isn't counted
+        meter.mark(500, start + 120000L);
+
+        long now = start + 120500L;
+        Assert.assertEquals(1700, meter.getCount());
+        Assert.assertEquals(10.0d, meter.getRate(1, now), 0.0d);
+        Assert.assertEquals(10.0d, meter.getRate(60, now), 0.0d);
+        Assert.assertEquals(1200, meter.getCount(RateMeter.MAX_SECONDS, now));
+        Assert.assertEquals(4.0d, meter.getRate(RateMeter.MAX_SECONDS, now), 0.0d);
+
+        // a second later the burst becomes the previous second
+        now += 1000;
+        Assert.assertEquals(500.0d, meter.getRate(1, now), 0.0d);
+        Assert.assertEquals(1090, meter.getCount(60, now));
+
+        // 10 minutes later everything slid out of the window
+        now += 600000;
+        Assert.assertEquals(0.0d, meter.getRate(1, now), 0.0d);
+        Assert.assertEquals(0, meter.getCount(RateMeter.MAX_SECONDS, now));
+        Assert.assertEquals(1700, meter.getCount());
+    }
+
+    @Test
+    public void bucketReusedForNewSecond() throws Exception {
+        RateMeter meter = new RateMeter(1);
+        long start = 1000000000000L;
+        meter.mark(7, start);
+        // same bucket (512 seconds later) is reused rather than added to
+        long later = start + 512000L;
+        meter.mark(3, later);
+        Assert.assertEquals(3, meter.getCount(1, later + 1000));
+        Assert.assertEquals(0, meter.getCount(1, start + 1000));
+    }
+
+    @Test
+    public void concurrentMarks() throws Exception {
+        final RateMeter meter = new RateMeter(8);
+        final long timestamp = 1000000000000L;
+        final int threadCount = 8;
+        final int marks = 20000;
+        final CountDownLatch startSignal = new CountDownLatch(1);
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        startSignal.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < marks; j++) {
+                        meter.mark(1, timestamp);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        startSignal.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(threadCount * marks, meter.getCount());
+        Assert.assertEquals(threadCount * marks, meter.getCount(1, timestamp + 1000));
+    }
+
+    @Test
+    public void currentTime() throws Exception {
+        RateMeter meter = new RateMeter();
+        meter.mark();
+        meter.mark(2);
+        Assert.assertEquals(3, meter.getCount());
+        // marked this second (or at most a second ago if it just ticked)
+        Assert.assertTrue(meter.getOneSecondRate() <= 3.0d);
+        Assert.assertTrue(meter.getOneMinuteRate() <= 3.0d / 60.0d);
+        Assert.assertTrue(meter.getFiveMinuteRate() <= 3.0d / 300.0d);
+    }
+
+    @Test
+    public void registerMBean() throws Exception {
+        RateMeter meter = new RateMeter();
+        meter.mark(5);
+        String name = "com.cloudhopper.commons.util.metrics:name=RateMeterTest";
+        ObjectName objectName = ManagementUtil.registerMBean(name, meter);
+        try {
+            Assert.assertEquals(5L, ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "Count"));
+        } finally {
+            Assert.assertTrue(ManagementUtil.unregisterMBean(name));
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void badSeconds() throws Exception {
+        new RateMeter().getRate(RateMeter.MAX_SECONDS + 1);
+    }
+}
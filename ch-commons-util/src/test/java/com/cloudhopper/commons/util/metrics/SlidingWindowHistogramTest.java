@@ -0,0 +1,102 @@
+package com.cloudhopper.commons.util.metrics;
+
+/*
+ * #%L
+ * ch-commons-util
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class SlidingWindowHistogramTest {
+    private static final Logger logger = LoggerFactory.getLogger(SlidingWindowHistogramTest.class);
+
+    @Test
+    public void percentilesWithinWindow() throws Exception {
+        SlidingWindowHistogram histogram = new SlidingWindowHistogram(60000, 6);
+        Assert.assertEquals(10000, histogram.getIntervalMillis());
+        long start = 1000000000000L;
+
+        // 1..1000 in the first interval
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i, start);
+        }
+        Assert.assertEquals(1000, histogram.getCount(start));
+        Assert.assertEquals(500.5d, histogram.getMean(start), 0.0d);
+        Assert.assertEquals(1000, histogram.getMax(start));
+        assertWithinPrecision(500, histogram.getValueAtPercentile(50.0d, start));
+        assertWithinPrecision(990, histogram.getValueAtPercentile(99.0d, start));
+        assertWithinPrecision(999, histogram.getValueAtPercentile(99.9d, start));
+        Assert.assertEquals(1000, histogram.getValueAtPercentile(100.0d, start));
+
+        // 1000 values of 5000 thirty seconds later
+        long later = start + 30000;
+        for (int i = 0; i < 1000; i++) {
+            histogram.record(5000, later);
+        }
+        Assert.assertEquals(2000, histogram.getCount(later));
+        Assert.assertEquals(5000, histogram.getMax(later));
+        assertWithinPrecision(1000, histogram.getValueAtPercentile(50.0d, later));
+        assertWithinPrecision(5000, histogram.getValueAtPercentile(99.0d, later));
+
+        // the first interval slides out of the window
+        long evenLater = start + 60000;
+        Assert.assertEquals(1000, histogram.getCount(evenLater));
+        Assert.assertEquals(5000.0d, histogram.getMean(evenLater), 0.0d);
+        assertWithinPrecision(5000, histogram.getValueAtPercentile(50.0d, evenLater));
+
+        // a value for the reused interval clears what it used to hold
+        histogram.record(1, evenLater);
+        Assert.assertEquals(1001, histogram.getCount(evenLater));
+        Assert.assertEquals(1, histogram.getValueAtPercentile(0.05d, evenLater));
+
+        // values for a time before the window are ignored
+        histogram.record(7, start);
+        Assert.assertEquals(1001, histogram.getCount(evenLater));
+
+        // everything slid out of the window
+        long muchLater = start + 120000;
+        Assert.assertEquals(0, histogram.getCount(muchLater));
+        Assert.assertEquals(0.0d, histogram.getMean(muchLater), 0.0d);
+        Assert.assertEquals(0, histogram.getMax(muchLater));
+        Assert.assertEquals(0, histogram.getValueAtPercentile(99.0d, muchLater));
+    }
+
+    @Test
+    public void currentTime() throws Exception {
+        SlidingWindowHistogram histogram = new SlidingWindowHistogram();
+        histogram.record(10);
+        histogram.record(20);
+        Assert.assertEquals(2, histogram.getCount());
+        Assert.assertEquals(15.0d, histogram.getMean(), 0.0d);
+        Assert.assertEquals(10, histogram.get50thPercentile());
+        Assert.assertEquals(20, histogram.get99thPercentile());
+        Assert.assertEquals(20, histogram.get999thPercentile());
+        Assert.assertEquals(20, histogram.getMax());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void badIntervals() throws Exception {
+        new SlidingWindowHistogram(60000, 0);
+    }
+
+    private static void assertWithinPrecision(long expected, long actual) {
+        Assert.assertTrue("expected ~" + expected + " but was " + actual, Math.abs(expected - actual) <= (expected / 32) + 1);
+    }
+}
@@ -0,0 +1,92 @@
+package com.cloudhopper.commons.util.metrics;
+
+/*
+ * #%L
+ * ch-commons-util
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.CountDownLatch;
+import org.junit.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class StripedCounterTest {
+    private static final Logger logger = LoggerFactory.getLogger(StripedCounterTest.class);
+
+    @Test
+    public void stripesRoundedUpToPowerOfTwo() throws Exception {
+        Assert.assertEquals(1, StripedCounter.powerOfTwo(0));
+        Assert.assertEquals(1, StripedCounter.powerOfTwo(1));
+        Assert.assertEquals(2, StripedCounter.powerOfTwo(2));
+        Assert.assertEquals(4, StripedCounter.powerOfTwo(3));
+        Assert.assertEquals(16, StripedCounter.powerOfTwo(16));
+        Assert.assertEquals(32, StripedCounter.powerOfTwo(17));
+        int stripes = StripedCounter.defaultStripes();
+        Assert.assertTrue(stripes >= 1 && stripes <= StripedCounter.MAX_STRIPES);
+        Assert.assertEquals(stripes, StripedCounter.powerOfTwo(stripes));
+    }
+
+    @Test
+    public void addAndReset() throws Exception {
+        StripedCounter counter = new StripedCounter(4);
+        Assert.assertEquals(0, counter.get());
+        counter.increment();
+        counter.add(41);
+        Assert.assertEquals(42, counter.get());
+        Assert.assertEquals("42", counter.toString());
+        counter.add(-2);
+        Assert.assertEquals(40, counter.get());
+        counter.reset();
+        Assert.assertEquals(0, counter.get());
+    }
+
+    @Test
+    public void concurrentIncrements() throws Exception {
+        final StripedCounter counter = new StripedCounter(8);
+        final int threadCount = 8;
+        final int increments = 20000;
+        final CountDownLatch startSignal = new CountDownLatch(1);
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        startSignal.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < increments; j++) {
+                        counter.increment();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        startSignal.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(threadCount * increments, counter.get());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void badStripes() throws Exception {
+        new StripedCounter(0);
+    }
+}
@@ -0,0 +1,1025 @@
+package com.cloudhopper.commons.util.windowing;
+
+/*
+ * #%L
+ * ch-commons-util
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+// third party imports
+import com.cloudhopper.commons.util.ManagementUtil;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tests ConcurrentWindow (mirrors WindowTest since both share the same semantics).
+ */
+public class ConcurrentWindowTest {
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrentWindowTest.class);
+
+    @Test
+    public void usage() throws Exception {
+        ConcurrentWindow<Integer,String,String> window = new ConcurrentWindow<Integer,String,String>(1);
+        Assert.assertEquals(1, window.getMaxSize());
+        Assert.assertEquals(0, window.getSize());
+
+        WindowFuture<Integer,String,String> future0 = window.offer(0, "Request0", 100);
+
+        Assert.assertEquals(1, window.getMaxSize());
+        Assert.assertEquals(1, window.getSize());
+        Assert.assertEquals(0, window.getFreeSize());
+        Assert.assertEquals(1, future0.getWindowSize());
+
+        window.cancel(0);
+
+        Assert.assertEquals(1, window.getMaxSize());
+        Assert.assertEquals(0, window.getSize());
+        Assert.assertEquals(1, window.getFreeSize());
+
+        WindowFuture<Integer,String,String> future1 = window.offer(1, "Request1", 100);
+
+        Assert.assertEquals(1, window.getMaxSize());
+        Assert.assertEquals(1, window.getSize());
+        Assert.assertEquals(0, window.getFreeSize());
+        Assert.assertEquals(1, future1.getWindowSize());
+
+        window.complete(1, "Response1");
+
+        Assert.assertEquals(1, window.getMaxSize());
+        Assert.assertEquals(0, window.getSize());
+        Assert.assertEquals(1, window.getFreeSize());
+        
+        WindowFuture<Integer,String,String> future2 = window.offer(2, "Request2", 100);
+        
+        Assert.assertEquals(1, window.getMaxSize());
+        Assert.assertEquals(1, window.getSize());
+        Assert.assertEquals(0, window.getFreeSize());
+        Assert.assertFalse(future2.isDone());
+        Assert.assertFalse(future2.isCancelled());
+        Assert.assertFalse(future2.isSuccess());
+        Assert.assertNull(future2.getCause());
+        Assert.assertEquals(1, future2.getWindowSize());
+        
+        // trigger this from the future now
+        future2.fail(new Exception("Test Cause"));
+
+        Assert.assertEquals(1, window.getMaxSize());
+        Assert.assertEquals(0, window.getSize());
+        Assert.assertEquals(1, window.getFreeSize());
+        Assert.assertTrue(future2.isDone());
+        Assert.assertFalse(future2.isCancelled());
+        Assert.assertFalse(future2.isSuccess());
+        Assert.assertNotNull(future2.getCause());
+        
+        WindowFuture<Integer,String,String> future3 = window.offer(3, "Request3", 100);
+        
+        Assert.assertEquals(1, window.getMaxSize());
+        Assert.assertEquals(1, window.getSize());
+        Assert.assertEquals(0, window.getFreeSize());
+        Assert.assertFalse(future3.isDone());
+        Assert.assertFalse(future3.isCancelled());
+        Assert.assertFalse(future3.isSuccess());
+        Assert.assertNull(future3.getCause());
+        Assert.assertEquals(1, future3.getWindowSize());
+        
+        // trigger this from the future now
+        long now = System.currentTimeMillis();
+        future3.complete("Response3", now);
+
+        Assert.assertEquals(1, window.getMaxSize());
+        Assert.assertEquals(0, window.getSize());
+        Assert.assertEquals(1, window.getFreeSize());
+        Assert.assertTrue(future3.isDone());
+        Assert.assertFalse(future3.isCancelled());
+        Assert.assertTrue(future3.isSuccess());
+        Assert.assertNull(future3.getCause());
+        Assert.assertEquals(now, future3.getDoneTimestamp());
+        
+        
+        WindowFuture<Integer,String,String> future4 = window.offer(4, "Request4", 100);
+        
+        Assert.assertEquals(1, window.getMaxSize());
+        Assert.assertEquals(1, window.getSize());
+        Assert.assertEquals(0, window.getFreeSize());
+        Assert.assertFalse(future4.isDone());
+        Assert.assertFalse(future4.isCancelled());
+        Assert.assertFalse(future4.isSuccess());
+        Assert.assertNull(future4.getCause());
+        Assert.assertEquals(1, future4.getWindowSize());
+        
+        // trigger this from the future now
+        future4.cancel(now);
+
+        Assert.assertEquals(1, window.getMaxSize());
+        Assert.assertEquals(0, window.getSize());
+        Assert.assertEquals(1, window.getFreeSize());
+        Assert.assertTrue(future4.isDone());
+        Assert.assertTrue(future4.isCancelled());
+        Assert.assertFalse(future4.isSuccess());
+        Assert.assertNull(future4.getCause());
+        Assert.assertEquals(now, future4.getDoneTimestamp());
+    }
+
+    
+    @Test
+    public void requestFutureAndWindowFuture() throws Exception {
+        ConcurrentWindow<Integer,String,String> window = new ConcurrentWindow<Integer,String,String>(1);
+        Integer i = new Integer(1);
+        String request = "Request"+i;
+
+        WindowFuture<Integer,String,String> requestFuture = window.offer(i, request, 100);
+        Assert.assertEquals(new Integer(i), requestFuture.getKey());
+        Assert.assertEquals(request, requestFuture.getRequest());
+        Assert.assertEquals(true, requestFuture.getAcceptTimestamp() > 0);
+        Assert.assertEquals(null, requestFuture.getResponse());
+        Assert.assertFalse(requestFuture.hasDoneTimestamp());
+        Assert.assertEquals(0, requestFuture.getDoneTimestamp());
+        Assert.assertEquals(false, requestFuture.isCancelled());
+        Assert.assertEquals(false, requestFuture.isDone());
+        Assert.assertEquals(false, requestFuture.isSuccess());
+        Assert.assertEquals(-1, requestFuture.getAcceptToDoneTime());
+
+        // this should timeout waiting for a response
+        Assert.assertFalse(requestFuture.await(100));
+
+        // mimic a response is received
+        String response = "Response"+i;
+        WindowFuture<Integer,String,String> responseFuture = window.complete(i, response);
+        Assert.assertEquals(new Integer(i), responseFuture.getKey());
+        Assert.assertEquals(request, responseFuture.getRequest());
+        Assert.assertEquals(true, responseFuture.getAcceptTimestamp() > 0);
+        Assert.assertEquals(response, responseFuture.getResponse());
+        Assert.assertEquals(true, responseFuture.getDoneTimestamp() > 0);
+        Assert.assertEquals(false, requestFuture.isCancelled());
+        Assert.assertEquals(true, requestFuture.isDone());
+        Assert.assertEquals(true, requestFuture.isSuccess());
+        Assert.assertEquals(true, requestFuture.getAcceptToDoneTime() > 0);
+
+        // this should succeed now since a response was received
+        Assert.assertTrue(requestFuture.await(100));
+        String response0 = requestFuture.getResponse();
+        Assert.assertEquals(response, response0);
+        Assert.assertEquals(request, requestFuture.getRequest());
+        Assert.assertEquals(true, requestFuture.getAcceptTimestamp() > 0);
+        Assert.assertEquals(response, requestFuture.getResponse());
+        Assert.assertEquals(true, requestFuture.getDoneTimestamp() > 0);
+        Assert.assertEquals(false, requestFuture.isCancelled());
+        Assert.assertEquals(true, requestFuture.isDone());
+        Assert.assertEquals(true, requestFuture.isSuccess());
+        Assert.assertEquals(true, requestFuture.getAcceptToDoneTime() > 0);
+    }
+
+    @Test
+    public void filledWindowThrowsOfferTimeoutException() throws Exception {
+        ConcurrentWindow<Integer,String,String> window = new ConcurrentWindow<Integer,String,String>(1);
+        WindowFuture<Integer,String,String> requestFuture0 = window.offer(0, "Request0", 100);
+        try {
+            // this should timeout waiting for a slot
+            WindowFuture<Integer,String,String> requestFuture1 = window.offer(1, "Request1", 100);
+            Assert.fail();
+        } catch (OfferTimeoutException e) {
+            // correct behavior
+        }
+    }
+
+    @Test
+    public void awaitTimesout() throws Exception {
+        ConcurrentWindow<Integer,String,String> window = new ConcurrentWindow<Integer,String,String>(1);
+        WindowFuture<Integer,String,String> requestFuture0 = window.offer(0, "Request0", 100);
+        // this should timeout waiting for a response
+        Assert.assertFalse(requestFuture0.await(100));
+    }
+
+    @Test
+    public void duplicateKeyThrowsDuplicateKeyException() throws Exception {
+        ConcurrentWindow<Integer,String,String> window = new ConcurrentWindow<Integer,String,String>(1);
+        WindowFuture<Integer,String,String> requestFuture0 = window.offer(0, "Request0", 100);
+        try {
+            WindowFuture<Integer,String,String> requestFuture1 = window.offer(0, "Request0", 100);;
+            Assert.fail();
+        } catch (DuplicateKeyException e) {
+            // correct behavior
+        }
+    }
+
+    @Test
+    public void waitingFlagNotOriginallySetButAddedOnAwait() throws Exception {
+        ConcurrentWindow<Integer,String,String> window = new ConcurrentWindow<Integer,String,String>(1);
+        WindowFuture<Integer,String,String> requestFuture0 = window.offer(0, "Request0", 100);
+        Assert.assertEquals(WindowFuture.CALLER_NOT_WAITING, requestFuture0.getCallerStateHint());
+        Assert.assertFalse(requestFuture0.isCallerWaiting());
+
+        // now the caller was mistaken that they weren't waiting, when they actually
+        // start to wait, we'll set the waiting flag to true
+        Assert.assertFalse(requestFuture0.await(30));
+        
+        Assert.assertEquals(WindowFuture.CALLER_WAITING_TIMEOUT, requestFuture0.getCallerStateHint());
+    }
+
+    @Test
+    public void cancel() throws Exception {
+        ConcurrentWindow<Integer,String,String> window = new ConcurrentWindow<Integer,String,String>(1);
+        Integer i = new Integer(1);
+        String request = "Request"+i;
+
+        WindowFuture<Integer,String,String> requestFuture = window.offer(i, request, 100);
+        
+        // cancel it
+        WindowFuture<Integer,String,String> responseFuture = window.cancel(i);
+        Assert.assertEquals(new Integer(i), responseFuture.getKey());
+        Assert.assertEquals(request, responseFuture.getRequest());
+        Assert.assertEquals(true, responseFuture.getAcceptTimestamp() > 0);
+        Assert.assertEquals(null, responseFuture.getResponse());
+        Assert.assertEquals(true, responseFuture.getDoneTimestamp() > 0);
+        Assert.assertEquals(true, requestFuture.isCancelled());
+        Assert.assertEquals(true, requestFuture.isDone());
+        Assert.assertEquals(false, requestFuture.isSuccess());
+        Assert.assertTrue(requestFuture.getAcceptToDoneTime() >= 0);
+
+        // this should not timeout waiting for a response
+        Assert.assertTrue(requestFuture.await(50));
+    }
+
+
+    @Test
+    public void cancelAll() throws Exception {
+        int count = 5;
+        ConcurrentWindow<Integer,String,String> window = new ConcurrentWindow<Integer,String,String>(count);
+        String[] requests = new String[count];
+        for (int i = 0; i < count; i++) {
+            requests[i] = "Request" + i;
+        }
+
+        for (int i = 0; i < 3; i++) {
+            window.offer(i, requests[i], 100);
+        }
+
+        Assert.assertEquals(3, window.getSize());
+
+        // are there requests pending?
+        List<WindowFuture<Integer,String,String>> cancelled = window.cancelAll();
+
+        Assert.assertEquals(0, window.getSize());
+        Assert.assertEquals(3, cancelled.size());
+
+        for (int i = 0; i < 3; i++) {
+            WindowFuture<Integer,String,String> value = cancelled.get(i);
+            Assert.assertEquals("Request"+value.getKey(), value.getRequest());
+            Assert.assertEquals(true, value.getAcceptTimestamp() > 0);
+            Assert.assertEquals(null, value.getResponse());
+            Assert.assertEquals(true, value.getDoneTimestamp() > 0);
+            Assert.assertEquals(true, value.isCancelled());
+            Assert.assertEquals(true, value.isDone());
+            Assert.assertEquals(false, value.isSuccess());
+        }
+    }
+
+    public static class RequestThread extends Thread {
+
+        private ConcurrentWindow<Integer,String,String> window;
+        private BlockingQueue<Integer> requestQueue;
+        public int id;
+        public int requestsPerThread;
+        public Throwable throwable;
+
+        public RequestThread(ConcurrentWindow<Integer,String,String> window, BlockingQueue<Integer> requestQueue, int id, int requestsPerThread) {
+            this.window = window;
+            this.requestQueue = requestQueue;
+            this.id = id;
+            this.requestsPerThread = requestsPerThread;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (int x = 0; x < requestsPerThread; x++) {
+                    // unique across threads (concatenating id and x is not)
+                    Integer i = Integer.valueOf(id*requestsPerThread + x);
+                    String request = "Request"+i;
+ //                   logger.debug("adding request " + i);
+                    WindowFuture<Integer,String,String> requestFuture = window.offer(i, request, 1000);
+                    Assert.assertEquals(i, requestFuture.getKey());
+                    Assert.assertEquals(request, requestFuture.getRequest());
+                    Assert.assertEquals(true, requestFuture.getAcceptTimestamp() > 0);
+                    Assert.assertEquals(null, requestFuture.getResponse());
+                    Assert.assertEquals(0, requestFuture.getDoneTimestamp());
+                    Assert.assertEquals(false, requestFuture.isCancelled());
+                    Assert.assertEquals(false, requestFuture.isDone());
+                    Assert.assertEquals(false, requestFuture.isSuccess());
+                    Assert.assertEquals(-1, requestFuture.getAcceptToDoneTime());
+
+                    requestQueue.add(i);
+                    requestFuture.await(100);
+
+                    Assert.assertEquals(request, requestFuture.getRequest());
+                    Assert.assertEquals(true, requestFuture.getAcceptTimestamp() > 0);
+                    Assert.assertEquals("Response"+i, requestFuture.getResponse());
+                    //Assert.assertEquals(null, requestFuture.getResponse());
+                    Assert.assertEquals(true, requestFuture.getDoneTimestamp() > 0);
+                    Assert.assertEquals(false, requestFuture.isCancelled());
+                    Assert.assertEquals(true, requestFuture.isDone());
+                }
+            } catch (Throwable t) {
+                logger.error("", t);
+                this.throwable = t;
+                return;
+            }
+        }
+    }
+    
+    public static class ResponseThread extends Thread {
+
+        private ConcurrentWindow<Integer,String,String> window;
+        private BlockingQueue<Integer> requestQueue;
+        public int total;
+        public Throwable throwable;
+
+        public ResponseThread(ConcurrentWindow<Integer,String,String> window, BlockingQueue<Integer> requestQueue, int total) {
+            this.window = window;
+            this.requestQueue = requestQueue;
+            this.total = total;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (int x = 0; x < total; x++) {
+                    //Integer i = new Integer(x);
+                    Integer i = requestQueue.poll(100, TimeUnit.MILLISECONDS);
+                    if (i == null) {
+                        throw new Exception("Integer was null in ResponseThread");
+                    }
+                    String response = "Response"+i;
+ //                   logger.debug("adding response " + i);
+                    WindowFuture<Integer,String,String> responseFuture = window.complete(i, response);
+                    Assert.assertEquals(new Integer(i), responseFuture.getKey());
+                    Assert.assertEquals("Request"+i, responseFuture.getRequest());
+                    Assert.assertEquals(true, responseFuture.getAcceptTimestamp() > 0);
+                    Assert.assertEquals(response, responseFuture.getResponse());
+                    Assert.assertEquals(true, responseFuture.getDoneTimestamp() > 0);
+                    Assert.assertEquals(false, responseFuture.isCancelled());
+                    Assert.assertEquals(true, responseFuture.isDone());
+                    Assert.assertEquals(true, responseFuture.isSuccess());
+                }
+            } catch (Throwable t) {
+                logger.error("", t);
+                this.throwable = t;
+                return;
+            }
+        }
+    }
+
+
+    @Test
+    public void simulatedMultithreadedProcessing() throws Exception {
+        final ConcurrentWindow<Integer,String,String> window = new ConcurrentWindow<Integer,String,String>(5);
+
+        final int requestThreadCount = 8;
+        final int requestsPerThread = 10000;
+        final BlockingQueue<Integer> requestQueue = new LinkedBlockingQueue<Integer>();
+
+        RequestThread[] requestThreads = new RequestThread[requestThreadCount];
+        for (int i = 0; i < requestThreadCount; i++) {
+            requestThreads[i] = new RequestThread(window, requestQueue, i, requestsPerThread);
+        }
+
+        ResponseThread responseThread = new ResponseThread(window, requestQueue, requestThreadCount*requestsPerThread);
+
+        // start 'em
+        for (RequestThread requestThread : requestThreads) {
+            requestThread.start();
+        }
+        responseThread.start();
+
+        // wait for them to finish
+        for (RequestThread requestThread : requestThreads) {
+            requestThread.join();
+        }
+        responseThread.join();
+
+        
+        // make sure everything was successful
+        for (int i = 0; i < requestThreadCount; i++) {
+            if (requestThreads[i].throwable != null) {
+                logger.error("", requestThreads[i].throwable);
+            }
+            Assert.assertNull("RequestThread " + i + " throwable wasn't null: " + requestThreads[i].throwable, requestThreads[i].throwable);
+        }
+
+        if (responseThread.throwable != null) {
+            logger.error("", responseThread.throwable);
+        }
+        Assert.assertNull("ResponseThread throwable wasn't null", responseThread.throwable);
+
+        Assert.assertEquals(0, window.getSize());
+    }
+    
+    @Test
+    public void abortOffering() throws Exception {
+        // test that terminating slot waiters early works as expected
+        final ConcurrentWindow<Integer,String,String> window = new ConcurrentWindow<Integer,String,String>(2);
+        
+        // first two items should work
+        Assert.assertFalse(window.abortPendingOffers());
+        window.offer(1, "Request1", 100);
+        Assert.assertFalse(window.abortPendingOffers());
+        window.offer(2, "Request2", 100);
+        Assert.assertFalse(window.abortPendingOffers());
+        
+        // third item should fail
+        try {
+            window.offer(3, "Request3", 20);
+            Assert.fail();
+        } catch (OfferTimeoutException e) {
+            // correct behavior
+        }
+        
+        // start up 3 other threads that will all be waiting too
+        Thread[] waiters = new Thread[3];
+        for (int i = 0; i < waiters.length; i++) {
+            final int x = i;
+            waiters[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        window.offer(4+x, "Request" + (4+x), 5000);
+                        Assert.fail();
+                    } catch (PendingOfferAbortedException e) {
+                        // correct behavior
+                    } catch (Exception e) {
+                        logger.error("", e);
+                        Assert.fail();
+                    }
+                }
+            };
+            waiters[i].start();
+        }
+        
+        // start up a thread that will call "terminateSlotWaiters" in 300 ms
+        Thread terminator = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(300);
+                } catch (Exception e) { }
+                try {
+                    Assert.assertEquals(4, window.getPendingOfferCount());
+                    boolean hadWaiters = window.abortPendingOffers();
+                    logger.debug("hadWaiters: " + hadWaiters);
+                    Assert.assertTrue(hadWaiters);
+                } catch (Exception e) {
+                    logger.error("", e);
+                    Assert.fail();
+                }
+            }
+        };
+        terminator.start();
+        
+        // now wait for a slot up to 5 seconds (the thread we spawned earlier
+        // should definitely cause it to terminate early)
+        try {
+            window.offer(3, "Request3", 5000);
+            Assert.fail();
+        } catch (PendingOfferAbortedException e) {
+            // correct behavior
+        }
+        
+        // make sure everything is finished
+        terminator.join();
+        for (Thread t : waiters) {
+            t.join();
+        }
+        
+        // next call to terminate slot waiters shouldn't do anything
+        Assert.assertEquals(0, window.getPendingOfferCount());
+        Assert.assertFalse(window.abortPendingOffers());
+        
+        window.complete(1, "Response1");
+        Assert.assertFalse(window.abortPendingOffers());
+        window.offer(4, "Request4", 100);
+        Assert.assertFalse(window.abortPendingOffers());
+    }
+    
+    @Test
+    public void abortOfferingCalledWithNoWaitingOfferers() throws Exception {
+        final ConcurrentWindow<Integer,String,String> window = new ConcurrentWindow<Integer,String,String>(2);
+        
+        window.offer(0, "Request0", 100);
+        
+        window.abortPendingOffers();
+        
+        window.offer(1, "Request1", 100);
+    }
+    
+    @Test
+    public void invalidArguments() throws Exception {
+        final ConcurrentWindow<Integer,String,String> window = new ConcurrentWindow<Integer,String,String>(1);
+        
+        try {
+            window.offer(1, "test1", -1);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // correct behavior
+        }
+    }
+
+    @Test
+    public void completingFutureWakesBlockedOffer() throws Exception {
+        final ConcurrentWindow<Integer,String,String> window = new ConcurrentWindow<Integer,String,String>(1);
+        WindowFuture<Integer,String,String> future0 = window.offer(0, "Request0", 100);
+
+        final WindowFuture[] accepted = new WindowFuture[1];
+        Thread offerer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    accepted[0] = window.offer(1, "Request1", 5000);
+                } catch (Exception e) {
+                    logger.error("", e);
+                }
+            }
+        };
+        offerer.start();
+
+        // wait till the offer is blocked
+        while (window.getPendingOfferCount() == 0) {
+            Thread.sleep(5);
+        }
+
+        // completing the future directly (not via the window) frees the slot
+        future0.complete("Response0");
+        offerer.join(5000);
+
+        Assert.assertNotNull(accepted[0]);
+        Assert.assertEquals(1, accepted[0].getKey());
+        Assert.assertEquals(1, window.getSize());
+        Assert.assertEquals(0, window.getPendingOfferCount());
+        // completing an already completed future is ignored
+        future0.complete("Response0");
+        Assert.assertEquals(1, window.getSize());
+    }
+
+    @Test
+    public void offerAsyncSharesSlotsWithBlockedOffers() throws Exception {
+        final ConcurrentWindow<Integer,String,String> window = new ConcurrentWindow<Integer,String,String>(2);
+        final BlockingQueue<Integer> accepted = new LinkedBlockingQueue<Integer>();
+        final OfferFutureListener<Integer,String,String> listener = new OfferFutureListener<Integer,String,String>() {
+            @Override
+            public void done(OfferFuture<Integer,String,String> offer) {
+                if (offer.isAccepted()) {
+                    accepted.add(offer.getKey());
+                }
+            }
+        };
+        final int count = 500;
+        Thread[] offerers = new Thread[4];
+        for (int i = 0; i < offerers.length; i++) {
+            final int base = i * count;
+            final boolean async = (i % 2 == 0);
+            offerers[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < count; j++) {
+                            if (async) {
+                                window.offerAsync(base + j, "Request", 0).addListener(listener);
+                            } else {
+                                window.offer(base + j, "Request", 5000);
+                                accepted.add(base + j);
+                            }
+                        }
+                    } catch (Exception e) {
+                        logger.error("", e);
+                    }
+                }
+            };
+            offerers[i].start();
+        }
+
+        // every request is eventually accepted and completed
+        for (int i = 0; i < offerers.length * count; i++) {
+            Integer key = accepted.poll(5000, TimeUnit.MILLISECONDS);
+            Assert.assertNotNull(key);
+            Assert.assertNotNull(window.complete(key, "Response"));
+        }
+        for (Thread offerer : offerers) {
+            offerer.join(5000);
+        }
+        Assert.assertEquals(0, window.getSize());
+        Assert.assertEquals(0, window.getPendingOfferCount());
+    }
+
+    @Test
+    public void monitorExpiresRequests() throws Exception {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        final CountDownLatch expiredLatch = new CountDownLatch(1);
+        WindowListener<Integer,String,String> listener = new WindowListener<Integer,String,String>() {
+            @Override
+            public void expired(WindowFuture<Integer,String,String> future) {
+                expiredLatch.countDown();
+            }
+        };
+        ConcurrentWindow<Integer,String,String> window = new ConcurrentWindow<Integer,String,String>(2, executor, 10, listener);
+        try {
+            WindowFuture<Integer,String,String> future0 = window.offer(0, "Request0", 100, 20);
+            WindowFuture<Integer,String,String> future1 = window.offer(1, "Request1", 100);
+
+            Assert.assertTrue(expiredLatch.await(2000, TimeUnit.MILLISECONDS));
+            Assert.assertTrue(future0.await(100));
+            Assert.assertTrue(future0.isCancelled());
+            Assert.assertFalse(future1.isDone());
+            Assert.assertEquals(1, window.getSize());
+            Assert.assertEquals(1, window.getFreeSize());
+        } finally {
+            window.destroy();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void cancelAllExpiredOnlyCancelsDueRequests() throws Exception {
+        ConcurrentWindow<Integer,String,String> window = new ConcurrentWindow<Integer,String,String>(10);
+        window.offer(0, "Request0", 100, 1);
+        window.offer(1, "Request1", 100, 1);
+        WindowFuture<Integer,String,String> future2 = window.offer(2, "Request2", 100, 3600000);
+        WindowFuture<Integer,String,String> future3 = window.offer(3, "Request3", 100);
+        // done requests must never be expired
+        window.offer(4, "Request4", 100, 1);
+        window.complete(4, "Response4");
+        WindowFuture<Integer,String,String> future5 = window.offer(5, "Request5", 100, 1);
+        future5.complete("Response5");
+
+        Thread.sleep(20);
+
+        List<WindowFuture<Integer,String,String>> expired = window.cancelAllExpired();
+        Assert.assertEquals(2, expired.size());
+        // in the order they expired
+        Assert.assertEquals(new Integer(0), expired.get(0).getKey());
+        Assert.assertEquals(new Integer(1), expired.get(1).getKey());
+        Assert.assertTrue(expired.get(0).isCancelled());
+        Assert.assertTrue(expired.get(1).isCancelled());
+        Assert.assertTrue(future5.isSuccess());
+        Assert.assertFalse(future2.isDone());
+        Assert.assertFalse(future3.isDone());
+        Assert.assertEquals(2, window.getSize());
+
+        // nothing else is due
+        Assert.assertEquals(0, window.cancelAllExpired().size());
+        Assert.assertEquals(2, window.getSize());
+    }
+
+    @Test
+    public void freeSizeCountsSlotsHandedToQueuedOffers() throws Exception {
+        ConcurrentWindow<Integer,String,String> window = new ConcurrentWindow<Integer,String,String>(2);
+        Assert.assertEquals(2, window.getFreeSize());
+        window.offer(0, "Request0", 100);
+        window.offer(1, "Request1", 100);
+        Assert.assertEquals(0, window.getFreeSize());
+
+        // a queued offer takes the slot freed by completing a request
+        OfferFuture<Integer,String,String> offer = window.offerAsync(2, "Request2", 0);
+        Assert.assertFalse(offer.isDone());
+        window.complete(0, "Response0");
+        Assert.assertTrue(offer.isAccepted());
+        Assert.assertEquals(0, window.getFreeSize());
+        Assert.assertEquals(2, window.getSize());
+
+        window.complete(1, "Response1");
+        window.complete(2, "Response2");
+        Assert.assertEquals(2, window.getFreeSize());
+    }
+
+    @Test
+    public void requestsAcceptedWhileExpiringStillExpire() throws Exception {
+        final ConcurrentWindow<Integer,String,String> window = new ConcurrentWindow<Integer,String,String>(100);
+        final int requests = 20000;
+        final Throwable[] throwables = new Throwable[1];
+
+        // expire requests as fast as possible while they're being accepted
+        Thread expireThread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while (!isInterrupted()) {
+                        window.cancelAllExpired();
+                    }
+                } catch (Throwable t) {
+                    logger.error("", t);
+                    throwables[0] = t;
+                }
+            }
+        };
+        expireThread.start();
+        try {
+            for (int i = 0; i < requests; i++) {
+                // due (almost) immediately
+                window.offer(i, "Request" + i, 5000, 1);
+            }
+        } finally {
+            expireThread.interrupt();
+            expireThread.join();
+        }
+        Assert.assertNull(throwables[0]);
+
+        // every request must have expired (or still be due)
+        Thread.sleep(10);
+        window.cancelAllExpired();
+        Assert.assertEquals(0, window.getSize());
+        Assert.assertEquals(window.getMaxSize(), window.getFreeSize());
+    }
+
+    @Test
+    public void offerAsyncQueuedUntilSlotFreed() throws Exception {
+        ConcurrentWindow<Integer,String,String> window = new ConcurrentWindow<Integer,String,String>(2);
+        OfferFuture<Integer,String,String> offer0 = window.offerAsync(0, "Request0", 0);
+        OfferFuture<Integer,String,String> offer1 = window.offerAsync(1, "Request1", 0);
+        // free slots are accepted immediately
+        Assert.assertTrue(offer0.isDone());
+        Assert.assertTrue(offer0.isAccepted());
+        Assert.assertEquals(new Integer(0), offer0.getWindowFuture().getKey());
+        Assert.assertTrue(offer1.isAccepted());
+        Assert.assertEquals(2, window.getSize());
+
+        final BlockingQueue<OfferFuture<Integer,String,String>> accepted = new LinkedBlockingQueue<OfferFuture<Integer,String,String>>();
+        OfferFuture<Integer,String,String> offer2 = window.offerAsync(2, "Request2", 0);
+        offer2.addListener(new OfferFutureListener<Integer,String,String>() {
+            @Override
+            public void done(OfferFuture<Integer,String,String> offer) {
+                accepted.add(offer);
+            }
+        });
+        Assert.assertFalse(offer2.isDone());
+        Assert.assertFalse(offer2.await(10));
+        Assert.assertNull(offer2.getWindowFuture());
+        Assert.assertEquals(0, accepted.size());
+
+        // completing a request hands its slot to the queued offer
+        window.complete(0, "Response0");
+        Assert.assertTrue(offer2.await(0));
+        Assert.assertTrue(offer2.isAccepted());
+        Assert.assertEquals(1, accepted.size());
+        Assert.assertSame(offer2, accepted.poll());
+        Assert.assertEquals(new Integer(2), offer2.getWindowFuture().getKey());
+        Assert.assertEquals("Request2", offer2.getWindowFuture().getRequest());
+        Assert.assertSame(offer2.getWindowFuture(), window.get(2));
+        Assert.assertEquals(2, window.getSize());
+
+        // a listener added once done is called immediately
+        offer2.addListener(new OfferFutureListener<Integer,String,String>() {
+            @Override
+            public void done(OfferFuture<Integer,String,String> offer) {
+                accepted.add(offer);
+            }
+        });
+        Assert.assertEquals(1, accepted.size());
+    }
+
+    @Test
+    public void offerAsyncCancelWithdrawsOffer() throws Exception {
+        ConcurrentWindow<Integer,String,String> window = new ConcurrentWindow<Integer,String,String>(1);
+        window.offer(0, "Request0", 100);
+        OfferFuture<Integer,String,String> offer1 = window.offerAsync(1, "Request1", 0);
+        OfferFuture<Integer,String,String> offer2 = window.offerAsync(2, "Request2", 0);
+
+        Assert.assertTrue(offer1.cancel());
+        Assert.assertTrue(offer1.isDone());
+        Assert.assertTrue(offer1.isCancelled());
+        Assert.assertFalse(offer1.isAccepted());
+
+        // the freed slot skips the cancelled offer
+        window.complete(0, "Response0");
+        Assert.assertTrue(offer2.isAccepted());
+        Assert.assertFalse(offer2.cancel());
+        Assert.assertFalse(window.containsKey(1));
+        Assert.assertTrue(window.containsKey(2));
+        Assert.assertEquals(1, window.getSize());
+    }
+
+    @Test
+    public void offerAsyncFailsWhenKeyAddedWhileQueued() throws Exception {
+        ConcurrentWindow<Integer,String,String> window = new ConcurrentWindow<Integer,String,String>(2);
+        window.offer(0, "Request0", 100);
+        window.offer(1, "Request1", 100);
+        OfferFuture<Integer,String,String> offer2 = window.offerAsync(2, "Request2", 0);
+        OfferFuture<Integer,String,String> offer2b = window.offerAsync(2, "Request2b", 0);
+
+        // both slots are freed at once
+        window.cancelAll();
+        Assert.assertTrue(offer2.isAccepted());
+        Assert.assertTrue(offer2b.isDone());
+        Assert.assertFalse(offer2b.isAccepted());
+        Assert.assertTrue(offer2b.getCause() instanceof DuplicateKeyException);
+        Assert.assertEquals("Request2", window.get(2).getRequest());
+        Assert.assertEquals(1, window.getSize());
+    }
+
+    @Test(expected=DuplicateKeyException.class)
+    public void offerAsyncThrowsDuplicateKey() throws Exception {
+        ConcurrentWindow<Integer,String,String> window = new ConcurrentWindow<Integer,String,String>(1);
+        window.offer(0, "Request0", 100);
+        window.offerAsync(0, "Request0", 0);
+    }
+
+    @Test
+    public void abortPendingOffersFailsQueuedAsyncOffers() throws Exception {
+        ConcurrentWindow<Integer,String,String> window = new ConcurrentWindow<Integer,String,String>(1);
+        window.offer(0, "Request0", 100);
+        OfferFuture<Integer,String,String> offer1 = window.offerAsync(1, "Request1", 0);
+
+        Assert.assertTrue(window.abortPendingOffers());
+        Assert.assertTrue(offer1.isDone());
+        Assert.assertFalse(offer1.isAccepted());
+        Assert.assertTrue(offer1.getCause() instanceof PendingOfferAbortedException);
+        Assert.assertFalse(window.abortPendingOffers());
+
+        window.complete(0, "Response0");
+        Assert.assertEquals(0, window.getSize());
+    }
+
+    @Test
+    public void windowFutureListenersNotifiedOnceDone() throws Exception {
+        ConcurrentWindow<Integer,String,String> window = new ConcurrentWindow<Integer,String,String>(4);
+        final BlockingQueue<WindowFuture<Integer,String,String>> done = new LinkedBlockingQueue<WindowFuture<Integer,String,String>>();
+        WindowFutureListener<Integer,String,String> listener = new WindowFutureListener<Integer,String,String>() {
+            @Override
+            public void done(WindowFuture<Integer,String,String> future) {
+                done.add(future);
+            }
+        };
+
+        WindowFuture<Integer,String,String> future0 = window.offer(0, "Request0", 100);
+        WindowFuture<Integer,String,String> future1 = window.offer(1, "Request1", 100);
+        WindowFuture<Integer,String,String> future2 = window.offer(2, "Request2", 100);
+        future0.addListener(listener);
+        future1.addListener(listener);
+        future2.addListener(listener);
+        Assert.assertEquals(0, done.size());
+
+        // completed thru the window
+        window.complete(0, "Response0");
+        Assert.assertEquals(1, done.size());
+        WindowFuture<Integer,String,String> f = done.poll();
+        Assert.assertSame(future0, f);
+        Assert.assertTrue(f.isSuccess());
+        Assert.assertEquals(2, window.getSize());
+
+        // completed directly
+        future1.fail(new Exception("test"));
+        Assert.assertEquals(1, done.size());
+        Assert.assertSame(future1, done.poll());
+
+        window.cancelAll();
+        Assert.assertEquals(1, done.size());
+        Assert.assertTrue(done.poll().isCancelled());
+
+        // already done futures call new listeners right away (and only once)
+        future0.addListener(listener);
+        Assert.assertEquals(1, done.size());
+        Assert.assertSame(future0, done.poll());
+        window.complete(0, "Response0");
+        Assert.assertEquals(0, done.size());
+    }
+
+    @Test
+    public void metricsListenerCountsRequests() throws Exception {
+        ConcurrentWindow<Integer,String,String> window = new ConcurrentWindow<Integer,String,String>(3);
+        WindowMetrics<Integer,String,String> metrics = new WindowMetrics<Integer,String,String>();
+        window.setMetricsListener(metrics);
+        Assert.assertSame(metrics, window.getMetricsListener());
+
+        window.offer(0, "Request0", 100);
+        WindowFuture<Integer,String,String> future1 = window.offer(1, "Request1", 100);
+        window.offer(2, "Request2", 100, 1);
+        window.complete(0, "Response0");
+        // completed directly
+        future1.fail(new Exception("test"));
+        Thread.sleep(20);
+        Assert.assertEquals(1, window.cancelAllExpired().size());
+
+        window.offer(3, "Request3", 100);
+        window.offer(4, "Request4", 100);
+        window.offer(5, "Request5", 100);
+        try {
+            window.offer(6, "Request6", 10);
+            Assert.fail();
+        } catch (OfferTimeoutException e) {
+            // correct behavior
+        }
+        window.cancelAll();
+
+        Assert.assertEquals(6, metrics.getAcceptedCount());
+        Assert.assertEquals(1, metrics.getOfferTimeoutCount());
+        Assert.assertEquals(1, metrics.getCompletedCount());
+        Assert.assertEquals(1, metrics.getFailedCount());
+        Assert.assertEquals(1, metrics.getExpiredCount());
+        Assert.assertEquals(3, metrics.getCancelledCount());
+        Assert.assertEquals(3, metrics.getOccupancyMax());
+        Assert.assertTrue(metrics.getRoundTripTimeMax() >= 0);
+        Assert.assertTrue(metrics.getOfferWaitTime999th() <= metrics.getOfferWaitTimeMax());
+
+        // exported thru jmx
+        String name = "com.cloudhopper:type=WindowMetrics,name=" + window.getClass().getSimpleName() + "Test";
+        ManagementUtil.registerMBean(name, metrics);
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        Assert.assertEquals(6L, mbs.getAttribute(new ObjectName(name), "AcceptedCount"));
+        mbs.invoke(new ObjectName(name), "reset", null, null);
+        Assert.assertEquals(0, metrics.getAcceptedCount());
+        Assert.assertEquals(0, metrics.getOccupancyMax());
+        Assert.assertTrue(ManagementUtil.unregisterMBean(name));
+        Assert.assertFalse(ManagementUtil.unregisterMBean(name));
+
+        // no longer collected
+        window.setMetricsListener(null);
+        window.offer(7, "Request7", 100);
+        Assert.assertEquals(0, metrics.getAcceptedCount());
+    }
+
+    @Test
+    public void batchCompletion() throws Exception {
+        ConcurrentWindow<Integer,String,String> window = new ConcurrentWindow<Integer,String,String>(4);
+        WindowMetrics<Integer,String,String> metrics = new WindowMetrics<Integer,String,String>();
+        window.setMetricsListener(metrics);
+        for (int i = 0; i < 4; i++) {
+            window.offer(i, "Request" + i, 100);
+        }
+        OfferFuture<Integer,String,String> offer4 = window.offerAsync(4, "Request4", 0);
+        OfferFuture<Integer,String,String> offer5 = window.offerAsync(5, "Request5", 0);
+        Assert.assertFalse(offer4.isDone());
+
+        // keys not in the window are skipped
+        List<WindowFuture<Integer,String,String>> completed = window.completeBatch(new Integer[] { 0, 1, 9 }, new String[] { "Response0", "Response1", "Response9" });
+        Assert.assertEquals(2, completed.size());
+        Assert.assertEquals(new Integer(0), completed.get(0).getKey());
+        Assert.assertEquals("Response0", completed.get(0).getResponse());
+        Assert.assertEquals(new Integer(1), completed.get(1).getKey());
+        Assert.assertTrue(completed.get(1).isSuccess());
+        // both freed slots were handed out
+        Assert.assertTrue(offer4.isAccepted());
+        Assert.assertTrue(offer5.isAccepted());
+        Assert.assertEquals(4, window.getSize());
+
+        Map<Integer,String> responses = new HashMap<Integer,String>();
+        responses.put(2, "Response2");
+        responses.put(3, "Response3");
+        completed = window.completeAll(responses);
+        Assert.assertEquals(2, completed.size());
+        Assert.assertEquals(0, window.completeAll(responses).size());
+        Assert.assertEquals(2, window.getSize());
+
+        Exception cause4 = new Exception("test4");
+        List<WindowFuture<Integer,String,String>> failed = window.failBatch(new Integer[] { 4 }, new Throwable[] { cause4 });
+        Assert.assertEquals(1, failed.size());
+        Assert.assertSame(cause4, failed.get(0).getCause());
+        Assert.assertFalse(failed.get(0).isSuccess());
+
+        Map<Integer,Throwable> causes = new HashMap<Integer,Throwable>();
+        causes.put(5, new Exception("test5"));
+        failed = window.failAll(causes);
+        Assert.assertEquals(1, failed.size());
+        Assert.assertEquals("test5", failed.get(0).getCause().getMessage());
+        Assert.assertEquals(0, window.getSize());
+
+        Assert.assertEquals(4, metrics.getCompletedCount());
+        Assert.assertEquals(2, metrics.getFailedCount());
+
+        try {
+            window.completeBatch(new Integer[] { 0 }, new String[0]);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // correct behavior
+        }
+        try {
+            window.failBatch(new Integer[] { 0 }, new Throwable[] { null });
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // correct behavior
+        }
+    }
+}
@@ -0,0 +1,387 @@
+package com.cloudhopper.commons.util.windowing;
+
+/*
+ * #%L
+ * ch-commons-util
+ * %%
+ * Copyright (C) 2012 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class IntKeyWindowTest {
+    private static final Logger logger = LoggerFactory.getLogger(IntKeyWindowTest.class);
+
+    @Test
+    public void usage() throws Exception {
+        IntKeyWindow<String,String> window = new IntKeyWindow<String,String>(2);
+        Assert.assertEquals(2, window.getMaxSize());
+        Assert.assertEquals(0, window.getSize());
+
+        IntKeyWindowFuture<String,String> future0 = window.offer(0, "Request0", 100);
+        Assert.assertEquals(0, future0.getIntKey());
+        Assert.assertEquals(new Integer(0), future0.getKey());
+        Assert.assertEquals("Request0", future0.getRequest());
+        Assert.assertEquals(1, future0.getWindowSize());
+        Assert.assertFalse(future0.isDone());
+        Assert.assertTrue(window.containsKey(0));
+        Assert.assertSame(future0, window.get(0));
+        Assert.assertEquals(1, window.getFreeSize());
+
+        IntKeyWindowFuture<String,String> future1 = window.complete(0, "Response0");
+        Assert.assertSame(future0, future1);
+        Assert.assertTrue(future0.isDone());
+        Assert.assertTrue(future0.isSuccess());
+        Assert.assertEquals("Response0", future0.getResponse());
+        Assert.assertTrue(future0.await(0));
+        Assert.assertFalse(window.containsKey(0));
+        Assert.assertNull(window.complete(0, "Response0"));
+        Assert.assertEquals(0, window.getSize());
+
+        // a recycled future is reused by the next offer
+        window.recycle(future0);
+        Assert.assertNull(future0.getRequest());
+        Assert.assertNull(future0.getResponse());
+        Assert.assertFalse(future0.isDone());
+        IntKeyWindowFuture<String,String> future2 = window.offer(2, "Request2", 100);
+        Assert.assertSame(future0, future2);
+        Assert.assertEquals(2, future2.getIntKey());
+        Assert.assertEquals("Request2", future2.getRequest());
+        Assert.assertFalse(future2.isDone());
+
+        // futures not done (or from another window) can't be recycled
+        try {
+            window.recycle(future2);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // correct behavior
+        }
+        // nor recycled twice (it would be handed out to two offers)
+        future2.cancel();
+        window.recycle(future2);
+        try {
+            window.recycle(future2);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // correct behavior
+        }
+        IntKeyWindow<String,String> window2 = new IntKeyWindow<String,String>(2);
+        IntKeyWindowFuture<String,String> other = window2.offer(2, "Request2", 100);
+        other.cancel();
+        try {
+            window.recycle(other);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // correct behavior
+        }
+    }
+
+    @Test(expected=DuplicateKeyException.class)
+    public void offerThrowsDuplicateKey() throws Exception {
+        IntKeyWindow<String,String> window = new IntKeyWindow<String,String>(2);
+        window.offer(7, "Request7", 100);
+        window.offer(7, "Request7", 100);
+    }
+
+    @Test
+    public void offerTimesOutWhenFull() throws Exception {
+        IntKeyWindow<String,String> window = new IntKeyWindow<String,String>(1);
+        window.offer(0, "Request0", 100);
+        try {
+            window.offer(1, "Request1", 10);
+            Assert.fail();
+        } catch (OfferTimeoutException e) {
+            // correct behavior
+        }
+        Assert.assertEquals(0, window.getPendingOfferCount());
+    }
+
+    @Test
+    public void failAndCancel() throws Exception {
+        IntKeyWindow<String,String> window = new IntKeyWindow<String,String>(4);
+        window.offer(0, "Request0", 100);
+        window.offer(1, "Request1", 100);
+        IntKeyWindowFuture<String,String> future2 = window.offer(2, "Request2", 100);
+        window.offer(3, "Request3", 100);
+
+        Exception cause = new Exception("test");
+        IntKeyWindowFuture<String,String> future0 = window.fail(0, cause);
+        Assert.assertTrue(future0.isDone());
+        Assert.assertFalse(future0.isSuccess());
+        Assert.assertSame(cause, future0.getCause());
+
+        IntKeyWindowFuture<String,String> future1 = window.cancel(1);
+        Assert.assertTrue(future1.isCancelled());
+
+        // completed directly
+        future2.complete("Response2");
+        Assert.assertTrue(future2.isSuccess());
+        Assert.assertFalse(window.containsKey(2));
+        Assert.assertEquals(1, window.getSize());
+
+        List<IntKeyWindowFuture<String,String>> cancelled = window.cancelAll();
+        Assert.assertEquals(1, cancelled.size());
+        Assert.assertEquals(3, cancelled.get(0).getIntKey());
+        Assert.assertTrue(cancelled.get(0).isCancelled());
+        Assert.assertEquals(0, window.getSize());
+    }
+
+    @Test
+    public void cancelAllExpired() throws Exception {
+        IntKeyWindow<String,String> window = new IntKeyWindow<String,String>(4);
+        window.offer(0, "Request0", 100, 1);
+        IntKeyWindowFuture<String,String> future1 = window.offer(1, "Request1", 100, 3600000);
+        window.offer(2, "Request2", 100, 1);
+        IntKeyWindowFuture<String,String> future3 = window.offer(3, "Request3", 100);
+        Thread.sleep(20);
+
+        List<IntKeyWindowFuture<String,String>> expired = window.cancelAllExpired();
+        Assert.assertEquals(2, expired.size());
+        Assert.assertTrue(expired.get(0).isCancelled());
+        Assert.assertTrue(expired.get(1).isCancelled());
+        Assert.assertFalse(future1.isDone());
+        Assert.assertFalse(future3.isDone());
+        Assert.assertEquals(2, window.getSize());
+        Assert.assertTrue(window.containsKey(1));
+        Assert.assertTrue(window.containsKey(3));
+    }
+
+    @Test
+    public void completingWakesBlockedOffer() throws Exception {
+        final IntKeyWindow<String,String> window = new IntKeyWindow<String,String>(1);
+        IntKeyWindowFuture<String,String> future0 = window.offer(0, "Request0", 100);
+
+        final BlockingQueue<IntKeyWindowFuture<String,String>> accepted = new LinkedBlockingQueue<IntKeyWindowFuture<String,String>>();
+        Thread offerer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    accepted.add(window.offer(1, "Request1", 5000));
+                } catch (Exception e) {
+                    logger.error("", e);
+                }
+            }
+        };
+        offerer.start();
+
+        // wait till the offer is blocked
+        while (window.getPendingOfferCount() == 0) {
+            Thread.sleep(5);
+        }
+
+        final BlockingQueue<WindowFuture<Integer,String,String>> done = new LinkedBlockingQueue<WindowFuture<Integer,String,String>>();
+        future0.addListener(new WindowFutureListener<Integer,String,String>() {
+            @Override
+            public void done(WindowFuture<Integer,String,String> future) {
+                done.add(future);
+            }
+        });
+        window.complete(0, "Response0");
+        Assert.assertSame(future0, done.poll());
+
+        IntKeyWindowFuture<String,String> future1 = accepted.poll(5000, TimeUnit.MILLISECONDS);
+        Assert.assertNotNull(future1);
+        Assert.assertEquals(1, future1.getIntKey());
+        Assert.assertEquals(1, window.getSize());
+        Assert.assertEquals(0, window.getPendingOfferCount());
+    }
+
+    @Test
+    public void abortPendingOffers() throws Exception {
+        final IntKeyWindow<String,String> window = new IntKeyWindow<String,String>(1);
+        window.offer(0, "Request0", 100);
+
+        final BlockingQueue<Exception> aborted = new LinkedBlockingQueue<Exception>();
+        Thread offerer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    window.offer(1, "Request1", 5000);
+                } catch (Exception e) {
+                    aborted.add(e);
+                }
+            }
+        };
+        offerer.start();
+        while (window.getPendingOfferCount() == 0) {
+            Thread.sleep(5);
+        }
+
+        Assert.assertTrue(window.abortPendingOffers());
+        Exception e = aborted.poll(5000, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(e instanceof PendingOfferAbortedException);
+        Assert.assertFalse(window.abortPendingOffers());
+        Assert.assertEquals(1, window.getSize());
+    }
+
+    @Test
+    public void keysSurviveRandomOffersAndCompletes() throws Exception {
+        // exercises probing and deleting in the open-addressed table
+        IntKeyWindow<String,String> window = new IntKeyWindow<String,String>(64);
+        Set<Integer> keys = new HashSet<Integer>();
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            int key = random.nextInt(256) - 128;
+            if (keys.contains(key)) {
+                IntKeyWindowFuture<String,String> future = window.complete(key, "Response");
+                Assert.assertNotNull(future);
+                Assert.assertEquals(key, future.getIntKey());
+                window.recycle(future);
+                keys.remove(key);
+            } else if (keys.size() < 64) {
+                window.offer(key, "Request", 0);
+                keys.add(key);
+            }
+            Assert.assertEquals(keys.size(), window.getSize());
+        }
+        for (int key = -128; key < 128; key++) {
+            Assert.assertEquals(keys.contains(key), window.containsKey(key));
+        }
+    }
+
+    @Test
+    public void multithreadedProcessing() throws Exception {
+        final IntKeyWindow<String,String> window = new IntKeyWindow<String,String>(5);
+        final int requestThreadCount = 8;
+        final int requestsPerThread = 10000;
+        final BlockingQueue<Integer> requestQueue = new LinkedBlockingQueue<Integer>();
+        final Throwable[] throwables = new Throwable[requestThreadCount + 1];
+
+        Thread[] requestThreads = new Thread[requestThreadCount];
+        for (int i = 0; i < requestThreadCount; i++) {
+            final int id = i;
+            requestThreads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int x = 0; x < requestsPerThread; x++) {
+                            int key = id*requestsPerThread + x;
+                            IntKeyWindowFuture<String,String> future = window.offer(key, "Request" + key, 5000);
+                            requestQueue.add(key);
+                            Assert.assertTrue(future.await(5000));
+                            Assert.assertEquals("Response" + key, future.getResponse());
+                            window.recycle(future);
+                        }
+                    } catch (Throwable t) {
+                        logger.error("", t);
+                        throwables[id] = t;
+                    }
+                }
+            };
+            requestThreads[i].start();
+        }
+        Thread responseThread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int x = 0; x < requestThreadCount*requestsPerThread; x++) {
+                        Integer key = requestQueue.poll(5000, TimeUnit.MILLISECONDS);
+                        Assert.assertNotNull(key);
+                        Assert.assertNotNull(window.complete(key, "Response" + key));
+                    }
+                } catch (Throwable t) {
+                    logger.error("", t);
+                    throwables[requestThreadCount] = t;
+                }
+            }
+        };
+        responseThread.start();
+
+        for (Thread requestThread : requestThreads) {
+            requestThread.join();
+        }
+        responseThread.join();
+        for (Throwable t : throwables) {
+            Assert.assertNull(t);
+        }
+        Assert.assertEquals(0, window.getSize());
+    }
+
+    @Test
+    public void directCompleteRacesRecycleAndOffer() throws Exception {
+        // pairs of threads: one offers a request and recycles its future as
+        // soon as it's done, the other completes it directly on the future;
+        // the window has room for a second request per pair, so an offer
+        // doesn't wait for the slot of the request just completed to be freed
+        final int pairs = 4;
+        final int requestsPerPair = 20000;
+        final IntKeyWindow<String,String> window = new IntKeyWindow<String,String>(pairs * 2);
+        final Throwable[] throwables = new Throwable[pairs * 2];
+
+        Thread[] threads = new Thread[pairs * 2];
+        for (int i = 0; i < pairs; i++) {
+            final int id = i;
+            final BlockingQueue<IntKeyWindowFuture<String,String>> completeQueue = new LinkedBlockingQueue<IntKeyWindowFuture<String,String>>();
+            threads[i*2] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int x = 0; x < requestsPerPair; x++) {
+                            int key = id * requestsPerPair + x;
+                            IntKeyWindowFuture<String,String> future = window.offer(key, "Request" + key, 5000);
+                            Assert.assertSame(future, window.get(key));
+                            completeQueue.add(future);
+                            while (!future.isDone()) {
+                                // spin
+                            }
+                            window.recycle(future);
+                        }
+                    } catch (Throwable t) {
+                        logger.error("", t);
+                        throwables[id*2] = t;
+                    }
+                }
+            };
+            threads[i*2+1] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int x = 0; x < requestsPerPair; x++) {
+                            IntKeyWindowFuture<String,String> future = completeQueue.poll(5000, TimeUnit.MILLISECONDS);
+                            Assert.assertNotNull(future);
+                            // completed directly rather than through the window
+                            future.complete("Response");
+                        }
+                    } catch (Throwable t) {
+                        logger.error("", t);
+                        throwables[id*2+1] = t;
+                    }
+                }
+            };
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (Throwable t : throwables) {
+            Assert.assertNull(t);
+        }
+        // a future deleted under its new key would leave its old slot behind
+        Assert.assertEquals(0, window.getSize());
+    }
+}
@@ -21,10 +21,16 @@ package com.cloudhopper.commons.util.windowing;
  */
 
 // third party imports
+import com.cloudhopper.commons.util.ManagementUtil;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import org.junit.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -543,4 +549,304 @@ public class WindowTest {
             // correct behavior
         }
     }
+
+    @Test
+    public void cancelAllExpiredOnlyCancelsDueRequests() throws Exception {
+        Window<Integer,String,String> window = new Window<Integer,String,String>(10);
+        window.offer(0, "Request0", 100, 1);
+        window.offer(1, "Request1", 100, 1);
+        WindowFuture<Integer,String,String> future2 = window.offer(2, "Request2", 100, 3600000);
+        WindowFuture<Integer,String,String> future3 = window.offer(3, "Request3", 100);
+        // done requests must never be expired
+        window.offer(4, "Request4", 100, 1);
+        window.complete(4, "Response4");
+        WindowFuture<Integer,String,String> future5 = window.offer(5, "Request5", 100, 1);
+        future5.complete("Response5");
+
+        Thread.sleep(20);
+
+        List<WindowFuture<Integer,String,String>> expired = window.cancelAllExpired();
+        Assert.assertEquals(2, expired.size());
+        // in the order they expired
+        Assert.assertEquals(new Integer(0), expired.get(0).getKey());
+        Assert.assertEquals(new Integer(1), expired.get(1).getKey());
+        Assert.assertTrue(expired.get(0).isCancelled());
+        Assert.assertTrue(expired.get(1).isCancelled());
+        Assert.assertTrue(future5.isSuccess());
+        Assert.assertFalse(future2.isDone());
+        Assert.assertFalse(future3.isDone());
+        Assert.assertEquals(2, window.getSize());
+
+        // nothing else is due
+        Assert.assertEquals(0, window.cancelAllExpired().size());
+        Assert.assertEquals(2, window.getSize());
+    }
+
+    @Test
+    public void offerAsyncQueuedUntilSlotFreed() throws Exception {
+        Window<Integer,String,String> window = new Window<Integer,String,String>(2);
+        OfferFuture<Integer,String,String> offer0 = window.offerAsync(0, "Request0", 0);
+        OfferFuture<Integer,String,String> offer1 = window.offerAsync(1, "Request1", 0);
+        // free slots are accepted immediately
+        Assert.assertTrue(offer0.isDone());
+        Assert.assertTrue(offer0.isAccepted());
+        Assert.assertEquals(new Integer(0), offer0.getWindowFuture().getKey());
+        Assert.assertTrue(offer1.isAccepted());
+        Assert.assertEquals(2, window.getSize());
+
+        final BlockingQueue<OfferFuture<Integer,String,String>> accepted = new LinkedBlockingQueue<OfferFuture<Integer,String,String>>();
+        OfferFuture<Integer,String,String> offer2 = window.offerAsync(2, "Request2", 0);
+        offer2.addListener(new OfferFutureListener<Integer,String,String>() {
+            @Override
+            public void done(OfferFuture<Integer,String,String> offer) {
+                accepted.add(offer);
+            }
+        });
+        Assert.assertFalse(offer2.isDone());
+        Assert.assertFalse(offer2.await(10));
+        Assert.assertNull(offer2.getWindowFuture());
+        Assert.assertEquals(0, accepted.size());
+
+        // completing a request hands its slot to the queued offer
+        window.complete(0, "Response0");
+        Assert.assertTrue(offer2.await(0));
+        Assert.assertTrue(offer2.isAccepted());
+        Assert.assertEquals(1, accepted.size());
+        Assert.assertSame(offer2, accepted.poll());
+        Assert.assertEquals(new Integer(2), offer2.getWindowFuture().getKey());
+        Assert.assertEquals("Request2", offer2.getWindowFuture().getRequest());
+        Assert.assertSame(offer2.getWindowFuture(), window.get(2));
+        Assert.assertEquals(2, window.getSize());
+
+        // a listener added once done is called immediately
+        offer2.addListener(new OfferFutureListener<Integer,String,String>() {
+            @Override
+            public void done(OfferFuture<Integer,String,String> offer) {
+                accepted.add(offer);
+            }
+        });
+        Assert.assertEquals(1, accepted.size());
+    }
+
+    @Test
+    public void offerAsyncCancelWithdrawsOffer() throws Exception {
+        Window<Integer,String,String> window = new Window<Integer,String,String>(1);
+        window.offer(0, "Request0", 100);
+        OfferFuture<Integer,String,String> offer1 = window.offerAsync(1, "Request1", 0);
+        OfferFuture<Integer,String,String> offer2 = window.offerAsync(2, "Request2", 0);
+
+        Assert.assertTrue(offer1.cancel());
+        Assert.assertTrue(offer1.isDone());
+        Assert.assertTrue(offer1.isCancelled());
+        Assert.assertFalse(offer1.isAccepted());
+
+        // the freed slot skips the cancelled offer
+        window.complete(0, "Response0");
+        Assert.assertTrue(offer2.isAccepted());
+        Assert.assertFalse(offer2.cancel());
+        Assert.assertFalse(window.containsKey(1));
+        Assert.assertTrue(window.containsKey(2));
+        Assert.assertEquals(1, window.getSize());
+    }
+
+    @Test
+    public void offerAsyncFailsWhenKeyAddedWhileQueued() throws Exception {
+        Window<Integer,String,String> window = new Window<Integer,String,String>(2);
+        window.offer(0, "Request0", 100);
+        window.offer(1, "Request1", 100);
+        OfferFuture<Integer,String,String> offer2 = window.offerAsync(2, "Request2", 0);
+        OfferFuture<Integer,String,String> offer2b = window.offerAsync(2, "Request2b", 0);
+
+        // both slots are freed at once
+        window.cancelAll();
+        Assert.assertTrue(offer2.isAccepted());
+        Assert.assertTrue(offer2b.isDone());
+        Assert.assertFalse(offer2b.isAccepted());
+        Assert.assertTrue(offer2b.getCause() instanceof DuplicateKeyException);
+        Assert.assertEquals("Request2", window.get(2).getRequest());
+        Assert.assertEquals(1, window.getSize());
+    }
+
+    @Test(expected=DuplicateKeyException.class)
+    public void offerAsyncThrowsDuplicateKey() throws Exception {
+        Window<Integer,String,String> window = new Window<Integer,String,String>(1);
+        window.offer(0, "Request0", 100);
+        window.offerAsync(0, "Request0", 0);
+    }
+
+    @Test
+    public void abortPendingOffersFailsQueuedAsyncOffers() throws Exception {
+        Window<Integer,String,String> window = new Window<Integer,String,String>(1);
+        window.offer(0, "Request0", 100);
+        OfferFuture<Integer,String,String> offer1 = window.offerAsync(1, "Request1", 0);
+
+        Assert.assertTrue(window.abortPendingOffers());
+        Assert.assertTrue(offer1.isDone());
+        Assert.assertFalse(offer1.isAccepted());
+        Assert.assertTrue(offer1.getCause() instanceof PendingOfferAbortedException);
+        Assert.assertFalse(window.abortPendingOffers());
+
+        window.complete(0, "Response0");
+        Assert.assertEquals(0, window.getSize());
+    }
+
+    @Test
+    public void windowFutureListenersNotifiedOnceDone() throws Exception {
+        Window<Integer,String,String> window = new Window<Integer,String,String>(4);
+        final BlockingQueue<WindowFuture<Integer,String,String>> done = new LinkedBlockingQueue<WindowFuture<Integer,String,String>>();
+        WindowFutureListener<Integer,String,String> listener = new WindowFutureListener<Integer,String,String>() {
+            @Override
+            public void done(WindowFuture<Integer,String,String> future) {
+                done.add(future);
+            }
+        };
+
+        WindowFuture<Integer,String,String> future0 = window.offer(0, "Request0", 100);
+        WindowFuture<Integer,String,String> future1 = window.offer(1, "Request1", 100);
+        WindowFuture<Integer,String,String> future2 = window.offer(2, "Request2", 100);
+        future0.addListener(listener);
+        future1.addListener(listener);
+        future2.addListener(listener);
+        Assert.assertEquals(0, done.size());
+
+        // completed thru the window
+        window.complete(0, "Response0");
+        Assert.assertEquals(1, done.size());
+        WindowFuture<Integer,String,String> f = done.poll();
+        Assert.assertSame(future0, f);
+        Assert.assertTrue(f.isSuccess());
+        Assert.assertEquals(2, window.getSize());
+
+        // completed directly
+        future1.fail(new Exception("test"));
+        Assert.assertEquals(1, done.size());
+        Assert.assertSame(future1, done.poll());
+
+        window.cancelAll();
+        Assert.assertEquals(1, done.size());
+        Assert.assertTrue(done.poll().isCancelled());
+
+        // already done futures call new listeners right away (and only once)
+        future0.addListener(listener);
+        Assert.assertEquals(1, done.size());
+        Assert.assertSame(future0, done.poll());
+        window.complete(0, "Response0");
+        Assert.assertEquals(0, done.size());
+    }
+
+    @Test
+    public void metricsListenerCountsRequests() throws Exception {
+        Window<Integer,String,String> window = new Window<Integer,String,String>(3);
+        WindowMetrics<Integer,String,String> metrics = new WindowMetrics<Integer,String,String>();
+        window.setMetricsListener(metrics);
+        Assert.assertSame(metrics, window.getMetricsListener());
+
+        window.offer(0, "Request0", 100);
+        WindowFuture<Integer,String,String> future1 = window.offer(1, "Request1", 100);
+        window.offer(2, "Request2", 100, 1);
+        window.complete(0, "Response0");
+        // completed directly
+        future1.fail(new Exception("test"));
+        Thread.sleep(20);
+        Assert.assertEquals(1, window.cancelAllExpired().size());
+
+        window.offer(3, "Request3", 100);
+        window.offer(4, "Request4", 100);
+        window.offer(5, "Request5", 100);
+        try {
+            window.offer(6, "Request6", 10);
+            Assert.fail();
+        } catch (OfferTimeoutException e) {
+            // correct behavior
+        }
+        window.cancelAll();
+
+        Assert.assertEquals(6, metrics.getAcceptedCount());
+        Assert.assertEquals(1, metrics.getOfferTimeoutCount());
+        Assert.assertEquals(1, metrics.getCompletedCount());
+        Assert.assertEquals(1, metrics.getFailedCount());
+        Assert.assertEquals(1, metrics.getExpiredCount());
+        Assert.assertEquals(3, metrics.getCancelledCount());
+        Assert.assertEquals(3, metrics.getOccupancyMax());
+        Assert.assertTrue(metrics.getRoundTripTimeMax() >= 0);
+        Assert.assertTrue(metrics.getOfferWaitTime999th() <= metrics.getOfferWaitTimeMax());
+
+        // exported thru jmx
+        String name = "com.cloudhopper:type=WindowMetrics,name=" + window.getClass().getSimpleName() + "Test";
+        ManagementUtil.registerMBean(name, metrics);
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        Assert.assertEquals(6L, mbs.getAttribute(new ObjectName(name), "AcceptedCount"));
+        mbs.invoke(new ObjectName(name), "reset", null, null);
+        Assert.assertEquals(0, metrics.getAcceptedCount());
+        Assert.assertEquals(0, metrics.getOccupancyMax());
+        Assert.assertTrue(ManagementUtil.unregisterMBean(name));
+        Assert.assertFalse(ManagementUtil.unregisterMBean(name));
+
+        // no longer collected
+        window.setMetricsListener(null);
+        window.offer(7, "Request7", 100);
+        Assert.assertEquals(0, metrics.getAcceptedCount());
+    }
+
+    @Test
+    public void batchCompletion() throws Exception {
+        Window<Integer,String,String> window = new Window<Integer,String,String>(4);
+        WindowMetrics<Integer,String,String> metrics = new WindowMetrics<Integer,String,String>();
+        window.setMetricsListener(metrics);
+        for (int i = 0; i < 4; i++) {
+            window.offer(i, "Request" + i, 100);
+        }
+        OfferFuture<Integer,String,String> offer4 = window.offerAsync(4, "Request4", 0);
+        OfferFuture<Integer,String,String> offer5 = window.offerAsync(5, "Request5", 0);
+        Assert.assertFalse(offer4.isDone());
+
+        // keys not in the window are skipped
+        List<WindowFuture<Integer,String,String>> completed = window.completeBatch(new Integer[] { 0, 1, 9 }, new String[] { "Response0", "Response1", "Response9" });
+        Assert.assertEquals(2, completed.size());
+        Assert.assertEquals(new Integer(0), completed.get(0).getKey());
+        Assert.assertEquals("Response0", completed.get(0).getResponse());
+        Assert.assertEquals(new Integer(1), completed.get(1).getKey());
+        Assert.assertTrue(completed.get(1).isSuccess());
+        // both freed slots were handed out
+        Assert.assertTrue(offer4.isAccepted());
+        Assert.assertTrue(offer5.isAccepted());
+        Assert.assertEquals(4, window.getSize());
+
+        Map<Integer,String> responses = new HashMap<Integer,String>();
+        responses.put(2, "Response2");
+        responses.put(3, "Response3");
+        completed = window.completeAll(responses);
+        Assert.assertEquals(2, completed.size());
+        Assert.assertEquals(0, window.completeAll(responses).size());
+        Assert.assertEquals(2, window.getSize());
+
+        Exception cause4 = new Exception("test4");
+        List<WindowFuture<Integer,String,String>> failed = window.failBatch(new Integer[] { 4 }, new Throwable[] { cause4 });
+        Assert.assertEquals(1, failed.size());
+        Assert.assertSame(cause4, failed.get(0).getCause());
+        Assert.assertFalse(failed.get(0).isSuccess());
+
+        Map<Integer,Throwable> causes = new HashMap<Integer,Throwable>();
+        causes.put(5, new Exception("test5"));
+        failed = window.failAll(causes);
+        Assert.assertEquals(1, failed.size());
+        Assert.assertEquals("test5", failed.get(0).getCause().getMessage());
+        Assert.assertEquals(0, window.getSize());
+
+        Assert.assertEquals(4, metrics.getCompletedCount());
+        Assert.assertEquals(2, metrics.getFailedCount());
+
+        try {
+            window.completeBatch(new Integer[] { 0 }, new String[0]);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // correct behavior
+        }
+        try {
+            window.failBatch(new Integer[] { 0 }, new Throwable[] { null });
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // correct behavior
+        }
+    }
 }
@@ -0,0 +1,350 @@
+package com.cloudhopper.sxmp;
+
+/*
+ * #%L
+ * ch-sxmp
+ * %%
+ * Copyright (C) 2012 - 2013 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.cloudhopper.commons.util.windowing.DuplicateKeyException;
+import com.cloudhopper.commons.util.windowing.OfferFuture;
+import com.cloudhopper.commons.util.windowing.OfferFutureListener;
+import com.cloudhopper.commons.util.windowing.Window;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronous client for sending SXMP requests without the caller blocking
+ * on each request.  Every method returns immediately with an SxmpFuture that
+ * is completed once the response was received (and parsed).
+ * <br><br>
+ * The number of requests in-flight to any one endpoint (url) is bounded by a
+ * Window per endpoint.  Requests beyond that bound are queued in the window
+ * (via a non-blocking offer) and sent by whichever thread completes an
+ * earlier request, so no thread is ever parked waiting for room.  The number
+ * of threads actually sending requests is therefore bounded by the sum of
+ * the in-flight limits of all active endpoints.  An endpoint's window is
+ * discarded as soon as it has no requests left (in-flight or queued), so
+ * sending to an unbounded number of distinct urls doesn't grow the client.
+ * <br><br>
+ * Requests are streamed straight from the SxmpWriter into the connection and
+ * responses are parsed incrementally as they are read.  Connections are
+ * pooled and kept alive by the underlying SxmpClient.
+ */
+public class SxmpAsyncClient {
+    private static final Logger logger = LoggerFactory.getLogger(SxmpAsyncClient.class);
+
+    private final SxmpClient client;
+    private final ExecutorService executor;
+    private final int maxInFlightPerEndpoint;
+    private final boolean ownsResources;
+    private final ConcurrentMap<String,Endpoint> endpoints;
+    private final AtomicLong sequence;
+
+    /**
+     * Creates a new async client with its own SxmpClient (with enough
+     * connections per host for the in-flight limit) and thread pool.  Both
+     * are shutdown by shutdown().
+     * @param maxInFlightPerEndpoint The maximum number of requests that may
+     *      be in-flight to any one endpoint at a time
+     */
+    public SxmpAsyncClient(int maxInFlightPerEndpoint) {
+        this(createClient(maxInFlightPerEndpoint), Executors.newCachedThreadPool(new SenderThreadFactory()), maxInFlightPerEndpoint, true);
+    }
+
+    /**
+     * Creates a new async client that sends requests with the SxmpClient on
+     * threads of the executor.  Neither are shutdown by shutdown().  The
+     * SxmpClient should allow at least maxInFlightPerEndpoint connections per
+     * host, otherwise requests in-flight will wait for a connection.
+     * @param client The client to send requests with
+     * @param executor The executor to send requests on
+     * @param maxInFlightPerEndpoint The maximum number of requests that may
+     *      be in-flight to any one endpoint at a time
+     */
+    public SxmpAsyncClient(SxmpClient client, ExecutorService executor, int maxInFlightPerEndpoint) {
+        this(client, executor, maxInFlightPerEndpoint, false);
+    }
+
+    private SxmpAsyncClient(SxmpClient client, ExecutorService executor, int maxInFlightPerEndpoint, boolean ownsResources) {
+        if (maxInFlightPerEndpoint <= 0) {
+            throw new IllegalArgumentException("maxInFlightPerEndpoint must be > 0");
+        }
+        this.client = client;
+        this.executor = executor;
+        this.maxInFlightPerEndpoint = maxInFlightPerEndpoint;
+        this.ownsResources = ownsResources;
+        this.endpoints = new ConcurrentHashMap<String,Endpoint>();
+        this.sequence = new AtomicLong();
+    }
+
+    static private SxmpClient createClient(int maxInFlightPerEndpoint) {
+        SxmpClient client = new SxmpClient();
+        if (client.getMaxConnectionsPerHost() < maxInFlightPerEndpoint) {
+            client.setMaxConnectionsPerHost(maxInFlightPerEndpoint);
+        }
+        if (client.getMaxTotalConnections() < maxInFlightPerEndpoint) {
+            client.setMaxTotalConnections(maxInFlightPerEndpoint);
+        }
+        return client;
+    }
+
+    public SxmpClient getClient() {
+        return this.client;
+    }
+
+    public int getMaxInFlightPerEndpoint() {
+        return this.maxInFlightPerEndpoint;
+    }
+
+    /**
+     * Gets the number of requests currently in-flight to the endpoint.
+     * @param url The url of the endpoint
+     * @return The number of requests in-flight
+     */
+    public int getInFlightCount(String url) {
+        Endpoint endpoint = this.endpoints.get(url);
+        return (endpoint == null ? 0 : endpoint.window.getSize());
+    }
+
+    /**
+     * Gets the number of endpoints that currently have requests in-flight or
+     * queued.  Endpoints without any requests are discarded.
+     * @return The number of active endpoints
+     */
+    public int getEndpointCount() {
+        return this.endpoints.size();
+    }
+
+    public SxmpFuture<SubmitResponse> submit(String url, SubmitRequest request) {
+        return send(url, request, true, SubmitResponse.class);
+    }
+
+    public SxmpFuture<DeliverResponse> deliver(String url, DeliverRequest request, boolean shouldParseResponse) {
+        return send(url, request, shouldParseResponse, DeliverResponse.class);
+    }
+
+    public SxmpFuture<DeliveryReportResponse> deliveryReport(String url, DeliveryReportRequest request, boolean shouldParseResponse) {
+        return send(url, request, shouldParseResponse, DeliveryReportResponse.class);
+    }
+
+    public SxmpFuture<Response> send(String url, Request request, boolean shouldParseResponse) {
+        return send(url, request, shouldParseResponse, Response.class);
+    }
+
+    private <P extends Response> SxmpFuture<P> send(final String url, Request request, final boolean shouldParseResponse, Class<P> responseType) {
+        final SxmpFuture<P> future = new SxmpFuture<P>(request, responseType);
+        final Endpoint endpoint = retainEndpoint(url);
+        final Window<Long,Request,Response> window = endpoint.window;
+        // every future is done exactly once, however the request ends
+        future.addListener(new SxmpFutureListener<P>() {
+            public void done(SxmpFuture<P> f) {
+                releaseEndpoint(url, endpoint);
+            }
+        });
+
+        OfferFuture<Long,Request,Response> offer = null;
+        try {
+            // keys are unique across all windows, so never a duplicate
+            offer = window.offerAsync(sequence.incrementAndGet(), request, 0);
+        } catch (DuplicateKeyException e) {
+            future.fail(e);
+            return future;
+        }
+        future.setOffer(offer);
+
+        offer.addListener(new OfferFutureListener<Long,Request,Response>() {
+            public void done(OfferFuture<Long,Request,Response> offer) {
+                if (offer.isAccepted()) {
+                    try {
+                        executor.execute(new SendTask<P>(url, window, offer.getKey(), shouldParseResponse, future));
+                    } catch (Throwable t) {
+                        // e.g. RejectedExecutionException after shutdown
+                        failInWindow(window, offer.getKey(), t);
+                        future.fail(t);
+                    }
+                } else if (offer.isCancelled()) {
+                    future.cancelled();
+                } else {
+                    future.fail(offer.getCause());
+                }
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Gets the endpoint of the url (creating it if needed) with one more
+     * request counted against it.
+     */
+    private Endpoint retainEndpoint(String url) {
+        while (true) {
+            Endpoint endpoint = this.endpoints.get(url);
+            if (endpoint == null) {
+                endpoint = new Endpoint(this.maxInFlightPerEndpoint);
+                Endpoint existing = this.endpoints.putIfAbsent(url, endpoint);
+                if (existing != null) {
+                    endpoint = existing;
+                }
+            }
+            if (endpoint.retain()) {
+                return endpoint;
+            }
+            // retired by its last request: make sure it's gone and start over
+            this.endpoints.remove(url, endpoint);
+        }
+    }
+
+    private void releaseEndpoint(String url, Endpoint endpoint) {
+        if (endpoint.release()) {
+            this.endpoints.remove(url, endpoint);
+        }
+    }
+
+    static private void failInWindow(Window<Long,Request,Response> window, Long key, Throwable t) {
+        try {
+            // frees up the slot, which may send the next queued request
+            window.fail(key, t);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Fails every queued (not yet sent) request with a
+     * PendingOfferAbortedException.  Requests in-flight are still completed.
+     * If this client created its own SxmpClient and thread pool, they are
+     * shutdown once the requests in-flight are done.
+     */
+    public void shutdown() {
+        for (Endpoint endpoint : this.endpoints.values()) {
+            try {
+                endpoint.window.abortPendingOffers();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (this.ownsResources) {
+            // let requests in-flight finish before closing the connections
+            this.executor.shutdown();
+            try {
+                this.executor.awaitTermination(this.client.getSocketTimeout() + this.client.getConnectTimeout(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            this.client.shutdown();
+        }
+    }
+
+    private class SendTask<P extends Response> implements Runnable {
+        private final String url;
+        private final Window<Long,Request,Response> window;
+        private final Long key;
+        private final boolean shouldParseResponse;
+        private final SxmpFuture<P> future;
+
+        public SendTask(String url, Window<Long,Request,Response> window, Long key, boolean shouldParseResponse, SxmpFuture<P> future) {
+            this.url = url;
+            this.window = window;
+            this.key = key;
+            this.shouldParseResponse = shouldParseResponse;
+            this.future = future;
+        }
+
+        public void run() {
+            Response response = null;
+            try {
+                response = client.execute(url, future.getRequest(), shouldParseResponse);
+            } catch (Throwable t) {
+                logger.debug("Unable to send request to [" + url + "]", t);
+                failInWindow(window, key, t);
+                future.fail(t);
+                return;
+            }
+            try {
+                // frees up the slot, which may send the next queued request
+                // (a window doesn't accept null responses, which are expected
+                // if the response wasn't parsed)
+                if (response != null) {
+                    window.complete(key, response);
+                } else {
+                    window.cancel(key);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            future.complete(response);
+        }
+    }
+
+    /**
+     * The window of an endpoint and the number of requests (in-flight or
+     * queued) that use it.  Once the count drops to zero the endpoint is
+     * retired: it never takes another request and is removed, so at most one
+     * live window exists per url.
+     */
+    static private class Endpoint {
+        private final Window<Long,Request,Response> window;
+        // number of requests, or -1 once retired
+        private final AtomicInteger requests;
+
+        public Endpoint(int maxInFlight) {
+            this.window = new Window<Long,Request,Response>(maxInFlight);
+            this.requests = new AtomicInteger();
+        }
+
+        public boolean retain() {
+            while (true) {
+                int count = this.requests.get();
+                if (count < 0) {
+                    return false;
+                }
+                if (this.requests.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * @return True if this was the last request and the endpoint is now
+         *      retired (and should be removed)
+         */
+        public boolean release() {
+            return (this.requests.decrementAndGet() == 0 && this.requests.compareAndSet(0, -1));
+        }
+    }
+
+    static private class SenderThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "SxmpAsyncClientSender-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
+}
@@ -0,0 +1,249 @@
+package com.cloudhopper.sxmp;
+
+/*
+ * #%L
+ * ch-sxmp
+ * %%
+ * Copyright (C) 2012 - 2013 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Buffered byte sink used by SxmpWriter to render an operation straight into
+ * an OutputStream.  Static markup is copied from pre-encoded fragments while
+ * dynamic values are escaped and encoded char-by-char into the buffer, so no
+ * intermediate Strings or byte arrays are created.  Only the two encodings
+ * SXMP supports (ISO-8859-1 and UTF-8) are handled; unmappable chars become
+ * '?' exactly like String.getBytes() and OutputStreamWriter would produce.
+ */
+final class SxmpByteWriter {
+
+    /** Values written as-is (other than being encoded) */
+    static final int ESCAPE_NONE = 0;
+    /** Escape only (amp, lt, gt) as XmlEscapeUtil.escapeTextXml() does */
+    static final int ESCAPE_TEXT = 1;
+    /** Escape the same chars as StringUtil.escapeXml() does */
+    static final int ESCAPE_ATTRIBUTE = 2;
+
+    static private final int DEFAULT_BUFFER_SIZE = 1024;
+
+    static private final byte[] HEX = {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+    };
+
+    static private final byte[] AMP = ascii("&amp;");
+    static private final byte[] LT = ascii("&lt;");
+    static private final byte[] GT = ascii("&gt;");
+    static private final byte[] QUOT = ascii("&quot;");
+    static private final byte[] APOS = ascii("&apos;");
+    static private final byte[] LF = ascii("&#10;");
+    static private final byte[] CR = ascii("&#13;");
+
+    private final OutputStream out;
+    private final boolean utf8;
+    private final byte[] buf;
+    private int pos;
+
+    /**
+     * Creates a new writer.
+     * @param out The stream to write to
+     * @param utf8 True if values should be encoded as UTF-8, otherwise
+     *      they'll be encoded as ISO-8859-1
+     */
+    public SxmpByteWriter(OutputStream out, boolean utf8) {
+        this.out = out;
+        this.utf8 = utf8;
+        this.buf = new byte[DEFAULT_BUFFER_SIZE];
+        this.pos = 0;
+    }
+
+    /**
+     * Encodes a constant markup string to bytes.  Only intended for static
+     * fragments that are plain ASCII (and therefore identical in both
+     * ISO-8859-1 and UTF-8).
+     */
+    static byte[] ascii(String s) {
+        byte[] bytes = new byte[s.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte)s.charAt(i);
+        }
+        return bytes;
+    }
+
+    public void write(byte[] fragment) throws IOException {
+        if (fragment.length > buf.length - pos) {
+            flushBuffer();
+            if (fragment.length > buf.length) {
+                out.write(fragment);
+                return;
+            }
+        }
+        System.arraycopy(fragment, 0, buf, pos, fragment.length);
+        pos += fragment.length;
+    }
+
+    public void write(int value) throws IOException {
+        if (value == Integer.MIN_VALUE) {
+            // can't be negated, take the slow path
+            write(Integer.toString(value), ESCAPE_NONE);
+            return;
+        }
+        ensure(11);
+        if (value < 0) {
+            buf[pos++] = '-';
+            value = -value;
+        }
+        // count digits then fill them in backwards
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        int i = pos + digits;
+        pos = i;
+        do {
+            buf[--i] = (byte)('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+    }
+
+    /**
+     * Escapes and encodes a value into the buffer.
+     * @param value The value to write
+     * @param escape One of ESCAPE_NONE, ESCAPE_TEXT, or ESCAPE_ATTRIBUTE
+     */
+    public void write(String value, int escape) throws IOException {
+        int len = value.length();
+        for (int i = 0; i < len; i++) {
+            char c = value.charAt(i);
+            if (escape != ESCAPE_NONE) {
+                byte[] entity = entity(c, escape);
+                if (entity != null) {
+                    write(entity);
+                    continue;
+                }
+            }
+            i = encode(value, i, c, false);
+        }
+    }
+
+    /**
+     * Encodes text using the charset of the encoding and writes it out as
+     * uppercase hex, identical to HexUtil.toHexString(text.getBytes(charset)).
+     */
+    public void writeHex(String text, TextEncoding encoding) throws IOException {
+        boolean textUtf8 = (encoding == TextEncoding.UTF_8);
+        int len = text.length();
+        for (int i = 0; i < len; i++) {
+            i = encode(text, i, text.charAt(i), textUtf8, true);
+        }
+    }
+
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    private void flushBuffer() throws IOException {
+        if (pos > 0) {
+            out.write(buf, 0, pos);
+            pos = 0;
+        }
+    }
+
+    private void ensure(int n) throws IOException {
+        if (n > buf.length - pos) {
+            flushBuffer();
+        }
+    }
+
+    static private byte[] entity(char c, int escape) {
+        switch (c) {
+            case '&':
+                return AMP;
+            case '<':
+                return LT;
+            case '>':
+                return GT;
+        }
+        if (escape == ESCAPE_ATTRIBUTE) {
+            switch (c) {
+                case '"':
+                    return QUOT;
+                case '\'':
+                    return APOS;
+                case '\n':
+                    return LF;
+                case '\r':
+                    return CR;
+            }
+        }
+        return null;
+    }
+
+    private int encode(String s, int i, char c, boolean hex) throws IOException {
+        return encode(s, i, c, this.utf8, hex);
+    }
+
+    /**
+     * Encodes the char at index i, consuming its low surrogate if it's the
+     * start of a valid pair.
+     * @return The index of the last char consumed
+     */
+    private int encode(String s, int i, char c, boolean toUtf8, boolean hex) throws IOException {
+        // worst case is 4 bytes, each as 2 hex digits
+        ensure(8);
+        if (c < 0x80) {
+            put(c, hex);
+        } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+            if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                if (toUtf8) {
+                    int cp = Character.toCodePoint(c, s.charAt(i + 1));
+                    put(0xF0 | (cp >> 18), hex);
+                    put(0x80 | ((cp >> 12) & 0x3F), hex);
+                    put(0x80 | ((cp >> 6) & 0x3F), hex);
+                    put(0x80 | (cp & 0x3F), hex);
+                } else {
+                    put('?', hex);
+                }
+                return i + 1;
+            }
+            // unpaired surrogates are malformed in either charset
+            put('?', hex);
+        } else if (!toUtf8) {
+            put(c < 0x100 ? c : '?', hex);
+        } else if (c < 0x800) {
+            put(0xC0 | (c >> 6), hex);
+            put(0x80 | (c & 0x3F), hex);
+        } else {
+            put(0xE0 | (c >> 12), hex);
+            put(0x80 | ((c >> 6) & 0x3F), hex);
+            put(0x80 | (c & 0x3F), hex);
+        }
+        return i;
+    }
+
+    private void put(int b, boolean hex) {
+        if (hex) {
+            buf[pos++] = HEX[(b >> 4) & 0x0F];
+            buf[pos++] = HEX[b & 0x0F];
+        } else {
+            buf[pos++] = (byte)b;
+        }
+    }
+
+}
@@ -0,0 +1,413 @@
+package com.cloudhopper.sxmp;
+
+/*
+ * #%L
+ * ch-sxmp
+ * %%
+ * Copyright (C) 2012 - 2013 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import javax.xml.parsers.ParserConfigurationException;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.StatusLine;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.BasicResponseHandler;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.params.CoreProtocolPNames;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+/**
+ * Thread-safe client for sending SXMP requests over a shared pool of
+ * persistent (keep-alive) HTTP connections.  An instance is meant to be
+ * created once and shared by every thread sending requests -- connections
+ * are reused across requests to the same host so that only the first request
+ * pays for the TCP (and SSL) handshake.
+ * <br><br>
+ * Connections idle for longer than the idle timeout (or expired by the
+ * server's keep-alive header) are closed by a background daemon thread. A
+ * pooled connection that was closed by the server is detected by the stale
+ * check before it is reused.  The underlying HttpClient is available via
+ * getHttpClient() for additional configuration (e.g. an "https" scheme or
+ * preemptive basic auth).  Call shutdown() once the client is no longer needed.
+ */
+public class SxmpClient {
+    private static final Logger logger = LoggerFactory.getLogger(SxmpClient.class);
+
+    public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 100;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 10;
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+    public static final int DEFAULT_SOCKET_TIMEOUT = 30000;
+    public static final long DEFAULT_IDLE_TIMEOUT = 60000;
+    public static final long DEFAULT_EVICTION_INTERVAL = 5000;
+
+    private final PoolingClientConnectionManager connectionManager;
+    private final DefaultHttpClient client;
+    private final IdleConnectionEvictor evictor;
+    // responses are always v1.0
+    private final SxmpParser responseParser;
+    private volatile long idleTimeout;
+
+    /**
+     * Creates a new client with the default connection limits, timeouts, and
+     * an idle connection eviction interval of DEFAULT_EVICTION_INTERVAL ms.
+     */
+    public SxmpClient() {
+        this(DEFAULT_EVICTION_INTERVAL);
+    }
+
+    /**
+     * Creates a new client with the default connection limits and timeouts.
+     * @param evictionInterval The interval (in ms) between runs of the idle
+     *      and expired connection eviction. If <= 0 then no background thread
+     *      is started and closeIdleConnections() must be called by the caller.
+     */
+    public SxmpClient(long evictionInterval) {
+        this.connectionManager = new PoolingClientConnectionManager(SchemeRegistryFactory.createDefault());
+        this.connectionManager.setMaxTotal(DEFAULT_MAX_TOTAL_CONNECTIONS);
+        this.connectionManager.setDefaultMaxPerRoute(DEFAULT_MAX_CONNECTIONS_PER_HOST);
+        this.client = new DefaultHttpClient(this.connectionManager);
+        HttpParams params = this.client.getParams();
+        params.setParameter(CoreProtocolPNames.PROTOCOL_VERSION, HttpVersion.HTTP_1_1);
+        params.setParameter(CoreProtocolPNames.USE_EXPECT_CONTINUE, Boolean.FALSE);
+        HttpConnectionParams.setConnectionTimeout(params, DEFAULT_CONNECT_TIMEOUT);
+        HttpConnectionParams.setSoTimeout(params, DEFAULT_SOCKET_TIMEOUT);
+        HttpConnectionParams.setStaleCheckingEnabled(params, true);
+        this.idleTimeout = DEFAULT_IDLE_TIMEOUT;
+        this.responseParser = new SxmpParser(SxmpParser.VERSION_1_0);
+        if (evictionInterval > 0) {
+            this.evictor = new IdleConnectionEvictor(evictionInterval);
+            this.evictor.start();
+        } else {
+            this.evictor = null;
+        }
+    }
+
+    /**
+     * Gets the underlying HttpClient all requests are executed with. Useful
+     * for registering additional schemes or request interceptors.
+     * @return The underlying HttpClient
+     */
+    public DefaultHttpClient getHttpClient() {
+        return this.client;
+    }
+
+    public void setMaxTotalConnections(int value) {
+        this.connectionManager.setMaxTotal(value);
+    }
+
+    public int getMaxTotalConnections() {
+        return this.connectionManager.getMaxTotal();
+    }
+
+    /**
+     * Sets the default maximum number of connections that will be pooled for
+     * any one host (unless overridden by setMaxConnectionsPerHost(url, value)).
+     * @param value The maximum number of connections per host
+     */
+    public void setMaxConnectionsPerHost(int value) {
+        this.connectionManager.setDefaultMaxPerRoute(value);
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return this.connectionManager.getDefaultMaxPerRoute();
+    }
+
+    /**
+     * Sets the maximum number of connections that will be pooled for the host
+     * (scheme, host, and port) of the url.
+     * @param url The url such as "http://www.example.com/api/sxmp/1.0"
+     * @param value The maximum number of connections to this host
+     */
+    public void setMaxConnectionsPerHost(String url, int value) {
+        this.connectionManager.setMaxPerRoute(createRoute(url), value);
+    }
+
+    public int getMaxConnectionsPerHost(String url) {
+        return this.connectionManager.getMaxPerRoute(createRoute(url));
+    }
+
+    /**
+     * Sets the timeout (in ms) to establish a new connection. Zero is
+     * interpreted as an infinite timeout.
+     * @param value The connect timeout in ms
+     */
+    public void setConnectTimeout(int value) {
+        HttpConnectionParams.setConnectionTimeout(this.client.getParams(), value);
+    }
+
+    public int getConnectTimeout() {
+        return HttpConnectionParams.getConnectionTimeout(this.client.getParams());
+    }
+
+    /**
+     * Sets the timeout (in ms) waiting for data on a connection (e.g. waiting
+     * for the response). Zero is interpreted as an infinite timeout.
+     * @param value The socket timeout in ms
+     */
+    public void setSocketTimeout(int value) {
+        HttpConnectionParams.setSoTimeout(this.client.getParams(), value);
+    }
+
+    public int getSocketTimeout() {
+        return HttpConnectionParams.getSoTimeout(this.client.getParams());
+    }
+
+    /**
+     * Sets whether a pooled connection is checked if it was closed by the
+     * server before being reused.  Costs up to 1 ms per request, but avoids
+     * a failed request when the server closes idle connections on its own.
+     * @param value True if stale connection checking is enabled
+     */
+    public void setStaleCheckingEnabled(boolean value) {
+        HttpConnectionParams.setStaleCheckingEnabled(this.client.getParams(), value);
+    }
+
+    public boolean isStaleCheckingEnabled() {
+        return HttpConnectionParams.isStaleCheckingEnabled(this.client.getParams());
+    }
+
+    /**
+     * Sets the amount of time (in ms) a pooled connection may remain idle
+     * before it is closed by the idle connection eviction.
+     * @param value The idle timeout in ms
+     */
+    public void setIdleTimeout(long value) {
+        this.idleTimeout = value;
+    }
+
+    public long getIdleTimeout() {
+        return this.idleTimeout;
+    }
+
+    /**
+     * Closes any pooled connections that have been idle longer than the idle
+     * timeout or have expired per the server's keep-alive header. Called
+     * automatically by the background eviction thread (if enabled).
+     */
+    public void closeIdleConnections() {
+        this.connectionManager.closeExpiredConnections();
+        this.connectionManager.closeIdleConnections(this.idleTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets the number of connections currently open (both leased and idle in
+     * the pool).
+     * @return The number of open connections
+     */
+    public int getConnectionCount() {
+        PoolStats stats = this.connectionManager.getTotalStats();
+        return stats.getLeased() + stats.getAvailable();
+    }
+
+    /**
+     * Stops the idle connection eviction and closes all pooled connections.
+     * The client cannot be used after this method is called.
+     */
+    public void shutdown() {
+        if (this.evictor != null) {
+            this.evictor.shutdown();
+        }
+        this.connectionManager.shutdown();
+    }
+
+    public SubmitResponse submit(String url, SubmitRequest request) throws UnsupportedEncodingException, SxmpErrorException, IOException, SxmpParsingException, SAXException, ParserConfigurationException {
+        // send request and get the response
+        Response response = send(url, request, true);
+
+        if (response == null) {
+            return null;
+        }
+
+        if (!(response instanceof SubmitResponse)) {
+            throw new SxmpErrorException(SxmpErrorCode.OPTYPE_MISMATCH, "Unexpected response class type parsed");
+        }
+
+        return (SubmitResponse)response;
+    }
+
+    public DeliverResponse deliver(String url, DeliverRequest request, boolean shouldParseResponse) throws UnsupportedEncodingException, SxmpErrorException, IOException, SxmpParsingException, SAXException, ParserConfigurationException {
+        // send request and get the response
+        Response response = send(url, request, shouldParseResponse);
+
+        if (response == null) {
+            return null;
+        }
+
+        if (!(response instanceof DeliverResponse)) {
+            throw new SxmpErrorException(SxmpErrorCode.OPTYPE_MISMATCH, "Unexpected response class type parsed");
+        }
+
+        return (DeliverResponse)response;
+    }
+
+    public Response send(String url, Request request, boolean shouldParseResponse) throws UnsupportedEncodingException, SxmpErrorException, IOException, SxmpParsingException, SAXException, ParserConfigurationException {
+        // convert request into xml
+        String requestXml = SxmpWriter.createString(request);
+        String responseXml = null;
+
+        long start = System.currentTimeMillis();
+
+        logger.debug("Request XML:\n" + requestXml);
+
+        HttpPost post = new HttpPost(url);
+        StringEntity entity = new StringEntity(requestXml);
+        // write old or new encoding?
+        if (request.getVersion().equals(SxmpParser.VERSION_1_1)) {
+            // v1.1 is utf-8
+            entity.setContentType("text/xml; charset=\"utf-8\"");
+        } else {
+            // v1.0 was 8859-1, though that's technically wrong
+            // unspecified XML must be encoded in UTF-8
+            // maintained this way for backward compatibility
+            entity.setContentType("text/xml; charset=\"iso-8859-1\"");
+        }
+        post.setEntity(entity);
+
+        ResponseHandler<String> responseHandler = new BasicResponseHandler();
+
+        // execute request (will throw exception if fails) -- the response
+        // entity is always consumed so the connection is returned to the pool
+        responseXml = client.execute(post, responseHandler);
+
+        long stop = System.currentTimeMillis();
+
+        logger.debug("Response XML:\n" + responseXml);
+        logger.debug("Response Time: " + (stop - start) + " ms");
+
+        // deliver responses sometimes aren't parseable since its acceptable
+        // for delivery responses to merely return "OK" and an HTTP 200 error
+        if (!shouldParseResponse) {
+            return null;
+        } else {
+            // convert response xml into an object
+            // v1.0 data remains in ISO-8859-1, and responses are v1.0
+            ByteArrayInputStream bais = new ByteArrayInputStream(responseXml.getBytes("ISO-8859-1"));
+            Operation op = responseParser.parse(bais);
+
+            if (!(op instanceof Response)) {
+                throw new SxmpErrorException(SxmpErrorCode.OPTYPE_MISMATCH, "Unexpected response class type parsed");
+            }
+
+            return (Response)op;
+        }
+    }
+
+    /**
+     * Sends a request by streaming it straight from the SxmpWriter and parses
+     * the response incrementally as it is read from the connection, rather
+     * than buffering either as a String.  Used by SxmpAsyncClient.
+     */
+    Response execute(String url, Request request, boolean shouldParseResponse) throws SxmpErrorException, IOException, SxmpParsingException, SAXException, ParserConfigurationException {
+        HttpPost post = new HttpPost(url);
+        post.setEntity(new SxmpRequestEntity(request));
+
+        HttpResponse httpResponse = client.execute(post);
+        HttpEntity entity = httpResponse.getEntity();
+        try {
+            StatusLine statusLine = httpResponse.getStatusLine();
+            if (statusLine.getStatusCode() >= 300) {
+                throw new HttpResponseException(statusLine.getStatusCode(), statusLine.getReasonPhrase());
+            }
+
+            // deliver responses sometimes aren't parseable since its acceptable
+            // for delivery responses to merely return "OK" and an HTTP 200 error
+            if (!shouldParseResponse || entity == null) {
+                return null;
+            }
+
+            Operation op = responseParser.parse(entity.getContent());
+
+            if (!(op instanceof Response)) {
+                throw new SxmpErrorException(SxmpErrorCode.OPTYPE_MISMATCH, "Unexpected response class type parsed");
+            }
+
+            return (Response)op;
+        } finally {
+            // always consume the rest of the response so the connection is
+            // returned to the pool
+            EntityUtils.consume(entity);
+        }
+    }
+
+    private HttpRoute createRoute(String url) {
+        HttpHost host = URIUtils.extractHost(URI.create(url));
+        if (host == null) {
+            throw new IllegalArgumentException("Url [" + url + "] does not contain a host");
+        }
+        // routes are keyed by the resolved port (e.g. 80 for http)
+        Scheme scheme = this.connectionManager.getSchemeRegistry().getScheme(host);
+        return new HttpRoute(new HttpHost(host.getHostName(), scheme.resolvePort(host.getPort()), host.getSchemeName()), null, scheme.isLayered());
+    }
+
+    private class IdleConnectionEvictor extends Thread {
+        private final long interval;
+        private volatile boolean shutdown;
+
+        public IdleConnectionEvictor(long interval) {
+            super("SxmpClientIdleConnectionEvictor");
+            this.interval = interval;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!shutdown) {
+                try {
+                    synchronized (this) {
+                        wait(interval);
+                    }
+                    if (!shutdown) {
+                        closeIdleConnections();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Exception e) {
+                    logger.warn("Unable to close idle connections", e);
+                }
+            }
+        }
+
+        public void shutdown() {
+            shutdown = true;
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+}
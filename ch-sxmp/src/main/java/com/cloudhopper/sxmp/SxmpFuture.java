@@ -0,0 +1,220 @@
+package com.cloudhopper.sxmp;
+
+/*
+ * #%L
+ * ch-sxmp
+ * %%
+ * Copyright (C) 2012 - 2013 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.cloudhopper.commons.util.windowing.OfferFuture;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Result of a request sent with an SxmpAsyncClient.  The request is queued
+ * until the endpoint has room for another in-flight request, then sent, and
+ * this future is completed once its response was received and parsed.
+ * <br><br>
+ * A request can only be cancelled while it is still queued -- once it has
+ * been sent it will be completed with its response (or failure).
+ */
+public class SxmpFuture<P extends Response> implements Future<P> {
+    private static final Logger logger = LoggerFactory.getLogger(SxmpFuture.class);
+
+    private final Request request;
+    private final Class<P> responseType;
+    private final CountDownLatch doneLatch;
+    private volatile OfferFuture<Long,Request,Response> offer;
+    // all guarded by "this"
+    private boolean done;
+    private boolean cancelled;
+    private P response;
+    private Throwable cause;
+    private List<SxmpFutureListener<P>> listeners;
+
+    SxmpFuture(Request request, Class<P> responseType) {
+        this.request = request;
+        this.responseType = responseType;
+        this.doneLatch = new CountDownLatch(1);
+    }
+
+    void setOffer(OfferFuture<Long,Request,Response> offer) {
+        this.offer = offer;
+    }
+
+    /**
+     * Gets the request sent.
+     * @return The request
+     */
+    public Request getRequest() {
+        return this.request;
+    }
+
+    /**
+     * Gets the response if the request was successful.
+     * @return The response or null if not yet done, not successful, or the
+     *      response wasn't parsed (e.g. deliver with shouldParseResponse false)
+     */
+    public synchronized P getResponse() {
+        return this.response;
+    }
+
+    /**
+     * Gets the cause of the failure such as an IOException, an
+     * SxmpParsingException, or an SxmpErrorException.
+     * @return The cause or null if not failed.
+     */
+    public synchronized Throwable getCause() {
+        return this.cause;
+    }
+
+    public synchronized boolean isDone() {
+        return this.done;
+    }
+
+    public synchronized boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    /**
+     * Returns true if the request was sent and its response was received
+     * (and parsed, if requested) successfully.
+     * @return True if successful, otherwise false.
+     */
+    public synchronized boolean isSuccess() {
+        return this.done && !this.cancelled && this.cause == null;
+    }
+
+    /**
+     * Cancels the request if it's still queued and hasn't been sent yet.
+     * @param mayInterruptIfRunning Ignored since a request already sent is
+     *      never interrupted
+     * @return True if cancelled, otherwise false
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        OfferFuture<Long,Request,Response> offer0 = this.offer;
+        // completed by the offer listener
+        return (offer0 != null && offer0.cancel());
+    }
+
+    /**
+     * Waits for this future to be done within the specified time limit.
+     * @param timeoutMillis The amount of milliseconds to wait
+     * @return True if and only if the future was done within the specified
+     *      time limit
+     * @throws InterruptedException Thrown if the current thread was interrupted
+     */
+    public boolean await(long timeoutMillis) throws InterruptedException {
+        return this.doneLatch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public P get() throws InterruptedException, ExecutionException {
+        this.doneLatch.await();
+        return getOrThrow();
+    }
+
+    public P get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!this.doneLatch.await(timeout, unit)) {
+            throw new TimeoutException("Request not done within [" + unit.toMillis(timeout) + "] ms");
+        }
+        return getOrThrow();
+    }
+
+    private synchronized P getOrThrow() throws ExecutionException {
+        if (this.cancelled) {
+            throw new CancellationException();
+        }
+        if (this.cause != null) {
+            throw new ExecutionException(this.cause);
+        }
+        return this.response;
+    }
+
+    /**
+     * Adds a listener that will be called once this future is done.  If this
+     * future is already done, the listener is called immediately by the
+     * calling thread.
+     * @param listener The listener to add
+     */
+    public void addListener(SxmpFutureListener<P> listener) {
+        synchronized (this) {
+            if (!this.done) {
+                if (this.listeners == null) {
+                    this.listeners = new ArrayList<SxmpFutureListener<P>>(1);
+                }
+                this.listeners.add(listener);
+                return;
+            }
+        }
+        notifyListener(listener);
+    }
+
+    void complete(Response value) {
+        if (value != null && !this.responseType.isInstance(value)) {
+            fail(new SxmpErrorException(SxmpErrorCode.OPTYPE_MISMATCH, "Unexpected response class type parsed"));
+            return;
+        }
+        synchronized (this) {
+            this.response = this.responseType.cast(value);
+        }
+        done(false);
+    }
+
+    void fail(Throwable t) {
+        synchronized (this) {
+            this.cause = t;
+        }
+        done(false);
+    }
+
+    void cancelled() {
+        done(true);
+    }
+
+    private void done(boolean cancelled) {
+        List<SxmpFutureListener<P>> listeners0 = null;
+        synchronized (this) {
+            this.done = true;
+            this.cancelled = cancelled;
+            listeners0 = this.listeners;
+            this.listeners = null;
+        }
+        this.doneLatch.countDown();
+        if (listeners0 != null) {
+            for (SxmpFutureListener<P> listener : listeners0) {
+                notifyListener(listener);
+            }
+        }
+    }
+
+    private void notifyListener(SxmpFutureListener<P> listener) {
+        try {
+            listener.done(this);
+        } catch (Throwable t) {
+            logger.warn("Listener threw an exception for request [" + this.request + "]", t);
+        }
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.cloudhopper.sxmp;
+
+/*
+ * #%L
+ * ch-sxmp
+ * %%
+ * Copyright (C) 2012 - 2013 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Listener called once an asynchronous SXMP request is done.
+ */
+public interface SxmpFutureListener<P extends Response> {
+
+    /**
+     * Called once a future is done (success, failure, or cancelled). Called by
+     * the thread that completed the request (or the thread that added the
+     * listener if the future was already done). Must not block for long since
+     * it may delay sending other queued requests.
+     * @param future The future that is done
+     */
+    public void done(SxmpFuture<P> future);
+
+}
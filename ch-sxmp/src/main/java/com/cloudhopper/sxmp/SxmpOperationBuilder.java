@@ -0,0 +1,713 @@
+package com.cloudhopper.sxmp;
+
+/*
+ * #%L
+ * ch-sxmp
+ * %%
+ * Copyright (C) 2012 - 2013 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.cloudhopper.commons.util.HexUtil;
+import com.cloudhopper.commons.util.StringUtil;
+import com.cloudhopper.sxmp.util.MobileAddressUtil;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import org.apache.commons.lang.StringEscapeUtils;
+import org.apache.commons.lang.StringUtils;
+import org.joda.time.DateTime;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Validates the elements of an SXMP document and builds the operation from
+ * them.  Fed the element events of an XML parser by both the SAX based
+ * SxmpParser and the StAX based SxmpPullParser, so every validation rule and
+ * error code lives in one place.  Element names are mapped to an int once
+ * per element and dispatched with a switch, and duplicate elements are
+ * tracked with a bitmask.
+ * <br><br>
+ * Not thread-safe -- each parser thread uses its own instance, which is
+ * reset and reused for every parse.
+ */
+class SxmpOperationBuilder {
+    private static final Logger logger = LoggerFactory.getLogger(SxmpOperationBuilder.class);
+
+    // every element name in the sxmp grammar
+    static private final int TAG_UNKNOWN = 0;
+    static private final int TAG_OPERATION = 1;
+    static private final int TAG_ACCOUNT = 2;
+    static private final int TAG_APPLICATION = 3;
+    static private final int TAG_ERROR = 4;
+    static private final int TAG_SUBMIT_REQUEST = 5;
+    static private final int TAG_DELIVER_REQUEST = 6;
+    static private final int TAG_DELIVERY_REPORT_REQUEST = 7;
+    static private final int TAG_SUBMIT_RESPONSE = 8;
+    static private final int TAG_DELIVER_RESPONSE = 9;
+    static private final int TAG_DELIVERY_REPORT_RESPONSE = 10;
+    static private final int TAG_OPERATOR_ID = 11;
+    static private final int TAG_PRIORITY = 12;
+    static private final int TAG_TICKET_ID = 13;
+    static private final int TAG_STATUS = 14;
+    static private final int TAG_MESSAGE_ERROR = 15;
+    static private final int TAG_CREATE_DATE = 16;
+    static private final int TAG_FINAL_DATE = 17;
+    static private final int TAG_DELIVERY_REPORT = 18;
+    static private final int TAG_SOURCE_ADDRESS = 19;
+    static private final int TAG_DESTINATION_ADDRESS = 20;
+    static private final int TAG_TEXT = 21;
+    static private final int TAG_OPTIONAL_PARAMS = 22;
+
+    static private final Map<String,Integer> tags = new HashMap<String,Integer>();
+
+    static {
+        tags.put("operation", TAG_OPERATION);
+        tags.put("account", TAG_ACCOUNT);
+        tags.put("application", TAG_APPLICATION);
+        tags.put("error", TAG_ERROR);
+        tags.put("submitRequest", TAG_SUBMIT_REQUEST);
+        tags.put("deliverRequest", TAG_DELIVER_REQUEST);
+        tags.put("deliveryReportRequest", TAG_DELIVERY_REPORT_REQUEST);
+        tags.put("submitResponse", TAG_SUBMIT_RESPONSE);
+        tags.put("deliverResponse", TAG_DELIVER_RESPONSE);
+        tags.put("deliveryReportResponse", TAG_DELIVERY_REPORT_RESPONSE);
+        tags.put("operatorId", TAG_OPERATOR_ID);
+        tags.put("priority", TAG_PRIORITY);
+        tags.put("ticketId", TAG_TICKET_ID);
+        tags.put("status", TAG_STATUS);
+        tags.put("messageError", TAG_MESSAGE_ERROR);
+        tags.put("createDate", TAG_CREATE_DATE);
+        tags.put("finalDate", TAG_FINAL_DATE);
+        tags.put("deliveryReport", TAG_DELIVERY_REPORT);
+        tags.put("sourceAddress", TAG_SOURCE_ADDRESS);
+        tags.put("destinationAddress", TAG_DESTINATION_ADDRESS);
+        tags.put("text", TAG_TEXT);
+        tags.put("optionalParams", TAG_OPTIONAL_PARAMS);
+    }
+
+    private String version;
+    private int depth;
+    // the character data since the last element started
+    private final StringBuilder charBuffer;
+    // the attributes of the last element started
+    private int attrCount;
+    private String[] attrNames;
+    private String[] attrValues;
+    private Operation.Type operationType;
+    private Account account;
+    private Application application;
+    private Operation operation;
+    // bitmask (by tag id) of elements seen for duplicate element checks
+    private int elements;
+    private String encoding;
+
+    SxmpOperationBuilder() {
+        this.charBuffer = new StringBuilder(200);
+        this.attrNames = new String[4];
+        this.attrValues = new String[4];
+        reset(null);
+    }
+
+    /**
+     * Resets all state so this builder can be reused for the next parse.
+     * @param version The version of SXMP to parse
+     */
+    void reset(String version) {
+        this.version = version;
+        this.depth = -1;
+        this.charBuffer.setLength(0);
+        clearAttributes();
+        this.operationType = null;
+        this.account = null;
+        this.application = null;
+        this.operation = null;
+        this.elements = 0;
+        this.encoding = "unknown";
+    }
+
+    /**
+     * Clears the saved attributes before the attributes of the next element
+     * started are added.
+     */
+    void clearAttributes() {
+        for (int i = 0; i < this.attrCount; i++) {
+            this.attrNames[i] = null;
+            this.attrValues[i] = null;
+        }
+        this.attrCount = 0;
+    }
+
+    /**
+     * Adds an attribute of the next element started.  Attributes are copied
+     * since they're needed again when the element ends.
+     * @param name The qualified name of the attribute
+     * @param value The value of the attribute
+     */
+    void addAttribute(String name, String value) {
+        if (this.attrCount >= this.attrNames.length) {
+            int newLength = this.attrNames.length * 2;
+            String[] newNames = new String[newLength];
+            String[] newValues = new String[newLength];
+            System.arraycopy(this.attrNames, 0, newNames, 0, this.attrCount);
+            System.arraycopy(this.attrValues, 0, newValues, 0, this.attrCount);
+            this.attrNames = newNames;
+            this.attrValues = newValues;
+        }
+        this.attrNames[this.attrCount] = name;
+        this.attrValues[this.attrCount] = value;
+        this.attrCount++;
+    }
+
+    void characters(char[] buf, int offset, int len) {
+        charBuffer.append(buf, offset, len);
+    }
+
+    /**
+     * Processes an element start.  Its attributes must already be added.
+     * @param tag The name of the element (stripped of any namespace)
+     * @param documentEncoding The encoding of the document (if known).  Only
+     *      checked when the root element starts.
+     */
+    void startElement(String tag, String documentEncoding) throws SxmpParsingException {
+        int tagId = getTagId(tag);
+
+        // always increment our depth
+        depth++;
+
+        //
+        // Depth: zero
+        // Element(s): operation
+        //
+        if (depth == 0) {
+            // make sure our encoding is valid
+            if (documentEncoding != null) {
+                this.encoding = documentEncoding;
+            }
+            if (version.equals(SxmpParser.VERSION_1_1)) {
+                if (!this.encoding.toLowerCase().equals("utf-8")) {
+                    throw new SxmpParsingException(SxmpErrorCode.UNSUPPORTED_TEXT_ENCODING, "Invalid encoding: "+encoding, null);
+                }
+            }
+
+            if (tagId != TAG_OPERATION) {
+                throw new SxmpParsingException(SxmpErrorCode.INVALID_XML, "Root element must be an [operation]", null);
+            }
+
+            // must contain an attribute with the type
+            String opType = getRequiredAttributeValue("operation", "type");
+
+            // parse it via the enum
+            this.operationType = Operation.Type.parse(opType);
+
+            if (this.operationType == null) {
+                throw new SxmpParsingException(SxmpErrorCode.UNSUPPORTED_OPERATION, "Unsupported operation type [" + opType + "]", null);
+            }
+        //
+        // Depth: 1
+        // Element(s): account, submitRequest
+        //
+        } else if (depth == 1) {
+            switch (tagId) {
+                case TAG_ACCOUNT:
+                    // should only occur once
+                    if (containsElement(tagId)) {
+                        throw new SxmpParsingException(SxmpErrorCode.MULTIPLE_ELEMENTS_NOT_SUPPORTED, "Multiple [account] elements are not supported", new PartialOperation(this.operationType));
+                    }
+                    addElement(tagId);
+                    // should have two attributes, username and password
+                    String username = getRequiredAttributeValue("account", "username");
+                    String password = getRequiredAttributeValue("account", "password");
+                    this.account = new Account(username, password);
+                    break;
+                case TAG_APPLICATION:
+                    // should only occur once
+                    if (containsElement(tagId)) {
+                        throw new SxmpParsingException(SxmpErrorCode.MULTIPLE_ELEMENTS_NOT_SUPPORTED, "Multiple [application] elements are not supported", new PartialOperation(this.operationType));
+                    }
+                    break;
+                case TAG_ERROR:
+                    // this is a top level error -- indicates this should be
+                    // the only element to return
+                    parseErrorElement(tag, tagId);
+                    break;
+                case TAG_SUBMIT_REQUEST:
+                    parseRequestElement(tag, tagId, new SubmitRequest(version));
+                    break;
+                case TAG_DELIVER_REQUEST:
+                    parseRequestElement(tag, tagId, new DeliverRequest());
+                    break;
+                case TAG_DELIVERY_REPORT_REQUEST:
+                    parseRequestElement(tag, tagId, new DeliveryReportRequest());
+                    break;
+                case TAG_SUBMIT_RESPONSE:
+                    parseResponseElement(tag, tagId, new SubmitResponse());
+                    break;
+                case TAG_DELIVER_RESPONSE:
+                    parseResponseElement(tag, tagId, new DeliverResponse());
+                    break;
+                case TAG_DELIVERY_REPORT_RESPONSE:
+                    parseResponseElement(tag, tagId, new DeliveryReportResponse());
+                    break;
+                default:
+                    throw new SxmpParsingException(SxmpErrorCode.UNSUPPORTED_ELEMENT, "Unsupported [" + tag + "] element found at depth [" + depth + "]", new PartialOperation(this.operationType));
+            }
+        //
+        // Depth: 2
+        // Element(s): operatorId, etc.
+        //
+        } else if (depth == 2) {
+            // do nothing here, always process when the element ends
+        } else {
+            // NOTE: no other depths are supported in SXMP
+            throw new SxmpParsingException(SxmpErrorCode.UNSUPPORTED_ELEMENT, "Unsupported [" + tag + "] element found at depth [" + depth + "]", this.operation);
+        }
+
+        // starting element means reset our character buffer
+        charBuffer.setLength(0);
+    }
+
+    /**
+     * Processes an element end.
+     * @param tag The name of the element (stripped of any namespace)
+     */
+    void endElement(String tag) throws SxmpParsingException {
+        if (depth == 1) {
+            if (getTagId(tag) == TAG_APPLICATION) {
+                // parse the character data, check for duplicates
+                String applicationNameText = parseCharacterData(tag, TAG_APPLICATION, true);
+                this.application = new Application(applicationNameText);
+            }
+        } else if (depth == 2) {
+            endLeafElement(tag, getTagId(tag));
+        }
+
+        // always decrement our depth
+        depth--;
+    }
+
+    /**
+     * Checks the operation once the whole document was parsed.
+     * @return The operation parsed
+     * @throws SxmpParsingException If no operation was parsed or it's
+     *      missing any required elements
+     */
+    Operation finish() throws SxmpParsingException {
+        // check to see if an operation was actually parsed
+        if (this.operation == null) {
+            throw new SxmpParsingException(SxmpErrorCode.MISSING_REQUIRED_ELEMENT, "The operation type [" + this.operationType.getValue() + "] requires a request element", new PartialOperation(this.operationType));
+        }
+
+        // if we got here, an operation was parsed -- now we need to validate it
+        // to make sure that it has all required elements
+        try {
+            this.operation.validate();
+        } catch (SxmpErrorException e) {
+            throw new SxmpParsingException(e.getErrorCode(), e.getErrorMessage(), this.operation);
+        }
+
+        return this.operation;
+    }
+
+    static private int getTagId(String tag) {
+        Integer id = tags.get(tag);
+        return (id == null ? TAG_UNKNOWN : id.intValue());
+    }
+
+    private boolean containsElement(int tagId) {
+        return (tagId != TAG_UNKNOWN && (this.elements & (1 << tagId)) != 0);
+    }
+
+    private void addElement(int tagId) {
+        if (tagId != TAG_UNKNOWN) {
+            this.elements |= (1 << tagId);
+        }
+    }
+
+    private Operation operationOrPartial() {
+        return (this.operation != null ? this.operation : new PartialOperation(this.operationType));
+    }
+
+    /**
+     * Gets the value from an optional attribute.  If the attribute was
+     * included more than once, it will throw a MULTIPLE_ATTRIBUTES_NOT_SUPPORTED
+     * exception.  If the attribute was included, but the value was empty, it
+     * will throw an EMPTY_VALUE exception.
+     * @param tag The element the attribute belongs to
+     * @param name The attribute name to find
+     * @return The value or null if the attribute is missing
+     * @throws SxmpParsingException See method overview
+     */
+    private String getOptionalAttributeValue(String tag, String name) throws SxmpParsingException {
+        String value = null;
+        for (int i = 0; i < this.attrCount; i++) {
+            if (this.attrNames[i].equals(name)) {
+                // is this the second time we found this attribute?
+                if (value != null) {
+                    throw new SxmpParsingException(SxmpErrorCode.MULTIPLE_ATTRIBUTES_NOT_SUPPORTED, "Multiple [" + name + "] attributes within the [" + tag + "] element are not supported", operationOrPartial());
+                }
+
+                value = this.attrValues[i];
+
+                // is there some sort of value for it?
+                if (StringUtil.isEmpty(value)) {
+                    throw new SxmpParsingException(SxmpErrorCode.EMPTY_VALUE, "The [" + name + "] attribute was empty in the [" + tag + "] element", operationOrPartial());
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Gets the value from a required attribute.  Same as an optional
+     * attribute, but if the attribute is missing, it will throw a
+     * MISSING_REQUIRED_ATTRIBUTE exception.
+     * @param tag The element the attribute belongs to
+     * @param name The attribute name to find
+     * @return The value
+     * @throws SxmpParsingException See method overview
+     */
+    private String getRequiredAttributeValue(String tag, String name) throws SxmpParsingException {
+        String value = getOptionalAttributeValue(tag, name);
+        if (value == null) {
+            throw new SxmpParsingException(SxmpErrorCode.MISSING_REQUIRED_ATTRIBUTE, "The attribute [" + name + "] is required with the [" + tag + "] element", operationOrPartial());
+        }
+        return value;
+    }
+
+    private void parseRequestElement(String tag, int tagId, Request<?> request) throws SxmpParsingException {
+        // should only occur once
+        if (containsElement(tagId)) {
+            // we already had the same operation before, so we'll include that in the error
+            throw new SxmpParsingException(SxmpErrorCode.MULTIPLE_ELEMENTS_NOT_SUPPORTED, "Multiple [" + tag + "] elements are not supported", this.operation);
+        }
+        addElement(tagId);
+
+        // an account must ALWAYS come before a request
+        if (this.account == null) {
+            throw new SxmpParsingException(SxmpErrorCode.MISSING_REQUIRED_ELEMENT, "The [account] element is required before a [" + tag + "] element", new PartialOperation(this.operationType));
+        }
+
+        // check if the request type matches the operation type
+        if (request.getType() != this.operationType) {
+            throw new SxmpParsingException(SxmpErrorCode.OPTYPE_MISMATCH, "The operation type [" + operationType.getValue() + "] does not match the [" + tag + "] element", new PartialOperation(this.operationType));
+        }
+
+        // save the account in this request
+        request.setAccount(this.account);
+        request.setApplication(this.application);
+
+        // save the request as our operation
+        this.operation = request;
+
+        // all requests have an optional referenceId attribute
+        String referenceId = getOptionalAttributeValue("submitRequest", "referenceId");
+        if (!StringUtil.isEmpty(referenceId)) {
+            try {
+                request.setReferenceId(referenceId);
+            } catch (SxmpErrorException e) {
+                throw new SxmpParsingException(SxmpErrorCode.INVALID_REFERENCE_ID, e.getErrorMessage(), this.operation);
+            }
+        }
+    }
+
+    private void parseResponseElement(String tag, int tagId, Response response) throws SxmpParsingException {
+        // should only occur once
+        if (containsElement(tagId)) {
+            // we already had the same operation before, so we'll include that in the error
+            throw new SxmpParsingException(SxmpErrorCode.MULTIPLE_ELEMENTS_NOT_SUPPORTED, "Multiple [" + tag + "] elements are not supported", this.operation);
+        }
+        addElement(tagId);
+
+        // check if the response type matches the operation type
+        if (response.getType() != this.operationType) {
+            throw new SxmpParsingException(SxmpErrorCode.OPTYPE_MISMATCH, "The operation type [" + operationType.getValue() + "] does not match the [" + tag + "] element", new PartialOperation(this.operationType));
+        }
+
+        // save the response as our operation
+        this.operation = response;
+    }
+
+    private String parseCharacterData(String tag, int tagId, boolean required) throws SxmpParsingException {
+        // should only occur once
+        if (containsElement(tagId)) {
+            throw new SxmpParsingException(SxmpErrorCode.MULTIPLE_ELEMENTS_NOT_SUPPORTED, "Multiple [" + tag + "] elements are not supported", this.operation);
+        }
+        addElement(tagId);
+
+        String text = charBuffer.toString();
+        if (required && StringUtil.isEmpty(text)) {
+            throw new SxmpParsingException(SxmpErrorCode.EMPTY_VALUE, "The element [" + tag + "] must contain a value", this.operation);
+        }
+        return text;
+    }
+
+    private Integer parseIntegerValue(String name, String value) throws SxmpParsingException {
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new SxmpParsingException(SxmpErrorCode.UNABLE_TO_CONVERT_VALUE, "Unable to convert [" + value + "] to an integer for [" + name + "]", this.operation);
+        }
+    }
+
+    private Boolean parseBooleanValue(String name, String value) throws SxmpParsingException {
+        if (value == null) {
+             throw new SxmpParsingException(SxmpErrorCode.UNABLE_TO_CONVERT_VALUE, "Unable to convert [null] to a boolean for [" + name + "]", this.operation);
+        }
+        if (value.equalsIgnoreCase("true")) {
+            return Boolean.TRUE;
+        } else if (value.equalsIgnoreCase("false")) {
+            return Boolean.FALSE;
+        } else {
+            throw new SxmpParsingException(SxmpErrorCode.UNABLE_TO_CONVERT_VALUE, "Unable to convert [" + value + "] to a boolean for [" + name + "]", this.operation);
+        }
+    }
+
+    private DateTime parseDateTimeValue(String tag, int tagId) throws SxmpParsingException {
+        // should only occur once
+        if (containsElement(tagId)) {
+            throw new SxmpParsingException(SxmpErrorCode.MULTIPLE_ELEMENTS_NOT_SUPPORTED, "Multiple [" + tag + "] elements are not supported", this.operation);
+        }
+
+        String dateText = parseCharacterData(tag, tagId, true);
+        try {
+            return SxmpParser.dateTimeFormat.parseDateTime(dateText);
+        } catch (Exception e) {
+            throw new SxmpParsingException(SxmpErrorCode.INVALID_VALUE, "Unable to convert " + tag + " [" + dateText + "] into a DateTime", this.operation);
+        }
+    }
+
+    private void parseErrorElement(String tag, int tagId) throws SxmpParsingException {
+        // should only occur once at this level
+        if (containsElement(tagId)) {
+            throw new SxmpParsingException(SxmpErrorCode.MULTIPLE_ELEMENTS_NOT_SUPPORTED, "Multiple [" + tag + "] elements are not supported", this.operation);
+        }
+        addElement(tagId);
+
+        String errorCodeString = getRequiredAttributeValue("error", "code");
+        String errorMessage = getRequiredAttributeValue("error", "message");
+        Integer errorCode = parseIntegerValue("code", errorCodeString);
+
+        if (depth == 1) {
+            this.operation = new ErrorResponse(this.operationType, errorCode, errorMessage);
+        } else if (operation instanceof Response) {
+            ((Response)operation).setErrorCode(errorCode);
+            ((Response)operation).setErrorMessage(errorMessage);
+        } else {
+            throw new SxmpParsingException(SxmpErrorCode.UNSUPPORTED_ELEMENT, "The [" + tag + "] element is not supported for this operation type", this.operation);
+        }
+    }
+
+    private void endLeafElement(String tag, int tagId) throws SxmpParsingException {
+        switch (tagId) {
+            case TAG_OPERATOR_ID: {
+                Integer operatorId = parseIntegerValue(tag, parseCharacterData(tag, tagId, true));
+                try {
+                    if (operation instanceof MessageRequest) {
+                        ((MessageRequest)operation).setOperatorId(operatorId);
+                    } else {
+                        throw new SxmpParsingException(SxmpErrorCode.UNSUPPORTED_ELEMENT, "The [operatorId] element is not supported for this operation type", this.operation);
+                    }
+                } catch (SxmpErrorException e) {
+                    throw new SxmpParsingException(e.getErrorCode(), e.getErrorMessage(), this.operation);
+                }
+                break;
+            }
+            case TAG_PRIORITY: {
+                Integer priorityFlag = parseIntegerValue(tag, parseCharacterData(tag, tagId, true));
+                try {
+                    if (operation instanceof MessageRequest) {
+                        ((MessageRequest)operation).setPriority(Priority.fromPriorityFlag(priorityFlag));
+                    } else {
+                        throw new SxmpParsingException(SxmpErrorCode.UNSUPPORTED_ELEMENT, "The [priority] element is not supported for this operation type", this.operation);
+                    }
+                } catch (IllegalArgumentException e) {
+                    throw new SxmpParsingException(SxmpErrorCode.INVALID_VALUE, e.getMessage(), this.operation);
+                }
+                break;
+            }
+            case TAG_ERROR:
+                parseErrorElement(tag, tagId);
+                break;
+            case TAG_TICKET_ID:
+                // we basically support a ticket element on anything (request or response)
+                operation.setTicketId(parseCharacterData(tag, tagId, true));
+                break;
+            case TAG_STATUS: {
+                // should only occur once
+                if (containsElement(tagId)) {
+                    throw new SxmpParsingException(SxmpErrorCode.MULTIPLE_ELEMENTS_NOT_SUPPORTED, "Multiple [status] elements are not supported", this.operation);
+                }
+                addElement(tagId);
+
+                String statusCodeString = getRequiredAttributeValue("status", "code");
+                String statusMessage = getRequiredAttributeValue("status", "message");
+                Integer statusCode = parseIntegerValue("code", statusCodeString);
+
+                if (operation instanceof DeliveryReportRequest) {
+                    ((DeliveryReportRequest)operation).setStatus(new DeliveryStatus(statusCode, statusMessage));
+                } else {
+                    throw new SxmpParsingException(SxmpErrorCode.UNSUPPORTED_ELEMENT, "The status element is not supported for this operation type", this.operation);
+                }
+                break;
+            }
+            case TAG_MESSAGE_ERROR: {
+                // should only occur once
+                if (containsElement(tagId)) {
+                    throw new SxmpParsingException(SxmpErrorCode.MULTIPLE_ELEMENTS_NOT_SUPPORTED, "Multiple [messageError] elements are not supported", this.operation);
+                }
+                addElement(tagId);
+
+                Integer messageErrorCode = parseIntegerValue("code", getRequiredAttributeValue("messageError", "code"));
+
+                if (operation instanceof DeliveryReportRequest) {
+                    ((DeliveryReportRequest)operation).setMessageErrorCode(messageErrorCode);
+                } else {
+                    throw new SxmpParsingException(SxmpErrorCode.UNSUPPORTED_ELEMENT, "The messageError element is not supported for this operation type", this.operation);
+                }
+                break;
+            }
+            case TAG_CREATE_DATE: {
+                DateTime createDate = parseDateTimeValue(tag, tagId);
+                if (operation instanceof DeliveryReportRequest) {
+                    ((DeliveryReportRequest)operation).setCreateDate(createDate);
+                } else {
+                    throw new SxmpParsingException(SxmpErrorCode.UNSUPPORTED_ELEMENT, "The createDate element is not supported for this operation type", this.operation);
+                }
+                break;
+            }
+            case TAG_FINAL_DATE: {
+                DateTime finalDate = parseDateTimeValue(tag, tagId);
+                if (operation instanceof DeliveryReportRequest) {
+                    ((DeliveryReportRequest)operation).setFinalDate(finalDate);
+                } else {
+                    throw new SxmpParsingException(SxmpErrorCode.UNSUPPORTED_ELEMENT, "The finalDate element is not supported for this operation type", this.operation);
+                }
+                break;
+            }
+            case TAG_DELIVERY_REPORT: {
+                Boolean deliveryReport = parseBooleanValue(tag, parseCharacterData(tag, tagId, true));
+                if (operation instanceof SubmitRequest) {
+                    ((SubmitRequest)operation).setDeliveryReport(deliveryReport);
+                } else {
+                    throw new SxmpParsingException(SxmpErrorCode.UNSUPPORTED_ELEMENT, "The [deliveryReport] element is not supported for this operation type", this.operation);
+                }
+                break;
+            }
+            case TAG_SOURCE_ADDRESS: {
+                String addrString = parseCharacterData(tag, tagId, true);
+                // a type attribute is required
+                String addrTypeString = getRequiredAttributeValue(tag, "type");
+                try {
+                    MobileAddress srcAddr = MobileAddressUtil.parseAddress(addrTypeString, addrString);
+                    if (operation instanceof MessageRequest) {
+                        ((MessageRequest)operation).setSourceAddress(srcAddr);
+                    } else {
+                        throw new SxmpParsingException(SxmpErrorCode.UNSUPPORTED_ELEMENT, "The [sourceAddress] element is not supported for this operation type", this.operation);
+                    }
+                } catch (SxmpErrorException e) {
+                    throw new SxmpParsingException(e.getErrorCode(), e.getErrorMessage(), this.operation);
+                }
+                break;
+            }
+            case TAG_DESTINATION_ADDRESS: {
+                String addrString = parseCharacterData(tag, tagId, true);
+                // a type attribute is required
+                String addrTypeString = getRequiredAttributeValue(tag, "type");
+                try {
+                    // dest address is XML-escaped for push
+                    if (MobileAddressUtil.parseType(addrTypeString) == MobileAddress.Type.PUSH_DESTINATION) {
+                        addrString = StringEscapeUtils.unescapeXml(addrString);
+                    }
+                    MobileAddress destAddr = MobileAddressUtil.parseAddress(addrTypeString, addrString);
+                    if (operation instanceof MessageRequest) {
+                        ((MessageRequest)operation).setDestinationAddress(destAddr);
+                    } else {
+                        throw new SxmpParsingException(SxmpErrorCode.UNSUPPORTED_ELEMENT, "The [destinationAddress] element is not supported for this operation type", this.operation);
+                    }
+                } catch (SxmpErrorException e) {
+                    throw new SxmpParsingException(e.getErrorCode(), e.getErrorMessage(), this.operation);
+                }
+                break;
+            }
+            case TAG_TEXT: {
+                // NOTE: the text element can contain no chars (empty message)
+                String encodedText = parseCharacterData(tag, tagId, false);
+
+                // an encoding MUST be included
+                String textEncoding = getRequiredAttributeValue(tag, "encoding");
+                TextEncoding te = TextEncoding.valueOfCharset(textEncoding);
+                if (te == null) {
+                    throw new SxmpParsingException(SxmpErrorCode.UNSUPPORTED_TEXT_ENCODING, "Unsupported text encoding [" + textEncoding + "] found", this.operation);
+                }
+
+                String text = null;
+                try {
+                    if (logger.isTraceEnabled()) {
+                        logger.trace("textBeforeDecoding: [" + encodedText + "]");
+                    }
+                    text = new String(HexUtil.toByteArray(encodedText), te.getCharset());
+                    if (logger.isTraceEnabled()) {
+                        logger.trace("textAfterDecoding: [" + text + "]");
+                    }
+                } catch (Exception e) {
+                    throw new SxmpParsingException(SxmpErrorCode.TEXT_HEX_DECODING_FAILED, "Unable to decode hex data into text", this.operation);
+                }
+
+                if (operation instanceof MessageRequest) {
+                    ((MessageRequest)operation).setText(text, te);
+                } else {
+                    throw new SxmpParsingException(SxmpErrorCode.UNSUPPORTED_ELEMENT, "The [text] element is not supported for this operation type", this.operation);
+                }
+                break;
+            }
+            case TAG_OPTIONAL_PARAMS:
+                if (!version.equals(SxmpParser.VERSION_1_1)) {
+                    throw new SxmpParsingException(SxmpErrorCode.UNSUPPORTED_ELEMENT, "Unsupported [" + tag + "] element found at depth [" + depth + "]", this.operation);
+                }
+                parseOptionalParams(tag, tagId);
+                break;
+            default:
+                throw new SxmpParsingException(SxmpErrorCode.UNSUPPORTED_ELEMENT, "Unsupported [" + tag + "] element found at depth [" + depth + "]", this.operation);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void parseOptionalParams(String tag, int tagId) throws SxmpParsingException {
+        // optionalParams are XML-escaped
+        String encodedText = StringEscapeUtils.unescapeXml(parseCharacterData(tag, tagId, false));
+
+        if (!StringUtils.isBlank(encodedText)) {
+            try {
+                JSONObject jsonObj = new JSONObject(encodedText);
+                OptionalParamMap optionalParams = new OptionalParamMap(OptionalParamMap.HASH_MAP);
+                Iterator<String> nameItr = jsonObj.keys();
+                while (nameItr.hasNext()) {
+                    String name = nameItr.next();
+                    optionalParams.put(name, jsonObj.get(name));
+                }
+                ((MessageRequest)operation).setOptionalParams(optionalParams);
+            } catch (JSONException e) {
+                logger.warn("", e);
+                throw new SxmpParsingException(SxmpErrorCode.UNABLE_TO_CONVERT_VALUE, "Unable to decode json data", this.operation);
+            } catch (IllegalArgumentException e) {
+                throw new SxmpParsingException(SxmpErrorCode.INVALID_VALUE, "Invalid optional parameters", this.operation);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,180 @@
+package com.cloudhopper.sxmp;
+
+/*
+ * #%L
+ * ch-sxmp
+ * %%
+ * Copyright (C) 2012 - 2013 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.cloudhopper.commons.util.StringUtil;
+import java.io.CharConversionException;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Parses an SXMP operation from XML with a StAX pull parser (XMLStreamReader)
+ * rather than SAX.  Elements are validated and bound into the request or
+ * response by the same SxmpOperationBuilder the SAX based SxmpParser uses, so
+ * it produces the same operations and the same SxmpParsingException (with
+ * the same SxmpErrorCode) for any input and can be used anywhere an
+ * SxmpParser is.  Malformed XML is reported as a SAXParseException.
+ * <br><br>
+ * Thread-safe -- an instance can be shared by any number of threads.  Each
+ * thread lazily creates (and then reuses) its own XMLInputFactory and state.
+ */
+public class SxmpPullParser extends SxmpParser {
+    private static final Logger logger = LoggerFactory.getLogger(SxmpPullParser.class);
+
+    static private final String REUSE_INSTANCE_PROPERTY = "reuse-instance";
+
+    // the parser state of each thread
+    static private final ThreadLocal<PullHandler> handlers = new ThreadLocal<PullHandler>();
+
+    public SxmpPullParser() {
+        super();
+    }
+
+    public SxmpPullParser(final String version) {
+        super(version);
+    }
+
+    @Override
+    public Operation parse(InputStream in) throws SxmpParsingException, IOException, SAXException, ParserConfigurationException {
+        PullHandler handler = handlers.get();
+        if (handler == null) {
+            handler = new PullHandler();
+            handlers.set(handler);
+        } else if (handler.inUse) {
+            // only if parse is somehow re-entered by the same thread
+            handler = new PullHandler();
+        }
+
+        handler.inUse = true;
+        try {
+            handler.reset(this.version);
+            return handler.parse(in);
+        } finally {
+            // don't hold onto the last operation parsed
+            handler.reset(null);
+            handler.inUse = false;
+        }
+    }
+
+    static private SAXParseException createParseException(String message, Location location, Exception cause) {
+        if (location == null) {
+            return new SAXParseException(message, null, null, -1, -1, cause);
+        }
+        return new SAXParseException(message, location.getPublicId(), location.getSystemId(), location.getLineNumber(), location.getColumnNumber(), cause);
+    }
+
+    /**
+     * Parser state for one thread.  Feeds the events of a StAX reader into
+     * the same SxmpOperationBuilder the SAX Handler in SxmpParser uses.
+     */
+    static private class PullHandler {
+
+        final XMLInputFactory factory;
+        // validates elements and builds the operation
+        final SxmpOperationBuilder builder;
+        boolean inUse;
+        XMLStreamReader reader;
+
+        PullHandler() {
+            this.factory = XMLInputFactory.newInstance();
+            this.factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+            this.factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+            this.factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+            // the JDK's implementation can reset and reuse the last (closed)
+            // reader and its buffers rather than creating a new one every parse
+            if (this.factory.isPropertySupported(REUSE_INSTANCE_PROPERTY)) {
+                this.factory.setProperty(REUSE_INSTANCE_PROPERTY, Boolean.TRUE);
+            }
+            this.builder = new SxmpOperationBuilder();
+        }
+
+        void reset(String version) {
+            this.reader = null;
+            this.builder.reset(version);
+        }
+
+        Operation parse(InputStream in) throws SxmpParsingException, IOException, SAXException {
+            try {
+                this.reader = factory.createXMLStreamReader(in);
+                try {
+                    while (reader.hasNext()) {
+                        switch (reader.next()) {
+                            case XMLStreamConstants.START_ELEMENT:
+                                startElement();
+                                break;
+                            case XMLStreamConstants.END_ELEMENT:
+                                builder.endElement(reader.getLocalName());
+                                break;
+                            case XMLStreamConstants.CHARACTERS:
+                            case XMLStreamConstants.CDATA:
+                            case XMLStreamConstants.SPACE:
+                                builder.characters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                                break;
+                            case XMLStreamConstants.DTD:
+                                throw createParseException("DOCTYPE is disallowed in an SXMP document", reader.getLocation(), null);
+                            default:
+                                // comments, processing instructions, etc. are ignored
+                                break;
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+            } catch (XMLStreamException e) {
+                Throwable cause = e.getNestedException();
+                if (cause instanceof CharConversionException) {
+                    throw new SxmpParsingException(SxmpErrorCode.INVALID_XML, "XML encoding mismatch", null);
+                } else if (cause instanceof IOException) {
+                    throw (IOException)cause;
+                }
+                logger.error("FATAL @ line:" + (e.getLocation() != null ? e.getLocation().getLineNumber() : -1) + " : " + e.toString());
+                throw createParseException(e.getMessage(), e.getLocation(), e);
+            }
+
+            // make sure an operation was parsed with all required elements
+            return builder.finish();
+        }
+
+        private void startElement() throws SxmpParsingException {
+            // attributes aren't available once the element ends, so they're copied
+            builder.clearAttributes();
+            int count = reader.getAttributeCount();
+            for (int i = 0; i < count; i++) {
+                // unprefixed attributes only (same as matching on the qname)
+                String prefix = reader.getAttributePrefix(i);
+                String name = (StringUtil.isEmpty(prefix) ? reader.getAttributeLocalName(i) : prefix + ":" + reader.getAttributeLocalName(i));
+                builder.addAttribute(name, reader.getAttributeValue(i));
+            }
+            builder.startElement(reader.getLocalName(), reader.getEncoding());
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.cloudhopper.sxmp;
+
+/*
+ * #%L
+ * ch-sxmp
+ * %%
+ * Copyright (C) 2012 - 2013 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * HttpEntity that streams a request straight from the SxmpWriter into the
+ * connection as bytes rather than first rendering it into a String.  Since the length
+ * isn't known in advance, it's sent with chunked transfer encoding.
+ */
+class SxmpRequestEntity extends AbstractHttpEntity {
+
+    private final Request request;
+
+    public SxmpRequestEntity(Request request) {
+        this.request = request;
+        // write old or new encoding?
+        if (request.getVersion().equals(SxmpParser.VERSION_1_1)) {
+            // v1.1 is utf-8
+            setContentType("text/xml; charset=\"utf-8\"");
+        } else {
+            // v1.0 was 8859-1, though that's technically wrong
+            // unspecified XML must be encoded in UTF-8
+            // maintained this way for backward compatibility
+            setContentType("text/xml; charset=\"iso-8859-1\"");
+        }
+        setChunked(true);
+    }
+
+    public Request getRequest() {
+        return this.request;
+    }
+
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    public long getContentLength() {
+        return -1;
+    }
+
+    public boolean isStreaming() {
+        return false;
+    }
+
+    public InputStream getContent() throws IOException {
+        // only used if something needs the content as a stream (not on send)
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(1000);
+        writeTo(baos);
+        return new ByteArrayInputStream(baos.toByteArray());
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        // SxmpWriter encodes in the same charset as the content type above
+        try {
+            SxmpWriter.write(out, this.request);
+        } catch (SxmpErrorException e) {
+            throw new IOException("Unable to write request: " + e.getMessage(), e);
+        }
+    }
+
+}
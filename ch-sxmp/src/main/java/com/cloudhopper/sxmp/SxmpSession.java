@@ -36,6 +36,7 @@ public class SxmpSession {
 
     private final SxmpProcessor processor;
     private final String version;
+    private final SxmpParser parser;
 
     // backwards-compatible version
     /*
@@ -47,6 +48,20 @@ public class SxmpSession {
     public SxmpSession(final SxmpProcessor processor, final String version) {
         this.processor = processor;
         this.version = version;
+        // thread-safe, so a session may be shared across threads
+        this.parser = new SxmpParser(version);
+    }
+
+    /**
+     * Creates a new session that parses requests with the parser (such as an
+     * SxmpPullParser) and the version of SXMP it was created with.
+     * @param processor The processor of parsed requests
+     * @param parser The parser of requests
+     */
+    public SxmpSession(final SxmpProcessor processor, final SxmpParser parser) {
+        this.processor = processor;
+        this.version = parser.version;
+        this.parser = parser;
     }
 
     /**
@@ -62,9 +77,6 @@ public class SxmpSession {
      *      the XML parser.
      */
     public Response process(InputStream is) throws IOException, SAXException, ParserConfigurationException {
-        // create a new XML parser
-        SxmpParser parser = new SxmpParser(version);
-
         // an instance of an operation we'll be processing as a request
         Operation operation = null;
 
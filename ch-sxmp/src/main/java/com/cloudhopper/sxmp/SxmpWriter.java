@@ -23,7 +23,9 @@ package com.cloudhopper.sxmp;
 import com.cloudhopper.commons.util.HexUtil;
 import com.cloudhopper.commons.util.StringUtil;
 import com.cloudhopper.sxmp.util.XmlEscapeUtil;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringWriter;
 import java.io.Writer;
 import org.apache.commons.lang.StringUtils;
@@ -36,6 +38,78 @@ import org.json.JSONObject;
  */
 public class SxmpWriter {
 
+    // pre-encoded markup for the byte-level writer; all of it is plain ASCII
+    static private final byte[] XML_HEADER_1_0 = SxmpByteWriter.ascii("<?xml version=\"1.0\"?>\n");
+    static private final byte[] XML_HEADER_1_1 = SxmpByteWriter.ascii("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+    static private final byte[] OPERATION_END = SxmpByteWriter.ascii("</operation>\n");
+    static private final byte[] ACCOUNT_START = SxmpByteWriter.ascii(" <account username=\"");
+    static private final byte[] ACCOUNT_PASSWORD = SxmpByteWriter.ascii("\" password=\"");
+    static private final byte[] ATTRIBUTE_EMPTY_END = SxmpByteWriter.ascii("\"/>\n");
+    static private final byte[] APPLICATION_START = SxmpByteWriter.ascii(" <application>");
+    static private final byte[] APPLICATION_END = SxmpByteWriter.ascii("</application>\n");
+    static private final byte[] REFERENCE_ID_START = SxmpByteWriter.ascii(" referenceId=\"");
+    static private final byte[] QUOTE = SxmpByteWriter.ascii("\"");
+    static private final byte[] TAG_END = SxmpByteWriter.ascii(">\n");
+    static private final byte[] TICKET_ID_START = SxmpByteWriter.ascii("  <ticketId>");
+    static private final byte[] TICKET_ID_END = SxmpByteWriter.ascii("</ticketId>\n");
+    static private final byte[] STATUS_START = SxmpByteWriter.ascii("  <status code=\"");
+    static private final byte[] MESSAGE_ATTRIBUTE = SxmpByteWriter.ascii("\" message=\"");
+    static private final byte[] MESSAGE_ERROR_START = SxmpByteWriter.ascii("  <messageError code=\"");
+    static private final byte[] CREATE_DATE_START = SxmpByteWriter.ascii("  <createDate>");
+    static private final byte[] CREATE_DATE_END = SxmpByteWriter.ascii("</createDate>\n");
+    static private final byte[] FINAL_DATE_START = SxmpByteWriter.ascii("  <finalDate>");
+    static private final byte[] FINAL_DATE_END = SxmpByteWriter.ascii("</finalDate>\n");
+    static private final byte[] OPERATOR_ID_START = SxmpByteWriter.ascii("  <operatorId>");
+    static private final byte[] OPERATOR_ID_END = SxmpByteWriter.ascii("</operatorId>\n");
+    static private final byte[] PRIORITY_START = SxmpByteWriter.ascii("  <priority>");
+    static private final byte[] PRIORITY_END = SxmpByteWriter.ascii("</priority>\n");
+    static private final byte[] DELIVERY_REPORT_TRUE = SxmpByteWriter.ascii("  <deliveryReport>true</deliveryReport>\n");
+    static private final byte[] DELIVERY_REPORT_FALSE = SxmpByteWriter.ascii("  <deliveryReport>false</deliveryReport>\n");
+    static private final byte[] SOURCE_ADDRESS_END = SxmpByteWriter.ascii("</sourceAddress>\n");
+    static private final byte[] DESTINATION_ADDRESS_END = SxmpByteWriter.ascii("</destinationAddress>\n");
+    static private final byte[] TEXT_START = SxmpByteWriter.ascii("  <text encoding=\"");
+    static private final byte[] TEXT_END = SxmpByteWriter.ascii("</text>\n");
+    static private final byte[] OPTIONAL_PARAMS_START = SxmpByteWriter.ascii("  <optionalParams>");
+    static private final byte[] OPTIONAL_PARAMS_END = SxmpByteWriter.ascii("</optionalParams>\n");
+    static private final byte[] ERROR_START = SxmpByteWriter.ascii("  <error code=\"");
+    // indexed by Operation.Type ordinal (and then 0=request, 1=response)
+    static private final byte[][] OPERATION_START;
+    static private final byte[][][] REQUEST_RESPONSE_START;
+    static private final byte[][][] REQUEST_RESPONSE_END;
+    // indexed by MobileAddress.Type ordinal
+    static private final byte[][] SOURCE_ADDRESS_START;
+    static private final byte[][] DESTINATION_ADDRESS_START;
+    // indexed by TextEncoding ordinal
+    static private final byte[][] TEXT_ENCODING;
+
+    static {
+        Operation.Type[] types = Operation.Type.values();
+        OPERATION_START = new byte[types.length][];
+        REQUEST_RESPONSE_START = new byte[types.length][2][];
+        REQUEST_RESPONSE_END = new byte[types.length][2][];
+        for (Operation.Type type : types) {
+            int i = type.ordinal();
+            OPERATION_START[i] = SxmpByteWriter.ascii("<operation type=\"" + type.getValue() + "\">\n");
+            REQUEST_RESPONSE_START[i][0] = SxmpByteWriter.ascii(" <" + type.getValue() + "Request");
+            REQUEST_RESPONSE_START[i][1] = SxmpByteWriter.ascii(" <" + type.getValue() + "Response");
+            REQUEST_RESPONSE_END[i][0] = SxmpByteWriter.ascii(" </" + type.getValue() + "Request>\n");
+            REQUEST_RESPONSE_END[i][1] = SxmpByteWriter.ascii(" </" + type.getValue() + "Response>\n");
+        }
+        MobileAddress.Type[] addressTypes = MobileAddress.Type.values();
+        SOURCE_ADDRESS_START = new byte[addressTypes.length][];
+        DESTINATION_ADDRESS_START = new byte[addressTypes.length][];
+        for (MobileAddress.Type type : addressTypes) {
+            String value = type.toString().toLowerCase();
+            SOURCE_ADDRESS_START[type.ordinal()] = SxmpByteWriter.ascii("  <sourceAddress type=\"" + value + "\">");
+            DESTINATION_ADDRESS_START[type.ordinal()] = SxmpByteWriter.ascii("  <destinationAddress type=\"" + value + "\">");
+        }
+        TextEncoding[] encodings = TextEncoding.values();
+        TEXT_ENCODING = new byte[encodings.length][];
+        for (TextEncoding encoding : encodings) {
+            TEXT_ENCODING[encoding.ordinal()] = SxmpByteWriter.ascii(encoding.getCharset() + "\">");
+        }
+    }
+
     static private void writeXmlHeader(Writer out, Operation operation) throws IOException {
         // v1.1 needs to be UTF-8; v1.0 was unspecified
         if (operation.getVersion().equals(SxmpParser.VERSION_1_0))
@@ -93,18 +167,16 @@ public class SxmpWriter {
     }
 
     /**
+     * Creates the byte representation of an operation, encoded in the charset
+     * matching its version (ISO-8859-1 for v1.0, UTF-8 for v1.1).
+     */
     static public byte[] createByteArray(Operation operation) throws SxmpErrorException, IOException {
         // most requests will be ~1000 bytes
-        //FastByteArrayOutputStream baos = new FastByteArrayOutputStream(1000);
         ByteArrayOutputStream baos = new ByteArrayOutputStream(1000);
-        OutputStreamWriter out = new OutputStreamWriter(baos, "ISO-8859-1");
-        SxmpWriter.write(out, operation);
-        byte[] data = baos.toByteArray();
-        //out.close();
-        //baos.close();
-        return data;
+        SxmpWriter.write(baos, operation);
+        return baos.toByteArray();
     }
-     */
+
     static public String createString(Operation operation) throws SxmpErrorException, IOException {
         StringWriter sw = new StringWriter(1000);
         SxmpWriter.write(sw, operation);
@@ -272,4 +344,198 @@ public class SxmpWriter {
 
         writeOperationEndTag(out);
     }
+
+    /**
+     * Writes an operation (with an xml header) straight to an OutputStream.
+     * @see #write(OutputStream, Operation, boolean)
+     */
+    static public void write(OutputStream out, Operation operation) throws SxmpErrorException, IOException {
+        write(out, operation, true);
+    }
+
+    /**
+     * Writes an operation straight to an OutputStream, encoded in the charset
+     * matching its version (ISO-8859-1 for v1.0, UTF-8 for v1.1).  The
+     * output is byte-for-byte identical to encoding the output of
+     * write(Writer, Operation) with that charset, but is built from
+     * pre-encoded markup and values are escaped, encoded, and hex-encoded
+     * directly into an internal buffer.  The stream is flushed, but not closed.
+     * @param out The stream to write to
+     * @param operation The operation to write
+     * @param withXmlHeader True if the xml header should be written first
+     */
+    static public void write(OutputStream out, Operation operation, boolean withXmlHeader) throws SxmpErrorException, IOException {
+        // v1.1 needs to be UTF-8; v1.0 was unspecified (but sent as 8859-1)
+        boolean v1_0 = operation.getVersion().equals(SxmpParser.VERSION_1_0);
+        SxmpByteWriter w = new SxmpByteWriter(out, !v1_0);
+
+        if (withXmlHeader) w.write(v1_0 ? XML_HEADER_1_0 : XML_HEADER_1_1);
+        if (operation.getType() == null) {
+            throw new NullPointerException("Operation type cannot be null");
+        }
+        w.write(OPERATION_START[operation.getType().ordinal()]);
+
+        // let's validate this operation is valid
+        operation.validate();
+
+        if (operation instanceof ErrorResponse) {
+            // write out just an ErrorResponse
+            writeErrorElement(w, (ErrorResponse)operation);
+
+        } else if (operation instanceof Request) {
+            // any request requires an account to be printed out
+            Request request = (Request)operation;
+
+            if (request.getAccount() != null) {
+                w.write(ACCOUNT_START);
+                w.write(request.getAccount().getUsername(), SxmpByteWriter.ESCAPE_ATTRIBUTE);
+                w.write(ACCOUNT_PASSWORD);
+                w.write(request.getAccount().getPassword(), SxmpByteWriter.ESCAPE_ATTRIBUTE);
+                w.write(ATTRIBUTE_EMPTY_END);
+            }
+
+            if (request.getApplication() != null) {
+                w.write(APPLICATION_START);
+                w.write(request.getApplication().getName(), SxmpByteWriter.ESCAPE_ATTRIBUTE);
+                w.write(APPLICATION_END);
+            }
+
+            writeRequestResponseStartTag(w, operation);
+
+            // tickets are now supported any any request
+            if (request.getTicketId() != null) {
+                w.write(TICKET_ID_START);
+                w.write(request.getTicketId(), SxmpByteWriter.ESCAPE_ATTRIBUTE);
+                w.write(TICKET_ID_END);
+            }
+
+            if (operation instanceof DeliveryReportRequest) {
+                DeliveryReportRequest deliveryRequest = (DeliveryReportRequest)operation;
+
+                if (deliveryRequest.getStatus() != null) {
+                    w.write(STATUS_START);
+                    w.write(deliveryRequest.getStatus().getCode().intValue());
+                    w.write(MESSAGE_ATTRIBUTE);
+                    w.write(deliveryRequest.getStatus().getMessage(), SxmpByteWriter.ESCAPE_ATTRIBUTE);
+                    w.write(ATTRIBUTE_EMPTY_END);
+                }
+
+                if (deliveryRequest.getMessageErrorCode() != null) {
+                    w.write(MESSAGE_ERROR_START);
+                    w.write(deliveryRequest.getMessageErrorCode().intValue());
+                    w.write(ATTRIBUTE_EMPTY_END);
+                }
+
+                if (deliveryRequest.getCreateDate() != null) {
+                    w.write(CREATE_DATE_START);
+                    w.write(SxmpParser.dateTimeFormat.print(deliveryRequest.getCreateDate()), SxmpByteWriter.ESCAPE_NONE);
+                    w.write(CREATE_DATE_END);
+                }
+
+                if (deliveryRequest.getFinalDate() != null) {
+                    w.write(FINAL_DATE_START);
+                    w.write(SxmpParser.dateTimeFormat.print(deliveryRequest.getFinalDate()), SxmpByteWriter.ESCAPE_NONE);
+                    w.write(FINAL_DATE_END);
+                }
+
+            } else if (operation instanceof MessageRequest) {
+                MessageRequest messageRequest = (MessageRequest)operation;
+
+                if (messageRequest.getOperatorId() != null) {
+                    w.write(OPERATOR_ID_START);
+                    w.write(messageRequest.getOperatorId().intValue());
+                    w.write(OPERATOR_ID_END);
+                }
+
+                if (messageRequest.getPriority() != null) {
+                    w.write(PRIORITY_START);
+                    w.write(messageRequest.getPriority().getPriorityFlag().intValue());
+                    w.write(PRIORITY_END);
+                }
+
+                if (operation instanceof SubmitRequest) {
+                    SubmitRequest submitRequest = (SubmitRequest)operation;
+                    if (submitRequest.getDeliveryReport() != null) {
+                        w.write(submitRequest.getDeliveryReport().booleanValue() ? DELIVERY_REPORT_TRUE : DELIVERY_REPORT_FALSE);
+                    }
+                }
+
+                if (messageRequest.getSourceAddress() != null) {
+                    w.write(SOURCE_ADDRESS_START[messageRequest.getSourceAddress().getType().ordinal()]);
+                    w.write(messageRequest.getSourceAddress().getAddress(), SxmpByteWriter.ESCAPE_NONE);
+                    w.write(SOURCE_ADDRESS_END);
+                }
+
+                if (messageRequest.getDestinationAddress() != null) {
+                    MobileAddress.Type type = messageRequest.getDestinationAddress().getType();
+                    w.write(DESTINATION_ADDRESS_START[type.ordinal()]);
+                    // push dest address is not guaranteed to be XML-safe
+                    w.write(messageRequest.getDestinationAddress().getAddress(),
+                        (type == MobileAddress.Type.PUSH_DESTINATION ? SxmpByteWriter.ESCAPE_TEXT : SxmpByteWriter.ESCAPE_NONE));
+                    w.write(DESTINATION_ADDRESS_END);
+                }
+
+                if (messageRequest.getText() != null) {
+                    TextEncoding encoding = messageRequest.getTextEncoding();
+                    w.write(TEXT_START);
+                    w.write(TEXT_ENCODING[encoding.ordinal()]);
+                    // encoded and hex'ed directly from the chars
+                    w.writeHex(messageRequest.getText(), encoding);
+                    w.write(TEXT_END);
+                }
+
+                // this is a v1.1 option; only write if version == 1.1
+                if (messageRequest.getOptionalParams() != null &&
+                        messageRequest.getVersion().equals(SxmpParser.VERSION_1_1)) {
+                    w.write(OPTIONAL_PARAMS_START);
+                    JSONObject jsonObj = new JSONObject(messageRequest.getOptionalParams());
+                    // JSON encoding is not XML-safe
+                    w.write(jsonObj.toString(), SxmpByteWriter.ESCAPE_TEXT);
+                    w.write(OPTIONAL_PARAMS_END);
+                }
+            }
+
+            writeRequestResponseEndTag(w, operation);
+        } else {
+            writeRequestResponseStartTag(w, operation);
+
+            writeErrorElement(w, (Response)operation);
+
+            // tickets on responses are now supported for submits or delivers
+            if (operation instanceof SubmitResponse || operation instanceof DeliverResponse) {
+                if (operation.getTicketId() != null) {
+                    w.write(TICKET_ID_START);
+                    w.write(operation.getTicketId(), SxmpByteWriter.ESCAPE_ATTRIBUTE);
+                    w.write(TICKET_ID_END);
+                }
+            }
+
+            writeRequestResponseEndTag(w, operation);
+        }
+
+        w.write(OPERATION_END);
+        w.flush();
+    }
+
+    static private void writeRequestResponseStartTag(SxmpByteWriter w, Operation operation) throws IOException {
+        w.write(REQUEST_RESPONSE_START[operation.getType().ordinal()][operation.isRequest() ? 0 : 1]);
+        if (operation.getReferenceId() != null) {
+            w.write(REFERENCE_ID_START);
+            w.write(operation.getReferenceId(), SxmpByteWriter.ESCAPE_NONE);
+            w.write(QUOTE);
+        }
+        w.write(TAG_END);
+    }
+
+    static private void writeRequestResponseEndTag(SxmpByteWriter w, Operation operation) throws IOException {
+        w.write(REQUEST_RESPONSE_END[operation.getType().ordinal()][operation.isRequest() ? 0 : 1]);
+    }
+
+    static private void writeErrorElement(SxmpByteWriter w, Response response) throws IOException {
+        w.write(ERROR_START);
+        w.write(response.getErrorCode().intValue());
+        w.write(MESSAGE_ATTRIBUTE);
+        w.write(response.getErrorMessage(), SxmpByteWriter.ESCAPE_ATTRIBUTE);
+        w.write(ATTRIBUTE_EMPTY_END);
+    }
 }
@@ -23,6 +23,7 @@ package com.cloudhopper.sxmp.servlet;
 import com.cloudhopper.sxmp.*;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -47,14 +48,16 @@ public class SxmpServletProcessor {
     }
 
     public void process(SxmpProcessor processor, HttpServletRequest request, HttpServletResponse response) throws IOException {
-        PrintWriter out = response.getWriter();
+        // responses are written as bytes straight to the stream rather than
+        // being encoded again by the servlet's PrintWriter
+        OutputStream out = response.getOutputStream();
         try {
             // first, we will assume the response will be correct and will be text/xml
             // responses are sent in SXMP v1.0, which is still ISO-8859-1
             response.setContentType("text/xml; charset=\"iso-8859-1\"");
 
             // process it -- if no exception thrown, then xml was already written to outputstream
-            doProcess(processor, request.getInputStream(), out, request.getRequestURI(), request.getMethod(), request.getContentType());
+            doProcessStream(processor, request.getInputStream(), out, request.getRequestURI(), request.getMethod(), request.getContentType());
 
             // if we get here, then return HTTP OK status
             response.setStatus(HttpServletResponse.SC_OK);
@@ -62,18 +65,52 @@ public class SxmpServletProcessor {
             logger.warn("Bad HTTP request, return non-200 status code: " + e.getMessage());
             response.setContentType("text/html");
             response.setStatus(e.getStatusCode());
-            out.println(e.getMessage());
+            writeMessage(out, e.getMessage());
             return;
         } catch (Throwable t) {
             logger.error("Uncaught exception during SXMP doProcess", t);
             response.setContentType("text/html");
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-            out.println(t.getMessage());
+            writeMessage(out, t.getMessage());
             return;
         }
     }
 
+    static private void writeMessage(OutputStream out, String message) throws IOException {
+        // the same output as PrintWriter.println() for an html error page
+        out.write((String.valueOf(message) + "\n").getBytes("ISO-8859-1"));
+        out.flush();
+    }
+
     public static void doProcess(SxmpProcessor processor, InputStream in, PrintWriter out, String uri, String method, String contentType) throws IOException, HttpStatusCodeException {
+        Response response = doProcessRequest(processor, in, uri, method, contentType);
+
+        try {
+            // if we get here, write a response
+            SxmpWriter.write(out, response);
+        } catch (SxmpErrorException e) {
+            logger.error("Error while writing response", e);
+            throw new HttpStatusCodeException(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Unable to cleanly write response to OutputStream");
+        }
+    }
+
+    /**
+     * Same as doProcess(), but the response is written as bytes directly to
+     * the OutputStream (encoded in the charset matching its version).
+     */
+    public static void doProcessStream(SxmpProcessor processor, InputStream in, OutputStream out, String uri, String method, String contentType) throws IOException, HttpStatusCodeException {
+        Response response = doProcessRequest(processor, in, uri, method, contentType);
+
+        try {
+            // if we get here, write a response
+            SxmpWriter.write(out, response);
+        } catch (SxmpErrorException e) {
+            logger.error("Error while writing response", e);
+            throw new HttpStatusCodeException(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Unable to cleanly write response to OutputStream");
+        }
+    }
+
+    static private Response doProcessRequest(SxmpProcessor processor, InputStream in, String uri, String method, String contentType) throws IOException, HttpStatusCodeException {
         // validate the user went to the correct URL
         // E.g. /api/sxmp/1.0
         // find the next position of last / (to extract version)
@@ -122,12 +159,6 @@ public class SxmpServletProcessor {
             throw new HttpStatusCodeException(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Response was empty");
         }
 
-        try {
-            // if we get here, write a response
-            SxmpWriter.write(out, response);
-        } catch (SxmpErrorException e) {
-            logger.error("Error while writing response", e);
-            throw new HttpStatusCodeException(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Unable to cleanly write response to OutputStream");
-        }
+        return response;
     }
 }
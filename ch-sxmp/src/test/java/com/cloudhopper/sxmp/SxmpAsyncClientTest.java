@@ -0,0 +1,348 @@
+package com.cloudhopper.sxmp;
+
+/*
+ * #%L
+ * ch-sxmp
+ * %%
+ * Copyright (C) 2012 - 2013 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.cloudhopper.commons.util.windowing.PendingOfferAbortedException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.client.HttpResponseException;
+import org.junit.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class SxmpAsyncClientTest {
+    private static final Logger logger = LoggerFactory.getLogger(SxmpAsyncClientTest.class);
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private String url;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile CountDownLatch releaseLatch;
+    private volatile int statusCode = 200;
+
+    @Before
+    public void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/sxmp/1.0", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                int current = inFlight.incrementAndGet();
+                while (true) {
+                    int max = maxInFlight.get();
+                    if (current <= max || maxInFlight.compareAndSet(max, current)) {
+                        break;
+                    }
+                }
+                try {
+                    // request is sent chunked and must be a parseable submit
+                    Assert.assertEquals("chunked", exchange.getRequestHeaders().getFirst("Transfer-Encoding"));
+                    Operation op = new SxmpParser(SxmpParser.VERSION_1_0).parse(exchange.getRequestBody());
+                    requests.incrementAndGet();
+                    CountDownLatch latch = releaseLatch;
+                    if (latch != null) {
+                        latch.await();
+                    } else {
+                        Thread.sleep(5);
+                    }
+                    byte[] body = null;
+                    if (op instanceof SubmitRequest) {
+                        SubmitResponse response = new SubmitResponse();
+                        response.setErrorCode(0);
+                        response.setErrorMessage("OK");
+                        response.setTicketId("TICKET" + requests.get());
+                        body = SxmpWriter.createString(response).getBytes("ISO-8859-1");
+                    } else {
+                        body = "OK".getBytes("ISO-8859-1");
+                    }
+                    exchange.sendResponseHeaders(statusCode, body.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(body);
+                    out.close();
+                } catch (Throwable t) {
+                    logger.error("Unable to handle request", t);
+                    exchange.close();
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            }
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/sxmp/1.0";
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        if (releaseLatch != null) {
+            releaseLatch.countDown();
+        }
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    private SubmitRequest createSubmitRequest() throws Exception {
+        SubmitRequest submit = new SubmitRequest();
+        submit.setAccount(new Account("customer1", "password1"));
+        MobileAddress sourceAddr = new MobileAddress();
+        sourceAddr.setAddress(MobileAddress.Type.NETWORK, "40404");
+        submit.setSourceAddress(sourceAddr);
+        submit.setOperatorId(1);
+        MobileAddress destAddr = new MobileAddress();
+        destAddr.setAddress(MobileAddress.Type.INTERNATIONAL, "+14155551212");
+        submit.setDestinationAddress(destAddr);
+        submit.setText("Hello World");
+        return submit;
+    }
+
+    private DeliverRequest createDeliverRequest() throws Exception {
+        DeliverRequest deliver = new DeliverRequest();
+        deliver.setAccount(new Account("customer1", "password1"));
+        MobileAddress sourceAddr = new MobileAddress();
+        sourceAddr.setAddress(MobileAddress.Type.INTERNATIONAL, "+14155551212");
+        deliver.setSourceAddress(sourceAddr);
+        MobileAddress destAddr = new MobileAddress();
+        destAddr.setAddress(MobileAddress.Type.NETWORK, "40404");
+        deliver.setDestinationAddress(destAddr);
+        deliver.setOperatorId(1);
+        deliver.setText("Hello World");
+        return deliver;
+    }
+
+    @Test
+    public void submitBoundedInFlight() throws Exception {
+        SxmpAsyncClient client = new SxmpAsyncClient(4);
+        try {
+            final AtomicInteger listenerCount = new AtomicInteger();
+            List<SxmpFuture<SubmitResponse>> futures = new ArrayList<SxmpFuture<SubmitResponse>>();
+            for (int i = 0; i < 50; i++) {
+                SxmpFuture<SubmitResponse> future = client.submit(url, createSubmitRequest());
+                future.addListener(new SxmpFutureListener<SubmitResponse>() {
+                    public void done(SxmpFuture<SubmitResponse> future) {
+                        if (future.isSuccess()) {
+                            listenerCount.incrementAndGet();
+                        }
+                    }
+                });
+                futures.add(future);
+            }
+            // never more than 4 in-flight
+            Assert.assertTrue(client.getInFlightCount(url) <= 4);
+
+            for (SxmpFuture<SubmitResponse> future : futures) {
+                SubmitResponse response = future.get(10, TimeUnit.SECONDS);
+                Assert.assertTrue(future.isSuccess());
+                Assert.assertEquals(new Integer(0), response.getErrorCode());
+                Assert.assertTrue(response.getTicketId().startsWith("TICKET"));
+            }
+
+            Assert.assertEquals(50, requests.get());
+            // listeners are called right after waiters are signaled
+            long start = System.currentTimeMillis();
+            while (listenerCount.get() < 50 && (System.currentTimeMillis() - start) < 5000) {
+                Thread.sleep(5);
+            }
+            Assert.assertEquals(50, listenerCount.get());
+            Assert.assertTrue("max in-flight was " + maxInFlight.get(), maxInFlight.get() <= 4);
+            Assert.assertEquals(0, client.getInFlightCount(url));
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void deliverWithoutParsingResponse() throws Exception {
+        SxmpAsyncClient client = new SxmpAsyncClient(2);
+        try {
+            SxmpFuture<DeliverResponse> future = client.deliver(url, createDeliverRequest(), false);
+            Assert.assertNull(future.get(10, TimeUnit.SECONDS));
+            Assert.assertTrue(future.isSuccess());
+            // slot freed up even without a response
+            Assert.assertEquals(0, client.getInFlightCount(url));
+
+            // the "OK" response isn't an operation
+            future = client.deliver(url, createDeliverRequest(), true);
+            Assert.assertTrue(future.await(10000));
+            Assert.assertFalse(future.isSuccess());
+            Assert.assertNotNull(future.getCause());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void unexpectedResponseType() throws Exception {
+        SxmpFuture<DeliverResponse> future = new SxmpFuture<DeliverResponse>(createDeliverRequest(), DeliverResponse.class);
+        future.complete(new SubmitResponse());
+        Assert.assertTrue(future.isDone());
+        Assert.assertFalse(future.isSuccess());
+        Assert.assertNull(future.getResponse());
+        Assert.assertEquals(SxmpErrorCode.OPTYPE_MISMATCH, ((SxmpErrorException)future.getCause()).getErrorCode());
+    }
+
+    @Test
+    public void httpErrorFailsFuture() throws Exception {
+        statusCode = 500;
+        SxmpAsyncClient client = new SxmpAsyncClient(2);
+        try {
+            SxmpFuture<SubmitResponse> future = client.submit(url, createSubmitRequest());
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                Assert.fail();
+            } catch (ExecutionException e) {
+                // correct behavior
+                Assert.assertTrue(e.getCause() instanceof HttpResponseException);
+            }
+            Assert.assertEquals(0, client.getInFlightCount(url));
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void idleEndpointsDiscarded() throws Exception {
+        releaseLatch = new CountDownLatch(1);
+        SxmpAsyncClient client = new SxmpAsyncClient(1);
+        try {
+            // every distinct url is its own endpoint
+            List<SxmpFuture<SubmitResponse>> futures = new ArrayList<SxmpFuture<SubmitResponse>>();
+            for (int i = 0; i < 20; i++) {
+                futures.add(client.submit(url + "?endpoint=" + i, createSubmitRequest()));
+                futures.add(client.submit(url + "?endpoint=" + i, createSubmitRequest()));
+            }
+            Assert.assertEquals(20, client.getEndpointCount());
+
+            releaseLatch.countDown();
+            for (SxmpFuture<SubmitResponse> future : futures) {
+                Assert.assertNotNull(future.get(10, TimeUnit.SECONDS));
+            }
+            // endpoints are discarded right after waiters are signaled
+            long start = System.currentTimeMillis();
+            while (client.getEndpointCount() > 0 && (System.currentTimeMillis() - start) < 5000) {
+                Thread.sleep(5);
+            }
+            Assert.assertEquals(0, client.getEndpointCount());
+
+            // a discarded endpoint is simply created again
+            Assert.assertNotNull(client.submit(url + "?endpoint=0", createSubmitRequest()).get(10, TimeUnit.SECONDS));
+            Assert.assertEquals(41, requests.get());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void cancelQueuedRequest() throws Exception {
+        releaseLatch = new CountDownLatch(1);
+        SxmpAsyncClient client = new SxmpAsyncClient(1);
+        try {
+            SxmpFuture<SubmitResponse> future0 = client.submit(url, createSubmitRequest());
+            SxmpFuture<SubmitResponse> future1 = client.submit(url, createSubmitRequest());
+            SxmpFuture<SubmitResponse> future2 = client.submit(url, createSubmitRequest());
+
+            // first is in-flight, second and third are queued
+            Assert.assertEquals(1, client.getInFlightCount(url));
+            Assert.assertTrue(future1.cancel(false));
+            Assert.assertTrue(future1.isDone());
+            Assert.assertTrue(future1.isCancelled());
+            try {
+                future1.get();
+                Assert.fail();
+            } catch (CancellationException e) {
+                // correct behavior
+            }
+
+            releaseLatch.countDown();
+            Assert.assertNotNull(future0.get(10, TimeUnit.SECONDS));
+            Assert.assertNotNull(future2.get(10, TimeUnit.SECONDS));
+            // already done
+            Assert.assertFalse(future0.cancel(false));
+            Assert.assertEquals(2, requests.get());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void shutdownAbortsQueuedRequests() throws Exception {
+        releaseLatch = new CountDownLatch(1);
+        SxmpAsyncClient client = new SxmpAsyncClient(1);
+        SxmpFuture<SubmitResponse> future0 = client.submit(url, createSubmitRequest());
+        SxmpFuture<SubmitResponse> future1 = client.submit(url, createSubmitRequest());
+
+        // release the in-flight request once shutdown is waiting for it
+        new Thread() {
+            public void run() {
+                try { Thread.sleep(100); } catch (InterruptedException e) { }
+                releaseLatch.countDown();
+            }
+        }.start();
+        client.shutdown();
+
+        Assert.assertTrue(future1.isDone());
+        Assert.assertTrue(future1.getCause() instanceof PendingOfferAbortedException);
+        Assert.assertTrue(future0.await(10000));
+        Assert.assertTrue(future0.isSuccess());
+    }
+
+    @Test
+    public void sharedClientAndExecutor() throws Exception {
+        SxmpClient sxmpClient = new SxmpClient(0);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        SxmpAsyncClient client = new SxmpAsyncClient(sxmpClient, executor, 2);
+        try {
+            Assert.assertSame(sxmpClient, client.getClient());
+            Assert.assertEquals(2, client.getMaxInFlightPerEndpoint());
+            SxmpFuture<Response> future = client.send(url, createSubmitRequest(), true);
+            Assert.assertTrue(future.get(10, TimeUnit.SECONDS) instanceof SubmitResponse);
+            client.shutdown();
+            // not owned by the async client
+            Assert.assertFalse(executor.isShutdown());
+        } finally {
+            executor.shutdown();
+            sxmpClient.shutdown();
+        }
+    }
+
+    @Test
+    public void invalidInFlightLimit() throws Exception {
+        try {
+            new SxmpAsyncClient(0);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // correct behavior
+        }
+    }
+}
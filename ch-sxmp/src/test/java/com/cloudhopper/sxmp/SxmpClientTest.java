@@ -0,0 +1,277 @@
+package com.cloudhopper.sxmp;
+
+/*
+ * #%L
+ * ch-sxmp
+ * %%
+ * Copyright (C) 2012 - 2013 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class SxmpClientTest {
+    private static final Logger logger = LoggerFactory.getLogger(SxmpClientTest.class);
+
+    private HttpServer server;
+    private String url;
+    private final Set<InetSocketAddress> remoteAddresses = new HashSet<InetSocketAddress>();
+    private volatile long responseDelay;
+    // if set, responses are held back until it's released
+    private volatile CountDownLatch stall;
+    private ExecutorService serverExecutor;
+
+    @Before
+    public void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/sxmp/1.0", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                synchronized (remoteAddresses) {
+                    remoteAddresses.add(exchange.getRemoteAddress());
+                }
+                InputStream in = exchange.getRequestBody();
+                while (in.read() >= 0) { }
+                try {
+                    if (responseDelay > 0) {
+                        Thread.sleep(responseDelay);
+                    }
+                    CountDownLatch s = stall;
+                    if (s != null) {
+                        s.await();
+                    }
+                    SubmitResponse response = new SubmitResponse();
+                    response.setErrorCode(0);
+                    response.setErrorMessage("OK");
+                    response.setTicketId("TICKET1");
+                    byte[] body = SxmpWriter.createString(response).getBytes("ISO-8859-1");
+                    exchange.getResponseHeaders().set("Content-Type", "text/xml");
+                    exchange.sendResponseHeaders(200, body.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(body);
+                    out.close();
+                } catch (Exception e) {
+                    logger.error("Unable to send response", e);
+                    exchange.close();
+                }
+            }
+        });
+        // handle requests concurrently (default is one at a time)
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/sxmp/1.0";
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        CountDownLatch s = stall;
+        if (s != null) {
+            s.countDown();
+        }
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    private SubmitRequest createSubmitRequest() throws Exception {
+        SubmitRequest submit = new SubmitRequest();
+        submit.setAccount(new Account("customer1", "password1"));
+        MobileAddress sourceAddr = new MobileAddress();
+        sourceAddr.setAddress(MobileAddress.Type.NETWORK, "40404");
+        submit.setSourceAddress(sourceAddr);
+        submit.setOperatorId(1);
+        MobileAddress destAddr = new MobileAddress();
+        destAddr.setAddress(MobileAddress.Type.INTERNATIONAL, "+14155551212");
+        submit.setDestinationAddress(destAddr);
+        submit.setText("Hello World");
+        return submit;
+    }
+
+    @Test
+    public void submitReusesConnection() throws Exception {
+        SxmpClient client = new SxmpClient();
+        try {
+            for (int i = 0; i < 5; i++) {
+                SubmitResponse response = client.submit(url, createSubmitRequest());
+                Assert.assertEquals(new Integer(0), response.getErrorCode());
+                Assert.assertEquals("TICKET1", response.getTicketId());
+            }
+            // every request went over the same connection
+            Assert.assertEquals(1, remoteAddresses.size());
+            Assert.assertEquals(1, client.getConnectionCount());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void closeIdleConnections() throws Exception {
+        SxmpClient client = new SxmpClient(0);
+        try {
+            client.submit(url, createSubmitRequest());
+            Assert.assertEquals(1, client.getConnectionCount());
+
+            // not idle long enough yet
+            client.closeIdleConnections();
+            Assert.assertEquals(1, client.getConnectionCount());
+
+            client.setIdleTimeout(1);
+            Thread.sleep(20);
+            client.closeIdleConnections();
+            Assert.assertEquals(0, client.getConnectionCount());
+
+            // next request opens a new connection
+            client.submit(url, createSubmitRequest());
+            Assert.assertEquals(2, remoteAddresses.size());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void backgroundEviction() throws Exception {
+        SxmpClient client = new SxmpClient(10);
+        try {
+            client.setIdleTimeout(1);
+            client.submit(url, createSubmitRequest());
+            long start = System.currentTimeMillis();
+            while (client.getConnectionCount() > 0 && (System.currentTimeMillis() - start) < 5000) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(0, client.getConnectionCount());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void connectionLimits() throws Exception {
+        SxmpClient client = new SxmpClient(0);
+        try {
+            Assert.assertEquals(SxmpClient.DEFAULT_MAX_TOTAL_CONNECTIONS, client.getMaxTotalConnections());
+            Assert.assertEquals(SxmpClient.DEFAULT_MAX_CONNECTIONS_PER_HOST, client.getMaxConnectionsPerHost());
+            Assert.assertEquals(SxmpClient.DEFAULT_MAX_CONNECTIONS_PER_HOST, client.getMaxConnectionsPerHost(url));
+
+            client.setMaxTotalConnections(50);
+            client.setMaxConnectionsPerHost(5);
+            client.setMaxConnectionsPerHost("http://www.example.com/api/sxmp/1.0", 20);
+
+            Assert.assertEquals(50, client.getMaxTotalConnections());
+            Assert.assertEquals(5, client.getMaxConnectionsPerHost(url));
+            // default port is resolved to the same host
+            Assert.assertEquals(20, client.getMaxConnectionsPerHost("http://www.example.com:80/other"));
+            Assert.assertEquals(5, client.getMaxConnectionsPerHost("https://www.example.com/api/sxmp/1.0"));
+
+            try {
+                client.setMaxConnectionsPerHost("/api/sxmp/1.0", 20);
+                Assert.fail();
+            } catch (IllegalArgumentException e) {
+                // correct behavior
+            }
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void socketTimeout() throws Exception {
+        SxmpClient client = new SxmpClient(0);
+        try {
+            client.setSocketTimeout(50);
+            Assert.assertEquals(50, client.getSocketTimeout());
+            responseDelay = 1000;
+            try {
+                client.submit(url, createSubmitRequest());
+                Assert.fail();
+            } catch (SocketTimeoutException e) {
+                // correct behavior
+            }
+            // failed connection is not returned to the pool
+            Assert.assertEquals(0, client.getConnectionCount());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void senderUsesDefaultClient() throws Exception {
+        Assert.assertSame(SxmpSender.getDefaultClient(), SxmpSender.getDefaultClient());
+        // keeps the infinite timeouts requests were always sent with
+        Assert.assertEquals(0, SxmpSender.getDefaultClient().getConnectTimeout());
+        Assert.assertEquals(0, SxmpSender.getDefaultClient().getSocketTimeout());
+        // and doesn't limit the number of connections
+        Assert.assertEquals(Integer.MAX_VALUE, SxmpSender.getDefaultClient().getMaxTotalConnections());
+        Assert.assertEquals(Integer.MAX_VALUE, SxmpSender.getDefaultClient().getMaxConnectionsPerHost(url));
+        SubmitResponse response = SxmpSender.submit(url, createSubmitRequest());
+        Assert.assertEquals("TICKET1", response.getTicketId());
+        SxmpSender.submit(url, createSubmitRequest());
+        Assert.assertEquals(1, remoteAddresses.size());
+    }
+
+    @Test
+    public void senderNotLimitedByStalledRequests() throws Exception {
+        // more concurrent requests to one host than a new client would allow
+        int callers = SxmpClient.DEFAULT_MAX_CONNECTIONS_PER_HOST + 5;
+        stall = new CountDownLatch(1);
+        final AtomicInteger succeeded = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < callers; i++) {
+            Thread t = new Thread() {
+                public void run() {
+                    try {
+                        SxmpSender.submit(url, createSubmitRequest());
+                        succeeded.incrementAndGet();
+                    } catch (Exception e) {
+                        logger.error("Unable to submit", e);
+                    }
+                }
+            };
+            t.setDaemon(true);
+            t.start();
+            threads.add(t);
+        }
+
+        // every caller gets its own connection while the server is stalled
+        long start = System.currentTimeMillis();
+        while (remoteAddresses.size() < callers && (System.currentTimeMillis() - start) < 10000) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(callers, remoteAddresses.size());
+
+        stall.countDown();
+        for (Thread t : threads) {
+            t.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        Assert.assertEquals(callers, succeeded.get());
+    }
+}
@@ -22,6 +22,7 @@ package com.cloudhopper.sxmp;
 
 import java.io.ByteArrayInputStream;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.hamcrest.CoreMatchers;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
@@ -37,6 +38,15 @@ import org.xml.sax.SAXParseException;
 public class SxmpParserTest {
     private static final Logger logger = LoggerFactory.getLogger(SxmpParserTest.class);
 
+    // overridden to run every test against another parser implementation
+    protected SxmpParser createParser() {
+        return new SxmpParser();
+    }
+
+    protected SxmpParser createParser(String version) {
+        return new SxmpParser(version);
+    }
+
     @Test
     public void parseInvalidRootElement() throws Exception {
         StringBuilder string0 = new StringBuilder(200)
@@ -46,7 +56,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -69,7 +79,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -93,7 +103,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -121,7 +131,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -148,7 +158,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -174,7 +184,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -200,7 +210,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -226,7 +236,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -251,7 +261,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -283,7 +293,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -315,7 +325,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -343,7 +353,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -376,7 +386,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -408,7 +418,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -440,7 +450,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -472,7 +482,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -506,7 +516,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -541,7 +551,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -576,7 +586,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -613,7 +623,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -651,7 +661,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -689,7 +699,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -730,7 +740,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -761,7 +771,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -790,7 +800,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -818,7 +828,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -848,7 +858,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -879,7 +889,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -911,7 +921,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
         Operation operation = parser.parse(is);
 
         logger.debug("{}", operation);
@@ -950,7 +960,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
         Operation operation = parser.parse(is);
 
         logger.debug("{}", operation);
@@ -990,7 +1000,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -1022,7 +1032,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
         Operation operation = parser.parse(is);
 
         logger.debug("{}", operation);
@@ -1088,7 +1098,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
         Operation operation = parser.parse(is);
 
         logger.debug("{}", operation);
@@ -1125,7 +1135,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
         Operation operation = parser.parse(is);
 
         logger.debug("{}", operation);
@@ -1162,7 +1172,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
         Operation operation = parser.parse(is);
 
         logger.debug("{}", operation);
@@ -1200,7 +1210,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -1234,7 +1244,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
         Operation operation = parser.parse(is);
 
         logger.debug("{}", operation);
@@ -1268,7 +1278,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -1297,7 +1307,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -1326,7 +1336,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         Operation operation = parser.parse(is);
 
@@ -1353,7 +1363,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         Operation operation = parser.parse(is);
 
@@ -1377,7 +1387,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         Operation operation = parser.parse(is);
 
@@ -1405,7 +1415,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -1433,7 +1443,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         Operation operation = parser.parse(is);
 
@@ -1455,7 +1465,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         Operation operation = parser.parse(is);
 
@@ -1484,7 +1494,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(xml.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
         Operation operation = parser.parse(is);
 
         logger.debug("{}", operation);
@@ -1522,7 +1532,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
         Operation operation = parser.parse(is);
 
         logger.debug("{}", operation);
@@ -1561,7 +1571,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
         Operation operation = parser.parse(is);
 
         logger.debug("{}", operation);
@@ -1599,7 +1609,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
         Operation operation = parser.parse(is);
 
         logger.debug("{}", operation);
@@ -1635,7 +1645,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         Operation operation = parser.parse(is);
 
@@ -1670,7 +1680,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         Operation operation = parser.parse(is);
 
@@ -1732,7 +1742,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -1758,7 +1768,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes("UTF-8"));
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
         Operation operation = parser.parse(is);
 
         logger.debug("{}", operation);
@@ -1793,7 +1803,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes("UTF-8"));
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
         Operation operation = parser.parse(is);
 
         logger.debug("{}", operation);
@@ -1829,7 +1839,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes("UTF-8"));
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
         Operation operation = parser.parse(is);
 
         logger.debug("{}", operation);
@@ -1866,7 +1876,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes("UTF-8"));
-        SxmpParser parser = new SxmpParser(SxmpParser.VERSION_1_1);
+        SxmpParser parser = createParser(SxmpParser.VERSION_1_1);
         Operation operation = parser.parse(is);
 
         logger.debug("{}", operation);
@@ -1910,7 +1920,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes("UTF-8"));
-        SxmpParser parser = new SxmpParser(SxmpParser.VERSION_1_1);
+        SxmpParser parser = createParser(SxmpParser.VERSION_1_1);
         Operation operation = parser.parse(is);
 
         logger.debug("{}", operation);
@@ -1949,7 +1959,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes("UTF-8"));
-        SxmpParser parser = new SxmpParser(SxmpParser.VERSION_1_1);
+        SxmpParser parser = createParser(SxmpParser.VERSION_1_1);
         Operation operation = parser.parse(is);
 
         logger.debug("{}", operation);
@@ -1989,7 +1999,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes("ISO-8859-1"));
-        SxmpParser parser = new SxmpParser(SxmpParser.VERSION_1_1);
+        SxmpParser parser = createParser(SxmpParser.VERSION_1_1);
         try {
             Operation operation = parser.parse(is);
             Assert.fail();
@@ -2018,7 +2028,7 @@ public class SxmpParserTest {
         byte[] b0 = string0.toString().getBytes("iso-8859-1");
 
         ByteArrayInputStream is = new ByteArrayInputStream(b0);
-        SxmpParser parser = new SxmpParser(SxmpParser.VERSION_1_1);
+        SxmpParser parser = createParser(SxmpParser.VERSION_1_1);
         try {
             Operation operation = parser.parse(is);
             Assert.fail();
@@ -2046,7 +2056,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes("UTF-8"));
-        SxmpParser parser = new SxmpParser(SxmpParser.VERSION_1_1);
+        SxmpParser parser = createParser(SxmpParser.VERSION_1_1);
         try {
             Operation operation = parser.parse(is);
             Assert.fail();
@@ -2075,7 +2085,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes("UTF-8"));
-        SxmpParser parser = new SxmpParser(SxmpParser.VERSION_1_1);
+        SxmpParser parser = createParser(SxmpParser.VERSION_1_1);
         try {
             Operation operation = parser.parse(is);
             Assert.fail();
@@ -2109,7 +2119,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes("UTF-8"));
-        SxmpParser parser = new SxmpParser(SxmpParser.VERSION_1_1);
+        SxmpParser parser = createParser(SxmpParser.VERSION_1_1);
         try {
             Operation operation = parser.parse(is);
             Assert.fail();
@@ -2139,7 +2149,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes("UTF-8"));
-        SxmpParser parser = new SxmpParser(SxmpParser.VERSION_1_1);
+        SxmpParser parser = createParser(SxmpParser.VERSION_1_1);
         Operation operation = parser.parse(is);
 
         logger.debug("{}", operation);
@@ -2176,7 +2186,7 @@ public class SxmpParserTest {
             .append("");
 
         ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
-        SxmpParser parser = new SxmpParser();
+        SxmpParser parser = createParser();
 
         try {
             Operation operation = parser.parse(is);
@@ -2191,4 +2201,92 @@ public class SxmpParserTest {
 
     }
 
+    private static String createSubmitRequestXml(int operatorId) {
+        return new StringBuilder(200)
+            .append("<?xml version=\"1.0\"?>\n")
+            .append("<operation type=\"submit\">\n")
+            .append(" <account username=\"customer1\" password=\"test1\"/>\n")
+            .append(" <submitRequest referenceId=\"MYREF102020022\">\n")
+            .append("  <operatorId>" + operatorId + "</operatorId>\n")
+            .append("  <deliveryReport>true</deliveryReport>\n")
+            .append("  <sourceAddress type=\"network\">40404</sourceAddress>\n")
+            .append("  <destinationAddress type=\"international\">+12065551212</destinationAddress>\n")
+            .append("  <text encoding=\"ISO-8859-1\">48656c6c6f20576f726c64</text>\n")
+            .append(" </submitRequest>\n")
+            .append("</operation>\n")
+            .toString();
+    }
+
+    @Test
+    public void parseReusedAfterErrors() throws Exception {
+        SxmpParser parser = createParser();
+
+        SubmitRequest submitReq = (SubmitRequest)parser.parse(new ByteArrayInputStream(createSubmitRequestXml(10).getBytes()));
+        Assert.assertEquals(new Integer(10), submitReq.getOperatorId());
+
+        // malformed xml
+        try {
+            parser.parse(new ByteArrayInputStream("<?xml version=\"1.0\"?>\n<operation type=\"submit\">\n</operation2>\n".getBytes()));
+            Assert.fail();
+        } catch (SAXParseException e) {
+            // correct behavior
+        }
+
+        // error thrown by the handler mid-document
+        try {
+            parser.parse(new ByteArrayInputStream(createSubmitRequestXml(10).replace("<operatorId>10</operatorId>", "<operatorId>abc</operatorId>").getBytes()));
+            Assert.fail();
+        } catch (SxmpParsingException e) {
+            // correct behavior
+            Assert.assertEquals(SxmpErrorCode.UNABLE_TO_CONVERT_VALUE, e.getErrorCode());
+        }
+
+        // no state from the previous parses leaks into the next one
+        submitReq = (SubmitRequest)parser.parse(new ByteArrayInputStream(createSubmitRequestXml(11).getBytes()));
+        Assert.assertEquals(new Integer(11), submitReq.getOperatorId());
+        Assert.assertEquals("customer1", submitReq.getAccount().getUsername());
+        Assert.assertEquals("Hello World", submitReq.getText());
+
+        // a different version on the same thread
+        SxmpParser parser11 = createParser(SxmpParser.VERSION_1_1);
+        try {
+            parser11.parse(new ByteArrayInputStream(createSubmitRequestXml(12).replace("<?xml version=\"1.0\"?>", "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>").getBytes()));
+            Assert.fail();
+        } catch (SxmpParsingException e) {
+            // correct behavior (v1.1 requires utf-8)
+            Assert.assertEquals(SxmpErrorCode.UNSUPPORTED_TEXT_ENCODING, e.getErrorCode());
+        }
+    }
+
+    @Test
+    public void parseSharedAcrossThreads() throws Exception {
+        final SxmpParser parser = createParser();
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final int operatorBase = t * 1000;
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < 200; i++) {
+                        try {
+                            SubmitRequest submitReq = (SubmitRequest)parser.parse(new ByteArrayInputStream(createSubmitRequestXml(operatorBase + i).getBytes()));
+                            if (submitReq.getOperatorId().intValue() != operatorBase + i) {
+                                failures.incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            logger.error("", e);
+                            failures.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(0, failures.get());
+    }
+
+
 }
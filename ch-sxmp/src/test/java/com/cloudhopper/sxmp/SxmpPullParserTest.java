@@ -0,0 +1,61 @@
+package com.cloudhopper.sxmp;
+
+/*
+ * #%L
+ * ch-sxmp
+ * %%
+ * Copyright (C) 2012 - 2013 Cloudhopper by Twitter
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import org.junit.*;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Runs every SxmpParserTest against the SxmpPullParser, since it must parse
+ * exactly the same as the SAX based SxmpParser.
+ */
+public class SxmpPullParserTest extends SxmpParserTest {
+
+    @Override
+    protected SxmpParser createParser() {
+        return new SxmpPullParser();
+    }
+
+    @Override
+    protected SxmpParser createParser(String version) {
+        return new SxmpPullParser(version);
+    }
+
+    @Test
+    public void parseDoctypeNotAllowed() throws Exception {
+        StringBuilder string0 = new StringBuilder(200)
+            .append("<?xml version=\"1.0\"?>\n")
+            .append("<!DOCTYPE operation [ <!ENTITY x0 \"test\"> ]>\n")
+            .append("<operation type=\"submit\">\n")
+            .append(" <account username=\"customer1\" password=\"test1\"/>\n")
+            .append("</operation>\n")
+            .append("");
+
+        ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
+        try {
+            createParser().parse(is);
+            Assert.fail();
+        } catch (SAXParseException e) {
+            // correct behavior
+        }
+    }
+}
@@ -302,4 +302,32 @@ public class SxmpSessionTest {
         Assert.assertEquals("OK", response.getErrorMessage());
         Assert.assertEquals("THISISATICKET", response.getTicketId());
     }
+    @Test
+    public void processSubmitOKWithPullParser() throws Exception {
+        StringBuilder string0 = new StringBuilder(200)
+            .append("<?xml version=\"1.0\"?>\n")
+            .append("<operation type=\"submit\">\n")
+            .append(" <account username=\"customer1\" password=\"test1\"/>\n")
+            .append(" <submitRequest referenceId=\"MYREF102020022\">\n")
+            .append("  <operatorId>10</operatorId>\n")
+            .append("  <deliveryReport>true</deliveryReport>\n")
+            .append("  <sourceAddress type=\"network\">40404</sourceAddress>\n")
+            .append("  <destinationAddress type=\"international\">+12065551212</destinationAddress>\n")
+            .append("  <text encoding=\"ISO-8859-1\">48656c6c6f20576f726c64</text>\n")
+            .append(" </submitRequest>\n")
+            .append("</operation>\n")
+            .append("");
+
+        ByteArrayInputStream is = new ByteArrayInputStream(string0.toString().getBytes());
+
+        MockSxmpRequestProcessor processor = new MockSxmpRequestProcessor();
+        SxmpSession session = new SxmpSession(processor, new SxmpPullParser(SxmpParser.VERSION_1_0));
+
+        SubmitResponse response = (SubmitResponse)session.process(is);
+
+        Assert.assertEquals(1, processor.submits);
+        Assert.assertEquals(Operation.Type.SUBMIT, response.getType());
+        Assert.assertEquals(0, response.getErrorCode().intValue());
+        Assert.assertEquals("THISISATICKET", response.getTicketId());
+    }
 }
@@ -21,7 +21,10 @@ package com.cloudhopper.sxmp;
  */
 
 import com.cloudhopper.commons.util.HexUtil;
+import java.io.ByteArrayOutputStream;
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
@@ -755,4 +758,156 @@ public class SxmpWriterTest {
         Assert.assertTrue("XML are similar " + myDetailedDiff, myDetailedDiff.similar());
     }
 
+    static private void assertBytesMatchWriter(Operation operation) throws Exception {
+        String charset = (operation.getVersion().equals(SxmpParser.VERSION_1_0) ? "ISO-8859-1" : "UTF-8");
+        byte[] expected = SxmpWriter.createString(operation).getBytes(charset);
+        byte[] actual = SxmpWriter.createByteArray(operation);
+        Assert.assertEquals(new String(expected, charset), new String(actual, charset));
+        Assert.assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void writeBytesMatchesWriter() throws Exception {
+        List<Operation> operations = new ArrayList<Operation>();
+
+        SubmitResponse submitResponse = new SubmitResponse();
+        submitResponse.setErrorCode(-5);
+        submitResponse.setErrorMessage("Error & \"things\" <'here'>\r\n");
+        submitResponse.setTicketId("THIS<IS>TICKET");
+        submitResponse.setReferenceId("REF1");
+        operations.add(submitResponse);
+
+        DeliverResponse deliverResponse = new DeliverResponse();
+        deliverResponse.setErrorCode(0);
+        deliverResponse.setErrorMessage("OK");
+        operations.add(deliverResponse);
+
+        DeliveryReportResponse deliveryResponse = new DeliveryReportResponse();
+        deliveryResponse.setErrorCode(Integer.MIN_VALUE);
+        deliveryResponse.setErrorMessage("Success");
+        operations.add(deliveryResponse);
+
+        operations.add(new ErrorResponse(Operation.Type.DELIVER, 1006, "Short code not allowed"));
+
+        SubmitRequest submit0 = new SubmitRequest();
+        submit0.setAccount(new Account("customer&1", "te\"st'1"));
+        submit0.setApplication(new Application("Test<App>"));
+        submit0.setOperatorId(20);
+        submit0.setReferenceId("TESTREF");
+        submit0.setTicketId("TICKET");
+        submit0.setPriority(Priority.URGENT);
+        submit0.setDeliveryReport(Boolean.TRUE);
+        submit0.setSourceAddress(new MobileAddress(MobileAddress.Type.NETWORK, "40404"));
+        submit0.setDestinationAddress(new MobileAddress(MobileAddress.Type.INTERNATIONAL, "+13135551212"));
+        submit0.setText("Hello World æ£", TextEncoding.ISO_8859_1);
+        operations.add(submit0);
+
+        SubmitRequest submit1 = new SubmitRequest(SxmpParser.VERSION_1_1);
+        submit1.setAccount(new Account("customer€", "testأ"));
+        submit1.setOperatorId(20);
+        submit1.setDestinationAddress(new MobileAddress(MobileAddress.Type.PUSH_DESTINATION, "abcd\n1234\rfghi-æ<&>_€أ"));
+        submit1.setTextEncoding(TextEncoding.UTF_8);
+        submit1.setText("€أهل 😀 æ");
+        OptionalParamMap optParams = new OptionalParamMap(OptionalParamMap.TREE_MAP);
+        optParams.put("A", new Integer(42));
+        optParams.put("b", "unicode: € £ أ");
+        optParams.put("c", "'sample' with XML-excaping: \n&\r<>'\"");
+        submit1.setOptionalParams(optParams);
+        operations.add(submit1);
+
+        DeliverRequest deliver = new DeliverRequest();
+        deliver.setAccount(new Account("customer1", "test1"));
+        deliver.setOperatorId(20);
+        deliver.setTicketId("THISISATESTTICKETID");
+        deliver.setSourceAddress(new MobileAddress(MobileAddress.Type.ALPHANUMERIC, "Alpha"));
+        deliver.setDestinationAddress(new MobileAddress(MobileAddress.Type.NATIONAL, "3135551212"));
+        deliver.setText("");
+        operations.add(deliver);
+
+        DeliveryReportRequest report = new DeliveryReportRequest();
+        report.setAccount(new Account("customer1", "test1"));
+        report.setReferenceId("TESTREF");
+        report.setStatus(new DeliveryStatus(5, "EXPIRED & gone"));
+        report.setTicketId("000:20090118002220948:000");
+        report.setCreateDate(new DateTime(2010,5,30,9,30,10,0, DateTimeZone.UTC));
+        report.setFinalDate(new DateTime(2010,5,30,9,30,15,314, DateTimeZone.UTC));
+        report.setMessageErrorCode(new Integer(102));
+        operations.add(report);
+
+        for (Operation operation : operations) {
+            assertBytesMatchWriter(operation);
+        }
+    }
+
+    @Test
+    public void writeBytesWithUnmappableChars() throws Exception {
+        // v1.0 is written as ISO-8859-1 where these chars all become '?'
+        SubmitRequest request = new SubmitRequest();
+        request.setAccount(new Account("customer€", "test😀"));
+        request.setOperatorId(20);
+        request.setSourceAddress(new MobileAddress(MobileAddress.Type.NETWORK, "40404"));
+        request.setDestinationAddress(new MobileAddress(MobileAddress.Type.PUSH_DESTINATION, "abcdأ"));
+        request.setText("€ 😀 \uD83D \uDE00 ÿ", TextEncoding.ISO_8859_1);
+        assertBytesMatchWriter(request);
+
+        // unpaired surrogates are malformed in UTF-8 too
+        request.setTextEncoding(TextEncoding.UTF_8);
+        request.setText("a\uD83D b\uDE00 😀\uD83D");
+        assertBytesMatchWriter(request);
+        Assert.assertTrue(new String(SxmpWriter.createByteArray(request), "ISO-8859-1").contains(HexUtil.toHexString(request.getText().getBytes("UTF-8"))));
+    }
+
+    @Test
+    public void writeBytesLargerThanBuffer() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            text.append((char)('a' + (i % 26)));
+        }
+        SubmitRequest request = new SubmitRequest(SxmpParser.VERSION_1_1);
+        request.setAccount(new Account("customer1", "test1"));
+        request.setOperatorId(20);
+        request.setDestinationAddress(new MobileAddress(MobileAddress.Type.PUSH_DESTINATION, text.toString()));
+        request.setText(text.toString() + "€", TextEncoding.UTF_8);
+        assertBytesMatchWriter(request);
+    }
+
+    @Test
+    public void writeBytesWithoutXmlHeader() throws Exception {
+        SubmitResponse submitResponse = new SubmitResponse();
+        submitResponse.setErrorCode(5);
+        submitResponse.setErrorMessage("Success");
+
+        StringWriter sw = new StringWriter();
+        SxmpWriter.write(sw, submitResponse, false);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        SxmpWriter.write(baos, submitResponse, false);
+
+        Assert.assertEquals(sw.toString(), baos.toString("ISO-8859-1"));
+        Assert.assertTrue(baos.toString("ISO-8859-1").startsWith("<operation type=\"submit\">\n"));
+    }
+
+    @Test
+    public void writeBytesInvalidOperation() throws Exception {
+        SubmitRequest request = new SubmitRequest();
+        request.setOperatorId(20);
+        request.setSourceAddress(new MobileAddress(MobileAddress.Type.NETWORK, "40404"));
+        request.setDestinationAddress(new MobileAddress(MobileAddress.Type.INTERNATIONAL, "+13135551212"));
+        request.setText("Hello World");
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try {
+            SxmpWriter.write(baos, request);
+            Assert.fail();
+        } catch (SxmpErrorException e) {
+            Assert.assertEquals(SxmpErrorCode.MISSING_REQUIRED_ELEMENT, e.getErrorCode());
+        }
+        // nothing should have made it out of the buffer
+        Assert.assertEquals(0, baos.size());
+    }
+
+    @Test(expected=NullPointerException.class)
+    public void writeBytesNullOperation() throws Exception {
+        SxmpWriter.write(new ByteArrayOutputStream(), (Operation)null);
+    }
+
 }
@@ -31,6 +31,7 @@ import com.cloudhopper.sxmp.SxmpErrorCode;
 import com.cloudhopper.sxmp.SxmpErrorException;
 import com.cloudhopper.sxmp.SxmpProcessor;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import org.apache.http.HttpStatus;
@@ -194,4 +195,68 @@ public class SxmpServletProcessorTest {
         Assert.assertTrue("Deliver XML are similar " + myDetailedDiff, myDetailedDiff.similar());
     }
 
+    @Test
+    public void doProcessStreamSubmit() throws Exception {
+        StringBuilder string0 = new StringBuilder(200)
+            .append("<?xml version=\"1.0\"?>\n")
+            .append("<operation type=\"submit\">\n")
+            .append(" <account username=\"customer1\" password=\"test1\"/>\n")
+            .append(" <submitRequest referenceId=\"MYREF102020022\">\n")
+            .append("  <operatorId>10</operatorId>\n")
+            .append("  <deliveryReport>true</deliveryReport>\n")
+            .append("  <sourceAddress type=\"network\">40404</sourceAddress>\n")
+            .append("  <destinationAddress type=\"international\">+12065551212</destinationAddress>\n")
+            .append("  <text encoding=\"ISO-8859-1\">48656c6c6f20576f726c64</text>\n")
+            .append(" </submitRequest>\n")
+            .append("</operation>\n")
+            .append("");
+
+        SxmpProcessor requestProcessor = new SxmpProcessor() {
+            public boolean authenticate(Account account) throws SxmpErrorException {
+                return true;
+            }
+
+            public SubmitResponse submit(Account account, SubmitRequest submitReq) throws SxmpErrorException {
+                SubmitResponse response = new SubmitResponse();
+                response.setErrorCode(0);
+                response.setErrorMessage("OK & accepted \u00e6");
+                response.setTicketId("TICKET<1>");
+                response.setReferenceId(submitReq.getReferenceId());
+                return response;
+            }
+
+            public DeliverResponse deliver(Account account, DeliverRequest deliverRequest) throws SxmpErrorException {
+                throw new UnsupportedOperationException("Not supported yet.");
+            }
+
+            public DeliveryReportResponse deliveryReport(Account account, DeliveryReportRequest deliveryRequest) throws SxmpErrorException {
+                throw new UnsupportedOperationException("Not supported yet.");
+            }
+        };
+
+        // the bytes written to the stream must match what the writer produces
+        StringWriter sw = new StringWriter();
+        SxmpServletProcessor.doProcess(requestProcessor, new ByteArrayInputStream(string0.toString().getBytes()), new PrintWriter(sw), "/1.0", "POST", "text/xml");
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        SxmpServletProcessor.doProcessStream(requestProcessor, new ByteArrayInputStream(string0.toString().getBytes()), baos, "/1.0", "POST", "text/xml");
+
+        logger.debug(baos.toString("ISO-8859-1"));
+
+        Assert.assertArrayEquals(sw.toString().getBytes("ISO-8859-1"), baos.toByteArray());
+        Assert.assertThat(baos.toString("ISO-8859-1"), CoreMatchers.containsString("<ticketId>TICKET&lt;1&gt;</ticketId>"));
+    }
+
+    @Test
+    public void doProcessStreamBadMethod() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try {
+            SxmpServletProcessor.doProcessStream(null, null, baos, "/api/sxmp/1.0", "GET", "text/xml");
+            Assert.fail();
+        } catch (HttpStatusCodeException e) {
+            // correct behavior
+            Assert.assertEquals(HttpStatus.SC_METHOD_NOT_ALLOWED, e.getStatusCode());
+        }
+        Assert.assertEquals(0, baos.size());
+    }
+
 }